@@ -51,6 +51,10 @@ public final class UserPreferences {
     public static final String HIDE_SLACK_FILES_IN_VIEWS_TREE = "HideSlackFilesInViewsTree"; //NON-NLS 
     public static final String DISPLAY_TIMES_IN_LOCAL_TIME = "DisplayTimesInLocalTime"; //NON-NLS
     public static final String NUMBER_OF_FILE_INGEST_THREADS = "NumberOfFileIngestThreads"; //NON-NLS
+    public static final String USE_WORK_STEALING_FILE_INGEST_SCHEDULER = "UseWorkStealingFileIngestScheduler"; //NON-NLS
+    public static final String HASH_DB_IN_MEMORY_LOOKUP_BUDGET_MB = "HashDbInMemoryLookupBudgetMB"; //NON-NLS
+    public static final String USE_HASH_DB_BLOOM_FILTERS = "UseHashDbBloomFilters"; //NON-NLS
+    public static final String HASH_DB_BLOOM_FILTER_FALSE_POSITIVE_RATE = "HashDbBloomFilterFalsePositiveRate"; //NON-NLS
     public static final String IS_MULTI_USER_MODE_ENABLED = "IsMultiUserModeEnabled"; //NON-NLS
     public static final String EXTERNAL_DATABASE_HOSTNAME_OR_IP = "ExternalDatabaseHostnameOrIp"; //NON-NLS
     public static final String EXTERNAL_DATABASE_PORTNUMBER = "ExternalDatabasePortNumber"; //NON-NLS
@@ -191,6 +195,104 @@ public static void setNumberOfFileIngestThreads(int value) {
         preferences.putInt(NUMBER_OF_FILE_INGEST_THREADS, value);
     }
 
+    /**
+     * Reads persisted setting of whether file ingest tasks should be dispensed
+     * to the file ingest threads from per-thread, work-stealing queues instead
+     * of a single shared queue. Takes effect on application restart.
+     *
+     * @return True if the work-stealing file ingest scheduler is enabled.
+     */
+    public static boolean useWorkStealingFileIngestScheduler() {
+        return preferences.getBoolean(USE_WORK_STEALING_FILE_INGEST_SCHEDULER, false);
+    }
+
+    /**
+     * Stores persisted setting of whether file ingest tasks should be
+     * dispensed to the file ingest threads from per-thread, work-stealing
+     * queues instead of a single shared queue.
+     *
+     * @param value True to enable the work-stealing file ingest scheduler.
+     */
+    public static void setUseWorkStealingFileIngestScheduler(boolean value) {
+        preferences.putBoolean(USE_WORK_STEALING_FILE_INGEST_SCHEDULER, value);
+    }
+
+    /**
+     * Reads persisted setting of the amount of memory that may be used to hold
+     * copies of the hashes of the hash databases for lookups during ingest.
+     * Hash databases that do not fit in the budget are looked up in the hash
+     * database files.
+     *
+     * @return The memory budget in megabytes, zero if in-memory lookups are
+     *         disabled.
+     */
+    public static int getHashDbInMemoryLookupBudgetMB() {
+        int budget = preferences.getInt(HASH_DB_IN_MEMORY_LOOKUP_BUDGET_MB, 0);
+        if (budget < 0) {
+            budget = 0;
+        }
+        return budget;
+    }
+
+    /**
+     * Stores persisted setting of the amount of memory that may be used to
+     * hold copies of the hashes of the hash databases for lookups during
+     * ingest.
+     *
+     * @param value The memory budget in megabytes, zero to disable in-memory
+     *              lookups.
+     */
+    public static void setHashDbInMemoryLookupBudgetMB(int value) {
+        if (value < 0) {
+            value = 0;
+        }
+        preferences.putInt(HASH_DB_IN_MEMORY_LOOKUP_BUDGET_MB, value);
+    }
+
+    /**
+     * Reads persisted setting of whether Bloom filters of the hash databases
+     * should be used to skip lookups of hashes that are not in the databases.
+     *
+     * @return True if hash database Bloom filters are enabled.
+     */
+    public static boolean useHashDbBloomFilters() {
+        return preferences.getBoolean(USE_HASH_DB_BLOOM_FILTERS, false);
+    }
+
+    /**
+     * Stores persisted setting of whether Bloom filters of the hash databases
+     * should be used to skip lookups of hashes that are not in the databases.
+     *
+     * @param value True to enable hash database Bloom filters.
+     */
+    public static void setUseHashDbBloomFilters(boolean value) {
+        preferences.putBoolean(USE_HASH_DB_BLOOM_FILTERS, value);
+    }
+
+    /**
+     * Reads persisted setting of the false positive rate of the hash database
+     * Bloom filters.
+     *
+     * @return The false positive rate, between zero and one.
+     */
+    public static double getHashDbBloomFilterFalsePositiveRate() {
+        double rate = preferences.getDouble(HASH_DB_BLOOM_FILTER_FALSE_POSITIVE_RATE, 0.01);
+        if (rate <= 0.0 || rate >= 1.0) {
+            rate = 0.01;
+        }
+        return rate;
+    }
+
+    /**
+     * Stores persisted setting of the false positive rate of the hash database
+     * Bloom filters.
+     *
+     * @param value The false positive rate, between zero and one.
+     */
+    public static void setHashDbBloomFilterFalsePositiveRate(double value) {
+        preferences.putDouble(HASH_DB_BLOOM_FILTER_FALSE_POSITIVE_RATE, value);
+    }
+
     /**
      * Reads persisted case database connection info.
      *
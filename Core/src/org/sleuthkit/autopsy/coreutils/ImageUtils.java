@@ -22,13 +22,17 @@
 package org.sleuthkit.autopsy.coreutils;
 
 import com.google.common.collect.ImmutableSortedSet;
-import com.google.common.io.Files;
 import java.awt.Image;
 import java.awt.image.BufferedImage;
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.MessageFormat;
 import java.util.ArrayList;
@@ -37,7 +41,6 @@
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
-import static java.util.Objects.nonNull;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
@@ -71,7 +74,8 @@
 
 /**
  * Utilities for working with image files and creating thumbnails. Re-uses
- * thumbnails by storing them in the case's cache directory.
+ * thumbnails by storing them in a packed thumbnail store in the case's cache
+ * directory.
  */
 public class ImageUtils {
 
@@ -105,6 +109,33 @@ public class ImageUtils {
      */
     private static final ConcurrentHashMap<Long, File> cacheFileMap = new ConcurrentHashMap<>();
 
+    /**
+     * The directory, in the case's cache directory, of the packed thumbnail
+     * store.
+     */
+    private static final String THUMBNAIL_STORE_DIRECTORY = "thumbnail_store"; //NON-NLS
+
+    /**
+     * The directory, in the case's cache directory, where earlier versions
+     * saved each thumbnail as a separate PNG file. These are moved into the
+     * packed thumbnail store.
+     */
+    private static final String LEGACY_THUMBNAIL_DIRECTORY = "thumbnails"; //NON-NLS
+
+    /**
+     * The packed thumbnail store of the current case, opened lazily.
+     *
+     * NOTE: Must be closed when the case is changed.
+     */
+    private static PackedThumbnailStore thumbnailStore;
+
+    /**
+     * Whether the thumbnails saved as separate files by earlier versions are
+     * moved into the store of the current case. They are left in place for a
+     * multi-user case, whose store is not in the shared case folder.
+     */
+    private static boolean migrateLegacyThumbnails;
+
     static {
         ImageIO.scanForPlugins();
         BufferedImage tempImage;
@@ -152,8 +183,11 @@ public class ImageUtils {
                 "application/x-123")); //TODO: is this correct? -jm //NON-NLS
         SUPPORTED_IMAGE_MIME_TYPES.removeIf("application/octet-stream"::equals); //NON-NLS
 
-        //Clear the file map when the case changes, so we don't accidentaly get images from the old case.
-        Case.addEventSubscriber(Case.Events.CURRENT_CASE.toString(), evt -> cacheFileMap.clear());
+        //Clear the file map and close the thumbnail store when the case changes, so we don't accidentaly get images from the old case.
+        Case.addEventSubscriber(Case.Events.CURRENT_CASE.toString(), evt -> {
+            cacheFileMap.clear();
+            closeThumbnailStore();
+        });
     }
 
     /**
@@ -345,24 +379,262 @@ private static BufferedInputStream getBufferedReadContentStream(AbstractFile fil
     }
 
     /**
-     * Get a thumbnail of a specified size for the given image. Generates the
-     * thumbnail if it is not already cached.
+     * Get a thumbnail of a specified size for the given image, as a file.
+     * Generates the thumbnail if it is not already cached. Thumbnails are no
+     * longer cached as files, so this writes a copy of the stored thumbnail to
+     * the case's temp directory.
      *
      * @param content the content to generate a thumbnail for
      * @param iconSize the size (one side of a square) in pixels to generate
      *
      * @return File object for cached image. Is guaranteed to exist, as long as
      * there was not an error generating or saving the thumbnail.
+     *
+     * @deprecated use getThumbnailData(org.sleuthkit.datamodel.Content, int)
+     * instead.
      */
     @Nullable
+    @Deprecated
     public static File getCachedThumbnailFile(Content content, int iconSize) {
-        getThumbnail(content, iconSize);
-        return getCachedThumbnailLocation(content.getId());
+        final File thumbnailFile;
+        try {
+            thumbnailFile = Paths.get(Case.getCurrentCase().getTempDirectory(), LEGACY_THUMBNAIL_DIRECTORY, content.getId() + "." + FORMAT).toFile(); //NON-NLS
+        } catch (IllegalStateException e) {
+            LOGGER.log(Level.WARNING, "Could not get thumbnail file location.  No case is open."); //NON-NLS
+            return null;
+        }
+        byte[] thumbnail = getThumbnailData(content, iconSize);
+        if (thumbnail != null) {
+            try {
+                Files.createDirectories(thumbnailFile.toPath().getParent());
+                Files.write(thumbnailFile.toPath(), thumbnail);
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "Could not write thumbnail for {0}: " + ex.toString(), getContentPathSafe(content)); //NON-NLS
+            }
+        }
+        return thumbnailFile;
+    }
+
+    /**
+     * Get a PNG encoded thumbnail of a specified size for the given image.
+     * Generates the thumbnail if it is not already stored.
+     *
+     * @param content the content to generate a thumbnail for
+     * @param iconSize the size (one side of a square) in pixels to generate
+     *
+     * @return the PNG encoded thumbnail, or null if a thumbnail could not be
+     * generated.
+     */
+    @Nullable
+    public static byte[] getThumbnailData(Content content, int iconSize) {
+        byte[] thumbnailData = getStoredThumbnail(content, iconSize);
+        if (thumbnailData != null || (content instanceof AbstractFile) == false) {
+            return thumbnailData;
+        }
+        AbstractFile file = (AbstractFile) content;
+
+        BufferedImage thumbnail;
+        if (isGIF(file)) {
+            thumbnail = getThumbnail(file, iconSize);
+            if (thumbnail == DEFAULT_THUMBNAIL) {
+                return null;
+            }
+        } else {
+            GetThumbnailTask thumbnailTask = new GetThumbnailTask(file, iconSize, false);
+            thumbnailTask.run();
+            try {
+                if (thumbnailTask.get() == null) {
+                    return null;
+                }
+            } catch (InterruptedException | ExecutionException ex) {
+                LOGGER.log(Level.WARNING, "Failed to get thumbnail for " + getContentPathSafe(content), ex); //NON-NLS
+                return null;
+            }
+            //the task already encoded it to be stored
+            return thumbnailTask.getEncodedThumbnail();
+        }
+        try {
+            return encodeThumbnail(thumbnail);
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Failed to encode thumbnail for " + getContentPathSafe(content), ex); //NON-NLS
+            return null;
+        }
+    }
+
+    /**
+     * Get the stored thumbnail of a specified size for the given content, if
+     * there is one. Does not generate a thumbnail.
+     *
+     * @param content the content to get the thumbnail for
+     * @param iconSize the size (one side of a square) in pixels
+     *
+     * @return the PNG encoded thumbnail, or null if there is no stored
+     * thumbnail of the given size.
+     */
+    @Nullable
+    public static byte[] getStoredThumbnail(Content content, int iconSize) {
+        final PackedThumbnailStore store = getThumbnailStore();
+        if (store == null) {
+            return null;
+        }
+        try {
+            byte[] thumbnail = store.get(content.getId(), iconSize);
+            if (thumbnail == null && migrateLegacyThumbnails) {
+                //it may not have been moved into the store yet
+                File legacyFile = getCachedThumbnailLocation(content.getId());
+                if (legacyFile != null && legacyFile.exists() && migrateLegacyThumbnail(store, legacyFile)) {
+                    thumbnail = store.get(content.getId(), iconSize);
+                }
+            }
+            return thumbnail;
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Could not read stored thumbnail for {0}: " + ex.toString(), getContentPathSafe(content)); //NON-NLS
+            return null;
+        }
+    }
+
+    /**
+     * Get the packed thumbnail store of the current case, opening it if
+     * needed. When it is opened, the thumbnails saved as separate files by
+     * earlier versions are moved into it in the background.
+     *
+     * The store memory maps its index, which is not reliable on the shared
+     * case folder of a multi-user case, so the store of a multi-user case is
+     * kept in the local user directory instead.
+     *
+     * @return the thumbnail store, or null if no case is open or it could not
+     * be opened.
+     */
+    @Nullable
+    private static synchronized PackedThumbnailStore getThumbnailStore() {
+        if (thumbnailStore == null) {
+            final String cacheDirectory;
+            final Path storeDirectory;
+            try {
+                Case currentCase = Case.getCurrentCase();
+                cacheDirectory = currentCase.getCacheDirectory();
+                migrateLegacyThumbnails = currentCase.getCaseType() != Case.CaseType.MULTI_USER_CASE;
+                storeDirectory = migrateLegacyThumbnails
+                        ? Paths.get(cacheDirectory, THUMBNAIL_STORE_DIRECTORY)
+                        : Paths.get(PlatformUtil.getUserDirectory().getAbsolutePath(), "var", "cache", THUMBNAIL_STORE_DIRECTORY, currentCase.getName()); //NON-NLS
+            } catch (IllegalStateException e) {
+                LOGGER.log(Level.WARNING, "Could not open thumbnail store.  No case is open."); //NON-NLS
+                return null;
+            }
+            try {
+                thumbnailStore = PackedThumbnailStore.open(storeDirectory);
+            } catch (IOException ex) {
+                LOGGER.log(Level.SEVERE, "Could not open thumbnail store in " + storeDirectory, ex); //NON-NLS
+                return null;
+            }
+            final File legacyDirectory = Paths.get(cacheDirectory, LEGACY_THUMBNAIL_DIRECTORY).toFile();
+            if (migrateLegacyThumbnails && legacyDirectory.isDirectory()) {
+                final PackedThumbnailStore store = thumbnailStore;
+                imageSaver.execute(() -> migrateLegacyThumbnails(store, legacyDirectory));
+            }
+        }
+        return thumbnailStore;
+    }
+
+    private static synchronized void closeThumbnailStore() {
+        if (thumbnailStore != null) {
+            thumbnailStore.close();
+            thumbnailStore = null;
+        }
+    }
+
+    /**
+     * Move all the thumbnails saved as separate files by earlier versions into
+     * the given store, and delete the files and their directory.
+     *
+     * @param store the thumbnail store
+     * @param legacyDirectory the directory of the thumbnail files
+     */
+    private static void migrateLegacyThumbnails(PackedThumbnailStore store, File legacyDirectory) {
+        File[] legacyFiles = legacyDirectory.listFiles();
+        if (legacyFiles != null) {
+            LOGGER.log(Level.INFO, "Moving {0} thumbnails into the thumbnail store", legacyFiles.length); //NON-NLS
+            for (File legacyFile : legacyFiles) {
+                try {
+                    migrateLegacyThumbnail(store, legacyFile);
+                } catch (IOException ex) {
+                    //most likely the case was closed, the rest will be moved the next time it is opened
+                    LOGGER.log(Level.WARNING, "Stopped moving thumbnails into the thumbnail store: " + ex.toString()); //NON-NLS
+                    return;
+                }
+            }
+        }
+        legacyDirectory.delete();
     }
 
     /**
-     * Get the location,as a java File, of the cached thumbnail for an file with
-     * the given fileID . The returned File may not exist on disk yet.
+     * Move a thumbnail saved as a separate file by an earlier version into the
+     * given store. It is stored under its actual size, and the file is
+     * deleted.
+     *
+     * @param store the thumbnail store
+     * @param legacyFile the thumbnail file, named for the id of its object
+     *
+     * @return true if the thumbnail was moved into the store
+     *
+     * @throws IOException if the thumbnail could not be written to the store
+     */
+    private static boolean migrateLegacyThumbnail(PackedThumbnailStore store, File legacyFile) throws IOException {
+        final long objID;
+        try {
+            objID = Long.parseLong(StringUtils.removeEnd(legacyFile.getName(), "." + FORMAT));
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+        final byte[] thumbnail;
+        try {
+            thumbnail = Files.readAllBytes(legacyFile.toPath());
+        } catch (IOException ex) {
+            //already moved by another thread, or unreadable
+            return false;
+        }
+        final int iconSize = getPNGIconSize(thumbnail);
+        if (iconSize > 0 && store.contains(objID, iconSize) == false) {
+            store.put(objID, iconSize, thumbnail);
+        }
+        legacyFile.delete();
+        return iconSize > 0;
+    }
+
+    /**
+     * Get the size of a PNG encoded thumbnail, ie the larger of its width and
+     * height, from the PNG header.
+     *
+     * @param png the PNG encoded thumbnail
+     *
+     * @return the size of the thumbnail, or -1 if it is not a PNG.
+     */
+    private static int getPNGIconSize(byte[] png) {
+        //8 byte signature, then the IHDR chunk: length, type, width, height
+        if (png.length < 24 || png[1] != 'P' || png[2] != 'N' || png[3] != 'G') {
+            return -1;
+        }
+        ByteBuffer header = ByteBuffer.wrap(png);
+        return Math.max(header.getInt(16), header.getInt(20));
+    }
+
+    /**
+     * Encode a thumbnail to be stored.
+     *
+     * @param thumbnail the thumbnail
+     *
+     * @return the encoded thumbnail
+     */
+    private static byte[] encodeThumbnail(BufferedImage thumbnail) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(thumbnail, FORMAT, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Get the location,as a java File, where earlier versions saved the
+     * thumbnail for an file with the given fileID . The returned File may not
+     * exist on disk.
      *
      * @param fileID the fileID to get the cached thumbnail location for
      *
@@ -374,7 +646,7 @@ private static File getCachedThumbnailLocation(long fileID) {
         return cacheFileMap.computeIfAbsent(fileID, id -> {
             try {
                 String cacheDirectory = Case.getCurrentCase().getCacheDirectory();
-                return Paths.get(cacheDirectory, "thumbnails", fileID + ".png").toFile(); //NON-NLS
+                return Paths.get(cacheDirectory, LEGACY_THUMBNAIL_DIRECTORY, fileID + "." + FORMAT).toFile(); //NON-NLS
             } catch (IllegalStateException e) {
                 LOGGER.log(Level.WARNING, "Could not get cached thumbnail location.  No case is open."); //NON-NLS
                 return null;
@@ -625,8 +897,11 @@ static private class GetThumbnailTask extends ReadImageTaskBase {
         private static final String FAILED_TO_READ_IMAGE_FOR_THUMBNAIL_GENERATION = "Failed to read {0} for thumbnail generation."; //NON-NLS
 
         private final int iconSize;
-        private final File cacheFile;
         private final boolean defaultOnFailure;
+        /**
+         * the thumbnail as it is stored, once it has been read or generated
+         */
+        private volatile byte[] encodedThumbnail;
 
         @NbBundle.Messages({"# {0} - file name",
             "GetOrGenerateThumbnailTask.loadingThumbnailFor=Loading thumbnail for {0}",
@@ -637,7 +912,17 @@ private GetThumbnailTask(AbstractFile file, int iconSize, boolean defaultOnFailu
             updateMessage(Bundle.GetOrGenerateThumbnailTask_loadingThumbnailFor(file.getName()));
             this.iconSize = iconSize;
             this.defaultOnFailure = defaultOnFailure;
-            this.cacheFile = getCachedThumbnailLocation(file.getId());
+        }
+
+        /**
+         * Get the thumbnail as it is stored, after the task has succeeded.
+         *
+         * @return the PNG encoded thumbnail, or null if it was not read or
+         *         generated
+         */
+        @Nullable
+        byte[] getEncodedThumbnail() {
+            return encodedThumbnail;
         }
 
         @Override
@@ -649,21 +934,16 @@ protected javafx.scene.image.Image call() throws Exception {
                 return null;
             }
 
-            // If a thumbnail file is already saved locally, just read that.
-            if (cacheFile != null) {
-                synchronized (cacheFile) {
-                    if (cacheFile.exists()) {
-                        try {
-                            BufferedImage cachedThumbnail = ImageIO.read(cacheFile);
-                            if (nonNull(cachedThumbnail) && cachedThumbnail.getWidth() == iconSize) {
-                                return SwingFXUtils.toFXImage(cachedThumbnail, null);
-                            }
-                        } catch (Exception ex) {
-                            LOGGER.log(Level.WARNING, "ImageIO had a problem reading the cached thumbnail for {0}: " + ex.toString(), ImageUtils.getContentPathSafe(file)); //NON-NLS
-                            cacheFile.delete();  //since we can't read the file we might as well delete it.
-                        }
-                    }
+            // If a thumbnail of this size is already stored, just read that.
+            byte[] storedThumbnail = getStoredThumbnail(file, iconSize);
+            if (storedThumbnail != null) {
+                javafx.scene.image.Image cachedThumbnail = new javafx.scene.image.Image(new ByteArrayInputStream(storedThumbnail));
+                if (cachedThumbnail.isError() == false) {
+                    encodedThumbnail = storedThumbnail;
+                    return cachedThumbnail;
                 }
+                //since we can't read it, make a new one, which will replace it.
+                LOGGER.log(Level.WARNING, "Could not read the stored thumbnail for {0}: " + cachedThumbnail.getException(), ImageUtils.getContentPathSafe(file)); //NON-NLS
             }
 
             if (isCancelled()) {
@@ -727,8 +1007,13 @@ protected javafx.scene.image.Image call() throws Exception {
             updateProgress(-1, 1);
 
             //if we got a valid thumbnail save it
-            if ((cacheFile != null) && thumbnail != null && DEFAULT_THUMBNAIL != thumbnail) {
-                saveThumbnail(thumbnail);
+            if (thumbnail != null && DEFAULT_THUMBNAIL != thumbnail) {
+                try {
+                    encodedThumbnail = encodeThumbnail(thumbnail);
+                    saveThumbnail(encodedThumbnail);
+                } catch (IOException ex) {
+                    LOGGER.log(Level.WARNING, "Could not encode thumbnail for {0}: " + ex.toString(), ImageUtils.getContentPathSafe(file)); //NON-NLS
+                }
             }
 
             return SwingFXUtils.toFXImage(thumbnail, null);
@@ -737,17 +1022,14 @@ protected javafx.scene.image.Image call() throws Exception {
         /**
          * submit the thumbnail saving to another background thread.
          *
-         * @param thumbnail
+         * @param thumbnail the encoded thumbnail
          */
-        private void saveThumbnail(BufferedImage thumbnail) {
+        private void saveThumbnail(byte[] thumbnail) {
             imageSaver.execute(() -> {
                 try {
-                    synchronized (cacheFile) {
-                        Files.createParentDirs(cacheFile);
-                        if (cacheFile.exists()) {
-                            cacheFile.delete();
-                        }
-                        ImageIO.write(thumbnail, FORMAT, cacheFile);
+                    final PackedThumbnailStore store = getThumbnailStore();
+                    if (store != null) {
+                        store.put(file.getId(), iconSize, thumbnail);
                     }
                 } catch (Exception ex) {
                     LOGGER.log(Level.WARNING, "Could not write thumbnail for {0}: " + ex.toString(), ImageUtils.getContentPathSafe(file)); //NON-NLS
@@ -953,14 +1235,15 @@ public static Image getDefaultIcon() {
     }
 
     /**
-     * Get a file object for where the cached icon should exist. The returned
-     * file may not exist.
+     * Get a file object for where earlier versions cached the icon. The
+     * returned file may not exist.
      *
      * @param id
      *
      * @return
      *
-     * @deprecated use {@link #getCachedThumbnailLocation(long) } instead
+     * @deprecated thumbnails are kept in the thumbnail store, use
+     * {@link #getThumbnailData(org.sleuthkit.datamodel.Content, int) } instead
      */
     @Deprecated
 
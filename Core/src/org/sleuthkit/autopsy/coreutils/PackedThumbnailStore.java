@@ -0,0 +1,697 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2016 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.coreutils;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+
+/**
+ * A store of encoded thumbnails, keyed by object id and icon size, that is
+ * packed into a few large files instead of one file per thumbnail.
+ *
+ * The thumbnails are appended to segment files, as records of a header (magic
+ * number, object id, icon size, length) followed by the encoded thumbnail. A
+ * memory mapped, open addressing hash table maps each object id and icon size
+ * to the segment, offset and length of its latest record. Storing a thumbnail
+ * again appends a new record and leaves the old one as garbage, which is
+ * removed by compact(), by copying the live records to new segments.
+ *
+ * The index is replaced, never renamed or truncated, when it grows or the
+ * store is compacted: the replacement is written to a new file with the next
+ * generation number, and marked complete once it is filled in. On opening,
+ * the newest complete index is used, and the other index files and any
+ * segments it doesn't cover are deleted. If there is no complete index, one is
+ * rebuilt from the record headers in the segments.
+ *
+ * Any number of threads can read at the same time as one thread writes.
+ */
+final class PackedThumbnailStore implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(PackedThumbnailStore.class.getName());
+
+    private static final Pattern INDEX_FILE_PATTERN = Pattern.compile("index-(\\d+)\\.dat"); //NON-NLS
+    private static final Pattern SEGMENT_FILE_PATTERN = Pattern.compile("segment-(\\d+)\\.dat"); //NON-NLS
+
+    private static final int INDEX_MAGIC = 0x54484958; //THIX
+    private static final int RECORD_MAGIC = 0x54484D42; //THMB
+    private static final int VERSION = 1;
+
+    //index header layout
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int GENERATION_OFFSET = 8;
+    private static final int CAPACITY_OFFSET = 12;
+    private static final int COUNT_OFFSET = 16;
+    private static final int FIRST_SEGMENT_OFFSET = 20;
+    private static final int LAST_SEGMENT_OFFSET = 24;
+    private static final int COMPLETE_OFFSET = 28;
+    private static final int LIVE_BYTES_OFFSET = 32;
+    private static final int TOTAL_BYTES_OFFSET = 40;
+    private static final int HEADER_SIZE = 64;
+
+    //index slot layout, an icon size of 0 marks an empty slot
+    private static final int SLOT_OBJ_ID = 0;
+    private static final int SLOT_ICON_SIZE = 8;
+    private static final int SLOT_SEGMENT = 12;
+    private static final int SLOT_OFFSET = 16;
+    private static final int SLOT_LENGTH = 24;
+    private static final int SLOT_SIZE = 32;
+
+    private static final int RECORD_HEADER_SIZE = 20;
+    private static final int INITIAL_CAPACITY = 1 << 12;
+    private static final long MAX_SEGMENT_SIZE = 256L << 20;
+
+    /**
+     * when opened, the store is compacted if at least this many bytes, and at
+     * least half of the store, are garbage.
+     */
+    private static final long MIN_COMPACTION_GARBAGE = 64L << 20;
+
+    private final Path directory;
+
+    /**
+     * guards the index and the segment channels: readers hold the read lock,
+     * and the writer takes the write lock to update them.
+     */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * serializes the writers: appending records, growing the index, and
+     * compaction.
+     */
+    private final Object writerLock = new Object();
+
+    private final Map<Integer, FileChannel> segments = new ConcurrentHashMap<>();
+
+    private FileChannel indexChannel;
+    private Path indexFile;
+    private MappedByteBuffer index;
+    private int capacity;
+    /**
+     * the end of the last segment, where the next record is appended. guarded
+     * by writerLock.
+     */
+    private long appendOffset;
+    private boolean closed = false;
+
+    /**
+     * Open the store in the given directory, creating it if it doesn't exist.
+     *
+     * @param directory the directory of the store
+     *
+     * @return the store
+     *
+     * @throws IOException if the store could not be opened or created
+     */
+    static PackedThumbnailStore open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        PackedThumbnailStore store = new PackedThumbnailStore(directory);
+        try {
+            store.load();
+        } catch (IOException | RuntimeException ex) {
+            store.close();
+            throw ex;
+        }
+        return store;
+    }
+
+    private PackedThumbnailStore(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Get the stored thumbnail for the given object and icon size.
+     *
+     * @param objID    the id of the object
+     * @param iconSize the size of the thumbnail
+     *
+     * @return the encoded thumbnail, or null if it is not in the store
+     *
+     * @throws IOException if the store could not be read, or is closed
+     */
+    @Nullable
+    byte[] get(long objID, int iconSize) throws IOException {
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            int slot = findSlot(index, capacity, objID, iconSize);
+            if (index.getInt(slot + SLOT_ICON_SIZE) == 0) {
+                return null;
+            }
+            return readRecord(index.getInt(slot + SLOT_SEGMENT), index.getLong(slot + SLOT_OFFSET), index.getInt(slot + SLOT_LENGTH), objID, iconSize);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Is there a stored thumbnail for the given object and icon size?
+     *
+     * @param objID    the id of the object
+     * @param iconSize the size of the thumbnail
+     *
+     * @return true if there is a stored thumbnail
+     *
+     * @throws IOException if the store is closed
+     */
+    boolean contains(long objID, int iconSize) throws IOException {
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            return index.getInt(findSlot(index, capacity, objID, iconSize) + SLOT_ICON_SIZE) != 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Store the thumbnail for the given object and icon size, replacing any
+     * existing one.
+     *
+     * @param objID     the id of the object
+     * @param iconSize  the size of the thumbnail, greater than 0
+     * @param thumbnail the encoded thumbnail
+     *
+     * @throws IOException if the thumbnail could not be written, or the store
+     *                     is closed
+     */
+    void put(long objID, int iconSize, byte[] thumbnail) throws IOException {
+        if (iconSize <= 0) {
+            throw new IllegalArgumentException("The icon size must be greater than 0: " + iconSize); //NON-NLS
+        }
+        synchronized (writerLock) {
+            checkOpen();
+            final int recordSize = RECORD_HEADER_SIZE + thumbnail.length;
+            int segment = index.getInt(LAST_SEGMENT_OFFSET);
+            if (appendOffset > 0 && appendOffset + recordSize > MAX_SEGMENT_SIZE) {
+                //start a new segment. record it in the index first, so it is not deleted as an orphan
+                segment++;
+                lock.writeLock().lock();
+                try {
+                    index.putInt(LAST_SEGMENT_OFFSET, segment);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                appendOffset = 0;
+            }
+            final long offset = appendOffset;
+            writeRecord(getSegment(segment), offset, objID, iconSize, thumbnail);
+            appendOffset += recordSize;
+
+            lock.writeLock().lock();
+            try {
+                if (2 * (index.getInt(COUNT_OFFSET) + 1) > capacity) {
+                    grow();
+                }
+                putSlot(index, capacity, objID, iconSize, segment, offset, thumbnail.length);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Remove the garbage left by replaced thumbnails, by copying the live
+     * records to new segments and deleting the old ones.
+     *
+     * @throws IOException if the store could not be compacted, in which case
+     *                     it is left as it was
+     */
+    void compact() throws IOException {
+        synchronized (writerLock) {
+            checkOpen();
+            final MappedByteBuffer oldIndex = index;
+            final int oldCapacity = capacity;
+            final int oldFirst = oldIndex.getInt(FIRST_SEGMENT_OFFSET);
+            final int oldLast = oldIndex.getInt(LAST_SEGMENT_OFFSET);
+            final int count = oldIndex.getInt(COUNT_OFFSET);
+
+            int newCapacity = INITIAL_CAPACITY;
+            while (2 * count > newCapacity) {
+                newCapacity *= 2;
+            }
+            final int newFirst = oldLast + 1;
+            final Path newIndexFile = getIndexFile(oldIndex.getInt(GENERATION_OFFSET) + 1);
+            final FileChannel newIndexChannel = createIndex(newIndexFile);
+            final MappedByteBuffer newIndex;
+            int segment = newFirst;
+            long offset = 0;
+            try {
+                newIndex = mapIndex(newIndexChannel, oldIndex.getInt(GENERATION_OFFSET) + 1, newCapacity, newFirst);
+                //only the writer changes the old index, so it can be read without the lock
+                for (int slot = HEADER_SIZE; slot < HEADER_SIZE + oldCapacity * SLOT_SIZE; slot += SLOT_SIZE) {
+                    int iconSize = oldIndex.getInt(slot + SLOT_ICON_SIZE);
+                    if (iconSize == 0) {
+                        continue;
+                    }
+                    long objID = oldIndex.getLong(slot + SLOT_OBJ_ID);
+                    byte[] thumbnail = readRecord(oldIndex.getInt(slot + SLOT_SEGMENT), oldIndex.getLong(slot + SLOT_OFFSET), oldIndex.getInt(slot + SLOT_LENGTH), objID, iconSize);
+                    if (thumbnail == null) {
+                        continue; //already logged, drop it
+                    }
+                    if (offset > 0 && offset + RECORD_HEADER_SIZE + thumbnail.length > MAX_SEGMENT_SIZE) {
+                        segment++;
+                        offset = 0;
+                    }
+                    writeRecord(getSegment(segment), offset, objID, iconSize, thumbnail);
+                    putSlot(newIndex, newCapacity, objID, iconSize, segment, offset, thumbnail.length);
+                    offset += RECORD_HEADER_SIZE + thumbnail.length;
+                }
+                newIndex.putInt(LAST_SEGMENT_OFFSET, segment);
+                for (int newSegment = newFirst; newSegment <= segment; newSegment++) {
+                    getSegment(newSegment).force(false);
+                }
+                markComplete(newIndex);
+            } catch (IOException | RuntimeException ex) {
+                newIndexChannel.close();
+                for (int newSegment = newFirst; newSegment <= segment; newSegment++) {
+                    closeSegment(newSegment);
+                    Files.deleteIfExists(getSegmentFile(newSegment));
+                }
+                Files.deleteIfExists(newIndexFile);
+                throw ex;
+            }
+
+            final FileChannel oldIndexChannel = indexChannel;
+            final Path oldIndexFile = indexFile;
+            lock.writeLock().lock();
+            try {
+                index = newIndex;
+                indexChannel = newIndexChannel;
+                indexFile = newIndexFile;
+                capacity = newCapacity;
+                appendOffset = offset;
+                //no reader is in the old segments while the write lock is held
+                for (int oldSegment = oldFirst; oldSegment <= oldLast; oldSegment++) {
+                    closeSegment(oldSegment);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            oldIndexChannel.close();
+            for (int oldSegment = oldFirst; oldSegment <= oldLast; oldSegment++) {
+                tryDelete(getSegmentFile(oldSegment));
+            }
+            tryDelete(oldIndexFile);
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (writerLock) {
+            lock.writeLock().lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                if (index != null) {
+                    index.force();
+                }
+                if (indexChannel != null) {
+                    indexChannel.close();
+                }
+                for (Integer segment : segments.keySet()) {
+                    closeSegment(segment);
+                }
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "Error closing thumbnail store: " + directory, ex); //NON-NLS
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Open the newest complete index, or rebuild one from the segments, and
+     * clean up anything it doesn't cover.
+     */
+    private void load() throws IOException {
+        TreeMap<Integer, Path> indexFiles = listFiles(INDEX_FILE_PATTERN);
+        TreeMap<Integer, Path> segmentFiles = listFiles(SEGMENT_FILE_PATTERN);
+
+        for (Map.Entry<Integer, Path> entry : indexFiles.descendingMap().entrySet()) {
+            if (isComplete(entry.getValue())) {
+                indexFile = entry.getValue();
+                break;
+            }
+        }
+
+        if (indexFile == null) {
+            for (Path file : indexFiles.values()) {
+                Files.delete(file);
+            }
+            rebuildIndex(indexFiles.isEmpty() ? 0 : indexFiles.lastKey() + 1, segmentFiles);
+        } else {
+            indexChannel = FileChannel.open(indexFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, indexChannel.size());
+            capacity = index.getInt(CAPACITY_OFFSET);
+            for (Path file : indexFiles.values()) {
+                if (file.equals(indexFile) == false) {
+                    tryDelete(file);
+                }
+            }
+        }
+
+        //delete the segments the index doesn't cover, left by an interrupted compaction
+        final int first = index.getInt(FIRST_SEGMENT_OFFSET);
+        final int last = index.getInt(LAST_SEGMENT_OFFSET);
+        for (Map.Entry<Integer, Path> entry : segmentFiles.entrySet()) {
+            if (entry.getKey() < first || entry.getKey() > last) {
+                tryDelete(entry.getValue());
+            }
+        }
+
+        //drop any partially written record at the end of the last segment
+        FileChannel lastSegment = getSegment(last);
+        appendOffset = scanSegment(last, lastSegment, null);
+        if (lastSegment.size() > appendOffset) {
+            lastSegment.truncate(appendOffset);
+        }
+
+        long totalBytes = index.getLong(TOTAL_BYTES_OFFSET);
+        long garbage = totalBytes - index.getLong(LIVE_BYTES_OFFSET);
+        if (garbage >= MIN_COMPACTION_GARBAGE && garbage * 2 >= totalBytes) {
+            LOGGER.log(Level.INFO, "Compacting thumbnail store {0}, {1} of {2} bytes are garbage", new Object[]{directory, garbage, totalBytes}); //NON-NLS
+            compact();
+        }
+    }
+
+    /**
+     * Build a new index from the records in the segments.
+     *
+     * @param generation   the generation of the new index
+     * @param segmentFiles the segment files, by number
+     */
+    private void rebuildIndex(int generation, TreeMap<Integer, Path> segmentFiles) throws IOException {
+        final int first = segmentFiles.isEmpty() ? 0 : segmentFiles.firstKey();
+        final int last = segmentFiles.isEmpty() ? 0 : segmentFiles.lastKey();
+        if (segmentFiles.isEmpty() == false) {
+            LOGGER.log(Level.INFO, "Rebuilding the index of thumbnail store {0}", directory); //NON-NLS
+        }
+        indexFile = getIndexFile(generation);
+        indexChannel = createIndex(indexFile);
+        capacity = INITIAL_CAPACITY;
+        index = mapIndex(indexChannel, generation, capacity, first);
+        index.putInt(LAST_SEGMENT_OFFSET, last);
+        for (int segment = first; segment <= last; segment++) {
+            if (segmentFiles.containsKey(segment)) {
+                final int thisSegment = segment;
+                scanSegment(segment, getSegment(segment), (objID, iconSize, offset, length) -> {
+                    if (2 * (index.getInt(COUNT_OFFSET) + 1) > capacity) {
+                        grow();
+                    }
+                    putSlot(index, capacity, objID, iconSize, thisSegment, offset, length);
+                });
+            }
+        }
+        markComplete(index);
+    }
+
+    /**
+     * Replace the index with one of twice the capacity. Must be called by the
+     * writer, with the write lock held.
+     */
+    private void grow() throws IOException {
+        final int generation = index.getInt(GENERATION_OFFSET) + 1;
+        final int newCapacity = capacity * 2;
+        final Path newIndexFile = getIndexFile(generation);
+        final FileChannel newIndexChannel = createIndex(newIndexFile);
+        final MappedByteBuffer newIndex;
+        try {
+            newIndex = mapIndex(newIndexChannel, generation, newCapacity, index.getInt(FIRST_SEGMENT_OFFSET));
+            newIndex.putInt(LAST_SEGMENT_OFFSET, index.getInt(LAST_SEGMENT_OFFSET));
+            for (int slot = HEADER_SIZE; slot < HEADER_SIZE + capacity * SLOT_SIZE; slot += SLOT_SIZE) {
+                int iconSize = index.getInt(slot + SLOT_ICON_SIZE);
+                if (iconSize != 0) {
+                    putSlot(newIndex, newCapacity, index.getLong(slot + SLOT_OBJ_ID), iconSize,
+                            index.getInt(slot + SLOT_SEGMENT), index.getLong(slot + SLOT_OFFSET), index.getInt(slot + SLOT_LENGTH));
+                }
+            }
+            //carry over the garbage that was already there
+            newIndex.putLong(TOTAL_BYTES_OFFSET, index.getLong(TOTAL_BYTES_OFFSET));
+            markComplete(newIndex);
+        } catch (IOException | RuntimeException ex) {
+            newIndexChannel.close();
+            Files.deleteIfExists(newIndexFile);
+            throw ex;
+        }
+        final Path oldIndexFile = indexFile;
+        indexChannel.close();
+        index = newIndex;
+        indexChannel = newIndexChannel;
+        indexFile = newIndexFile;
+        capacity = newCapacity;
+        //the old file may stay mapped until it is garbage collected, if so it is deleted the next time the store is opened
+        tryDelete(oldIndexFile);
+    }
+
+    /**
+     * Find the slot for the given key: the one that holds it, or the empty one
+     * where it would be inserted.
+     *
+     * @return the position of the slot in the index
+     */
+    private static int findSlot(ByteBuffer index, int capacity, long objID, int iconSize) {
+        long hash = (objID * 0x9E3779B97F4A7C15L) ^ iconSize;
+        int slot = (int) (hash ^ (hash >>> 32)) & (capacity - 1);
+        while (true) {
+            int position = HEADER_SIZE + slot * SLOT_SIZE;
+            int slotIconSize = index.getInt(position + SLOT_ICON_SIZE);
+            if (slotIconSize == 0
+                    || (slotIconSize == iconSize && index.getLong(position + SLOT_OBJ_ID) == objID)) {
+                return position;
+            }
+            slot = (slot + 1) & (capacity - 1);
+        }
+    }
+
+    /**
+     * Point the slot for the given key at a record, and update the counts in
+     * the header.
+     */
+    private static void putSlot(ByteBuffer index, int capacity, long objID, int iconSize, int segment, long offset, int length) {
+        int slot = findSlot(index, capacity, objID, iconSize);
+        long liveBytes = index.getLong(LIVE_BYTES_OFFSET);
+        if (index.getInt(slot + SLOT_ICON_SIZE) == 0) {
+            index.putInt(COUNT_OFFSET, index.getInt(COUNT_OFFSET) + 1);
+        } else {
+            liveBytes -= RECORD_HEADER_SIZE + index.getInt(slot + SLOT_LENGTH);
+        }
+        index.putLong(slot + SLOT_OBJ_ID, objID);
+        index.putInt(slot + SLOT_SEGMENT, segment);
+        index.putLong(slot + SLOT_OFFSET, offset);
+        index.putInt(slot + SLOT_LENGTH, length);
+        //the icon size marks the slot as used, so set it last
+        index.putInt(slot + SLOT_ICON_SIZE, iconSize);
+        index.putLong(LIVE_BYTES_OFFSET, liveBytes + RECORD_HEADER_SIZE + length);
+        index.putLong(TOTAL_BYTES_OFFSET, index.getLong(TOTAL_BYTES_OFFSET) + RECORD_HEADER_SIZE + length);
+    }
+
+    private FileChannel createIndex(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Map a new, empty index, with a header that is not marked complete.
+     */
+    private static MappedByteBuffer mapIndex(FileChannel channel, int generation, int capacity, int firstSegment) throws IOException {
+        MappedByteBuffer newIndex = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * SLOT_SIZE);
+        newIndex.putInt(MAGIC_OFFSET, INDEX_MAGIC);
+        newIndex.putInt(VERSION_OFFSET, VERSION);
+        newIndex.putInt(GENERATION_OFFSET, generation);
+        newIndex.putInt(CAPACITY_OFFSET, capacity);
+        newIndex.putInt(COUNT_OFFSET, 0);
+        newIndex.putInt(FIRST_SEGMENT_OFFSET, firstSegment);
+        newIndex.putInt(LAST_SEGMENT_OFFSET, firstSegment);
+        newIndex.putInt(COMPLETE_OFFSET, 0);
+        newIndex.putLong(LIVE_BYTES_OFFSET, 0);
+        newIndex.putLong(TOTAL_BYTES_OFFSET, 0);
+        return newIndex;
+    }
+
+    private static void markComplete(MappedByteBuffer newIndex) {
+        newIndex.force();
+        newIndex.putInt(COMPLETE_OFFSET, 1);
+        newIndex.force();
+    }
+
+    private static boolean isComplete(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            return header.getInt(MAGIC_OFFSET) == INDEX_MAGIC
+                    && header.getInt(VERSION_OFFSET) == VERSION
+                    && header.getInt(COMPLETE_OFFSET) == 1
+                    && channel.size() == HEADER_SIZE + (long) header.getInt(CAPACITY_OFFSET) * SLOT_SIZE;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Read the records of a segment, from the start up to the first one that
+     * is incomplete or invalid.
+     *
+     * @param consumer gets the key and location of each record, may be null
+     *
+     * @return the end of the last valid record
+     */
+    private long scanSegment(int segment, FileChannel channel, @Nullable RecordConsumer consumer) throws IOException {
+        final long size = channel.size();
+        final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        long offset = 0;
+        while (offset + RECORD_HEADER_SIZE <= size) {
+            header.clear();
+            readFully(channel, header, offset);
+            int length = header.getInt(16);
+            if (header.getInt(0) != RECORD_MAGIC || header.getInt(12) <= 0 || length < 0
+                    || offset + RECORD_HEADER_SIZE + length > size) {
+                LOGGER.log(Level.WARNING, "Thumbnail store segment {0} has an invalid record at {1}, ignoring the rest of it", new Object[]{segment, offset}); //NON-NLS
+                break;
+            }
+            if (consumer != null) {
+                consumer.accept(header.getLong(4), header.getInt(12), offset, length);
+            }
+            offset += RECORD_HEADER_SIZE + length;
+        }
+        return offset;
+    }
+
+    @Nullable
+    private byte[] readRecord(int segment, long offset, int length, long objID, int iconSize) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+        try {
+            readFully(getSegment(segment), record, offset);
+        } catch (EOFException ex) {
+            LOGGER.log(Level.WARNING, "Thumbnail store record for object " + objID + " is truncated", ex); //NON-NLS
+            return null;
+        }
+        if (record.getInt(0) != RECORD_MAGIC || record.getLong(4) != objID
+                || record.getInt(12) != iconSize || record.getInt(16) != length) {
+            LOGGER.log(Level.WARNING, "Thumbnail store record for object {0} does not match the index", objID); //NON-NLS
+            return null;
+        }
+        byte[] thumbnail = new byte[length];
+        record.position(RECORD_HEADER_SIZE);
+        record.get(thumbnail);
+        return thumbnail;
+    }
+
+    private static void writeRecord(FileChannel channel, long offset, long objID, int iconSize, byte[] thumbnail) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + thumbnail.length);
+        record.putInt(RECORD_MAGIC).putLong(objID).putInt(iconSize).putInt(thumbnail.length).put(thumbnail);
+        record.flip();
+        while (record.hasRemaining()) {
+            offset += channel.write(record, offset);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, offset);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            offset += read;
+        }
+    }
+
+    private FileChannel getSegment(int segment) throws IOException {
+        try {
+            return segments.computeIfAbsent(segment, number -> {
+                try {
+                    return FileChannel.open(getSegmentFile(number), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    private void closeSegment(int segment) throws IOException {
+        FileChannel channel = segments.remove(segment);
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private Path getSegmentFile(int segment) {
+        return directory.resolve("segment-" + segment + ".dat"); //NON-NLS
+    }
+
+    private Path getIndexFile(int generation) {
+        return directory.resolve("index-" + generation + ".dat"); //NON-NLS
+    }
+
+    private TreeMap<Integer, Path> listFiles(Pattern pattern) throws IOException {
+        TreeMap<Integer, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                Matcher matcher = pattern.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    files.put(Integer.valueOf(matcher.group(1)), file);
+                }
+            }
+        }
+        return files;
+    }
+
+    private static void tryDelete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            LOGGER.log(Level.INFO, "Could not delete " + file + ", it will be deleted the next time the thumbnail store is opened", ex); //NON-NLS
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("The thumbnail store is closed: " + directory); //NON-NLS
+        }
+    }
+
+    /**
+     * Gets the key and location of the records read by scanSegment().
+     */
+    @FunctionalInterface
+    private interface RecordConsumer {
+
+        void accept(long objID, int iconSize, long offset, int length) throws IOException;
+    }
+}
@@ -18,10 +18,14 @@
  */
 package org.sleuthkit.autopsy.ingest;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -168,6 +172,23 @@ private static enum Stages {
      */
     private final long createTime;
 
+    /**
+     * A data source ingest job keeps track of the number of bytes of file
+     * content the file level ingest modules read through the file content
+     * cache, and the number of those bytes that had to be read from the data
+     * source, to measure the effectiveness of the cache.
+     */
+    private final AtomicLong contentBytesRequested = new AtomicLong(0L);
+    private final AtomicLong contentBytesRead = new AtomicLong(0L);
+
+    /**
+     * A data source ingest job keeps cumulative performance metrics for each
+     * of its ingest modules, shared by the copies of the module in the
+     * pipelines of all of the ingest threads. The recorders are kept in
+     * pipeline order.
+     */
+    private final Map<String, IngestModuleMetrics.Recorder> moduleMetricsRecorders = Collections.synchronizedMap(new LinkedHashMap<>());
+
     /**
      * Constructs an object that encapsulates a data source and the ingest
      * module pipelines used to process it.
@@ -668,6 +689,8 @@ private void finishFirstStage() {
      */
     private void finish() {
         logger.log(Level.INFO, "Finished analysis for {0} (jobId={1})", new Object[]{dataSource.getName(), this.id}); //NON-NLS
+        logger.log(Level.INFO, "File ingest modules requested {0} bytes of file content for {1} (jobId={2}), {3} bytes were read from the data source", new Object[]{contentBytesRequested.get(), dataSource.getName(), this.id, contentBytesRead.get()}); //NON-NLS
+        this.writeModuleMetrics();
         this.stage = DataSourceIngestJob.Stages.FINALIZATION;
 
         if (this.doUI) {
@@ -702,6 +725,63 @@ private void finish() {
 
     }
 
+    /**
+     * Gets the recorder for the performance metrics of an ingest module of
+     * this job, creating it if it does not exist.
+     *
+     * @param moduleDisplayName The display name of the module.
+     * @param moduleType        The type of the module.
+     *
+     * @return The recorder.
+     */
+    IngestModuleMetrics.Recorder getModuleMetricsRecorder(String moduleDisplayName, IngestModuleMetrics.ModuleType moduleType) {
+        return this.moduleMetricsRecorders.computeIfAbsent(moduleType + ":" + moduleDisplayName, key -> new IngestModuleMetrics.Recorder(moduleDisplayName, moduleType)); //NON-NLS
+    }
+
+    /**
+     * Gets the cumulative performance metrics of the ingest modules of this
+     * job.
+     *
+     * @return The metrics, in pipeline order.
+     */
+    List<IngestModuleMetrics> getModuleMetrics() {
+        List<IngestModuleMetrics> metrics = new ArrayList<>();
+        synchronized (this.moduleMetricsRecorders) {
+            for (IngestModuleMetrics.Recorder recorder : this.moduleMetricsRecorders.values()) {
+                metrics.add(recorder.getSnapshot());
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Writes the performance metrics of the ingest modules of this job to CSV
+     * and JSON files in the log directory of the current case.
+     */
+    private void writeModuleMetrics() {
+        List<IngestModuleMetrics> metrics = getModuleMetrics();
+        try {
+            Path logDirectory = Paths.get(Case.getCurrentCase().getLogDirectoryPath());
+            String baseName = String.format("ingest_module_metrics_job%d_%d", this.id, this.createTime); //NON-NLS
+            IngestModuleMetrics.writeCsv(this.id, dataSource.getName(), metrics, logDirectory.resolve(baseName + ".csv")); //NON-NLS
+            IngestModuleMetrics.writeJson(this.id, dataSource.getName(), metrics, logDirectory.resolve(baseName + ".json")); //NON-NLS
+        } catch (IllegalStateException | IOException ex) {
+            logger.log(Level.WARNING, String.format("Failed to write ingest module metrics for %s (jobId=%d)", dataSource.getName(), this.id), ex); //NON-NLS
+        }
+    }
+
+    /**
+     * Adds to the counts of bytes of file content read by the file level
+     * ingest modules of this job through the file content cache.
+     *
+     * @param bytesRequested The number of bytes requested by the modules.
+     * @param bytesRead      The number of bytes read from the data source.
+     */
+    void addContentReadCounts(long bytesRequested, long bytesRead) {
+        this.contentBytesRequested.addAndGet(bytesRequested);
+        this.contentBytesRead.addAndGet(bytesRead);
+    }
+
     /**
      * Passes the data source for this job through the currently active data
      * source level ingest pipeline.
@@ -1120,6 +1200,7 @@ final class Snapshot {
         private final boolean jobCancelled;
         private final IngestJob.CancellationReason jobCancellationReason;
         private final List<String> cancelledDataSourceModules;
+        private final List<IngestModuleMetrics> moduleMetrics;
 
         /**
          * Constructs an object to store basic diagnostic statistics for a data
@@ -1149,6 +1230,7 @@ final class Snapshot {
             this.jobCancelled = cancelled;
             this.jobCancellationReason = cancellationReason;
             this.cancelledDataSourceModules = new ArrayList<>(DataSourceIngestJob.this.cancelledDataSourceIngestModules);
+            this.moduleMetrics = DataSourceIngestJob.this.getModuleMetrics();
 
             if (getIngestTasksSnapshot) {
                 synchronized (DataSourceIngestJob.this.fileIngestProgressLock) {
@@ -1206,6 +1288,16 @@ long getJobStartTime() {
             return jobStartTime;
         }
 
+        /**
+         * Gets the cumulative performance metrics of the ingest modules of the
+         * ingest job that is the subject of this snapshot.
+         *
+         * @return The metrics, in pipeline order.
+         */
+        List<IngestModuleMetrics> getModuleMetrics() {
+            return Collections.unmodifiableList(this.moduleMetrics);
+        }
+
         DataSourceIngestPipeline.PipelineModule getDataSourceLevelIngestModule() {
             return this.dataSourceLevelIngestModule;
         }
@@ -56,7 +56,8 @@ final class DataSourceIngestPipeline {
         this.job = job;
         for (IngestModuleTemplate template : moduleTemplates) {
             if (template.isDataSourceIngestModuleTemplate()) {
-                PipelineModule module = new PipelineModule(template.createDataSourceIngestModule(), template.getModuleName());
+                PipelineModule module = new PipelineModule(template.createDataSourceIngestModule(), template.getModuleName(),
+                        job.getModuleMetricsRecorder(template.getModuleName(), IngestModuleMetrics.ModuleType.DATA_SOURCE_LEVEL));
                 modules.add(module);
             }
         }
@@ -144,25 +145,31 @@ PipelineModule getCurrentlyRunningModule() {
 
     /**
      * This class decorates a data source level ingest module with a display
-     * name and a processing start time.
+     * name and a processing start time, and records the performance metrics of
+     * the module.
      */
     static class PipelineModule implements DataSourceIngestModule {
 
         private final DataSourceIngestModule module;
         private final String displayName;
+        private final IngestModuleMetrics.Recorder metricsRecorder;
         private volatile Date processingStartTime;
 
         /**
          * Constructs an object that decorates a data source level ingest module
-         * with a display name and a processing start time.
+         * with a display name and a processing start time, and records the
+         * performance metrics of the module.
          *
-         * @param module      The data source level ingest module to be
-         *                    decorated.
-         * @param displayName The display name.
+         * @param module          The data source level ingest module to be
+         *                        decorated.
+         * @param displayName     The display name.
+         * @param metricsRecorder The recorder for the performance metrics of
+         *                        the module.
          */
-        PipelineModule(DataSourceIngestModule module, String displayName) {
+        PipelineModule(DataSourceIngestModule module, String displayName, IngestModuleMetrics.Recorder metricsRecorder) {
             this.module = module;
             this.displayName = displayName;
+            this.metricsRecorder = metricsRecorder;
             this.processingStartTime = new Date();
         }
 
@@ -203,7 +210,12 @@ public void startUp(IngestJobContext context) throws IngestModuleException {
         @Override
         public IngestModule.ProcessResult process(Content dataSource, DataSourceIngestModuleProgress statusHelper) {
             this.processingStartTime = new Date();
-            return this.module.process(dataSource, statusHelper);
+            long startTime = System.nanoTime();
+            try {
+                return this.module.process(dataSource, statusHelper);
+            } finally {
+                this.metricsRecorder.record(dataSource.getSize(), System.nanoTime() - startTime);
+            }
         }
 
     }
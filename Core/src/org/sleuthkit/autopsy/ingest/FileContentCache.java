@@ -0,0 +1,272 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2016 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.ingest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.TskCoreException;
+
+/**
+ * A bounded, per ingest thread cache of the content of the file that is
+ * currently going through the file ingest pipeline of the thread. The first
+ * bytes of the file that any file ingest module reads through the cache are
+ * kept in memory, so the modules further down the pipeline that read the same
+ * bytes, e.g., file type detection followed by text extraction, get them from
+ * memory instead of from the image.
+ *
+ * Reads of files other than the file currently in the pipeline of the calling
+ * thread, and reads of bytes beyond the bound of the cache, go straight to the
+ * file, so the methods of this class can be used anywhere in place of reading
+ * the file directly.
+ */
+public final class FileContentCache {
+
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+    private static final int MAX_CACHED_BYTES = 8 * 1024 * 1024;
+    private static final ThreadLocal<Entry> entries = ThreadLocal.withInitial(Entry::new);
+
+    /**
+     * Starts caching the content of a file that is about to go through the
+     * file ingest pipeline of the calling thread.
+     *
+     * @param file The file.
+     */
+    static void beginFile(AbstractFile file) {
+        entries.get().begin(file);
+    }
+
+    /**
+     * Stops caching the content of the file that went through the file ingest
+     * pipeline of the calling thread, and adds the read counts for the file to
+     * the counts for its ingest job.
+     *
+     * @param job The ingest job of the file.
+     */
+    static void endFile(DataSourceIngestJob job) {
+        Entry entry = entries.get();
+        synchronized (entry) {
+            job.addContentReadCounts(entry.bytesRequested, entry.bytesReadFromImage);
+            entry.end();
+        }
+    }
+
+    /**
+     * Reads bytes of a file, from the cache where possible.
+     *
+     * @param file   The file.
+     * @param buffer The buffer to read into, starting at index zero.
+     * @param offset The offset in the file to read from.
+     * @param length The number of bytes to read.
+     *
+     * @return The number of bytes read.
+     *
+     * @throws TskCoreException If there is an error reading the file.
+     */
+    public static int read(AbstractFile file, byte[] buffer, long offset, long length) throws TskCoreException {
+        Entry entry = entries.get();
+        return entry.read(file, entry.getGeneration(), offset, buffer, 0, (int) Math.min(length, buffer.length));
+    }
+
+    /**
+     * Opens an input stream for the content of a file that reads from the
+     * cache where possible. The stream may be read by a thread other than the
+     * calling thread, e.g., a parser thread with a timeout, but it only reads
+     * from the cache while the file is in the pipeline of the calling thread.
+     *
+     * @param file The file.
+     *
+     * @return The input stream.
+     */
+    public static InputStream openStream(AbstractFile file) {
+        Entry entry = entries.get();
+        return new CachedContentInputStream(file, entry, entry.getGeneration());
+    }
+
+    private FileContentCache() {
+    }
+
+    /**
+     * The cached content of the file in the pipeline of an ingest thread, and
+     * the read counts for the file.
+     */
+    private static final class Entry {
+
+        private long generation;
+        private long fileId = -1;
+        private long fileSize;
+        private byte[] content = new byte[0];
+        private int cachedLength;
+        private byte[] scratch = new byte[0];
+        private long bytesRequested;
+        private long bytesReadFromImage;
+
+        synchronized long getGeneration() {
+            return generation;
+        }
+
+        synchronized void begin(AbstractFile file) {
+            ++generation;
+            fileId = file.getId();
+            fileSize = file.getSize();
+            cachedLength = 0;
+            bytesRequested = 0;
+            bytesReadFromImage = 0;
+        }
+
+        synchronized void end() {
+            ++generation;
+            fileId = -1;
+            cachedLength = 0;
+        }
+
+        /**
+         * Reads bytes of a file, serving the cached bytes and adding bytes
+         * read from the image that extend the cached bytes to the cache.
+         */
+        synchronized int read(AbstractFile file, long readGeneration, long offset, byte[] buffer, int bufferOffset, int length) throws TskCoreException {
+            if (readGeneration != generation || file.getId() != fileId) {
+                return readFromFile(file, offset, buffer, bufferOffset, length);
+            }
+            if (offset >= fileSize || length <= 0) {
+                return 0;
+            }
+            int wanted = (int) Math.min(length, fileSize - offset);
+            bytesRequested += wanted;
+
+            // Extend the cache to cover the request, as far as the bound
+            // allows, if the request starts within or right after the cached
+            // bytes.
+            if (offset <= cachedLength && offset + wanted > cachedLength && cachedLength < MAX_CACHED_BYTES) {
+                int fillLength = (int) Math.min(offset + wanted, Math.min(fileSize, MAX_CACHED_BYTES)) - cachedLength;
+                ensureCapacity(cachedLength + fillLength);
+                int bytesRead = readFromImage(file, cachedLength, fillLength);
+                if (bytesRead > 0) {
+                    System.arraycopy(scratch, 0, content, cachedLength, bytesRead);
+                    cachedLength += bytesRead;
+                }
+            }
+
+            int copied = 0;
+            if (offset < cachedLength) {
+                copied = (int) Math.min(wanted, cachedLength - offset);
+                System.arraycopy(content, (int) offset, buffer, bufferOffset, copied);
+            }
+            if (copied < wanted) {
+                int bytesRead = readFromImage(file, offset + copied, wanted - copied);
+                if (bytesRead > 0) {
+                    System.arraycopy(scratch, 0, buffer, bufferOffset + copied, bytesRead);
+                    copied += bytesRead;
+                }
+            }
+            return copied;
+        }
+
+        private int readFromImage(AbstractFile file, long offset, int length) throws TskCoreException {
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, INITIAL_CAPACITY)];
+            }
+            int bytesRead = file.read(scratch, offset, length);
+            if (bytesRead > 0) {
+                bytesReadFromImage += bytesRead;
+            }
+            return bytesRead;
+        }
+
+        private int readFromFile(AbstractFile file, long offset, byte[] buffer, int bufferOffset, int length) throws TskCoreException {
+            if (bufferOffset == 0) {
+                return file.read(buffer, offset, length);
+            }
+            byte[] bytes = new byte[length];
+            int bytesRead = file.read(bytes, offset, length);
+            if (bytesRead > 0) {
+                System.arraycopy(bytes, 0, buffer, bufferOffset, bytesRead);
+            }
+            return bytesRead;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (content.length < capacity) {
+                int newCapacity = Math.max(content.length, INITIAL_CAPACITY);
+                while (newCapacity < capacity) {
+                    newCapacity *= 2;
+                }
+                content = Arrays.copyOf(content, Math.min(newCapacity, MAX_CACHED_BYTES));
+            }
+        }
+    }
+
+    /**
+     * An input stream for the content of a file that reads through the cache
+     * of the ingest thread that opened it.
+     */
+    private static final class CachedContentInputStream extends InputStream {
+
+        private final AbstractFile file;
+        private final Entry entry;
+        private final long generation;
+        private long position;
+
+        CachedContentInputStream(AbstractFile file, Entry entry, long generation) {
+            this.file = file;
+            this.entry = entry;
+            this.generation = generation;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] singleByte = new byte[1];
+            int bytesRead = read(singleByte, 0, 1);
+            return bytesRead == 1 ? singleByte[0] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (position >= file.getSize()) {
+                return -1;
+            }
+            try {
+                int bytesRead = entry.read(file, generation, position, buffer, offset, length);
+                if (bytesRead <= 0) {
+                    return -1;
+                }
+                position += bytesRead;
+                return bytesRead;
+            } catch (TskCoreException ex) {
+                throw new IOException("Error reading content of file with objId = " + file.getId(), ex); //NON-NLS
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = Math.max(0, Math.min(n, file.getSize() - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(Integer.MAX_VALUE, Math.max(0, file.getSize() - position));
+        }
+    }
+}
@@ -54,7 +54,8 @@ final class FileIngestPipeline {
         this.job = job;
         for (IngestModuleTemplate template : moduleTemplates) {
             if (template.isFileIngestModuleTemplate()) {
-                PipelineModule module = new PipelineModule(template.createFileIngestModule(), template.getModuleName());
+                PipelineModule module = new PipelineModule(template.createFileIngestModule(), template.getModuleName(),
+                        job.getModuleMetricsRecorder(template.getModuleName(), IngestModuleMetrics.ModuleType.FILE_LEVEL));
                 modules.add(module);
             }
         }
@@ -118,23 +119,32 @@ synchronized List<IngestModuleError> process(FileIngestTask task) {
         List<IngestModuleError> errors = new ArrayList<>();
         if (!this.job.isCancelled()) {
             AbstractFile file = task.getFile();
-            for (PipelineModule module : this.modules) {
-                try {
-                    FileIngestPipeline.ingestManager.setIngestTaskProgress(task, module.getDisplayName());
-                    this.job.setCurrentFileIngestModule(module.getDisplayName(), task.getFile().getName());
-                    module.process(file);
-                } catch (Throwable ex) { // Catch-all exception firewall
-                    errors.add(new IngestModuleError(module.getDisplayName(), ex));
-                    String msg = ex.getMessage();
-                    // Jython run-time errors don't seem to have a message, but have details in toString.
-                    if (msg == null) {
-                        msg = ex.toString();
+            /*
+             * Let the modules share the bytes of the file read by the modules
+             * before them.
+             */
+            FileContentCache.beginFile(file);
+            try {
+                for (PipelineModule module : this.modules) {
+                    try {
+                        FileIngestPipeline.ingestManager.setIngestTaskProgress(task, module.getDisplayName());
+                        this.job.setCurrentFileIngestModule(module.getDisplayName(), task.getFile().getName());
+                        module.process(file);
+                    } catch (Throwable ex) { // Catch-all exception firewall
+                        errors.add(new IngestModuleError(module.getDisplayName(), ex));
+                        String msg = ex.getMessage();
+                        // Jython run-time errors don't seem to have a message, but have details in toString.
+                        if (msg == null) {
+                            msg = ex.toString();
+                        }
+                        MessageNotifyUtil.Notify.error(NbBundle.getMessage(this.getClass(), "FileIngestPipeline.moduleError.title.text", module.getDisplayName()), msg);
+                    }
+                    if (this.job.isCancelled()) {
+                        break;
                     }
-                    MessageNotifyUtil.Notify.error(NbBundle.getMessage(this.getClass(), "FileIngestPipeline.moduleError.title.text", module.getDisplayName()), msg);
-                }
-                if (this.job.isCancelled()) {
-                    break;
                 }
+            } finally {
+                FileContentCache.endFile(this.job);
             }
             file.close();
             if (!this.job.isCancelled()) {
@@ -172,23 +182,28 @@ synchronized List<IngestModuleError> shutDown() {
     }
 
     /**
-     * This class decorates a file level ingest module with a display name.
+     * This class decorates a file level ingest module with a display name and
+     * records the performance metrics of the module.
      */
     private static final class PipelineModule implements FileIngestModule {
 
         private final FileIngestModule module;
         private final String displayName;
+        private final IngestModuleMetrics.Recorder metricsRecorder;
 
         /**
          * Constructs an object that decorates a file level ingest module with a
-         * display name.
+         * display name and records the performance metrics of the module.
          *
-         * @param module      The file level ingest module to be decorated.
-         * @param displayName The display name.
+         * @param module          The file level ingest module to be decorated.
+         * @param displayName     The display name.
+         * @param metricsRecorder The recorder for the performance metrics of
+         *                        the module.
          */
-        PipelineModule(FileIngestModule module, String displayName) {
+        PipelineModule(FileIngestModule module, String displayName, IngestModuleMetrics.Recorder metricsRecorder) {
             this.module = module;
             this.displayName = displayName;
+            this.metricsRecorder = metricsRecorder;
         }
 
         /**
@@ -216,7 +231,12 @@ public void startUp(IngestJobContext context) throws IngestModuleException {
 
         @Override
         public IngestModule.ProcessResult process(AbstractFile file) {
-            return module.process(file);
+            long startTime = System.nanoTime();
+            try {
+                return module.process(file);
+            } finally {
+                metricsRecorder.record(file.getSize(), System.nanoTime() - startTime);
+            }
         }
 
         @Override
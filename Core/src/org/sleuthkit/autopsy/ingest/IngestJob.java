@@ -318,6 +318,16 @@ public List<String> getCancelledDataSourceIngestModules() {
                 return snapshot.getCancelledDataSourceIngestModules();
             }
 
+            /**
+             * Gets the cumulative performance metrics of the ingest modules
+             * processing the data source that is the subject of this snapshot.
+             *
+             * @return The metrics, in pipeline order.
+             */
+            public List<IngestModuleMetrics> getModuleMetrics() {
+                return snapshot.getModuleMetrics();
+            }
+
         }
 
         /**
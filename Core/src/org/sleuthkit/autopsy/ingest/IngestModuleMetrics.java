@@ -0,0 +1,307 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2016 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.ingest;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A snapshot of the cumulative performance metrics of an ingest module in a
+ * data source ingest job: the number of items (files or data sources) the
+ * module processed, the number of bytes in those items, the total and maximum
+ * time the module took to process an item, and a histogram of the processing
+ * times.
+ */
+public final class IngestModuleMetrics {
+
+    /**
+     * The upper bounds, in milliseconds, of the buckets of the processing time
+     * histograms. The last bucket of a histogram counts the processing times
+     * that exceed the last bound.
+     */
+    private static final long[] HISTOGRAM_BUCKET_UPPER_BOUNDS_MILLIS = {1, 10, 100, 1000, 10000, 60000};
+
+    /**
+     * The types of ingest modules.
+     */
+    public enum ModuleType {
+
+        DATA_SOURCE_LEVEL,
+        FILE_LEVEL
+    }
+
+    private final String moduleDisplayName;
+    private final ModuleType moduleType;
+    private final long itemsProcessed;
+    private final long bytesProcessed;
+    private final long totalTimeNanos;
+    private final long maxTimeNanos;
+    private final long[] histogramCounts;
+
+    private IngestModuleMetrics(String moduleDisplayName, ModuleType moduleType, long itemsProcessed, long bytesProcessed, long totalTimeNanos, long maxTimeNanos, long[] histogramCounts) {
+        this.moduleDisplayName = moduleDisplayName;
+        this.moduleType = moduleType;
+        this.itemsProcessed = itemsProcessed;
+        this.bytesProcessed = bytesProcessed;
+        this.totalTimeNanos = totalTimeNanos;
+        this.maxTimeNanos = maxTimeNanos;
+        this.histogramCounts = histogramCounts;
+    }
+
+    /**
+     * Gets the display name of the ingest module.
+     *
+     * @return The display name.
+     */
+    public String getModuleDisplayName() {
+        return moduleDisplayName;
+    }
+
+    /**
+     * Gets the type of the ingest module.
+     *
+     * @return The module type.
+     */
+    public ModuleType getModuleType() {
+        return moduleType;
+    }
+
+    /**
+     * Gets the number of items, i.e., files for a file level ingest module or
+     * data sources for a data source level ingest module, the module has
+     * processed.
+     *
+     * @return The item count.
+     */
+    public long getItemsProcessed() {
+        return itemsProcessed;
+    }
+
+    /**
+     * Gets the total size of the items the module has processed.
+     *
+     * @return The size in bytes.
+     */
+    public long getBytesProcessed() {
+        return bytesProcessed;
+    }
+
+    /**
+     * Gets the total time the module has spent processing items.
+     *
+     * @return The total time in milliseconds.
+     */
+    public long getTotalTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(totalTimeNanos);
+    }
+
+    /**
+     * Gets the longest time the module has spent processing an item.
+     *
+     * @return The maximum time in milliseconds.
+     */
+    public long getMaxTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxTimeNanos);
+    }
+
+    /**
+     * Gets the average time the module has spent processing an item.
+     *
+     * @return The average time in milliseconds.
+     */
+    public double getAverageTimeMillis() {
+        return itemsProcessed == 0 ? 0 : (double) totalTimeNanos / itemsProcessed / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Gets the upper bounds of the buckets of the processing time histogram.
+     * There is one more bucket than there are bounds, for the processing times
+     * that exceed the last bound.
+     *
+     * @return The upper bounds in milliseconds.
+     */
+    public static long[] getHistogramBucketUpperBoundsMillis() {
+        return HISTOGRAM_BUCKET_UPPER_BOUNDS_MILLIS.clone();
+    }
+
+    /**
+     * Gets the number of items in each bucket of the processing time
+     * histogram.
+     *
+     * @return The counts.
+     */
+    public long[] getHistogramCounts() {
+        return histogramCounts.clone();
+    }
+
+    /**
+     * Writes the metrics of the ingest modules of a data source ingest job to
+     * a CSV file.
+     *
+     * @param jobId          The data source ingest job id.
+     * @param dataSourceName The name of the data source.
+     * @param metrics        The metrics of the modules.
+     * @param path           The path of the file.
+     *
+     * @throws IOException If there is an error writing the file.
+     */
+    static void writeCsv(long jobId, String dataSourceName, List<IngestModuleMetrics> metrics, Path path) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            StringBuilder header = new StringBuilder("job_id,data_source,module,module_type,items,bytes,total_ms,avg_ms,max_ms"); //NON-NLS
+            for (long bound : HISTOGRAM_BUCKET_UPPER_BOUNDS_MILLIS) {
+                header.append(",le_").append(bound).append("_ms"); //NON-NLS
+            }
+            header.append(",gt_").append(HISTOGRAM_BUCKET_UPPER_BOUNDS_MILLIS[HISTOGRAM_BUCKET_UPPER_BOUNDS_MILLIS.length - 1]).append("_ms"); //NON-NLS
+            writer.write(header.toString());
+            writer.newLine();
+            for (IngestModuleMetrics moduleMetrics : metrics) {
+                StringBuilder row = new StringBuilder();
+                row.append(jobId).append(',')
+                        .append(csvQuote(dataSourceName)).append(',')
+                        .append(csvQuote(moduleMetrics.moduleDisplayName)).append(',')
+                        .append(moduleMetrics.moduleType).append(',')
+                        .append(moduleMetrics.itemsProcessed).append(',')
+                        .append(moduleMetrics.bytesProcessed).append(',')
+                        .append(moduleMetrics.getTotalTimeMillis()).append(',')
+                        .append(String.format(Locale.ROOT, "%.3f", moduleMetrics.getAverageTimeMillis())).append(',') //NON-NLS
+                        .append(moduleMetrics.getMaxTimeMillis());
+                for (long count : moduleMetrics.histogramCounts) {
+                    row.append(',').append(count);
+                }
+                writer.write(row.toString());
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Writes the metrics of the ingest modules of a data source ingest job to
+     * a JSON file.
+     *
+     * @param jobId          The data source ingest job id.
+     * @param dataSourceName The name of the data source.
+     * @param metrics        The metrics of the modules.
+     * @param path           The path of the file.
+     *
+     * @throws IOException If there is an error writing the file.
+     */
+    static void writeJson(long jobId, String dataSourceName, List<IngestModuleMetrics> metrics, Path path) throws IOException {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"jobId\": ").append(jobId) //NON-NLS
+                .append(",\n  \"dataSource\": ").append(jsonQuote(dataSourceName)) //NON-NLS
+                .append(",\n  \"histogramBucketUpperBoundsMillis\": ").append(Arrays.toString(HISTOGRAM_BUCKET_UPPER_BOUNDS_MILLIS)) //NON-NLS
+                .append(",\n  \"modules\": ["); //NON-NLS
+        for (int i = 0; i < metrics.size(); ++i) {
+            IngestModuleMetrics moduleMetrics = metrics.get(i);
+            json.append(i == 0 ? "\n" : ",\n")
+                    .append("    {\"module\": ").append(jsonQuote(moduleMetrics.moduleDisplayName)) //NON-NLS
+                    .append(", \"moduleType\": \"").append(moduleMetrics.moduleType).append('"') //NON-NLS
+                    .append(", \"items\": ").append(moduleMetrics.itemsProcessed) //NON-NLS
+                    .append(", \"bytes\": ").append(moduleMetrics.bytesProcessed) //NON-NLS
+                    .append(", \"totalMillis\": ").append(moduleMetrics.getTotalTimeMillis()) //NON-NLS
+                    .append(", \"averageMillis\": ").append(String.format(Locale.ROOT, "%.3f", moduleMetrics.getAverageTimeMillis())) //NON-NLS
+                    .append(", \"maxMillis\": ").append(moduleMetrics.getMaxTimeMillis()) //NON-NLS
+                    .append(", \"histogramCounts\": ").append(Arrays.toString(moduleMetrics.histogramCounts)) //NON-NLS
+                    .append('}');
+        }
+        json.append("\n  ]\n}\n"); //NON-NLS
+        Files.write(path, json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String csvQuote(String value) {
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    private static String jsonQuote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format(Locale.ROOT, "\\u%04x", (int) c)); //NON-NLS
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * Accumulates the performance metrics of an ingest module. A recorder is
+     * shared by the copies of the module in the ingest pipelines of all of the
+     * ingest threads, so it is thread-safe.
+     */
+    static final class Recorder {
+
+        private final String moduleDisplayName;
+        private final ModuleType moduleType;
+        private final LongAdder itemsProcessed = new LongAdder();
+        private final LongAdder bytesProcessed = new LongAdder();
+        private final LongAdder totalTimeNanos = new LongAdder();
+        private final AtomicLong maxTimeNanos = new AtomicLong();
+        private final AtomicLongArray histogramCounts = new AtomicLongArray(HISTOGRAM_BUCKET_UPPER_BOUNDS_MILLIS.length + 1);
+
+        Recorder(String moduleDisplayName, ModuleType moduleType) {
+            this.moduleDisplayName = moduleDisplayName;
+            this.moduleType = moduleType;
+        }
+
+        /**
+         * Records the processing of an item by the module.
+         *
+         * @param bytes        The size of the item.
+         * @param elapsedNanos The time the module took to process the item.
+         */
+        void record(long bytes, long elapsedNanos) {
+            itemsProcessed.increment();
+            bytesProcessed.add(bytes);
+            totalTimeNanos.add(elapsedNanos);
+            maxTimeNanos.accumulateAndGet(elapsedNanos, Math::max);
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+            int bucket = 0;
+            while (bucket < HISTOGRAM_BUCKET_UPPER_BOUNDS_MILLIS.length && elapsedMillis > HISTOGRAM_BUCKET_UPPER_BOUNDS_MILLIS[bucket]) {
+                ++bucket;
+            }
+            histogramCounts.incrementAndGet(bucket);
+        }
+
+        /**
+         * Gets a snapshot of the metrics recorded so far.
+         *
+         * @return The metrics.
+         */
+        IngestModuleMetrics getSnapshot() {
+            long[] counts = new long[histogramCounts.length()];
+            for (int i = 0; i < counts.length; ++i) {
+                counts[i] = histogramCounts.get(i);
+            }
+            return new IngestModuleMetrics(moduleDisplayName, moduleType, itemsProcessed.sum(), bytesProcessed.sum(), totalTimeNanos.sum(), maxTimeNanos.get(), counts);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2016 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.ingest;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.JDialog;
+import javax.swing.table.AbstractTableModel;
+import org.apache.commons.lang3.time.DurationFormatUtils;
+import org.openide.util.NbBundle;
+
+/**
+ * A panel that displays the cumulative performance metrics of the ingest
+ * modules of the running ingest jobs.
+ */
+class IngestModuleMetricsPanel extends javax.swing.JPanel {
+
+    private static final long serialVersionUID = 1L;
+    private final JDialog parent;
+    private final ModuleMetricsTableModel metricsTableModel;
+
+    IngestModuleMetricsPanel(JDialog parent) {
+        this.parent = parent;
+        metricsTableModel = new ModuleMetricsTableModel();
+        initComponents();
+        metricsTable.setModel(metricsTableModel);
+        metricsTable.setFillsViewportHeight(true);
+    }
+
+    private static class ModuleMetricsTableModel extends AbstractTableModel {
+
+        private static final long serialVersionUID = 1L;
+        private final String[] columnNames = {
+            NbBundle.getMessage(IngestModuleMetricsPanel.class, "IngestModuleMetricsPanel.colName.jobID"),
+            NbBundle.getMessage(IngestModuleMetricsPanel.class, "IngestModuleMetricsPanel.colName.dataSource"),
+            NbBundle.getMessage(IngestModuleMetricsPanel.class, "IngestModuleMetricsPanel.colName.module"),
+            NbBundle.getMessage(IngestModuleMetricsPanel.class, "IngestModuleMetricsPanel.colName.items"),
+            NbBundle.getMessage(IngestModuleMetricsPanel.class, "IngestModuleMetricsPanel.colName.megabytes"),
+            NbBundle.getMessage(IngestModuleMetricsPanel.class, "IngestModuleMetricsPanel.colName.totalTime"),
+            NbBundle.getMessage(IngestModuleMetricsPanel.class, "IngestModuleMetricsPanel.colName.averageTime"),
+            NbBundle.getMessage(IngestModuleMetricsPanel.class, "IngestModuleMetricsPanel.colName.maxTime"),
+            NbBundle.getMessage(IngestModuleMetricsPanel.class, "IngestModuleMetricsPanel.colName.histogram")};
+        private final List<Row> rows = new ArrayList<>();
+
+        private ModuleMetricsTableModel() {
+            refresh();
+        }
+
+        private void refresh() {
+            rows.clear();
+            for (DataSourceIngestJob.Snapshot snapshot : IngestManager.getInstance().getIngestJobSnapshots()) {
+                for (IngestModuleMetrics metrics : snapshot.getModuleMetrics()) {
+                    rows.add(new Row(snapshot.getJobId(), snapshot.getDataSource(), metrics));
+                }
+            }
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return rows.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return columnNames.length;
+        }
+
+        @Override
+        public String getColumnName(int col) {
+            return columnNames[col];
+        }
+
+        @Override
+        public Object getValueAt(int rowIndex, int columnIndex) {
+            Row row = rows.get(rowIndex);
+            IngestModuleMetrics metrics = row.metrics;
+            Object cellValue;
+            switch (columnIndex) {
+                case 0:
+                    cellValue = row.jobId;
+                    break;
+                case 1:
+                    cellValue = row.dataSource;
+                    break;
+                case 2:
+                    cellValue = metrics.getModuleDisplayName();
+                    break;
+                case 3:
+                    cellValue = metrics.getItemsProcessed();
+                    break;
+                case 4:
+                    cellValue = metrics.getBytesProcessed() / (1024 * 1024);
+                    break;
+                case 5:
+                    cellValue = DurationFormatUtils.formatDurationHMS(metrics.getTotalTimeMillis());
+                    break;
+                case 6:
+                    cellValue = String.format("%.1f", metrics.getAverageTimeMillis()); //NON-NLS
+                    break;
+                case 7:
+                    cellValue = metrics.getMaxTimeMillis();
+                    break;
+                case 8:
+                    cellValue = formatHistogram(metrics);
+                    break;
+                default:
+                    cellValue = null;
+                    break;
+            }
+            return cellValue;
+        }
+
+        private static String formatHistogram(IngestModuleMetrics metrics) {
+            long[] bounds = IngestModuleMetrics.getHistogramBucketUpperBoundsMillis();
+            long[] counts = metrics.getHistogramCounts();
+            StringBuilder histogram = new StringBuilder();
+            for (int i = 0; i < counts.length; ++i) {
+                if (i > 0) {
+                    histogram.append("  "); //NON-NLS
+                }
+                if (i < bounds.length) {
+                    histogram.append("<=").append(bounds[i]); //NON-NLS
+                } else {
+                    histogram.append('>').append(bounds[bounds.length - 1]);
+                }
+                histogram.append(": ").append(counts[i]); //NON-NLS
+            }
+            return histogram.toString();
+        }
+
+        private static final class Row {
+
+            private final long jobId;
+            private final String dataSource;
+            private final IngestModuleMetrics metrics;
+
+            private Row(long jobId, String dataSource, IngestModuleMetrics metrics) {
+                this.jobId = jobId;
+                this.dataSource = dataSource;
+                this.metrics = metrics;
+            }
+        }
+    }
+
+    /**
+     * This method is called from within the constructor to initialize the form.
+     * WARNING: Do NOT modify this code. The content of this method is always
+     * regenerated by the Form Editor.
+     */
+    @SuppressWarnings("unchecked")
+    // <editor-fold defaultstate="collapsed" desc="Generated Code">//GEN-BEGIN:initComponents
+    private void initComponents() {
+
+        metricsScrollPane = new javax.swing.JScrollPane();
+        metricsTable = new javax.swing.JTable();
+        refreshButton = new javax.swing.JButton();
+        closeButton = new javax.swing.JButton();
+
+        metricsTable.setModel(new javax.swing.table.DefaultTableModel(
+            new Object [][] {
+
+            },
+            new String [] {
+
+            }
+        ));
+        metricsScrollPane.setViewportView(metricsTable);
+
+        org.openide.awt.Mnemonics.setLocalizedText(refreshButton, org.openide.util.NbBundle.getMessage(IngestModuleMetricsPanel.class, "IngestModuleMetricsPanel.refreshButton.text")); // NOI18N
+        refreshButton.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                refreshButtonActionPerformed(evt);
+            }
+        });
+
+        org.openide.awt.Mnemonics.setLocalizedText(closeButton, org.openide.util.NbBundle.getMessage(IngestModuleMetricsPanel.class, "IngestModuleMetricsPanel.closeButton.text")); // NOI18N
+        closeButton.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                closeButtonActionPerformed(evt);
+            }
+        });
+
+        javax.swing.GroupLayout layout = new javax.swing.GroupLayout(this);
+        this.setLayout(layout);
+        layout.setHorizontalGroup(
+            layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(javax.swing.GroupLayout.Alignment.TRAILING, layout.createSequentialGroup()
+                .addContainerGap()
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.TRAILING)
+                    .addComponent(metricsScrollPane, javax.swing.GroupLayout.DEFAULT_SIZE, 881, Short.MAX_VALUE)
+                    .addGroup(layout.createSequentialGroup()
+                        .addGap(0, 0, Short.MAX_VALUE)
+                        .addComponent(refreshButton)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(closeButton)))
+                .addContainerGap())
+        );
+
+        layout.linkSize(javax.swing.SwingConstants.HORIZONTAL, new java.awt.Component[] {closeButton, refreshButton});
+
+        layout.setVerticalGroup(
+            layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(layout.createSequentialGroup()
+                .addContainerGap()
+                .addComponent(metricsScrollPane, javax.swing.GroupLayout.DEFAULT_SIZE, 318, Short.MAX_VALUE)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(refreshButton)
+                    .addComponent(closeButton))
+                .addContainerGap())
+        );
+
+        layout.linkSize(javax.swing.SwingConstants.VERTICAL, new java.awt.Component[] {closeButton, refreshButton});
+
+    }// </editor-fold>//GEN-END:initComponents
+
+    private void closeButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_closeButtonActionPerformed
+        parent.dispose();
+    }//GEN-LAST:event_closeButtonActionPerformed
+
+    private void refreshButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_refreshButtonActionPerformed
+        metricsTableModel.refresh();
+    }//GEN-LAST:event_refreshButtonActionPerformed
+    // Variables declaration - do not modify//GEN-BEGIN:variables
+    private javax.swing.JButton closeButton;
+    private javax.swing.JScrollPane metricsScrollPane;
+    private javax.swing.JTable metricsTable;
+    private javax.swing.JButton refreshButton;
+    // End of variables declaration//GEN-END:variables
+}
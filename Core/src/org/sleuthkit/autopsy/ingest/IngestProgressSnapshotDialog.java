@@ -29,6 +29,7 @@
 import java.awt.event.WindowEvent;
 import javax.swing.JComponent;
 import javax.swing.JDialog;
+import javax.swing.JTabbedPane;
 import javax.swing.KeyStroke;
 import org.openide.util.NbBundle;
 import org.openide.windows.WindowManager;
@@ -86,7 +87,10 @@ public void windowClosed(WindowEvent e) { // Put it back to how it was before we
         this.getRootPane().registerKeyboardAction(e -> {
             this.dispose();
         }, KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0), JComponent.WHEN_IN_FOCUSED_WINDOW);
-        add(new IngestProgressSnapshotPanel(this));
+        JTabbedPane tabbedPane = new JTabbedPane();
+        tabbedPane.addTab(NbBundle.getMessage(IngestProgressSnapshotDialog.class, "IngestProgressSnapshotDialog.snapshotsTab.text"), new IngestProgressSnapshotPanel(this));
+        tabbedPane.addTab(NbBundle.getMessage(IngestProgressSnapshotDialog.class, "IngestProgressSnapshotDialog.moduleMetricsTab.text"), new IngestModuleMetricsPanel(this));
+        add(tabbedPane);
         pack();
         setResizable(false);
         if (shouldBeModal) { // if called from a modal dialog, become modal, otherwise don't.
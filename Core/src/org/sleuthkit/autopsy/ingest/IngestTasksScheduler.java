@@ -27,11 +27,21 @@
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import org.sleuthkit.autopsy.core.UserPreferences;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import org.sleuthkit.datamodel.AbstractFile;
 import org.sleuthkit.datamodel.Content;
@@ -86,6 +96,15 @@ final class IngestTasksScheduler {
     private final BlockingDeque<FileIngestTask> pendingFileTasks;
     private final FileIngestTaskQueue fileTasksDispenser;
 
+    /**
+     * When enabled by the user, file ingest tasks are instead dispensed by a
+     * work-stealing queue that gives each file ingest thread its own deque, so
+     * that the file ingest threads do not contend on the monitor of this
+     * scheduler for each file. This is null if the shared queues above are in
+     * use.
+     */
+    private final WorkStealingFileIngestTaskQueue workStealingFileTasksDispenser;
+
     /**
      * The ingest tasks scheduler allows ingest jobs to query it to see if there
      * are any tasks in progress for the job. To make this possible, the ingest
@@ -119,6 +138,11 @@ private IngestTasksScheduler() {
         this.directoryTasks = new ArrayList<>();
         this.pendingFileTasks = new LinkedBlockingDeque<>();
         this.fileTasksDispenser = new FileIngestTaskQueue();
+        if (UserPreferences.useWorkStealingFileIngestScheduler()) {
+            this.workStealingFileTasksDispenser = new WorkStealingFileIngestTaskQueue(UserPreferences.numberOfFileIngestThreads());
+        } else {
+            this.workStealingFileTasksDispenser = null;
+        }
         this.tasksInProgress = new HashSet<>();
     }
 
@@ -139,6 +163,9 @@ IngestTaskQueue getDataSourceIngestTaskQueue() {
      * @return The file ingest tasks queue.
      */
     IngestTaskQueue getFileIngestTaskQueue() {
+        if (null != this.workStealingFileTasksDispenser) {
+            return this.workStealingFileTasksDispenser;
+        }
         return this.fileTasksDispenser;
     }
 
@@ -198,8 +225,12 @@ synchronized void scheduleFileIngestTasks(DataSourceIngestJob job) {
             for (AbstractFile firstLevelFile : topLevelFiles) {
                 FileIngestTask task = new FileIngestTask(job, firstLevelFile);
                 if (IngestTasksScheduler.shouldEnqueueFileTask(task)) {
-                    this.tasksInProgress.add(task);
-                    this.rootDirectoryTasks.add(task);
+                    if (null != this.workStealingFileTasksDispenser) {
+                        this.workStealingFileTasksDispenser.addRootDirectoryTask(task);
+                    } else {
+                        this.tasksInProgress.add(task);
+                        this.rootDirectoryTasks.add(task);
+                    }
                 }
             }
             shuffleFileTaskQueues();
@@ -212,12 +243,20 @@ synchronized void scheduleFileIngestTasks(DataSourceIngestJob job) {
      * @param job  The job for which the tasks are to be scheduled.
      * @param file The file to be associated with the task.
      */
-    synchronized void scheduleFileIngestTask(DataSourceIngestJob job, AbstractFile file) {
+    void scheduleFileIngestTask(DataSourceIngestJob job, AbstractFile file) {
         if (!job.isCancelled()) {
             FileIngestTask task = new FileIngestTask(job, file);
             if (IngestTasksScheduler.shouldEnqueueFileTask(task)) {
-                this.tasksInProgress.add(task);
-                addToPendingFileTasksQueue(task);
+                if (null != this.workStealingFileTasksDispenser) {
+                    // No need to take the monitor of this scheduler, the task
+                    // goes onto the deque of the calling thread.
+                    this.workStealingFileTasksDispenser.addFileTask(task);
+                } else {
+                    synchronized (this) {
+                        this.tasksInProgress.add(task);
+                        addToPendingFileTasksQueue(task);
+                    }
+                }
             }
         }
     }
@@ -228,8 +267,14 @@ synchronized void scheduleFileIngestTask(DataSourceIngestJob job, AbstractFile f
      *
      * @param task The completed task.
      */
-    synchronized void notifyTaskCompleted(IngestTask task) {
-        tasksInProgress.remove(task);
+    void notifyTaskCompleted(IngestTask task) {
+        if (null != this.workStealingFileTasksDispenser && task instanceof FileIngestTask) {
+            this.workStealingFileTasksDispenser.notifyTaskCompleted((FileIngestTask) task);
+        } else {
+            synchronized (this) {
+                tasksInProgress.remove(task);
+            }
+        }
     }
 
     /**
@@ -240,13 +285,20 @@ synchronized void notifyTaskCompleted(IngestTask task) {
      *
      * @return True or false.
      */
-    synchronized boolean tasksForJobAreCompleted(DataSourceIngestJob job) {
-        for (IngestTask task : tasksInProgress) {
-            if (task.getIngestJob().getId() == job.getId()) {
-                return false;
+    boolean tasksForJobAreCompleted(DataSourceIngestJob job) {
+        if (null != this.workStealingFileTasksDispenser && this.workStealingFileTasksDispenser.getTasksInProgressCount(job.getId()) > 0) {
+            // File tasks for the job are still queued or running, there is 
+            // no need to take the monitor of this scheduler to find that out.
+            return false;
+        }
+        synchronized (this) {
+            for (IngestTask task : tasksInProgress) {
+                if (task.getIngestJob().getId() == job.getId()) {
+                    return false;
+                }
             }
+            return true;
         }
-        return true;
     }
 
     /**
@@ -266,7 +318,9 @@ synchronized void cancelPendingTasksForIngestJob(DataSourceIngestJob job) {
          * and "weakly consistent" iterators of these collections make it so
          * that this code could have a different view of the queues than the
          * ingest threads. It does clean out the directory level tasks before
-         * they are exploded into file tasks.
+         * they are exploded into file tasks. The work-stealing file tasks
+         * queue, if in use, does not expand directory tasks for cancelled
+         * jobs, so it does not need to be flushed here either.
          */
         long jobId = job.getId();
         this.removeTasksForJob(this.rootDirectoryTasks, jobId);
@@ -664,6 +718,351 @@ public IngestTask getNextTask() throws InterruptedException {
 
     }
 
+    /**
+     * Dispenses file ingest tasks to the file ingest threads from per-thread
+     * deques, so that the file ingest threads do not contend on the monitor of
+     * the scheduler for each file.
+     *
+     * Each file ingest thread owns a deque. Directory tasks taken by a thread
+     * are expanded onto the front of the deque of that thread, and the thread
+     * takes its next task from the front of its own deque, so each thread
+     * works through a directory tree depth first, as the shared queues do.
+     * Idle threads take tasks added by threads that are not file ingest
+     * threads, then steal from the back of the deques of their peers, where
+     * the larger, shallower directories are, and only then start on the next
+     * root directory task. The root directory tasks are kept in the same
+     * priority order as the shared root directory tasks queue.
+     *
+     * The tasks in progress for each job are tracked using counters that are
+     * incremented before a task is queued and decremented when a task is
+     * completed or discarded. Since the tasks for the children of a directory
+     * are queued before the task for the directory is completed, the count for
+     * a job does not drop to zero until all of its file tasks are done. The
+     * counter for a job is removed when it drops to zero, so counters are not
+     * kept for the jobs of the session that are done.
+     */
+    private final class WorkStealingFileIngestTaskQueue implements IngestTaskQueue {
+
+        private static final long TASK_QUEUED_WAIT_MILLIS = 10;
+        private final List<ConcurrentLinkedDeque<QueuedFileTask>> threadDeques;
+        private final ConcurrentLinkedDeque<QueuedFileTask> sharedDeque;
+        private final PriorityBlockingQueue<QueuedFileTask> rootDirectoryTasks;
+        private final Semaphore queuedTasksCount;
+        private final AtomicInteger nextThreadDequeIndex;
+        private final ThreadLocal<Integer> threadDequeIndex;
+        private final ConcurrentHashMap<Long, AtomicLong> tasksInProgressCounts;
+        private final ReentrantLock taskQueuedLock;
+        private final Condition taskQueued;
+        private final AtomicInteger threadsWaitingForTask;
+
+        /**
+         * Constructs a work-stealing queue for file ingest tasks.
+         *
+         * @param numberOfThreads The number of file ingest threads.
+         */
+        WorkStealingFileIngestTaskQueue(int numberOfThreads) {
+            this.threadDeques = new ArrayList<>();
+            for (int i = 0; i < Math.max(numberOfThreads, 1); ++i) {
+                this.threadDeques.add(new ConcurrentLinkedDeque<>());
+            }
+            this.sharedDeque = new ConcurrentLinkedDeque<>();
+            RootDirectoryTaskComparator comparator = new RootDirectoryTaskComparator();
+            this.rootDirectoryTasks = new PriorityBlockingQueue<>(11, (QueuedFileTask t1, QueuedFileTask t2) -> comparator.compare(t1.task, t2.task));
+            this.queuedTasksCount = new Semaphore(0);
+            this.nextThreadDequeIndex = new AtomicInteger(0);
+            this.threadDequeIndex = new ThreadLocal<>();
+            this.tasksInProgressCounts = new ConcurrentHashMap<>();
+            this.taskQueuedLock = new ReentrantLock();
+            this.taskQueued = this.taskQueuedLock.newCondition();
+            this.threadsWaitingForTask = new AtomicInteger(0);
+        }
+
+        /**
+         * Adds a task for a file system root directory, layout file or virtual
+         * directory of a data source.
+         *
+         * @param task The task.
+         */
+        void addRootDirectoryTask(FileIngestTask task) {
+            incrementTasksInProgressCount(task);
+            this.rootDirectoryTasks.add(new QueuedFileTask(task, true));
+            taskQueued();
+        }
+
+        /**
+         * Adds a task for a file added to an ingest job, e.g., a file
+         * extracted from an archive by an ingest module. The task is put on the
+         * front of the deque of the calling thread, if it is a file ingest
+         * thread, so that the file is processed before the thread moves on.
+         *
+         * @param task The task.
+         */
+        void addFileTask(FileIngestTask task) {
+            incrementTasksInProgressCount(task);
+            Integer index = this.threadDequeIndex.get();
+            if (null != index) {
+                this.threadDeques.get(index).addFirst(new QueuedFileTask(task, false));
+            } else {
+                this.sharedDeque.addFirst(new QueuedFileTask(task, false));
+            }
+            taskQueued();
+        }
+
+        /**
+         * Notifies this queue that a task it dispensed has been completed.
+         *
+         * @param task The completed task.
+         */
+        void notifyTaskCompleted(FileIngestTask task) {
+            // Decrementing and removing the counter is atomic with respect to
+            // incrementing it, so a task queued for the job at the same time
+            // is never counted on a counter that has been removed.
+            this.tasksInProgressCounts.computeIfPresent(task.getIngestJob().getId(), (Long jobId, AtomicLong count) -> (count.decrementAndGet() > 0) ? count : null);
+        }
+
+        /**
+         * Gets the number of tasks for an ingest job that are either queued or
+         * being processed.
+         *
+         * @param jobId The identifier of the job.
+         *
+         * @return The tasks count.
+         */
+        long getTasksInProgressCount(long jobId) {
+            AtomicLong count = this.tasksInProgressCounts.get(jobId);
+            return (null != count) ? count.get() : 0;
+        }
+
+        /**
+         * Counts the number of queued root directory tasks for an ingest job.
+         *
+         * @param jobId The identifier of the job.
+         *
+         * @return The tasks count.
+         */
+        long countRootDirectoryTasksForJob(long jobId) {
+            return countQueuedTasksForJob(this.rootDirectoryTasks, jobId);
+        }
+
+        /**
+         * Counts the number of queued tasks for an ingest job that are not
+         * root directory tasks.
+         *
+         * @param jobId The identifier of the job.
+         *
+         * @return The tasks count.
+         */
+        long countFileTasksForJob(long jobId) {
+            long count = countQueuedTasksForJob(this.sharedDeque, jobId);
+            for (ConcurrentLinkedDeque<QueuedFileTask> deque : this.threadDeques) {
+                count += countQueuedTasksForJob(deque, jobId);
+            }
+            return count;
+        }
+
+        @Override
+        public IngestTask getNextTask() throws InterruptedException {
+            ConcurrentLinkedDeque<QueuedFileTask> localDeque = getDequeForCurrentThread();
+            while (true) {
+                // A permit is released for every task that is queued, so once
+                // a permit is acquired there is a task for this thread 
+                // somewhere in the queues, although another thread may get to
+                // the one this thread sees first.
+                this.queuedTasksCount.acquire();
+                QueuedFileTask queuedTask = takeQueuedTask(localDeque);
+                if (null == queuedTask) {
+                    queuedTask = awaitQueuedTask(localDeque);
+                }
+
+                FileIngestTask task = queuedTask.task;
+                if (queuedTask.isDirectory) {
+                    if (!task.getIngestJob().isCancelled()) {
+                        expandDirectoryTask(task, localDeque);
+                    }
+                    if (!shouldEnqueueFileTask(task)) {
+                        notifyTaskCompleted(task);
+                        continue;
+                    }
+                }
+                return task;
+            }
+        }
+
+        /**
+         * Waits for a task for a file ingest thread that holds a permit but
+         * found all of the queues empty, because the task for its permit was
+         * not visible to it when it looked or was taken by another thread. The
+         * thread is woken up when a task is queued, and looks again at regular
+         * intervals in case it missed the wake up call.
+         *
+         * @param localDeque The deque of the calling thread.
+         *
+         * @return The task.
+         *
+         * @throws InterruptedException If the thread is interrupted while
+         *                              waiting.
+         */
+        private QueuedFileTask awaitQueuedTask(ConcurrentLinkedDeque<QueuedFileTask> localDeque) throws InterruptedException {
+            this.threadsWaitingForTask.incrementAndGet();
+            try {
+                while (true) {
+                    QueuedFileTask queuedTask = takeQueuedTask(localDeque);
+                    if (null != queuedTask) {
+                        return queuedTask;
+                    }
+                    this.taskQueuedLock.lock();
+                    try {
+                        this.taskQueued.await(TASK_QUEUED_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                    } finally {
+                        this.taskQueuedLock.unlock();
+                    }
+                }
+            } finally {
+                this.threadsWaitingForTask.decrementAndGet();
+            }
+        }
+
+        /**
+         * Releases a permit for a task that has been queued, and wakes up the
+         * file ingest threads waiting for a task, if any.
+         */
+        private void taskQueued() {
+            this.queuedTasksCount.release();
+            if (this.threadsWaitingForTask.get() > 0) {
+                this.taskQueuedLock.lock();
+                try {
+                    this.taskQueued.signalAll();
+                } finally {
+                    this.taskQueuedLock.unlock();
+                }
+            }
+        }
+
+        /**
+         * Gets the deque owned by the calling file ingest thread, assigning
+         * one to the thread the first time it asks for a task.
+         *
+         * @return The deque.
+         */
+        private ConcurrentLinkedDeque<QueuedFileTask> getDequeForCurrentThread() {
+            Integer index = this.threadDequeIndex.get();
+            if (null == index) {
+                index = this.nextThreadDequeIndex.getAndIncrement() % this.threadDeques.size();
+                this.threadDequeIndex.set(index);
+            }
+            return this.threadDeques.get(index);
+        }
+
+        /**
+         * Takes the next queued task for a file ingest thread, if any: first
+         * from the front of the deque of the thread, then from the front of
+         * the shared deque, then from the back of the deques of the other file
+         * ingest threads and finally from the root directory tasks queue.
+         *
+         * @param localDeque The deque of the calling thread.
+         *
+         * @return The task, or null if all of the queues are empty.
+         */
+        private QueuedFileTask takeQueuedTask(ConcurrentLinkedDeque<QueuedFileTask> localDeque) {
+            QueuedFileTask task = localDeque.pollFirst();
+            if (null != task) {
+                return task;
+            }
+            task = this.sharedDeque.pollFirst();
+            if (null != task) {
+                return task;
+            }
+            for (ConcurrentLinkedDeque<QueuedFileTask> deque : this.threadDeques) {
+                if (deque != localDeque) {
+                    task = deque.pollLast();
+                    if (null != task) {
+                        return task;
+                    }
+                }
+            }
+            return this.rootDirectoryTasks.poll();
+        }
+
+        /**
+         * Queues tasks for the children of a directory on the front of the
+         * deque of the calling thread. Subdirectory tasks are queued
+         * unconditionally so that they will be expanded when they are taken.
+         *
+         * @param directoryTask The directory task.
+         * @param localDeque    The deque of the calling thread.
+         */
+        private void expandDirectoryTask(FileIngestTask directoryTask, ConcurrentLinkedDeque<QueuedFileTask> localDeque) {
+            final AbstractFile directory = directoryTask.getFile();
+            try {
+                for (Content child : directory.getChildren()) {
+                    if (child instanceof AbstractFile) {
+                        AbstractFile file = (AbstractFile) child;
+                        FileIngestTask childTask = new FileIngestTask(directoryTask.getIngestJob(), file);
+                        if (file.hasChildren()) {
+                            incrementTasksInProgressCount(childTask);
+                            localDeque.addFirst(new QueuedFileTask(childTask, true));
+                            taskQueued();
+                        } else if (shouldEnqueueFileTask(childTask)) {
+                            incrementTasksInProgressCount(childTask);
+                            localDeque.addFirst(new QueuedFileTask(childTask, false));
+                            taskQueued();
+                        }
+                    }
+                }
+            } catch (TskCoreException ex) {
+                String errorMessage = String.format("An error occurred getting the children of %s", directory.getName()); //NON-NLS
+                logger.log(Level.SEVERE, errorMessage, ex);
+            }
+        }
+
+        /**
+         * Increments the tasks in progress count for the job of a task.
+         *
+         * @param task The task.
+         */
+        private void incrementTasksInProgressCount(FileIngestTask task) {
+            this.tasksInProgressCounts.compute(task.getIngestJob().getId(), (Long jobId, AtomicLong count) -> {
+                AtomicLong newCount = (null != count) ? count : new AtomicLong(0L);
+                newCount.incrementAndGet();
+                return newCount;
+            });
+        }
+
+        /**
+         * Counts the number of queued tasks in a collection for an ingest job.
+         *
+         * @param queue The collection.
+         * @param jobId The identifier of the job.
+         *
+         * @return The tasks count.
+         */
+        private long countQueuedTasksForJob(Collection<QueuedFileTask> queue, long jobId) {
+            long count = 0;
+            for (QueuedFileTask queuedTask : queue) {
+                if (queuedTask.task.getIngestJob().getId() == jobId) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     * A file ingest task in the work-stealing file ingest tasks queue, with a
+     * flag indicating whether or not the children of the file need to be
+     * queued when the task is taken.
+     */
+    private static final class QueuedFileTask {
+
+        private final FileIngestTask task;
+        private final boolean isDirectory;
+
+        QueuedFileTask(FileIngestTask task, boolean isDirectory) {
+            this.task = task;
+            this.isDirectory = isDirectory;
+        }
+    }
+
     /**
      * A snapshot of ingest tasks data for an ingest job.
      */
@@ -683,11 +1082,19 @@ class IngestJobTasksSnapshot {
          */
         IngestJobTasksSnapshot(long jobId) {
             this.jobId = jobId;
-            this.rootQueueSize = countTasksForJob(IngestTasksScheduler.this.rootDirectoryTasks, jobId);
-            this.dirQueueSize = countTasksForJob(IngestTasksScheduler.this.directoryTasks, jobId);
-            this.fileQueueSize = countTasksForJob(IngestTasksScheduler.this.pendingFileTasks, jobId);
+            WorkStealingFileIngestTaskQueue workStealingQueue = IngestTasksScheduler.this.workStealingFileTasksDispenser;
+            if (null != workStealingQueue) {
+                this.rootQueueSize = workStealingQueue.countRootDirectoryTasksForJob(jobId);
+                this.dirQueueSize = 0;
+                this.fileQueueSize = workStealingQueue.countFileTasksForJob(jobId);
+                this.runningListSize = countTasksForJob(IngestTasksScheduler.this.tasksInProgress, jobId) + workStealingQueue.getTasksInProgressCount(jobId);
+            } else {
+                this.rootQueueSize = countTasksForJob(IngestTasksScheduler.this.rootDirectoryTasks, jobId);
+                this.dirQueueSize = countTasksForJob(IngestTasksScheduler.this.directoryTasks, jobId);
+                this.fileQueueSize = countTasksForJob(IngestTasksScheduler.this.pendingFileTasks, jobId);
+                this.runningListSize = countTasksForJob(IngestTasksScheduler.this.tasksInProgress, jobId);
+            }
             this.dsQueueSize = countTasksForJob(IngestTasksScheduler.this.pendingDataSourceTasks, jobId);
-            this.runningListSize = countTasksForJob(IngestTasksScheduler.this.tasksInProgress, jobId);
         }
 
         /**
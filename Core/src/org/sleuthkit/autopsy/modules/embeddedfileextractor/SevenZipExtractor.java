@@ -18,6 +18,8 @@
  */
 package org.sleuthkit.autopsy.modules.embeddedfileextractor;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -25,14 +27,29 @@
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import net.sf.sevenzipjbinding.ArchiveFormat;
 import static net.sf.sevenzipjbinding.ArchiveFormat.RAR;
+import net.sf.sevenzipjbinding.ExtractAskMode;
+import net.sf.sevenzipjbinding.ExtractOperationResult;
+import net.sf.sevenzipjbinding.IArchiveExtractCallback;
 import net.sf.sevenzipjbinding.ISequentialOutStream;
 import net.sf.sevenzipjbinding.ISevenZipInArchive;
+import net.sf.sevenzipjbinding.PropID;
 import net.sf.sevenzipjbinding.SevenZip;
 import net.sf.sevenzipjbinding.SevenZipException;
 import net.sf.sevenzipjbinding.SevenZipNativeInitializationException;
@@ -80,6 +97,20 @@ class SevenZipExtractor {
     private static final int MAX_COMPRESSION_RATIO = 600;
     private static final long MIN_COMPRESSION_RATIO_SIZE = 500 * 1000000L;
     private static final long MIN_FREE_DISK_SPACE = 1 * 1000 * 1000000L; //1GB
+    /*
+     * The items of an archive are extracted with one batch extract call, so
+     * that a solid archive is decoded in one pass. Large non-solid archives
+     * are split into ranges of items that are extracted in parallel, each
+     * from its own instance of the archive, by the calling thread and the
+     * extraction threads shared by all the extractors.
+     */
+    private static final int EXTRACTION_THREAD_COUNT = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    private static final ExecutorService EXTRACTION_EXECUTOR = Executors.newFixedThreadPool(EXTRACTION_THREAD_COUNT,
+            new ThreadFactoryBuilder().setNameFormat("embedded-file-extraction-%d").setDaemon(true).build()); //NON-NLS
+    private static final int MIN_ITEMS_PER_PARTITION = 64;
+    private static final long MIN_PARALLEL_UNPACKED_SIZE = 64 * 1000000L;
+    //unpacked files are added to the case and the ingest job in batches of this size
+    private static final int PUBLISH_BATCH_SIZE = 100;
     //counts archive depth
     private ArchiveDepthCountTree archiveDepthCountTree;
 
@@ -290,8 +321,6 @@ void unpack(AbstractFile archiveFile) {
             return;
         }
 
-        List<AbstractFile> unpackedFiles = Collections.<AbstractFile>emptyList();
-
         //recursion depth check for zip bomb
         final long archiveId = archiveFile.getId();
         SevenZipExtractor.ArchiveDepthCountTree.Archive parentAr = archiveDepthCountTree.findArchive(archiveId);
@@ -315,7 +344,7 @@ void unpack(AbstractFile archiveFile) {
         SevenZipContentReadStream stream = null;
 
         final ProgressHandle progress = ProgressHandle.createHandle(Bundle.EmbeddedFileExtractorIngestModule_ArchiveExtractor_moduleName());
-        int processedItems = 0;
+        final AtomicInteger processedItems = new AtomicInteger();
 
         boolean progressStarted = false;
         try {
@@ -353,7 +382,11 @@ void unpack(AbstractFile archiveFile) {
 
             long freeDiskSpace = services.getFreeDiskSpace();
 
-            //unpack and process every item in archive
+            //the files to unpack, by item index, and their total size, as far as it is known
+            Map<Integer, UnpackTarget> unpackTargets = new HashMap<>();
+            long unpackedSize = 0;
+
+            //check and set up every item in archive
             int itemNumber = 0;
             for (ISimpleInArchiveItem item : simpleInArchive.getArchiveItems()) {
                 String pathInArchive = item.getPath();
@@ -413,9 +446,6 @@ void unpack(AbstractFile archiveFile) {
 
                 String fileName = unpackedNode.getFileName();
 
-                //update progress bar
-                progress.progress(archiveFile.getName() + ": " + fileName, processedItems);
-
                 final boolean isEncrypted = item.isEncrypted();
                 final boolean isDir = item.isFolder();
 
@@ -491,49 +521,35 @@ void unpack(AbstractFile archiveFile) {
                 final long modtime = writeTime == null ? 0L : writeTime.getTime() / 1000;
                 final long accesstime = accessTime == null ? 0L : accessTime.getTime() / 1000;
 
-                //unpack locally if a file
-                SevenZipExtractor.UnpackStream unpackStream = null;
                 if (!isDir) {
-                    try {
-                        if (size != null) {
-                            unpackStream = new SevenZipExtractor.KnownSizeUnpackStream(localAbsPath, size);
-                        } else {
-                            unpackStream = new SevenZipExtractor.UnknownSizeUnpackStream(localAbsPath, freeDiskSpace);
-                        }
-                        item.extractSlow(unpackStream);
-                    } catch (Exception e) {
-                        //could be something unexpected with this file, move on
-                        logger.log(Level.WARNING, "Could not extract file from archive: " + localAbsPath, e); //NON-NLS
-                    } finally {
-                        if (unpackStream != null) {
-                            //record derived data in unode, to be traversed later after unpacking the archive
-                            unpackedNode.addDerivedInfo(unpackStream.getSize(), !isDir,
-                                    0L, createtime, accesstime, modtime, localRelPath);
-                            unpackStream.close();
-                        }
+                    //unpack locally, with the other files, once all the items have been checked
+                    unpackTargets.put(item.getItemIndex(), new UnpackTarget(unpackedNode, localAbsPath, localRelPath, size, freeDiskSpace, createtime, accesstime, modtime));
+                    if (size != null) {
+                        unpackedSize += size;
                     }
                 } else { // this is a directory, size is always 0
                     unpackedNode.addDerivedInfo(0, !isDir,
                             0L, createtime, accesstime, modtime, localRelPath);
+                    //update progress bar
+                    progress.progress(archiveFile.getName() + ": " + fileName, processedItems.incrementAndGet());
                 }
-
-                //update units for progress bar
-                ++processedItems;
             }
 
-            // add them to the DB. We wait until the end so that we have the metadata on all of the
-            // intermediate nodes since the order is not guaranteed
+            // add the folders to the DB first. We have the metadata on all of the intermediate
+            // nodes now, so each file can be added and scheduled as soon as it is unpacked
+            final UnpackedFilesPublisher publisher = new UnpackedFilesPublisher(archiveFile, parentAr, unpackedTree);
             try {
-                unpackedTree.addDerivedFilesToCase();
-                unpackedFiles = unpackedTree.getAllFileObjects();
-
-                //check if children are archives, update archive depth tracking
-                for (AbstractFile unpackedFile : unpackedFiles) {
-                    if (isSevenZipExtractionSupported(unpackedFile)) {
-                        archiveDepthCountTree.addArchive(parentAr, unpackedFile.getId());
-                    }
+                Set<SevenZipExtractor.UnpackedTree.UnpackedNode> unpackedFileNodes = new HashSet<>();
+                for (UnpackTarget unpackTarget : unpackTargets.values()) {
+                    unpackedFileNodes.add(unpackTarget.unpackedNode);
                 }
+                publisher.publish(unpackedTree.addDerivedFilesToCase(unpackedFileNodes));
 
+                try {
+                    unpackItems(archiveFile, options, inArchive, unpackTargets, unpackedSize, progress, processedItems, publisher);
+                } finally {
+                    publisher.flush();
+                }
             } catch (TskCoreException e) {
                 logger.log(Level.SEVERE, "Error populating complete derived file hierarchy from the unpacked dir structure"); //NON-NLS
                 //TODO decide if anything to cleanup, for now bailing
@@ -602,10 +618,397 @@ void unpack(AbstractFile archiveFile) {
                     archiveFile.getName(), EmbeddedFileExtractorModuleFactory.getModuleName());
             services.postMessage(IngestMessage.createWarningMessage(EmbeddedFileExtractorModuleFactory.getModuleName(), msg, details));
         }
+    }
+
+    /**
+     * Unpack the given files from the archive. The files are extracted with
+     * batch extract calls, so that solid blocks are only decoded once. If the
+     * archive is not solid and there is enough to extract, ranges of the files
+     * are extracted in parallel.
+     *
+     * @param archiveFile    the archive
+     * @param options        the format to open the archive with, or null to
+     *                       auto-detect it
+     * @param inArchive      the open archive
+     * @param unpackTargets  the files to unpack, by item index
+     * @param unpackedSize   the known total size of the files
+     * @param progress       the progress bar
+     * @param processedItems the number of items processed so far
+     * @param publisher      where to hand each file off to once unpacked
+     */
+    private void unpackItems(AbstractFile archiveFile, ArchiveFormat options, ISevenZipInArchive inArchive,
+            Map<Integer, UnpackTarget> unpackTargets, long unpackedSize, ProgressHandle progress, AtomicInteger processedItems,
+            UnpackedFilesPublisher publisher) {
+        if (unpackTargets.isEmpty()) {
+            return;
+        }
+        int[] indices = unpackTargets.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+        //tells the extractions of the other partitions to stop, if this thread stops waiting for them
+        final AtomicBoolean stopRequested = new AtomicBoolean();
+        List<Future<?>> extractions = new ArrayList<>();
+
+        int partitionCount = 1;
+        if (indices.length >= 2 * MIN_ITEMS_PER_PARTITION && unpackedSize >= MIN_PARALLEL_UNPACKED_SIZE && isSolid(inArchive) == false) {
+            //the calling thread extracts one of the partitions
+            partitionCount = Math.min(EXTRACTION_THREAD_COUNT + 1, indices.length / MIN_ITEMS_PER_PARTITION);
+        }
+
+        try {
+            if (partitionCount == 1) {
+                extractItems(archiveFile, inArchive, indices, unpackTargets, progress, processedItems, publisher, stopRequested);
+                return;
+            }
+
+            logger.log(Level.INFO, "Extracting {0} items from {1} in {2} partitions", new Object[]{indices.length, archiveFile.getName(), partitionCount}); //NON-NLS
+            int partitionSize = (indices.length + partitionCount - 1) / partitionCount;
+            for (int start = partitionSize; start < indices.length; start += partitionSize) {
+                final int[] partition = Arrays.copyOfRange(indices, start, Math.min(indices.length, start + partitionSize));
+                extractions.add(EXTRACTION_EXECUTOR.submit(() -> {
+                    extractItemsFromNewArchive(archiveFile, options, partition, unpackTargets, progress, processedItems, publisher, stopRequested);
+                }));
+            }
+            extractItems(archiveFile, inArchive, Arrays.copyOfRange(indices, 0, partitionSize), unpackTargets, progress, processedItems, publisher, stopRequested);
+
+            for (Future<?> extraction : extractions) {
+                try {
+                    extraction.get();
+                } catch (ExecutionException ex) {
+                    logger.log(Level.WARNING, "Error extracting items from archive: " + archiveFile, ex); //NON-NLS
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    logger.log(Level.WARNING, "Interrupted while extracting items from archive: " + archiveFile, ex); //NON-NLS
+                    break;
+                }
+            }
+        } finally {
+            /*
+             * If this thread stopped waiting early, stop the other partitions
+             * and wait for them, so that no file is finished while it is still
+             * being written.
+             */
+            if (extractions.stream().anyMatch(extraction -> extraction.isDone() == false)) {
+                stopRequested.set(true);
+                for (Future<?> extraction : extractions) {
+                    try {
+                        Uninterruptibles.getUninterruptibly(extraction);
+                    } catch (ExecutionException ex) {
+                        logger.log(Level.WARNING, "Error extracting items from archive: " + archiveFile, ex); //NON-NLS
+                    }
+                }
+            }
+            //record what was extracted of any file whose extraction did not complete or never started
+            for (UnpackTarget unpackTarget : unpackTargets.values()) {
+                if (unpackTarget.finish()) {
+                    publisher.add(unpackTarget.unpackedNode);
+                }
+            }
+        }
+    }
+
+    /**
+     * Check if the archive is solid, ie, compressed as one or more blocks that
+     * span several items, which can only be decoded from their start.
+     *
+     * @param inArchive the archive
+     *
+     * @return true if the archive is solid, or if it can't be determined.
+     */
+    private static boolean isSolid(ISevenZipInArchive inArchive) {
+        try {
+            Object solid = inArchive.getArchiveProperty(PropID.SOLID);
+            return (solid instanceof Boolean) == false || (Boolean) solid;
+        } catch (SevenZipException ex) {
+            logger.log(Level.WARNING, "Error checking if archive is solid", ex); //NON-NLS
+            return true;
+        }
+    }
+
+    /**
+     * Extract the given items from a new instance of the archive, so that
+     * ranges of items can be extracted from the same archive in parallel.
+     */
+    private void extractItemsFromNewArchive(AbstractFile archiveFile, ArchiveFormat options, int[] indices,
+            Map<Integer, UnpackTarget> unpackTargets, ProgressHandle progress, AtomicInteger processedItems, UnpackedFilesPublisher publisher,
+            AtomicBoolean stopRequested) {
+        if (stopRequested.get()) {
+            return;
+        }
+        SevenZipContentReadStream stream = new SevenZipContentReadStream(new ReadContentInputStream(archiveFile));
+        ISevenZipInArchive inArchive = null;
+        try {
+            inArchive = SevenZip.openInArchive(options, stream);
+            extractItems(archiveFile, inArchive, indices, unpackTargets, progress, processedItems, publisher, stopRequested);
+        } catch (SevenZipException ex) {
+            logger.log(Level.WARNING, "Error opening archive to extract items: " + archiveFile, ex); //NON-NLS
+        } finally {
+            if (inArchive != null) {
+                try {
+                    inArchive.close();
+                } catch (SevenZipException e) {
+                    logger.log(Level.SEVERE, "Error closing archive: " + archiveFile, e); //NON-NLS
+                }
+            }
+            try {
+                stream.close();
+            } catch (IOException ex) {
+                logger.log(Level.SEVERE, "Error closing stream after unpacking archive: " + archiveFile, ex); //NON-NLS
+            }
+        }
+    }
+
+    /**
+     * Extract the given items from the archive with one batch extract call.
+     * If the batch fails part way, the items it did not reach are extracted
+     * one at a time, so that one bad item does not cost the rest.
+     */
+    private void extractItems(AbstractFile archiveFile, ISevenZipInArchive inArchive, int[] indices,
+            Map<Integer, UnpackTarget> unpackTargets, ProgressHandle progress, AtomicInteger processedItems, UnpackedFilesPublisher publisher,
+            AtomicBoolean stopRequested) {
+        UnpackCallback callback = new UnpackCallback(archiveFile, unpackTargets, progress, processedItems, publisher, stopRequested);
+        try {
+            inArchive.extract(indices, false, callback);
+        } catch (SevenZipException ex) {
+            //could be something unexpected with the archive, keep what was extracted
+            logger.log(Level.WARNING, "Could not extract all files from archive: " + archiveFile, ex); //NON-NLS
+            for (int index : indices) {
+                if (stopRequested.get()) {
+                    return;
+                }
+                UnpackTarget unpackTarget = unpackTargets.get(index);
+                if (unpackTarget.isStarted() == false) {
+                    try {
+                        inArchive.extract(new int[]{index}, false, callback);
+                    } catch (SevenZipException ex1) {
+                        logger.log(Level.WARNING, "Could not extract file from archive: " + unpackTarget.localAbsPath, ex1); //NON-NLS
+                    }
+                }
+            }
+        }
+    }
 
-        // adding unpacked extracted derived files to the job after closing relevant resources.
-        if (!unpackedFiles.isEmpty()) {
-            //currently sending a single event for all new files
+    /**
+     * A file in an archive that is to be unpacked to a local file.
+     */
+    private static class UnpackTarget {
+
+        private final UnpackedTree.UnpackedNode unpackedNode;
+        private final String localAbsPath;
+        private final String localRelPath;
+        private final Long size;
+        private final long freeDiskSpace;
+        private final long createtime;
+        private final long accesstime;
+        private final long modtime;
+        private UnpackStream unpackStream;
+        private boolean finished = false;
+
+        UnpackTarget(UnpackedTree.UnpackedNode unpackedNode, String localAbsPath, String localRelPath, Long size, long freeDiskSpace,
+                long createtime, long accesstime, long modtime) {
+            this.unpackedNode = unpackedNode;
+            this.localAbsPath = localAbsPath;
+            this.localRelPath = localRelPath;
+            this.size = size;
+            this.freeDiskSpace = freeDiskSpace;
+            this.createtime = createtime;
+            this.accesstime = accesstime;
+            this.modtime = modtime;
+        }
+
+        /**
+         * Open the stream to unpack the file to.
+         */
+        synchronized UnpackStream open() {
+            unpackStream = (size != null)
+                    ? new SevenZipExtractor.KnownSizeUnpackStream(localAbsPath, size)
+                    : new SevenZipExtractor.UnknownSizeUnpackStream(localAbsPath, freeDiskSpace);
+            return unpackStream;
+        }
+
+        /**
+         * Has the extraction of the file started?
+         *
+         * @return true if the stream to unpack the file to was opened.
+         */
+        synchronized boolean isStarted() {
+            return unpackStream != null;
+        }
+
+        /**
+         * Close the stream, and record the derived file info, to be added to
+         * the case. A file whose extraction never started is still added to
+         * the case, with no content.
+         *
+         * @return true if the file was finished by this call, false if it was
+         *         already finished.
+         */
+        synchronized boolean finish() {
+            if (finished) {
+                return false;
+            }
+            finished = true;
+            long unpackedSize = 0;
+            if (unpackStream != null) {
+                unpackedSize = unpackStream.getSize();
+                unpackStream.close();
+            }
+            unpackedNode.addDerivedInfo(unpackedSize, true,
+                    0L, createtime, accesstime, modtime, localRelPath);
+            return true;
+        }
+    }
+
+    /**
+     * Callback for a batch extract call, that unpacks each extracted item to
+     * its local file.
+     */
+    private static class UnpackCallback implements IArchiveExtractCallback {
+
+        private final AbstractFile archiveFile;
+        private final Map<Integer, UnpackTarget> unpackTargets;
+        private final ProgressHandle progress;
+        private final AtomicInteger processedItems;
+        private final UnpackedFilesPublisher publisher;
+        private final AtomicBoolean stopRequested;
+        private UnpackTarget current;
+
+        UnpackCallback(AbstractFile archiveFile, Map<Integer, UnpackTarget> unpackTargets, ProgressHandle progress, AtomicInteger processedItems,
+                UnpackedFilesPublisher publisher, AtomicBoolean stopRequested) {
+            this.archiveFile = archiveFile;
+            this.unpackTargets = unpackTargets;
+            this.progress = progress;
+            this.processedItems = processedItems;
+            this.publisher = publisher;
+            this.stopRequested = stopRequested;
+        }
+
+        @Override
+        public ISequentialOutStream getStream(int index, ExtractAskMode extractAskMode) throws SevenZipException {
+            if (stopRequested.get()) {
+                //abort the batch extract call
+                throw new SevenZipException("Extraction stopped"); //NON-NLS
+            }
+            current = (extractAskMode == ExtractAskMode.EXTRACT) ? unpackTargets.get(index) : null;
+            if (current == null) {
+                return null;
+            }
+            //update progress bar
+            progress.progress(archiveFile.getName() + ": " + current.unpackedNode.getFileName(), processedItems.incrementAndGet());
+
+            final UnpackTarget target = current;
+            final UnpackStream unpackStream = target.open();
+            return new ISequentialOutStream() {
+                private boolean failed = false;
+
+                @Override
+                public int write(byte[] bytes) throws SevenZipException {
+                    /*
+                     * A failure to write one file must not abort the batch, so
+                     * discard the rest of the file instead of rethrowing.
+                     */
+                    if (failed == false) {
+                        try {
+                            unpackStream.write(bytes);
+                        } catch (SevenZipException | RuntimeException e) {
+                            failed = true;
+                            logger.log(Level.WARNING, "Could not extract file from archive: " + target.localAbsPath, e); //NON-NLS
+                        }
+                    }
+                    return bytes.length;
+                }
+            };
+        }
+
+        @Override
+        public void prepareOperation(ExtractAskMode extractAskMode) throws SevenZipException {
+        }
+
+        @Override
+        public void setOperationResult(ExtractOperationResult extractOperationResult) throws SevenZipException {
+            if (current != null) {
+                if (extractOperationResult != ExtractOperationResult.OK) {
+                    logger.log(Level.WARNING, "Could not extract file from archive: {0}, result: {1}", new Object[]{current.localAbsPath, extractOperationResult}); //NON-NLS
+                }
+                if (current.finish()) {
+                    publisher.add(current.unpackedNode);
+                }
+                current = null;
+            }
+        }
+
+        @Override
+        public void setTotal(long total) throws SevenZipException {
+        }
+
+        @Override
+        public void setCompleted(long completed) throws SevenZipException {
+        }
+    }
+
+    /**
+     * Adds unpacked files to the case and schedules them for ingest in
+     * batches, while the rest of the archive is still being unpacked, so that
+     * the other ingest modules don't have to wait for the whole archive.
+     */
+    private class UnpackedFilesPublisher {
+
+        private final AbstractFile archiveFile;
+        private final ArchiveDepthCountTree.Archive parentAr;
+        private final UnpackedTree unpackedTree;
+        private final List<UnpackedTree.UnpackedNode> pending = new ArrayList<>();
+
+        UnpackedFilesPublisher(AbstractFile archiveFile, ArchiveDepthCountTree.Archive parentAr, UnpackedTree unpackedTree) {
+            this.archiveFile = archiveFile;
+            this.parentAr = parentAr;
+            this.unpackedTree = unpackedTree;
+        }
+
+        /**
+         * Queue an unpacked file to be added to the case with the next batch.
+         *
+         * @param unpackedNode the node of the unpacked file
+         */
+        synchronized void add(UnpackedTree.UnpackedNode unpackedNode) {
+            pending.add(unpackedNode);
+            if (pending.size() >= PUBLISH_BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        /**
+         * Add the queued files to the case and schedule them for ingest.
+         */
+        synchronized void flush() {
+            if (pending.isEmpty()) {
+                return;
+            }
+            List<AbstractFile> unpackedFiles = new ArrayList<>(pending.size());
+            for (UnpackedTree.UnpackedNode unpackedNode : pending) {
+                try {
+                    unpackedFiles.addAll(unpackedTree.addUnpackedFileToCase(unpackedNode));
+                } catch (TskCoreException ex) {
+                    //already logged, move on to the rest of the batch
+                }
+            }
+            pending.clear();
+            publish(unpackedFiles);
+        }
+
+        /**
+         * Schedule files that have been added to the case for ingest.
+         *
+         * @param unpackedFiles the files
+         */
+        synchronized void publish(List<AbstractFile> unpackedFiles) {
+            if (unpackedFiles.isEmpty()) {
+                return;
+            }
+            //check if children are archives, update archive depth tracking
+            for (AbstractFile unpackedFile : unpackedFiles) {
+                if (isSevenZipExtractionSupported(unpackedFile)) {
+                    archiveDepthCountTree.addArchive(parentAr, unpackedFile.getId());
+                }
+            }
+            //sending a single event for each batch of new files
             services.fireModuleContentEvent(new ModuleContentEvent(archiveFile));
             context.addFilesToJob(unpackedFiles);
         }
@@ -755,6 +1158,8 @@ public int write(byte[] bytes) throws SevenZipException {
     private class UnpackedTree {
 
         final UnpackedNode rootNode;
+        private Set<UnpackedNode> deferredNodes = Collections.emptySet();
+        private final Set<UnpackedNode> waitingNodes = new HashSet<>();
 
         /**
          *
@@ -852,17 +1257,67 @@ private void getAllFileObjectsRec(List<AbstractFile> list, UnpackedNode parent)
         }
 
         /**
-         * Traverse the tree top-down after unzipping is done and create derived
-         * files for the entire hierarchy
+         * Traverse the tree top-down and create derived files for the
+         * hierarchy, except for the given files and everything below them,
+         * which are added with addUnpackedFileToCase once the files have been
+         * unpacked.
+         *
+         * @param deferredNodes the nodes of the files to leave out
+         *
+         * @return the derived files that were created
          */
-        void addDerivedFilesToCase() throws TskCoreException {
+        List<AbstractFile> addDerivedFilesToCase(Set<UnpackedNode> deferredNodes) throws TskCoreException {
+            this.deferredNodes = deferredNodes;
             final FileManager fileManager = Case.getCurrentCase().getServices().getFileManager();
-            for (UnpackedNode child : rootNode.children) {
-                addDerivedFilesToCaseRec(child, fileManager);
+            List<AbstractFile> ret = new ArrayList<>();
+            addChildrenToCase(rootNode, fileManager, ret);
+            return ret;
+        }
+
+        /**
+         * Create the derived file for a file left out by addDerivedFilesToCase
+         * that has been unpacked, and for the nodes below it. Archives can hold
+         * entries below a file entry, so the parent of the file may itself be
+         * a file that has not been unpacked yet, in which case the file is
+         * added along with its parent.
+         *
+         * @param node the node of the unpacked file
+         *
+         * @return the derived files that were created, parents first
+         */
+        List<AbstractFile> addUnpackedFileToCase(UnpackedNode node) throws TskCoreException {
+            List<AbstractFile> ret = new ArrayList<>();
+            if (node.getParent().getFile() == null) {
+                waitingNodes.add(node);
+                return ret;
             }
+            final FileManager fileManager = Case.getCurrentCase().getServices().getFileManager();
+            addDerivedFileToCase(node, fileManager);
+            ret.add(node.getFile());
+            addChildrenToCase(node, fileManager, ret);
+            return ret;
         }
 
-        private void addDerivedFilesToCaseRec(UnpackedNode node, FileManager fileManager) throws TskCoreException {
+        private void addChildrenToCase(UnpackedNode parent, FileManager fileManager, List<AbstractFile> list) throws TskCoreException {
+            for (UnpackedNode child : parent.children) {
+                if (deferredNodes.contains(child) == false) {
+                    addDerivedFilesToCaseRec(child, fileManager, list);
+                } else if (waitingNodes.remove(child)) {
+                    //unpacked before its parent was added
+                    list.addAll(addUnpackedFileToCase(child));
+                }
+            }
+        }
+
+        private void addDerivedFilesToCaseRec(UnpackedNode node, FileManager fileManager, List<AbstractFile> list) throws TskCoreException {
+            addDerivedFileToCase(node, fileManager);
+            list.add(node.getFile());
+
+            //recurse
+            addChildrenToCase(node, fileManager, list);
+        }
+
+        private void addDerivedFileToCase(UnpackedNode node, FileManager fileManager) throws TskCoreException {
             final String fileName = node.getFileName();
 
             try {
@@ -878,11 +1333,6 @@ private void addDerivedFilesToCaseRec(UnpackedNode node, FileManager fileManager
                         NbBundle.getMessage(SevenZipExtractor.class, "EmbeddedFileExtractorIngestModule.ArchiveExtractor.UnpackedTree.exception.msg",
                                 fileName), ex);
             }
-
-            //recurse
-            for (UnpackedNode child : node.children) {
-                addDerivedFilesToCaseRec(child, fileManager);
-            }
         }
 
         /**
@@ -0,0 +1,202 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2016 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.modules.hashdatabase;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+import com.google.common.hash.PrimitiveSink;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.logging.Level;
+import org.sleuthkit.autopsy.coreutils.Logger;
+
+/**
+ * A Bloom filter of the MD5 hashes of a hash database. A negative answer from
+ * the filter means a hash is definitely not in the database, so most lookups of
+ * files that are not in the database can skip the native hash database code.
+ *
+ * A filter is persisted in a file next to the file it was built from, along
+ * with the size and modification time of that file, so that it can be reused
+ * until the hash database changes. A filter file that can not be read is
+ * deleted, so that the filter is built again.
+ */
+final class HashDbBloomFilter {
+
+    private static final Logger logger = Logger.getLogger(HashDbBloomFilter.class.getName());
+    private static final String FILE_EXTENSION = ".bloom"; //NON-NLS
+    private static final String TEMP_FILE_EXTENSION = ".tmp"; //NON-NLS
+    private static final int FILE_FORMAT_VERSION = 1;
+    private final BloomFilter<long[]> filter;
+    private final double falsePositiveRate;
+
+    /**
+     * Gets the file a Bloom filter of the hashes read by a hash reader is
+     * persisted in.
+     *
+     * @param reader The hash reader.
+     *
+     * @return The Bloom filter file.
+     */
+    static File getFilterFile(HashDbHashReader reader) {
+        File sourceFile = reader.getSourceFile();
+        return new File(sourceFile.getPath() + FILE_EXTENSION);
+    }
+
+    /**
+     * Builds a Bloom filter of the hashes read by a hash reader.
+     *
+     * @param reader            The hash reader.
+     * @param falsePositiveRate The desired false positive rate of the filter.
+     *
+     * @return The Bloom filter.
+     *
+     * @throws IOException If there is an error reading the hashes.
+     */
+    static HashDbBloomFilter build(HashDbHashReader reader, double falsePositiveRate) throws IOException {
+        long expectedHashCount = Math.max(1, reader.getMaxHashCount());
+        BloomFilter<long[]> filter = BloomFilter.create(Md5Funnel.INSTANCE, expectedHashCount, falsePositiveRate);
+        long[] pair = new long[2];
+        reader.readHashes((high, low) -> {
+            pair[0] = high;
+            pair[1] = low;
+            filter.put(pair);
+            return true;
+        });
+        return new HashDbBloomFilter(filter, falsePositiveRate);
+    }
+
+    /**
+     * Reads a persisted Bloom filter of the hashes read by a hash reader, if
+     * there is one that is current and has the desired false positive rate.
+     *
+     * @param reader            The hash reader.
+     * @param falsePositiveRate The desired false positive rate of the filter.
+     *
+     * @return The Bloom filter, or null if there is no usable persisted
+     *         filter. A filter file that is corrupt or truncated is deleted.
+     */
+    static HashDbBloomFilter read(HashDbHashReader reader, double falsePositiveRate) {
+        File filterFile = getFilterFile(reader);
+        if (!filterFile.exists()) {
+            return null;
+        }
+        File sourceFile = reader.getSourceFile();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filterFile)))) {
+            if (in.readInt() != FILE_FORMAT_VERSION
+                    || in.readDouble() != falsePositiveRate
+                    || in.readLong() != sourceFile.length()
+                    || in.readLong() != sourceFile.lastModified()) {
+                return null;
+            }
+            return new HashDbBloomFilter(BloomFilter.readFrom(in, Md5Funnel.INSTANCE), falsePositiveRate);
+        } catch (IOException | RuntimeException ex) {
+            // BloomFilter.readFrom reports bad data as an IOException, but a
+            // truncated or corrupt file can also fail in other ways.
+            logger.log(Level.WARNING, "Deleting unreadable Bloom filter file " + filterFile.getPath(), ex); //NON-NLS
+            if (!filterFile.delete()) {
+                logger.log(Level.WARNING, "Could not delete unreadable Bloom filter file {0}", filterFile.getPath()); //NON-NLS
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Persists this Bloom filter in the file for the hashes read by a hash
+     * reader. The filter is written to a temporary file that then replaces
+     * the filter file, so an interrupted write does not leave a partial
+     * filter file behind.
+     *
+     * @param reader             The hash reader the filter was built from.
+     * @param sourceLength       The length of the source file of the reader
+     *                           when the filter was built.
+     * @param sourceLastModified The modification time of the source file of
+     *                           the reader when the filter was built.
+     *
+     * @throws IOException If there is an error writing the filter file.
+     */
+    void write(HashDbHashReader reader, long sourceLength, long sourceLastModified) throws IOException {
+        File filterFile = getFilterFile(reader);
+        File tempFile = new File(filterFile.getPath() + TEMP_FILE_EXTENSION);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                out.writeInt(FILE_FORMAT_VERSION);
+                out.writeDouble(falsePositiveRate);
+                out.writeLong(sourceLength);
+                out.writeLong(sourceLastModified);
+                filter.writeTo(out);
+            }
+            Files.move(tempFile.toPath(), filterFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    private HashDbBloomFilter(BloomFilter<long[]> filter, double falsePositiveRate) {
+        this.filter = filter;
+        this.falsePositiveRate = falsePositiveRate;
+    }
+
+    /**
+     * Determines whether an MD5 hash might be in the hash database. The filter
+     * is not modified after it is built, so concurrent lookups do not need to
+     * be synchronized.
+     *
+     * @param md5Hash The MD5 hash, as a hex string.
+     *
+     * @return False if the hash is definitely not in the hash database.
+     */
+    boolean mightContain(String md5Hash) {
+        long[] pair = new long[2];
+        if (!HashDbHashReader.parseMd5(md5Hash, pair)) {
+            // Let the hash database decide what to do with the hash.
+            return true;
+        }
+        return filter.mightContain(pair);
+    }
+
+    /**
+     * Gets the false positive rate the filter was built for.
+     *
+     * @return The false positive rate.
+     */
+    double getFalsePositiveRate() {
+        return falsePositiveRate;
+    }
+
+    /**
+     * Feeds the high and low 64 bits of an MD5 hash to the filter.
+     */
+    private enum Md5Funnel implements Funnel<long[]> {
+
+        INSTANCE;
+
+        @Override
+        public void funnel(long[] md5, PrimitiveSink into) {
+            into.putLong(md5[0]).putLong(md5[1]);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2016 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.modules.hashdatabase;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Reads the MD5 hashes of a hash database directly from its files, for
+ * building in-memory lookup structures such as in-memory hash sets and Bloom
+ * filters.
+ *
+ * Both the SQLite hash databases created by Autopsy and the text index files
+ * of other hash database formats store their hashes sorted in unsigned byte
+ * order, so the hashes are visited in that order.
+ */
+abstract class HashDbHashReader {
+
+    static final int MD5_HEX_LENGTH = 32;
+    private static final String INDEX_FILE_EXTENSION = ".idx"; //NON-NLS
+
+    /**
+     * Receives the hashes read from a hash database.
+     */
+    interface HashVisitor {
+
+        /**
+         * Visits a hash.
+         *
+         * @param high The high 64 bits of the hash.
+         * @param low  The low 64 bits of the hash.
+         *
+         * @return True to continue reading, false to stop.
+         */
+        boolean visit(long high, long low);
+    }
+
+    /**
+     * Creates a reader for the hashes of a hash database.
+     *
+     * @param databasePath The path of the hash database.
+     * @param indexPath    The path of the index of the hash database.
+     *
+     * @return The reader, or null if the hashes of the database cannot be read
+     *         directly from its files.
+     */
+    static HashDbHashReader create(String databasePath, String indexPath) {
+        if (databasePath.toLowerCase().endsWith("." + HashDbManager.getHashDatabaseFileExtension())) {
+            return new SqliteHashReader(databasePath);
+        } else if (indexPath.toLowerCase().endsWith(INDEX_FILE_EXTENSION)) {
+            return new IndexFileHashReader(indexPath);
+        }
+        return null;
+    }
+
+    /**
+     * Parses a hex MD5 hash into a pair of longs.
+     *
+     * @param md5Hash The hash.
+     * @param pair    An array of length two that receives the high and low 64
+     *                bits of the hash.
+     *
+     * @return False if the hash is not a valid hex MD5 hash.
+     */
+    static boolean parseMd5(String md5Hash, long[] pair) {
+        if (md5Hash.length() != MD5_HEX_LENGTH) {
+            return false;
+        }
+        try {
+            pair[0] = Long.parseUnsignedLong(md5Hash.substring(0, 16), 16);
+            pair[1] = Long.parseUnsignedLong(md5Hash.substring(16), 16);
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gets the file the hashes are read from.
+     *
+     * @return The file.
+     */
+    abstract File getSourceFile();
+
+    /**
+     * Gets an upper bound for the number of hashes in the database.
+     *
+     * @return The maximum hash count.
+     *
+     * @throws IOException If there is an error reading the hash database.
+     */
+    abstract long getMaxHashCount() throws IOException;
+
+    /**
+     * Reads the hashes of the database, in sorted order.
+     *
+     * @param visitor The visitor that receives the hashes.
+     *
+     * @return False if the visitor stopped the read.
+     *
+     * @throws IOException If there is an error reading the hash database.
+     */
+    abstract boolean readHashes(HashVisitor visitor) throws IOException;
+
+    /**
+     * Reads the hashes of a text index file.
+     */
+    private static final class IndexFileHashReader extends HashDbHashReader {
+
+        /*
+         * The lines of a TSK text index file are the upper case hex MD5 hash
+         * of an entry, followed by a '|' and the offset of the entry in the
+         * database file. The header lines use a different length hash field,
+         * so they are skipped.
+         */
+        private static final int LINE_LENGTH = MD5_HEX_LENGTH + 1 + 16 + 1;
+        private final File indexFile;
+
+        IndexFileHashReader(String indexPath) {
+            this.indexFile = new File(indexPath);
+        }
+
+        @Override
+        File getSourceFile() {
+            return indexFile;
+        }
+
+        @Override
+        long getMaxHashCount() throws IOException {
+            return indexFile.length() / LINE_LENGTH;
+        }
+
+        @Override
+        boolean readHashes(HashVisitor visitor) throws IOException {
+            try (BufferedReader reader = Files.newBufferedReader(indexFile.toPath(), StandardCharsets.US_ASCII)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.length() <= MD5_HEX_LENGTH || line.charAt(MD5_HEX_LENGTH) != '|') {
+                        continue;
+                    }
+                    long high;
+                    long low;
+                    try {
+                        high = Long.parseUnsignedLong(line.substring(0, 16), 16);
+                        low = Long.parseUnsignedLong(line.substring(16, MD5_HEX_LENGTH), 16);
+                    } catch (NumberFormatException ex) {
+                        continue;
+                    }
+                    if (!visitor.visit(high, low)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Reads the hashes of a SQLite hash database.
+     */
+    private static final class SqliteHashReader extends HashDbHashReader {
+
+        private static final String SELECT_HASHES = "SELECT md5 FROM hashes WHERE md5 IS NOT NULL ORDER BY md5"; //NON-NLS
+        private static final String COUNT_HASHES = "SELECT COUNT(*) FROM hashes WHERE md5 IS NOT NULL"; //NON-NLS
+        private static final int MD5_LENGTH = 16;
+        private final File databaseFile;
+
+        SqliteHashReader(String databasePath) {
+            this.databaseFile = new File(databasePath);
+        }
+
+        private Connection openConnection() throws SQLException {
+            try {
+                Class.forName("org.sqlite.JDBC"); //NON-NLS //load JDBC driver
+            } catch (ClassNotFoundException ex) {
+                throw new SQLException("SQLite JDBC driver not found", ex); //NON-NLS
+            }
+            return DriverManager.getConnection("jdbc:sqlite:" + databaseFile.getPath()); //NON-NLS
+        }
+
+        @Override
+        File getSourceFile() {
+            return databaseFile;
+        }
+
+        @Override
+        long getMaxHashCount() throws IOException {
+            try (Connection connection = openConnection();
+                    Statement statement = connection.createStatement();
+                    ResultSet resultSet = statement.executeQuery(COUNT_HASHES)) {
+                return resultSet.next() ? resultSet.getLong(1) : 0;
+            } catch (SQLException ex) {
+                throw new IOException("Error counting hashes in " + databaseFile.getPath(), ex); //NON-NLS
+            }
+        }
+
+        @Override
+        boolean readHashes(HashVisitor visitor) throws IOException {
+            try (Connection connection = openConnection();
+                    Statement statement = connection.createStatement();
+                    ResultSet resultSet = statement.executeQuery(SELECT_HASHES)) {
+                while (resultSet.next()) {
+                    byte[] md5 = resultSet.getBytes(1);
+                    if (md5 == null || md5.length != MD5_LENGTH) {
+                        throw new IOException("Unexpected MD5 hash format in " + databaseFile.getPath()); //NON-NLS
+                    }
+                    ByteBuffer md5Buffer = ByteBuffer.wrap(md5);
+                    if (!visitor.visit(md5Buffer.getLong(), md5Buffer.getLong())) {
+                        return false;
+                    }
+                }
+            } catch (SQLException ex) {
+                throw new IOException("Error reading hashes from " + databaseFile.getPath(), ex); //NON-NLS
+            }
+            return true;
+        }
+    }
+}
@@ -23,6 +23,8 @@
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import org.openide.util.NbBundle;
@@ -75,6 +77,19 @@ private static class IngestJobTotals {
         private AtomicLong totalKnownBadCount = new AtomicLong(0);
         private AtomicLong totalCalctime = new AtomicLong(0);
         private AtomicLong totalLookuptime = new AtomicLong(0);
+        private final ConcurrentHashMap<String, HashSetLookupTotals> hashSetLookupTotals = new ConcurrentHashMap<>();
+
+        private void addLookup(HashDb db, long lookupTimeNanos) {
+            HashSetLookupTotals lookupTotals = hashSetLookupTotals.computeIfAbsent(db.getHashSetName(), name -> new HashSetLookupTotals());
+            lookupTotals.lookupCount.incrementAndGet();
+            lookupTotals.lookupTimeNanos.addAndGet(lookupTimeNanos);
+        }
+    }
+
+    private static class HashSetLookupTotals {
+
+        private final AtomicLong lookupCount = new AtomicLong(0);
+        private final AtomicLong lookupTimeNanos = new AtomicLong(0);
     }
 
     private static synchronized IngestJobTotals getTotalsForIngestJobs(long ingestJobId) {
@@ -99,6 +114,19 @@ public void startUp(org.sleuthkit.autopsy.ingest.IngestJobContext context) throw
         updateEnabledHashSets(hashDbManager.getKnownBadFileHashSets(), knownBadHashSets);
         updateEnabledHashSets(hashDbManager.getKnownFileHashSets(), knownHashSets);
 
+        // Copy the hash sets into memory for lookups, if configured to do so 
+        // and there is room, and make sure any Bloom filters that were 
+        // discarded are rebuilt. Sets that are already loaded are not 
+        // reloaded.
+        for (HashDb db : knownBadHashSets) {
+            hashDbManager.loadInMemoryHashSet(db);
+            hashDbManager.loadBloomFilter(db, false);
+        }
+        for (HashDb db : knownHashSets) {
+            hashDbManager.loadInMemoryHashSet(db);
+            hashDbManager.loadBloomFilter(db, false);
+        }
+
         if (refCounter.incrementAndGet(jobId) == 1) {
             // initialize job totals
             getTotalsForIngestJobs(jobId);
@@ -199,7 +227,9 @@ public ProcessResult process(AbstractFile file) {
         for (HashDb db : knownBadHashSets) {
             try {
                 long lookupstart = System.currentTimeMillis();
+                long lookupStartNanos = System.nanoTime();
                 HashHitInfo hashInfo = db.lookupMD5(file);
+                totals.addLookup(db, System.nanoTime() - lookupStartNanos);
                 if (null != hashInfo) {
                     foundBad = true;
                     totals.totalKnownBadCount.incrementAndGet();
@@ -260,7 +290,10 @@ public ProcessResult process(AbstractFile file) {
             for (HashDb db : knownHashSets) {
                 try {
                     long lookupstart = System.currentTimeMillis();
-                    if (db.lookupMD5Quick(file)) {
+                    long lookupStartNanos = System.nanoTime();
+                    boolean found = db.lookupMD5Quick(file);
+                    totals.addLookup(db, System.nanoTime() - lookupStartNanos);
+                    if (found) {
                         try {
                             skCase.setKnown(file, TskData.FileKnown.KNOWN);
                             break;
@@ -358,6 +391,18 @@ private void postHashSetHitToBlackboard(AbstractFile abstractFile, String md5Has
         }
     }
 
+    @Messages({
+        "HashDbIngestModule.complete.lookupsByDatabase=Lookups by Database:",
+        "HashDbIngestModule.complete.database=Database",
+        "HashDbIngestModule.complete.lookupMethod=Lookup Method",
+        "HashDbIngestModule.complete.lookups=Lookups",
+        "HashDbIngestModule.complete.lookupsPerSecond=Lookups/s",
+        "HashDbIngestModule.complete.nativeLookup=Database file",
+        "HashDbIngestModule.complete.bloomFilterLookup=Bloom filter and database file",
+        "# {0} - hash count",
+        "# {1} - load time",
+        "HashDbIngestModule.complete.inMemoryLookup=In memory ({0} hashes, loaded in {1} ms)"
+    })
     private static synchronized void postSummary(long jobId,
             List<HashDb> knownBadHashSets, List<HashDb> knownHashSets) {
         IngestJobTotals jobTotals = getTotalsForIngestJobs(jobId);
@@ -390,6 +435,38 @@ private static synchronized void postSummary(long jobId,
 
             detailsSb.append("</ul>"); //NON-NLS
 
+            detailsSb.append("<p>") //NON-NLS
+                    .append(Bundle.HashDbIngestModule_complete_lookupsByDatabase())
+                    .append("</p>\n<table border='0' cellpadding='4' width='280'>"); //NON-NLS
+            detailsSb.append("<tr><th>").append(Bundle.HashDbIngestModule_complete_database()) //NON-NLS
+                    .append("</th><th>").append(Bundle.HashDbIngestModule_complete_lookupMethod()) //NON-NLS
+                    .append("</th><th>").append(Bundle.HashDbIngestModule_complete_lookups()) //NON-NLS
+                    .append("</th><th>").append(Bundle.HashDbIngestModule_complete_lookupsPerSecond()) //NON-NLS
+                    .append("</th></tr>\n"); //NON-NLS
+            List<HashDb> hashSetsUsed = new ArrayList<>(knownBadHashSets);
+            hashSetsUsed.addAll(knownHashSets);
+            for (HashDb db : hashSetsUsed) {
+                HashSetLookupTotals lookupTotals = jobTotals.hashSetLookupTotals.get(db.getHashSetName());
+                long lookupCount = (null != lookupTotals) ? lookupTotals.lookupCount.get() : 0;
+                long lookupTimeNanos = (null != lookupTotals) ? lookupTotals.lookupTimeNanos.get() : 0;
+                long lookupsPerSecond = (lookupTimeNanos > 0) ? lookupCount * TimeUnit.SECONDS.toNanos(1) / lookupTimeNanos : 0;
+                InMemoryHashSet hashSet = db.getInMemoryHashSet();
+                String lookupMethod;
+                if (null != hashSet) {
+                    lookupMethod = Bundle.HashDbIngestModule_complete_inMemoryLookup(hashSet.getHashCount(), hashSet.getLoadTimeMillis());
+                } else if (null != db.getBloomFilter()) {
+                    lookupMethod = Bundle.HashDbIngestModule_complete_bloomFilterLookup();
+                } else {
+                    lookupMethod = Bundle.HashDbIngestModule_complete_nativeLookup();
+                }
+                detailsSb.append("<tr><td>").append(db.getHashSetName()) //NON-NLS
+                        .append("</td><td>").append(lookupMethod) //NON-NLS
+                        .append("</td><td>").append(lookupCount) //NON-NLS
+                        .append("</td><td>").append(lookupsPerSecond) //NON-NLS
+                        .append("</td></tr>\n"); //NON-NLS
+            }
+            detailsSb.append("</table>"); //NON-NLS
+
             IngestServices.getInstance().postMessage(IngestMessage.createMessage(
                     IngestMessage.MessageType.INFO,
                     HashLookupModuleFactory.getModuleName(),
@@ -18,6 +18,7 @@
  */
 package org.sleuthkit.autopsy.modules.hashdatabase;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
@@ -29,6 +30,8 @@
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
@@ -39,6 +42,7 @@
 import org.openide.util.NbBundle;
 import org.openide.util.NbBundle.Messages;
 import org.sleuthkit.autopsy.core.RuntimeProperties;
+import org.sleuthkit.autopsy.core.UserPreferences;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import org.sleuthkit.autopsy.coreutils.MessageNotifyUtil;
 import org.sleuthkit.autopsy.ingest.IngestManager;
@@ -65,6 +69,10 @@ public class HashDbManager implements PropertyChangeListener {
     PropertyChangeSupport changeSupport = new PropertyChangeSupport(HashDbManager.class);
     private static final Logger logger = Logger.getLogger(HashDbManager.class.getName());
     private boolean allDatabasesLoadedCorrectly = false;
+    private final Object inMemoryHashSetsLock = new Object();
+    private long inMemoryHashSetsSizeInBytes = 0;
+    private final ExecutorService bloomFilterExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("hash-db-bloom-filter-%d").setDaemon(true).build()); //NON-NLS
 
     /**
      * Property change event support In events: For both of these enums, the old
@@ -267,10 +275,144 @@ private HashDb addHashDatabase(int handle, String hashSetName, boolean searchDur
                     NbBundle.getMessage(this.getClass(), "HashDbManager.moduleErrorListeningToUpdatesMsg"),
                     MessageNotifyUtil.MessageType.ERROR);
         }
+
+        loadBloomFilter(hashDb, false);
         return hashDb;
     }
 
+    /**
+     * Loads a copy of the hashes of a hash database into memory for lookups
+     * during ingest, if in-memory lookups are enabled and the hashes fit in
+     * what remains of the memory budget for in-memory lookups. Hash databases
+     * that are not loaded continue to be looked up in the database files.
+     *
+     * @param hashDb The hash database.
+     */
+    void loadInMemoryHashSet(HashDb hashDb) {
+        long budgetInBytes = UserPreferences.getHashDbInMemoryLookupBudgetMB() * 1024L * 1024L;
+        synchronized (hashDb) {
+            if (budgetInBytes == 0) {
+                releaseInMemoryHashSet(hashDb);
+                return;
+            }
+            if (null != hashDb.inMemoryHashSet || hashDb.isIndexing()) {
+                return;
+            }
+            /*
+             * Reserve the memory for the hashes before loading them, so that
+             * hash databases loaded concurrently can not together exceed the
+             * budget. The reservation is given back if the load fails.
+             */
+            long reservedBytes = 0;
+            try {
+                long requiredBytes = InMemoryHashSet.getRequiredBytes(hashDb.getDatabasePath(), hashDb.getIndexPath());
+                synchronized (inMemoryHashSetsLock) {
+                    if (requiredBytes > budgetInBytes - inMemoryHashSetsSizeInBytes) {
+                        logger.log(Level.INFO, "Hashes of {0} hash database do not fit in the in-memory lookup budget", hashDb.getHashSetName()); //NON-NLS
+                        return;
+                    }
+                    inMemoryHashSetsSizeInBytes += requiredBytes;
+                    reservedBytes = requiredBytes;
+                }
+                InMemoryHashSet hashSet = InMemoryHashSet.load(hashDb.getDatabasePath(), hashDb.getIndexPath(), requiredBytes);
+                if (null != hashSet) {
+                    synchronized (inMemoryHashSetsLock) {
+                        inMemoryHashSetsSizeInBytes += hashSet.getSizeInBytes() - reservedBytes;
+                        reservedBytes = 0;
+                    }
+                    hashDb.inMemoryHashSet = hashSet;
+                    logger.log(Level.INFO, "Loaded {0} hashes of {1} hash database into memory in {2} ms", new Object[]{hashSet.getHashCount(), hashDb.getHashSetName(), hashSet.getLoadTimeMillis()}); //NON-NLS
+                }
+            } catch (IOException | TskCoreException | RuntimeException ex) {
+                // Lookups fall back to the database files.
+                logger.log(Level.WARNING, "Error loading hashes of " + hashDb.getHashSetName() + " hash database into memory", ex); //NON-NLS
+            } finally {
+                if (reservedBytes != 0) {
+                    synchronized (inMemoryHashSetsLock) {
+                        inMemoryHashSetsSizeInBytes -= reservedBytes;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Discards the in-memory copy of the hashes of a hash database, if there
+     * is one, so that lookups go to the database files again.
+     *
+     * @param hashDb The hash database.
+     */
+    void releaseInMemoryHashSet(HashDb hashDb) {
+        synchronized (hashDb) {
+            InMemoryHashSet hashSet = hashDb.inMemoryHashSet;
+            if (null != hashSet) {
+                hashDb.inMemoryHashSet = null;
+                synchronized (inMemoryHashSetsLock) {
+                    inMemoryHashSetsSizeInBytes -= hashSet.getSizeInBytes();
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes a Bloom filter of the hashes of a hash database available for
+     * lookups, if hash database Bloom filters are enabled, or discards the
+     * filter of the database if they are not. A persisted filter is reused if
+     * it is current and was built for the configured false positive rate,
+     * otherwise a new filter is built and persisted. This is done in the
+     * background; until the filter is ready, lookups go to the database files.
+     *
+     * @param hashDb  The hash database.
+     * @param rebuild True to build a new filter even if there is a current
+     *                one.
+     */
+    void loadBloomFilter(HashDb hashDb, boolean rebuild) {
+        if (!UserPreferences.useHashDbBloomFilters()) {
+            releaseBloomFilter(hashDb);
+            return;
+        }
+        double falsePositiveRate = UserPreferences.getHashDbBloomFilterFalsePositiveRate();
+        int generation;
+        synchronized (hashDb) {
+            HashDbBloomFilter bloomFilter = hashDb.bloomFilter;
+            if (hashDb.bloomFilterPending || hashDb.isIndexing()
+                    || (!rebuild && null != bloomFilter && bloomFilter.getFalsePositiveRate() == falsePositiveRate)) {
+                return;
+            }
+            hashDb.bloomFilterPending = true;
+            generation = hashDb.bloomFilterGeneration;
+        }
+        bloomFilterExecutor.submit(new BloomFilterLoader(hashDb, generation, falsePositiveRate, rebuild));
+    }
+
+    /**
+     * Makes Bloom filters of the hashes of all of the hash databases available
+     * for lookups, or discards them, according to the current Bloom filter
+     * settings.
+     */
+    void loadBloomFilters() {
+        for (HashDb hashDb : getAllHashSets()) {
+            loadBloomFilter(hashDb, false);
+        }
+    }
+
+    /**
+     * Discards the Bloom filter of a hash database, if there is one, so that
+     * lookups go to the database files again. A filter that is being loaded
+     * when this is called is discarded when it is ready.
+     *
+     * @param hashDb The hash database.
+     */
+    void releaseBloomFilter(HashDb hashDb) {
+        synchronized (hashDb) {
+            hashDb.bloomFilter = null;
+            ++hashDb.bloomFilterGeneration;
+        }
+    }
+
     synchronized void indexHashDatabase(HashDb hashDb) {
+        releaseInMemoryHashSet(hashDb);
+        releaseBloomFilter(hashDb);
         hashDb.addPropertyChangeListener(this);
         HashDbIndexer creator = new HashDbIndexer(hashDb);
         creator.execute();
@@ -289,6 +431,7 @@ public void propertyChange(PropertyChangeEvent event) {
                 } catch (TskCoreException ex) {
                     Logger.getLogger(HashDbManager.class.getName()).log(Level.SEVERE, "Error getting index path of " + hashDb.getHashSetName() + " hash database after indexing", ex); //NON-NLS
                 }
+                loadBloomFilter(hashDb, false);
             }
         }
     }
@@ -334,6 +477,8 @@ public synchronized void removeHashDatabaseNoSave(HashDb hashDb) throws HashDbMa
         } catch (TskCoreException ex) {
             Logger.getLogger(HashDbManager.class.getName()).log(Level.SEVERE, "Error getting database path of " + hashDb.getHashSetName() + " hash database when removing the database", ex); //NON-NLS
         }
+        releaseInMemoryHashSet(hashDb);
+        releaseBloomFilter(hashDb);
         try {
             hashDb.close();
         } catch (TskCoreException ex) {
@@ -437,6 +582,8 @@ public synchronized void loadLastSavedConfiguration() {
 
     private void closeHashDatabases(List<HashDb> hashDatabases) {
         for (HashDb database : hashDatabases) {
+            releaseInMemoryHashSet(database);
+            releaseBloomFilter(database);
             try {
                 database.close();
             } catch (TskCoreException ex) {
@@ -589,6 +736,10 @@ public enum Event {
         private boolean sendIngestMessages;
         private final KnownFilesType knownFilesType;
         private boolean indexing;
+        private volatile InMemoryHashSet inMemoryHashSet;
+        private volatile HashDbBloomFilter bloomFilter;
+        private boolean bloomFilterPending;
+        private int bloomFilterGeneration;
         private final PropertyChangeSupport propertyChangeSupport = new PropertyChangeSupport(this);
 
         private HashDb(int handle, String hashSetName, boolean useForIngest, boolean sendHitMessages, KnownFilesType knownFilesType) {
@@ -690,6 +841,8 @@ public void addHashes(Content content, String comment) throws TskCoreException {
                 AbstractFile file = (AbstractFile) content;
                 if (null != file.getMd5Hash()) {
                     SleuthkitJNI.addToHashDatabase(null, file.getMd5Hash(), null, null, comment, handle);
+                    HashDbManager.getInstance().releaseInMemoryHashSet(this);
+                    HashDbManager.getInstance().releaseBloomFilter(this);
                 }
             }
         }
@@ -703,6 +856,8 @@ public void addHashes(Content content, String comment) throws TskCoreException {
          */
         public void addHashes(List<HashEntry> hashes) throws TskCoreException {
             SleuthkitJNI.addToHashDatabase(hashes, handle);
+            HashDbManager.getInstance().releaseInMemoryHashSet(this);
+            HashDbManager.getInstance().releaseBloomFilter(this);
         }
 
         /**
@@ -720,7 +875,12 @@ public boolean lookupMD5Quick(Content content) throws TskCoreException {
             if (content instanceof AbstractFile) {
                 AbstractFile file = (AbstractFile) content;
                 if (null != file.getMd5Hash()) {
-                    result = SleuthkitJNI.lookupInHashDatabase(file.getMd5Hash(), handle);
+                    InMemoryHashSet hashSet = inMemoryHashSet;
+                    if (null != hashSet) {
+                        result = hashSet.contains(file.getMd5Hash());
+                    } else if (mightContain(file.getMd5Hash())) {
+                        result = SleuthkitJNI.lookupInHashDatabase(file.getMd5Hash(), handle);
+                    }
                 }
             }
             return result;
@@ -742,12 +902,34 @@ public HashHitInfo lookupMD5(Content content) throws TskCoreException {
             if (content instanceof AbstractFile) {
                 AbstractFile file = (AbstractFile) content;
                 if (null != file.getMd5Hash()) {
-                    result = SleuthkitJNI.lookupInHashDatabaseVerbose(file.getMd5Hash(), handle);
+                    // The in-memory copy of the hashes or the Bloom filter, if 
+                    // any, does not have the details of a hit, but it can 
+                    // rule out a miss.
+                    if (mightContain(file.getMd5Hash())) {
+                        result = SleuthkitJNI.lookupInHashDatabaseVerbose(file.getMd5Hash(), handle);
+                    }
                 }
             }
             return result;
         }
 
+        /**
+         * Checks the in-memory copy of the hashes of the hash database or the
+         * Bloom filter of the hash database, if there is one, for a hash.
+         *
+         * @param md5Hash The hash.
+         *
+         * @return False if the hash is definitely not in the hash database.
+         */
+        private boolean mightContain(String md5Hash) {
+            InMemoryHashSet hashSet = inMemoryHashSet;
+            if (null != hashSet) {
+                return hashSet.contains(md5Hash);
+            }
+            HashDbBloomFilter filter = bloomFilter;
+            return (null == filter || filter.mightContain(md5Hash));
+        }
+
         boolean hasIndex() throws TskCoreException {
             return SleuthkitJNI.hashDatabaseHasLookupIndex(handle);
         }
@@ -764,6 +946,37 @@ boolean isIndexing() {
             return indexing;
         }
 
+        /**
+         * Gets the in-memory copy of the hashes of the hash database that is
+         * used for lookups, if the hashes have been loaded into memory.
+         *
+         * @return The in-memory hash set, or null if lookups are done using
+         *         the database files.
+         */
+        InMemoryHashSet getInMemoryHashSet() {
+            return inMemoryHashSet;
+        }
+
+        /**
+         * Gets the Bloom filter of the hash database that is used to skip
+         * lookups of hashes that are not in the database, if there is one.
+         *
+         * @return The Bloom filter, or null if there is no filter ready.
+         */
+        HashDbBloomFilter getBloomFilter() {
+            return bloomFilter;
+        }
+
+        /**
+         * Indicates whether a Bloom filter of the hash database is being
+         * loaded or built.
+         *
+         * @return True if a Bloom filter is being loaded or built.
+         */
+        synchronized boolean isBloomFilterPending() {
+            return bloomFilterPending;
+        }
+
         private void close() throws TskCoreException {
             SleuthkitJNI.closeHashDatabase(handle);
         }
@@ -868,4 +1081,74 @@ protected void done() {
             }
         }
     }
+
+    /**
+     * Task that loads the persisted Bloom filter of a hash database, or builds
+     * and persists a new one, and makes it available for lookups.
+     */
+    private final class BloomFilterLoader implements Runnable {
+
+        private final HashDb hashDb;
+        private final int generation;
+        private final double falsePositiveRate;
+        private final boolean rebuild;
+
+        BloomFilterLoader(HashDb hashDb, int generation, double falsePositiveRate, boolean rebuild) {
+            this.hashDb = hashDb;
+            this.generation = generation;
+            this.falsePositiveRate = falsePositiveRate;
+            this.rebuild = rebuild;
+        }
+
+        @Override
+        public void run() {
+            HashDbBloomFilter bloomFilter = null;
+            try {
+                if (hashDb.hasIndex()) {
+                    HashDbHashReader reader = HashDbHashReader.create(hashDb.getDatabasePath(), hashDb.getIndexPath());
+                    if (null != reader) {
+                        if (!rebuild) {
+                            bloomFilter = HashDbBloomFilter.read(reader, falsePositiveRate);
+                        }
+                        if (null == bloomFilter) {
+                            bloomFilter = build(reader);
+                        }
+                    }
+                }
+            } catch (IOException | TskCoreException ex) {
+                logger.log(Level.WARNING, "Error loading Bloom filter of " + hashDb.getHashSetName() + " hash database", ex); //NON-NLS
+            } finally {
+                synchronized (hashDb) {
+                    hashDb.bloomFilterPending = false;
+
+                    // Do not use the filter if the hash database changed 
+                    // while the filter was being loaded.
+                    if (null != bloomFilter && hashDb.bloomFilterGeneration == generation) {
+                        hashDb.bloomFilter = bloomFilter;
+                    }
+                }
+            }
+        }
+
+        @Messages({"# {0} - hash set name", "HashDbManager.progress.buildingBloomFilter=Building Bloom filter for {0}"})
+        private HashDbBloomFilter build(HashDbHashReader reader) throws IOException {
+            ProgressHandle progress = ProgressHandle.createHandle(Bundle.HashDbManager_progress_buildingBloomFilter(hashDb.getHashSetName()));
+            progress.start();
+            progress.switchToIndeterminate();
+            try {
+                File sourceFile = reader.getSourceFile();
+                long sourceLength = sourceFile.length();
+                long sourceLastModified = sourceFile.lastModified();
+                HashDbBloomFilter bloomFilter = HashDbBloomFilter.build(reader, falsePositiveRate);
+                try {
+                    bloomFilter.write(reader, sourceLength, sourceLastModified);
+                } catch (IOException ex) {
+                    logger.log(Level.WARNING, "Error saving Bloom filter of " + hashDb.getHashSetName() + " hash database", ex); //NON-NLS
+                }
+                return bloomFilter;
+            } finally {
+                progress.finish();
+            }
+        }
+    }
 }
@@ -23,6 +23,7 @@
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.File;
+import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
@@ -38,6 +39,7 @@
 import org.netbeans.spi.options.OptionsPanelController;
 import org.openide.util.NbBundle;
 import org.openide.util.NbBundle.Messages;
+import org.sleuthkit.autopsy.core.UserPreferences;
 import org.sleuthkit.autopsy.corecomponents.OptionsPanel;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import org.sleuthkit.autopsy.events.AutopsyEvent;
@@ -59,6 +61,7 @@ public final class HashLookupSettingsPanel extends IngestModuleGlobalSettingsPan
             .getMessage(HashLookupSettingsPanel.class, "HashDbConfigPanel.errorGettingPathText");
     private static final String ERROR_GETTING_INDEX_STATUS_TEXT = NbBundle
             .getMessage(HashLookupSettingsPanel.class, "HashDbConfigPanel.errorGettingIndexStatusText");
+    private static final double[] BLOOM_FILTER_FALSE_POSITIVE_RATES = {0.01, 0.001, 0.0001};
     private final HashDbManager hashSetManager = HashDbManager.getInstance();
     private final HashSetTableModel hashSetTableModel = new HashSetTableModel();
 
@@ -100,6 +103,11 @@ public void valueChanged(ListSelectionEvent e) {
                 }
             }
         });
+        NumberFormat percentFormat = NumberFormat.getPercentInstance();
+        percentFormat.setMaximumFractionDigits(2);
+        for (double rate : BLOOM_FILTER_FALSE_POSITIVE_RATES) {
+            bloomFilterFalsePositiveRateComboBox.addItem(percentFormat.format(rate));
+        }
     }
 
     private void updateComponents() {
@@ -126,6 +134,7 @@ private void updateComponentsForNoSelection() {
         indexButton.setText(NbBundle.getMessage(this.getClass(), "HashDbConfigPanel.indexButtonText.index"));
         indexButton.setEnabled(false);
         addHashesToDatabaseButton.setEnabled(false);
+        rebuildBloomFilterButton.setEnabled(false);
 
         // Update ingest options.
         sendIngestMessagesCheckBox.setSelected(false);
@@ -216,6 +225,15 @@ private void updateComponentsForSelection(HashDb db) {
             indexButton.setEnabled(false);
         }
 
+        // Update Bloom filter components.
+        try {
+            rebuildBloomFilterButton.setEnabled(!ingestIsRunning && useBloomFilterCheckBox.isSelected()
+                    && !db.isIndexing() && db.hasIndex() && !db.isBloomFilterPending());
+        } catch (TskCoreException ex) {
+            Logger.getLogger(HashLookupSettingsPanel.class.getName()).log(Level.SEVERE, "Error getting index state of hash database", ex); //NON-NLS
+            rebuildBloomFilterButton.setEnabled(false);
+        }
+
         // Update ingest option components.        
         sendIngestMessagesCheckBox.setSelected(db.getSendIngestMessages());
         sendIngestMessagesCheckBox.setEnabled(!ingestIsRunning && db.getSearchDuringIngest() && db.getKnownFilesType().equals(KnownFilesType.KNOWN_BAD));
@@ -256,6 +274,8 @@ private boolean isLocalIngestJobEvent(PropertyChangeEvent evt) {
     @Messages({"HashLookupSettingsPanel.saveFail.message=Couldn't save hash db settings.",
         "HashLookupSettingsPanel.saveFail.title=Save Fail"})
     public void saveSettings() {
+        storeBloomFilterSettings();
+
         //Checking for for any unindexed databases
         List<HashDb> unindexed = new ArrayList<>();
         for (HashDb hashSet : hashSetManager.getAllHashSets()) {
@@ -285,10 +305,33 @@ public void saveSettings() {
 
     @Override
     public void load() {
+        useBloomFilterCheckBox.setSelected(UserPreferences.useHashDbBloomFilters());
+        double falsePositiveRate = UserPreferences.getHashDbBloomFilterFalsePositiveRate();
+        int selectedIndex = 0;
+        for (int i = 0; i < BLOOM_FILTER_FALSE_POSITIVE_RATES.length; ++i) {
+            if (Math.abs(BLOOM_FILTER_FALSE_POSITIVE_RATES[i] - falsePositiveRate) < Math.abs(BLOOM_FILTER_FALSE_POSITIVE_RATES[selectedIndex] - falsePositiveRate)) {
+                selectedIndex = i;
+            }
+        }
+        bloomFilterFalsePositiveRateComboBox.setSelectedIndex(selectedIndex);
+        bloomFilterFalsePositiveRateComboBox.setEnabled(useBloomFilterCheckBox.isSelected());
         hashSetTable.clearSelection();
         hashSetTableModel.refreshModel();
     }
 
+    /**
+     * Stores the Bloom filter settings and loads, builds or discards the Bloom
+     * filters of the hash databases accordingly.
+     */
+    private void storeBloomFilterSettings() {
+        UserPreferences.setUseHashDbBloomFilters(useBloomFilterCheckBox.isSelected());
+        int selectedIndex = bloomFilterFalsePositiveRateComboBox.getSelectedIndex();
+        if (selectedIndex >= 0) {
+            UserPreferences.setHashDbBloomFilterFalsePositiveRate(BLOOM_FILTER_FALSE_POSITIVE_RATES[selectedIndex]);
+        }
+        hashSetManager.loadBloomFilters();
+    }
+
     @Override
     public void store() {
         saveSettings();
@@ -514,6 +557,10 @@ private void initComponents() {
         indexPathLabelLabel = new javax.swing.JLabel();
         indexPathLabel = new javax.swing.JLabel();
         addHashesToDatabaseButton = new javax.swing.JButton();
+        useBloomFilterCheckBox = new javax.swing.JCheckBox();
+        bloomFilterFalsePositiveRateLabel = new javax.swing.JLabel();
+        bloomFilterFalsePositiveRateComboBox = new javax.swing.JComboBox<>();
+        rebuildBloomFilterButton = new javax.swing.JButton();
 
         jLabel2.setFont(jLabel2.getFont().deriveFont(jLabel2.getFont().getStyle() & ~java.awt.Font.BOLD, 11));
         org.openide.awt.Mnemonics.setLocalizedText(jLabel2, org.openide.util.NbBundle.getMessage(HashLookupSettingsPanel.class, "HashLookupSettingsPanel.jLabel2.text")); // NOI18N
@@ -652,6 +699,33 @@ public void actionPerformed(java.awt.event.ActionEvent evt) {
             }
         });
 
+        useBloomFilterCheckBox.setFont(useBloomFilterCheckBox.getFont().deriveFont(useBloomFilterCheckBox.getFont().getStyle() & ~java.awt.Font.BOLD, 11));
+        org.openide.awt.Mnemonics.setLocalizedText(useBloomFilterCheckBox, org.openide.util.NbBundle.getMessage(HashLookupSettingsPanel.class, "HashLookupSettingsPanel.useBloomFilterCheckBox.text")); // NOI18N
+        useBloomFilterCheckBox.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                useBloomFilterCheckBoxActionPerformed(evt);
+            }
+        });
+
+        bloomFilterFalsePositiveRateLabel.setFont(bloomFilterFalsePositiveRateLabel.getFont().deriveFont(bloomFilterFalsePositiveRateLabel.getFont().getStyle() & ~java.awt.Font.BOLD, 11));
+        org.openide.awt.Mnemonics.setLocalizedText(bloomFilterFalsePositiveRateLabel, org.openide.util.NbBundle.getMessage(HashLookupSettingsPanel.class, "HashLookupSettingsPanel.bloomFilterFalsePositiveRateLabel.text")); // NOI18N
+
+        bloomFilterFalsePositiveRateComboBox.setFont(bloomFilterFalsePositiveRateComboBox.getFont().deriveFont(bloomFilterFalsePositiveRateComboBox.getFont().getStyle() & ~java.awt.Font.BOLD, 11));
+        bloomFilterFalsePositiveRateComboBox.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                bloomFilterFalsePositiveRateComboBoxActionPerformed(evt);
+            }
+        });
+
+        rebuildBloomFilterButton.setFont(rebuildBloomFilterButton.getFont().deriveFont(rebuildBloomFilterButton.getFont().getStyle() & ~java.awt.Font.BOLD, 11));
+        org.openide.awt.Mnemonics.setLocalizedText(rebuildBloomFilterButton, org.openide.util.NbBundle.getMessage(HashLookupSettingsPanel.class, "HashLookupSettingsPanel.rebuildBloomFilterButton.text")); // NOI18N
+        rebuildBloomFilterButton.setEnabled(false);
+        rebuildBloomFilterButton.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                rebuildBloomFilterButtonActionPerformed(evt);
+            }
+        });
+
         javax.swing.GroupLayout jPanel1Layout = new javax.swing.GroupLayout(jPanel1);
         jPanel1.setLayout(jPanel1Layout);
         jPanel1Layout.setHorizontalGroup(
@@ -702,7 +776,15 @@ public void actionPerformed(java.awt.event.ActionEvent evt) {
                                         .addComponent(ingestWarningLabel))
                                     .addGroup(jPanel1Layout.createSequentialGroup()
                                         .addGap(25, 25, 25)
-                                        .addComponent(sendIngestMessagesCheckBox)))
+                                        .addGroup(jPanel1Layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+                                            .addComponent(sendIngestMessagesCheckBox)
+                                            .addComponent(useBloomFilterCheckBox)
+                                            .addGroup(jPanel1Layout.createSequentialGroup()
+                                                .addComponent(bloomFilterFalsePositiveRateLabel)
+                                                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                                                .addComponent(bloomFilterFalsePositiveRateComboBox, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                                                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                                                .addComponent(rebuildBloomFilterButton)))))
                                 .addGap(50, 50, 50))))
                     .addGroup(jPanel1Layout.createSequentialGroup()
                         .addGroup(jPanel1Layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
@@ -758,6 +840,13 @@ public void actionPerformed(java.awt.event.ActionEvent evt) {
                             .addComponent(optionsSeparator, javax.swing.GroupLayout.Alignment.TRAILING, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
                         .addGap(18, 18, 18)
                         .addComponent(sendIngestMessagesCheckBox)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(useBloomFilterCheckBox)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addGroup(jPanel1Layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                            .addComponent(bloomFilterFalsePositiveRateLabel)
+                            .addComponent(bloomFilterFalsePositiveRateComboBox, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                            .addComponent(rebuildBloomFilterButton))
                         .addGap(18, 18, 18)
                         .addComponent(ingestWarningLabel)
                         .addGap(0, 0, Short.MAX_VALUE))
@@ -809,6 +898,27 @@ private void sendIngestMessagesCheckBoxActionPerformed(java.awt.event.ActionEven
         }
     }//GEN-LAST:event_sendIngestMessagesCheckBoxActionPerformed
 
+    private void useBloomFilterCheckBoxActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_useBloomFilterCheckBoxActionPerformed
+        bloomFilterFalsePositiveRateComboBox.setEnabled(useBloomFilterCheckBox.isSelected());
+        updateComponents();
+        firePropertyChange(OptionsPanelController.PROP_CHANGED, null, null);
+    }//GEN-LAST:event_useBloomFilterCheckBoxActionPerformed
+
+    private void bloomFilterFalsePositiveRateComboBoxActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_bloomFilterFalsePositiveRateComboBoxActionPerformed
+        firePropertyChange(OptionsPanelController.PROP_CHANGED, null, null);
+    }//GEN-LAST:event_bloomFilterFalsePositiveRateComboBoxActionPerformed
+
+    private void rebuildBloomFilterButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_rebuildBloomFilterButtonActionPerformed
+        HashDb hashDb = ((HashSetTable) hashSetTable).getSelection();
+        if (hashDb != null) {
+            // The filter is built with the Bloom filter settings displayed in
+            // the panel, so store them first.
+            storeBloomFilterSettings();
+            hashSetManager.loadBloomFilter(hashDb, true);
+            updateComponents();
+        }
+    }//GEN-LAST:event_rebuildBloomFilterButtonActionPerformed
+
     private void indexButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_indexButtonActionPerformed
         final HashDb hashDb = ((HashSetTable) hashSetTable).getSelection();
         assert hashDb != null;
@@ -886,6 +996,8 @@ private void hashSetTableKeyPressed(java.awt.event.KeyEvent evt) {//GEN-FIRST:ev
 
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.JButton addHashesToDatabaseButton;
+    private javax.swing.JComboBox<String> bloomFilterFalsePositiveRateComboBox;
+    private javax.swing.JLabel bloomFilterFalsePositiveRateLabel;
     private javax.swing.JButton createDatabaseButton;
     private javax.swing.JButton deleteDatabaseButton;
     private javax.swing.JLabel hashDatabasesLabel;
@@ -913,7 +1025,9 @@ private void hashSetTableKeyPressed(java.awt.event.KeyEvent evt) {//GEN-FIRST:ev
     private javax.swing.JLabel nameLabel;
     private javax.swing.JLabel optionsLabel;
     private javax.swing.JSeparator optionsSeparator;
+    private javax.swing.JButton rebuildBloomFilterButton;
     private javax.swing.JCheckBox sendIngestMessagesCheckBox;
     private javax.swing.JLabel typeLabel;
+    private javax.swing.JCheckBox useBloomFilterCheckBox;
     // End of variables declaration//GEN-END:variables
 }
@@ -0,0 +1,203 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2016 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.modules.hashdatabase;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.logging.Level;
+import org.sleuthkit.autopsy.coreutils.Logger;
+
+/**
+ * An immutable, in-memory copy of the MD5 hashes of a hash database. The
+ * hashes are kept off-heap as a sorted array of pairs of longs (the high and
+ * low 64 bits of each 128-bit hash), so a lookup is a lock-free binary search
+ * of memory instead of a call into the native hash database code.
+ *
+ * An in-memory hash set only answers whether or not a hash is in the database.
+ * The native hash database is still needed for the details of a hit, e.g., the
+ * comments associated with a hash.
+ */
+final class InMemoryHashSet {
+
+    private static final Logger logger = Logger.getLogger(InMemoryHashSet.class.getName());
+    static final int BYTES_PER_HASH = 16;
+
+    private final LongBuffer hashes;
+    private final int hashCount;
+    private final long loadTimeMillis;
+
+    /**
+     * Loads the MD5 hashes of a hash database into memory, if they fit in the
+     * given number of bytes.
+     *
+     * The hashes are read in sorted order, so they can be copied into the set
+     * as they are read.
+     *
+     * @param databasePath The path of the hash database.
+     * @param indexPath    The path of the index of the hash database.
+     * @param maxBytes     The maximum number of bytes the hashes may occupy.
+     *
+     * @return The in-memory hash set, or null if the hashes of the database do
+     *         not fit in the given number of bytes or the database is not in
+     *         a format that can be read.
+     *
+     * @throws IOException If there is an error reading the hash database.
+     */
+    static InMemoryHashSet load(String databasePath, String indexPath, long maxBytes) throws IOException {
+        long startTime = System.currentTimeMillis();
+        HashDbHashReader reader = HashDbHashReader.create(databasePath, indexPath);
+        if (null == reader) {
+            logger.log(Level.INFO, "Hashes of {0} cannot be loaded into memory, unsupported format", databasePath); //NON-NLS
+            return null;
+        }
+
+        long maxHashCount = reader.getMaxHashCount();
+        if (maxHashCount * BYTES_PER_HASH > maxBytes || maxHashCount > Integer.MAX_VALUE / BYTES_PER_HASH) {
+            logger.log(Level.INFO, "Hashes of {0} do not fit in the in-memory lookup budget", databasePath); //NON-NLS
+            return null;
+        }
+
+        final LongBuffer hashes;
+        try {
+            hashes = ByteBuffer.allocateDirect((int) (maxHashCount * BYTES_PER_HASH)).order(ByteOrder.nativeOrder()).asLongBuffer();
+        } catch (IllegalArgumentException | OutOfMemoryError ex) {
+            logger.log(Level.WARNING, "Insufficient direct memory to load hashes of " + databasePath, ex); //NON-NLS
+            return null;
+        }
+        if (!reader.readHashes((high, low) -> appendHash(hashes, high, low))) {
+            logger.log(Level.WARNING, "Hashes of {0} cannot be loaded into memory, hashes are not sorted", databasePath); //NON-NLS
+            return null;
+        }
+        hashes.flip();
+        return new InMemoryHashSet(hashes.asReadOnlyBuffer(), System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Gets the number of bytes of memory the hashes of a hash database would
+     * occupy if they were loaded into memory.
+     *
+     * @param databasePath The path of the hash database.
+     * @param indexPath    The path of the index of the hash database.
+     *
+     * @return The size in bytes, or zero if the database is not in a format
+     *         that can be read.
+     *
+     * @throws IOException If there is an error reading the hash database.
+     */
+    static long getRequiredBytes(String databasePath, String indexPath) throws IOException {
+        HashDbHashReader reader = HashDbHashReader.create(databasePath, indexPath);
+        return null == reader ? 0 : reader.getMaxHashCount() * BYTES_PER_HASH;
+    }
+
+    private InMemoryHashSet(LongBuffer hashes, long loadTimeMillis) {
+        this.hashes = hashes;
+        this.hashCount = hashes.limit() / 2;
+        this.loadTimeMillis = loadTimeMillis;
+    }
+
+    /**
+     * Determines whether an MD5 hash is in the set.
+     *
+     * @param md5Hash The MD5 hash, as a hex string.
+     *
+     * @return True if the hash is in the set.
+     */
+    boolean contains(String md5Hash) {
+        long[] pair = new long[2];
+        if (!HashDbHashReader.parseMd5(md5Hash, pair)) {
+            return false;
+        }
+        long high = pair[0];
+        long low = pair[1];
+
+        // Absolute gets do not change the state of the buffer, so concurrent
+        // lookups do not need to be synchronized.
+        int lowIndex = 0;
+        int highIndex = hashCount - 1;
+        while (lowIndex <= highIndex) {
+            int midIndex = (lowIndex + highIndex) >>> 1;
+            int result = compare(hashes.get(2 * midIndex), hashes.get(2 * midIndex + 1), high, low);
+            if (result < 0) {
+                lowIndex = midIndex + 1;
+            } else if (result > 0) {
+                highIndex = midIndex - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the number of hashes in the set.
+     *
+     * @return The hash count.
+     */
+    int getHashCount() {
+        return hashCount;
+    }
+
+    /**
+     * Gets the number of bytes of memory reserved for the hashes in the set.
+     *
+     * @return The size in bytes.
+     */
+    long getSizeInBytes() {
+        return (long) hashes.capacity() * Long.BYTES;
+    }
+
+    /**
+     * Gets the time it took to load the set.
+     *
+     * @return The load time in milliseconds.
+     */
+    long getLoadTimeMillis() {
+        return loadTimeMillis;
+    }
+
+    private static int compare(long high1, long low1, long high2, long low2) {
+        int result = Long.compareUnsigned(high1, high2);
+        return (result != 0) ? result : Long.compareUnsigned(low1, low2);
+    }
+
+    /**
+     * Appends a hash to the hashes being loaded, skipping duplicates.
+     *
+     * @return False if there is no room for the hash or the hash is out of
+     *         order.
+     */
+    private static boolean appendHash(LongBuffer hashes, long high, long low) {
+        int position = hashes.position();
+        if (position > 0) {
+            int result = compare(hashes.get(position - 2), hashes.get(position - 1), high, low);
+            if (result == 0) {
+                return true;
+            } else if (result > 0) {
+                return false;
+            }
+        }
+        if (hashes.remaining() < 2) {
+            return false;
+        }
+        hashes.put(high).put(low);
+        return true;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2017 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.report;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import org.sleuthkit.datamodel.SleuthkitCase;
+import org.sleuthkit.datamodel.TskCoreException;
+
+/**
+ * A query of the case database whose rows are read a page at a time, for
+ * report modules that need to visit every row of a large table, such as every
+ * file in the case, without loading them all as objects.
+ *
+ * The pages are selected by the value of a unique, integer key column, so each
+ * page is a short indexed range query. The case database is only locked while
+ * a page is read, not for the whole query, and no row is ever skipped or
+ * repeated because of an offset.
+ */
+public final class PagedCaseDbQuery {
+
+    /**
+     * The default number of rows in a page.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 10000;
+
+    private final SleuthkitCase caseDb;
+    private final String columns;
+    private final String table;
+    private final String whereClause;
+    private final String keyColumn;
+    private final int pageSize;
+
+    /**
+     * Make a paged query.
+     *
+     * @param caseDb      The case database to query.
+     * @param columns     The comma separated columns to select. Must include
+     *                    the key column.
+     * @param table       The table, or comma separated tables, to select from.
+     * @param whereClause The condition rows must meet, without the WHERE
+     *                    keyword.
+     * @param keyColumn   The unique integer column that orders and divides the
+     *                    rows into pages, such as obj_id. If the column name is
+     *                    qualified by a table alias, it must also be selected
+     *                    with the unqualified name as its label.
+     * @param pageSize    The most rows to read in one page.
+     */
+    public PagedCaseDbQuery(SleuthkitCase caseDb, String columns, String table, String whereClause, String keyColumn, int pageSize) {
+        this.caseDb = caseDb;
+        this.columns = columns;
+        this.table = table;
+        this.whereClause = whereClause;
+        this.keyColumn = keyColumn;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Count the rows that meet the condition, for instance to size a progress
+     * bar before visiting them.
+     *
+     * @return The number of rows.
+     *
+     * @throws TskCoreException If there is a problem querying the case
+     *                          database.
+     */
+    @SuppressWarnings("deprecation")
+    public long getRowCount() throws TskCoreException {
+        String query = "SELECT COUNT(*) AS row_count FROM " + table + " WHERE " + whereClause; //NON-NLS
+        try (SleuthkitCase.CaseDbQuery dbQuery = caseDb.executeQuery(query)) {
+            ResultSet resultSet = dbQuery.getResultSet();
+            return resultSet.next() ? resultSet.getLong("row_count") : 0; //NON-NLS
+        } catch (SQLException ex) {
+            throw new TskCoreException("Error counting rows of paged query", ex); //NON-NLS
+        }
+    }
+
+    /**
+     * Visit every row that meets the condition, in the order of the key
+     * column.
+     *
+     * @param visitor The visitor to pass each row, and the end of each page,
+     *                to.
+     *
+     * @return The number of rows visited.
+     *
+     * @throws TskCoreException If there is a problem querying the case
+     *                          database.
+     * @throws IOException      If the visitor fails to write out a row.
+     */
+    @SuppressWarnings("deprecation")
+    public long visitRows(RowVisitor visitor) throws TskCoreException, IOException {
+        String keyLabel = keyColumn.substring(keyColumn.lastIndexOf('.') + 1);
+        long rowCount = 0;
+        Long lastKey = null;
+        while (true) {
+            String query = "SELECT " + columns + " FROM " + table //NON-NLS
+                    + " WHERE (" + whereClause + ")" //NON-NLS
+                    + (lastKey == null ? "" : " AND " + keyColumn + " > " + lastKey) //NON-NLS
+                    + " ORDER BY " + keyColumn + " ASC LIMIT " + pageSize; //NON-NLS
+
+            int pageRowCount = 0;
+            try (SleuthkitCase.CaseDbQuery dbQuery = caseDb.executeQuery(query)) {
+                ResultSet resultSet = dbQuery.getResultSet();
+                while (resultSet.next()) {
+                    visitor.visitRow(resultSet);
+                    lastKey = resultSet.getLong(keyLabel);
+                    pageRowCount++;
+                }
+            } catch (SQLException ex) {
+                throw new TskCoreException("Error reading page of paged query", ex); //NON-NLS
+            }
+
+            rowCount += pageRowCount;
+            if (pageRowCount < pageSize || visitor.endPage(pageRowCount) == false) {
+                return rowCount;
+            }
+        }
+    }
+
+    /**
+     * Receives the rows of a paged query.
+     */
+    public interface RowVisitor {
+
+        /**
+         * Visit the current row of the given result set. The result set must
+         * not be advanced or closed.
+         *
+         * @param row The result set, positioned at the row to visit.
+         *
+         * @throws SQLException If a value can not be read from the row.
+         * @throws IOException  If the row can not be written out.
+         */
+        void visitRow(ResultSet row) throws SQLException, IOException;
+
+        /**
+         * Called after each full page of rows has been visited, while the case
+         * database is not locked. This is a good place to report progress.
+         *
+         * @param pageRowCount The number of rows in the page.
+         *
+         * @return False to stop visiting rows, for instance if the report has
+         *         been cancelled.
+         */
+        default boolean endPage(int pageRowCount) {
+            return true;
+        }
+    }
+}
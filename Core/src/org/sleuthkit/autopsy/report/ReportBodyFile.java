@@ -23,9 +23,17 @@
 package org.sleuthkit.autopsy.report;
 
 import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.List;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.logging.Level;
 import javax.swing.JPanel;
 
@@ -46,6 +54,8 @@ class ReportBodyFile implements GeneralReportModule {
     private static final Logger logger = Logger.getLogger(ReportBodyFile.class.getName());
     private static ReportBodyFile instance = null;
 
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
     private Case currentCase;
     private SleuthkitCase skCase;
 
@@ -70,7 +80,6 @@ public static synchronized ReportBodyFile getDefault() {
      * @param progressPanel panel to update the report's progress
      */
     @Override
-    @SuppressWarnings("deprecation")
     public void generateReport(String baseReportDir, ReportProgressPanel progressPanel) {
         // Start the progress bar and setup the report
         progressPanel.setIndeterminate(false);
@@ -80,14 +89,18 @@ public void generateReport(String baseReportDir, ReportProgressPanel progressPan
         currentCase = Case.getCurrentCase();
         skCase = currentCase.getSleuthkitCase();
 
-        // Run query to get all files
+        // Page through the files, reading only the columns the body file
+        // needs, rather than loading every file in the case as an object.
+        // exclude non-fs files/dirs and . and .. files
+        PagedCaseDbQuery query = new PagedCaseDbQuery(skCase,
+                "obj_id, fs_obj_id, md5, parent_path, name, meta_addr, meta_type, mode, uid, gid, size, atime, mtime, ctime, crtime", //NON-NLS
+                "tsk_files", //NON-NLS
+                "type = " + TskData.TSK_DB_FILES_TYPE_ENUM.FS.getFileType() + " AND name != '.' AND name != '..'", //NON-NLS
+                "obj_id", //NON-NLS
+                PagedCaseDbQuery.DEFAULT_PAGE_SIZE);
         try {
-            // exclude non-fs files/dirs and . and .. files
-            final String query = "type = " + TskData.TSK_DB_FILES_TYPE_ENUM.FS.getFileType() //NON-NLS
-                    + " AND name != '.' AND name != '..'"; //NON-NLS
-
             progressPanel.updateStatusLabel(NbBundle.getMessage(this.getClass(), "ReportBodyFile.progress.loading"));
-            List<AbstractFile> fs = skCase.findAllFilesWhere(query);
+            long size = query.getRowCount();
 
             // Check if ingest has finished
             String ingestwarning = "";
@@ -95,83 +108,186 @@ public void generateReport(String baseReportDir, ReportProgressPanel progressPan
                 ingestwarning = NbBundle.getMessage(this.getClass(), "ReportBodyFile.ingestWarning.text");
             }
 
-            int size = fs.size();
-            progressPanel.setMaximumProgress(size / 100);
+            progressPanel.setMaximumProgress((int) (size / PagedCaseDbQuery.DEFAULT_PAGE_SIZE));
 
-            BufferedWriter out = null;
-            try {
-                // MD5|name|inode|mode_as_string|UID|GID|size|atime|mtime|ctime|crtime
-                out = new BufferedWriter(new FileWriter(reportPath, true));
+            // MD5|name|inode|mode_as_string|UID|GID|size|atime|mtime|ctime|crtime
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                    Files.newOutputStream(Paths.get(reportPath), StandardOpenOption.CREATE, StandardOpenOption.APPEND),
+                    StandardCharsets.UTF_8), WRITE_BUFFER_SIZE)) {
                 out.write(ingestwarning);
-                // Loop files and write info to report
-                int count = 0;
-                for (AbstractFile file : fs) {
-                    if (progressPanel.getStatus() == ReportStatus.CANCELED) {
-                        break;
-                    }
-                    if (count++ == 100) {
-                        progressPanel.increment();
-                        progressPanel.updateStatusLabel(
-                                NbBundle.getMessage(this.getClass(), "ReportBodyFile.progress.processing",
-                                        file.getName()));
-                        count = 0;
-                    }
-
-                    if (file.getMd5Hash() != null) {
-                        out.write(file.getMd5Hash());
-                    }
-                    out.write("|");
-                    if (file.getUniquePath() != null) {
-                        out.write(file.getUniquePath());
-                    }
-                    out.write("|");
-                    out.write(Long.toString(file.getMetaAddr()));
-                    out.write("|");
-                    String modeString = file.getModesAsString();
-                    if (modeString != null) {
-                        out.write(modeString);
-                    }
-                    out.write("|");
-                    out.write(Long.toString(file.getUid()));
-                    out.write("|");
-                    out.write(Long.toString(file.getGid()));
-                    out.write("|");
-                    out.write(Long.toString(file.getSize()));
-                    out.write("|");
-                    out.write(Long.toString(file.getAtime()));
-                    out.write("|");
-                    out.write(Long.toString(file.getMtime()));
-                    out.write("|");
-                    out.write(Long.toString(file.getCtime()));
-                    out.write("|");
-                    out.write(Long.toString(file.getCrtime()));
-                    out.write("\n");
-                }
+                query.visitRows(new BodyFileWriter(out, progressPanel));
             } catch (IOException ex) {
-                logger.log(Level.WARNING, "Could not write the temp body file report.", ex); //NON-NLS
-            } finally {
-                try {
-                    if (out != null) {
-                        out.flush();
-                        out.close();
-                        Case.getCurrentCase().addReport(reportPath,
-                                NbBundle.getMessage(this.getClass(),
-                                        "ReportBodyFile.generateReport.srcModuleName.text"), "");
-
-                    }
-                } catch (IOException ex) {
-                    logger.log(Level.WARNING, "Could not flush and close the BufferedWriter.", ex); //NON-NLS
-                } catch (TskCoreException ex) {
-                    String errorMessage = String.format("Error adding %s to case as a report", reportPath); //NON-NLS
-                    logger.log(Level.SEVERE, errorMessage, ex);
-                }
+                logger.log(Level.WARNING, "Could not write the body file report.", ex); //NON-NLS
+            }
+
+            try {
+                Case.getCurrentCase().addReport(reportPath,
+                        NbBundle.getMessage(this.getClass(),
+                                "ReportBodyFile.generateReport.srcModuleName.text"), "");
+            } catch (TskCoreException ex) {
+                String errorMessage = String.format("Error adding %s to case as a report", reportPath); //NON-NLS
+                logger.log(Level.SEVERE, errorMessage, ex);
             }
             progressPanel.complete(ReportStatus.COMPLETE);
         } catch (TskCoreException ex) {
-            logger.log(Level.WARNING, "Failed to get the unique path.", ex); //NON-NLS
+            logger.log(Level.WARNING, "Failed to query the files for the body file report.", ex); //NON-NLS
         }
     }
 
+    /**
+     * Writes a body file line for each row of the files query.
+     */
+    private class BodyFileWriter implements PagedCaseDbQuery.RowVisitor {
+
+        private final Writer out;
+        private final ReportProgressPanel progressPanel;
+
+        /**
+         * The part of the unique path of the files in each file system that
+         * comes before their parent path (the image and volume), by file
+         * system object id.
+         */
+        private final Map<Long, String> uniquePathPrefixes = new HashMap<>();
+        private String lastFileName = "";
+
+        BodyFileWriter(Writer out, ReportProgressPanel progressPanel) {
+            this.out = out;
+            this.progressPanel = progressPanel;
+        }
+
+        @Override
+        public void visitRow(ResultSet row) throws SQLException, IOException {
+            String md5 = row.getString("md5"); //NON-NLS
+            String name = row.getString("name"); //NON-NLS
+            lastFileName = name;
+
+            if (md5 != null) {
+                out.write(md5);
+            }
+            out.write("|");
+            String uniquePath = getUniquePath(row.getLong("obj_id"), row.getLong("fs_obj_id"), row.getString("parent_path"), name); //NON-NLS
+            if (uniquePath != null) {
+                out.write(uniquePath);
+            }
+            out.write("|");
+            out.write(Long.toString(row.getLong("meta_addr"))); //NON-NLS
+            out.write("|");
+            out.write(getModesAsString(row.getShort("meta_type"), row.getInt("mode"))); //NON-NLS
+            out.write("|");
+            out.write(Long.toString(row.getLong("uid"))); //NON-NLS
+            out.write("|");
+            out.write(Long.toString(row.getLong("gid"))); //NON-NLS
+            out.write("|");
+            out.write(Long.toString(row.getLong("size"))); //NON-NLS
+            out.write("|");
+            out.write(Long.toString(row.getLong("atime"))); //NON-NLS
+            out.write("|");
+            out.write(Long.toString(row.getLong("mtime"))); //NON-NLS
+            out.write("|");
+            out.write(Long.toString(row.getLong("ctime"))); //NON-NLS
+            out.write("|");
+            out.write(Long.toString(row.getLong("crtime"))); //NON-NLS
+            out.write("\n");
+        }
+
+        @Override
+        public boolean endPage(int pageRowCount) {
+            progressPanel.increment();
+            progressPanel.updateStatusLabel(
+                    NbBundle.getMessage(ReportBodyFile.class, "ReportBodyFile.progress.processing",
+                            lastFileName));
+            return progressPanel.getStatus() != ReportStatus.CANCELED;
+        }
+
+        /**
+         * Get the unique path of a file, the same as AbstractFile.getUniquePath
+         * would, without loading every file. The first file of each file system
+         * is loaded to find the part of the path for the image and volume,
+         * which is then reused for the rest of the files in the file system.
+         *
+         * @return The unique path, or null if it could not be found.
+         */
+        private String getUniquePath(long objId, long fsObjId, String parentPath, String name) {
+            String path = (parentPath == null ? "" : parentPath) + name;
+            String prefix = uniquePathPrefixes.get(fsObjId);
+            if (prefix != null) {
+                return prefix + path;
+            }
+            try {
+                AbstractFile file = skCase.getAbstractFileById(objId);
+                if (file == null) {
+                    return null;
+                }
+                String uniquePath = file.getUniquePath();
+                if (uniquePath.endsWith(path)) {
+                    uniquePathPrefixes.put(fsObjId, uniquePath.substring(0, uniquePath.length() - path.length()));
+                }
+                return uniquePath;
+            } catch (TskCoreException ex) {
+                logger.log(Level.WARNING, "Failed to get the unique path.", ex); //NON-NLS
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Format the meta type and mode of a file the way
+     * AbstractFile.getModesAsString does.
+     *
+     * @param metaType The meta type of the file.
+     * @param mode     The mode bits of the file.
+     *
+     * @return The mode string.
+     */
+    private static String getModesAsString(short metaType, int mode) {
+        StringBuilder result = new StringBuilder();
+
+        // first character = the Meta Type
+        result.append(TskData.TSK_FS_META_TYPE_ENUM.valueOf(metaType).toString());
+
+        // second and third characters = user permissions
+        result.append(isSet(mode, TskData.TSK_FS_META_MODE_ENUM.TSK_FS_META_MODE_IRUSR) ? "r" : "-");
+        result.append(isSet(mode, TskData.TSK_FS_META_MODE_ENUM.TSK_FS_META_MODE_IWUSR) ? "w" : "-");
+
+        // fourth character = set uid
+        boolean ixusr = isSet(mode, TskData.TSK_FS_META_MODE_ENUM.TSK_FS_META_MODE_IXUSR);
+        if (isSet(mode, TskData.TSK_FS_META_MODE_ENUM.TSK_FS_META_MODE_ISUID)) {
+            result.append(ixusr ? "s" : "S");
+        } else {
+            result.append(ixusr ? "x" : "-");
+        }
+
+        // fifth and sixth characters = group permissions
+        result.append(isSet(mode, TskData.TSK_FS_META_MODE_ENUM.TSK_FS_META_MODE_IRGRP) ? "r" : "-");
+        result.append(isSet(mode, TskData.TSK_FS_META_MODE_ENUM.TSK_FS_META_MODE_IWGRP) ? "w" : "-");
+
+        // seventh character = set gid
+        boolean ixgrp = isSet(mode, TskData.TSK_FS_META_MODE_ENUM.TSK_FS_META_MODE_IXGRP);
+        if (isSet(mode, TskData.TSK_FS_META_MODE_ENUM.TSK_FS_META_MODE_ISGID)) {
+            result.append(ixgrp ? "s" : "S");
+        } else {
+            result.append(ixgrp ? "x" : "-");
+        }
+
+        // eighth and ninth character = other permissions
+        result.append(isSet(mode, TskData.TSK_FS_META_MODE_ENUM.TSK_FS_META_MODE_IROTH) ? "r" : "-");
+        result.append(isSet(mode, TskData.TSK_FS_META_MODE_ENUM.TSK_FS_META_MODE_IWOTH) ? "w" : "-");
+
+        // tenth character = sticky bit
+        boolean ixoth = isSet(mode, TskData.TSK_FS_META_MODE_ENUM.TSK_FS_META_MODE_IXOTH);
+        if (isSet(mode, TskData.TSK_FS_META_MODE_ENUM.TSK_FS_META_MODE_ISVTX)) {
+            result.append(ixoth ? "t" : "T");
+        } else {
+            result.append(ixoth ? "x" : "-");
+        }
+
+        return result.toString();
+    }
+
+    private static boolean isSet(int mode, TskData.TSK_FS_META_MODE_ENUM bit) {
+        return (mode & bit.getMode()) == bit.getMode();
+    }
+
     @Override
     public String getName() {
         String name = NbBundle.getMessage(this.getClass(), "ReportBodyFile.getName.text");
@@ -21,10 +21,13 @@
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
+import org.apache.poi.ss.SpreadsheetVersion;
 import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.openide.util.NbBundle;
 import org.sleuthkit.autopsy.casemodule.Case;
 import org.sleuthkit.autopsy.coreutils.Logger;
@@ -35,15 +38,47 @@ class ReportExcel implements TableReportModule {
     private static final Logger logger = Logger.getLogger(ReportExcel.class.getName());
     private static ReportExcel instance;
 
-    private Workbook wb;
-    private Sheet sheet;
+    /**
+     * The number of rows of each sheet kept in memory. Older rows are flushed
+     * to a temporary file, so the size of the report is not limited by the
+     * heap.
+     */
+    private static final int ROW_ACCESS_WINDOW_SIZE = 500;
+
+    /**
+     * The most rows a sheet can have. When a data type has more rows than
+     * this, the rest go on continuation sheets.
+     */
+    private static final int MAX_ROWS_PER_SHEET = SpreadsheetVersion.EXCEL2007.getMaxRows();
+
+    /**
+     * The longest sheet name Excel accepts.
+     */
+    private static final int MAX_SHEET_NAME_LENGTH = 31;
+
+    /**
+     * The number of rows of a sheet the column widths are measured on. Text
+     * layout is costly, so the columns of a large sheet are sized to its first
+     * rows, not to all of them.
+     */
+    private static final int AUTO_SIZE_ROW_COUNT = 300;
+
+    private SXSSFWorkbook wb;
+    private SXSSFSheet sheet;
     private CellStyle titleStyle;
     private CellStyle setStyle;
     private CellStyle elementStyle;
     private int rowIndex = 0;
     private int sheetColCount = 0;
+    private boolean sheetColumnsSized = false;
     private String reportPath;
 
+    // The sheets of the current data type, and the column names of the
+    // current table, so they can be repeated on continuation sheets.
+    private String dataTypeSheetName;
+    private final List<SXSSFSheet> dataTypeSheets = new ArrayList<>();
+    private List<String> tableTitles;
+
     // Get the default instance of this report
     public static synchronized ReportExcel getDefault() {
         if (instance == null) {
@@ -67,8 +102,10 @@ public void startReport(String baseReportDir) {
         // Set the path and save it for when the report is written to disk.
         this.reportPath = baseReportDir + getRelativeFilePath();
 
-        // Make a workbook.
-        wb = new XSSFWorkbook();
+        // Make a workbook that only keeps a window of rows of each sheet in
+        // memory.
+        wb = new SXSSFWorkbook(ROW_ACCESS_WINDOW_SIZE);
+        wb.setCompressTempFiles(true);
 
         // Create some cell styles.
         // TODO: The commented out cell style settings below do not work as desired when
@@ -125,6 +162,8 @@ public void endReport() {
                 } catch (IOException ex) {
                 }
             }
+            // Delete the temporary files holding the flushed rows.
+            wb.dispose();
         }
     }
 
@@ -138,10 +177,10 @@ public void endReport() {
     @Override
     public void startDataType(String name, String description) {
         // Create a worksheet for the data type (assumed to be an artifact type).
-        name = escapeForExcel(name);
-        sheet = wb.createSheet(name);
-        sheet.setAutobreaks(true);
-        rowIndex = 0;
+        dataTypeSheetName = escapeForExcel(name);
+        dataTypeSheets.clear();
+        tableTitles = null;
+        createDataTypeSheet(dataTypeSheetName);
 
         // There will be at least two columns, one each for the artifacts count and its label.
         sheetColCount = 2;
@@ -152,10 +191,24 @@ public void startDataType(String name, String description) {
      */
     @Override
     public void endDataType() {
-        // Now that the sheet is complete, size the columns to the content.
+        // The full sheets were sized when they reached AUTO_SIZE_ROW_COUNT
+        // rows, only the last one may still need it.
+        if (sheetColumnsSized == false) {
+            sizeColumns();
+        }
+        dataTypeSheets.clear();
+    }
+
+    /**
+     * Size the columns of the current sheet to the rows measured so far, and
+     * stop measuring the rows added to it.
+     */
+    private void sizeColumns() {
         for (int i = 0; i < sheetColCount; ++i) {
             sheet.autoSizeColumn(i);
         }
+        sheet.untrackAllColumnsForAutoSizing();
+        sheetColumnsSized = true;
     }
 
     /**
@@ -166,10 +219,9 @@ public void endDataType() {
     @Override
     public void startSet(String setName) {
         setName = escapeForExcel(setName);
-        Row row = sheet.createRow(rowIndex);
+        Row row = createRow();
         row.setRowStyle(setStyle);
         row.createCell(0).setCellValue(setName);
-        ++rowIndex;
     }
 
     /**
@@ -178,8 +230,7 @@ public void startSet(String setName) {
     @Override
     public void endSet() {
         // Add an empty row as a separator.
-        sheet.createRow(rowIndex);
-        ++rowIndex;
+        createRow();
     }
 
     @Override
@@ -195,10 +246,9 @@ public void addSetIndex(List<String> sets) {
     @Override
     public void addSetElement(String elementName) {
         elementName = escapeForExcel(elementName);
-        Row row = sheet.createRow(rowIndex);
+        Row row = createRow();
         row.setRowStyle(elementStyle);
         row.createCell(0).setCellValue(elementName);
-        ++rowIndex;
     }
 
     /**
@@ -208,26 +258,20 @@ public void addSetElement(String elementName) {
      */
     @Override
     public void startTable(List<String> titles) {
-        int tableColCount = 0;
-        Row row = sheet.createRow(rowIndex);
-        row.setRowStyle(titleStyle);
-        for (int i = 0; i < titles.size(); i++) {
-            row.createCell(i).setCellValue(titles.get(i));
-            ++tableColCount;
-        }
-        ++rowIndex;
+        addTitleRow(titles);
+        tableTitles = titles;
 
         // Keep track of the number of columns with data in them for later column auto-sizing.
-        if (tableColCount > sheetColCount) {
-            sheetColCount = tableColCount;
+        if (titles.size() > sheetColCount) {
+            sheetColCount = titles.size();
         }
     }
 
     @Override
     public void endTable() {
+        tableTitles = null;
         // Add an empty row as a separator.
-        sheet.createRow(rowIndex);
-        ++rowIndex;
+        createRow();
     }
 
     /**
@@ -237,11 +281,56 @@ public void endTable() {
      */
     @Override
     public void addRow(List<String> rowData) {
-        Row row = sheet.createRow(rowIndex);
+        Row row = createRow();
         for (int i = 0; i < rowData.size(); ++i) {
             row.createCell(i).setCellValue(rowData.get(i));
         }
+    }
+
+    private void addTitleRow(List<String> titles) {
+        Row row = createRow();
+        row.setRowStyle(titleStyle);
+        for (int i = 0; i < titles.size(); i++) {
+            row.createCell(i).setCellValue(titles.get(i));
+        }
+    }
+
+    /**
+     * Create the next row of the current data type. If the current sheet is
+     * full, the row goes on a new continuation sheet, which starts by repeating
+     * the column names of the current table, if there is one.
+     *
+     * @return The new row.
+     */
+    private Row createRow() {
+        if (rowIndex >= MAX_ROWS_PER_SHEET) {
+            String suffix = " (" + (dataTypeSheets.size() + 1) + ")";
+            String baseName = dataTypeSheetName;
+            if (baseName.length() + suffix.length() > MAX_SHEET_NAME_LENGTH) {
+                baseName = baseName.substring(0, MAX_SHEET_NAME_LENGTH - suffix.length());
+            }
+            createDataTypeSheet(baseName + suffix);
+            if (tableTitles != null) {
+                addTitleRow(tableTitles);
+            }
+        }
+        if (rowIndex == AUTO_SIZE_ROW_COUNT && sheetColumnsSized == false) {
+            sizeColumns();
+        }
+        Row row = sheet.createRow(rowIndex);
         ++rowIndex;
+        return row;
+    }
+
+    private void createDataTypeSheet(String name) {
+        sheet = wb.createSheet(name);
+        sheet.setAutobreaks(true);
+        // Column widths have to be measured as the rows are added, since most
+        // of the rows will have been flushed by the time the sheet is done.
+        sheet.trackAllColumnsForAutoSizing();
+        sheetColumnsSized = false;
+        dataTypeSheets.add(sheet);
+        rowIndex = 0;
     }
 
     /**
@@ -286,6 +375,7 @@ private static String escapeForExcel(String text) {
 
     private void writeSummaryWorksheet() {
         sheet = wb.createSheet(NbBundle.getMessage(this.getClass(), "ReportExcel.sheetName.text"));
+        sheet.trackAllColumnsForAutoSizing();
         rowIndex = 0;
 
         Row row = sheet.createRow(rowIndex);
@@ -41,9 +41,8 @@
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.logging.Level;
-import org.openide.filesystems.FileObject;
 import org.openide.filesystems.FileUtil;
 import org.openide.util.NbBundle;
 import org.sleuthkit.autopsy.casemodule.Case;
@@ -76,9 +75,7 @@ class ReportHTML implements TableReportModule {
     private Map<String, Integer> dataTypes;
     private String path;
     private String thumbsPath;
-    private String currentDataType; // name of current data type
-    private Integer rowCount;       // number of rows (aka artifacts or tags) for the current data type
-    private Writer out;
+    private Page currentPage;       // the page written through the TableReportModule methods
 
     private final ReportBranding reportBranding;
 
@@ -100,20 +97,16 @@ private void refresh() {
         currentCase = Case.getCurrentCase();
         skCase = currentCase.getSleuthkitCase();
 
-        dataTypes = new TreeMap<>();
+        // pages may be ended by different threads
+        dataTypes = new ConcurrentSkipListMap<>();
 
         path = "";
         thumbsPath = "";
-        currentDataType = "";
-        rowCount = 0;
 
-        if (out != null) {
-            try {
-                out.close();
-            } catch (IOException ex) {
-            }
+        if (currentPage != null) {
+            currentPage.close();
         }
-        out = null;
+        currentPage = new Page();
     }
 
     /**
@@ -341,374 +334,466 @@ public void startReport(String baseReportDir) {
     @Override
     public void endReport() {
         writeNav();
-        if (out != null) {
-            try {
-                out.close();
-            } catch (IOException ex) {
-                logger.log(Level.WARNING, "Could not close the output writer when ending report.", ex); //NON-NLS
-            }
-        }
+        currentPage.close();
     }
 
     /**
-     * Start a new HTML page for the given data type. Update the output stream
-     * to this page, and setup the web page header. Note: This method is a
-     * temporary workaround to avoid modifying the TableReportModule interface.
+     * Make a writer for a new page of this report. Each page has its own
+     * output stream, so different pages can be written by different threads
+     * at the same time. The data type of the page is added to the navigation
+     * menu when the page is ended.
      *
-     * @param name    Name of the data type
-     * @param comment Comment on the data type, may be the empty string
+     * @return The page writer.
      */
+    Page newPage() {
+        return new Page();
+    }
+
     @Override
     public void startDataType(String name, String description) {
-        String title = dataTypeToFileName(name);
-        try {
-            out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(path + title + ".html"), "UTF-8")); //NON-NLS
-        } catch (FileNotFoundException ex) {
-            logger.log(Level.SEVERE, "File not found: {0}", ex); //NON-NLS
-        } catch (UnsupportedEncodingException ex) {
-            logger.log(Level.SEVERE, "Unrecognized encoding"); //NON-NLS
-        }
-
-        try {
-            StringBuilder page = new StringBuilder();
-            page.append("<html>\n<head>\n\t<title>").append(name).append("</title>\n\t<link rel=\"stylesheet\" type=\"text/css\" href=\"index.css\" />\n<meta http-equiv=\"Content-Type\" content=\"text/html; charset=utf-8\">\n</head>\n<body>\n"); //NON-NLS
-            page.append("<div id=\"header\">").append(name).append("</div>\n<div id=\"content\">\n"); //NON-NLS
-            if (!description.isEmpty()) {
-                page.append("<p><strong>"); //NON-NLS
-                page.append(description);
-                page.append("</string></p>\n"); //NON-NLS
-            }
-            out.write(page.toString());
-            currentDataType = name;
-            rowCount = 0;
-        } catch (IOException ex) {
-            logger.log(Level.SEVERE, "Failed to write page head: {0}", ex); //NON-NLS
-        }
+        currentPage.startDataType(name, description);
     }
 
-    /**
-     * End the current data type. Write the end of the web page and close the
-     * output stream.
-     */
     @Override
     public void endDataType() {
-        dataTypes.put(currentDataType, rowCount);
-        try {
-            out.write("</div>\n</body>\n</html>\n"); //NON-NLS
-        } catch (IOException ex) {
-            logger.log(Level.SEVERE, "Failed to write end of HTML report.", ex); //NON-NLS
-        } finally {
-            if (out != null) {
-                try {
-                    out.flush();
-                    out.close();
-                } catch (IOException ex) {
-                    logger.log(Level.WARNING, "Could not close the output writer when ending data type.", ex); //NON-NLS
-                }
-                out = null;
-            }
-        }
+        currentPage.endDataType();
     }
 
-    /**
-     * Start a new set under the current data type.
-     *
-     * @param setName name of the new set
-     */
     @Override
     public void startSet(String setName) {
-        StringBuilder set = new StringBuilder();
-        set.append("<h1><a name=\"").append(setName).append("\">").append(setName).append("</a></h1>\n"); //NON-NLS
-        set.append("<div class=\"keyword_list\">\n"); //NON-NLS
-
-        try {
-            out.write(set.toString());
-        } catch (IOException ex) {
-            logger.log(Level.SEVERE, "Failed to write set: {0}", ex); //NON-NLS
-        }
+        currentPage.startSet(setName);
     }
 
-    /**
-     * End the current set.
-     */
     @Override
     public void endSet() {
-        try {
-            out.write("</div>\n"); //NON-NLS
-        } catch (IOException ex) {
-            logger.log(Level.SEVERE, "Failed to write end of set: {0}", ex); //NON-NLS
-        }
+        currentPage.endSet();
     }
 
-    /**
-     * Add an index to the current page for all the sets about to be added.
-     *
-     * @param sets list of set names to be added
-     */
     @Override
     public void addSetIndex(List<String> sets) {
-        StringBuilder index = new StringBuilder();
-        index.append("<ul>\n"); //NON-NLS
-        for (String set : sets) {
-            index.append("\t<li><a href=\"#").append(set).append("\">").append(set).append("</a></li>\n"); //NON-NLS
-        }
-        index.append("</ul>\n"); //NON-NLS
-        try {
-            out.write(index.toString());
-        } catch (IOException ex) {
-            logger.log(Level.SEVERE, "Failed to add set index: {0}", ex); //NON-NLS
-        }
+        currentPage.addSetIndex(sets);
     }
 
-    /**
-     * Add a new element to the current set.
-     *
-     * @param elementName name of the element
-     */
     @Override
     public void addSetElement(String elementName) {
-        try {
-            out.write("<h4>" + elementName + "</h4>\n"); //NON-NLS
-        } catch (IOException ex) {
-            logger.log(Level.SEVERE, "Failed to write set element: {0}", ex); //NON-NLS
-        }
+        currentPage.addSetElement(elementName);
     }
 
-    /**
-     * Start a new table with the given column titles.
-     *
-     * @param titles column titles
-     */
     @Override
     public void startTable(List<String> titles) {
-        StringBuilder ele = new StringBuilder();
-        ele.append("<table>\n<thead>\n\t<tr>\n"); //NON-NLS
-        for (String title : titles) {
-            ele.append("\t\t<th>").append(title).append("</th>\n"); //NON-NLS
-        }
-        ele.append("\t</tr>\n</thead>\n"); //NON-NLS
-
-        try {
-            out.write(ele.toString());
-        } catch (IOException ex) {
-            logger.log(Level.SEVERE, "Failed to write table start: {0}", ex); //NON-NLS
-        }
+        currentPage.startTable(titles);
     }
 
-    /**
-     * Start a new table with the given column headers. Note: This method is a
-     * temporary workaround to avoid modifying the TableReportModule interface.
-     *
-     * @param columnHeaders  column headers
-     * @param sourceArtifact source blackboard artifact for the table data
-     */
     public void startContentTagsTable(List<String> columnHeaders) {
-        StringBuilder htmlOutput = new StringBuilder();
-        htmlOutput.append("<table>\n<thead>\n\t<tr>\n"); //NON-NLS
+        currentPage.startContentTagsTable(columnHeaders);
+    }
 
-        // Add the specified columns.
-        for (String columnHeader : columnHeaders) {
-            htmlOutput.append("\t\t<th>").append(columnHeader).append("</th>\n"); //NON-NLS
-        }
+    @Override
+    public void endTable() {
+        currentPage.endTable();
+    }
 
-        // Add a column for a hyperlink to a local copy of the tagged content.
-        htmlOutput.append("\t\t<th></th>\n"); //NON-NLS
+    @Override
+    public void addRow(List<String> row) {
+        currentPage.addRow(row);
+    }
 
-        htmlOutput.append("\t</tr>\n</thead>\n"); //NON-NLS
+    public void addRowWithTaggedContentHyperlink(List<String> row, ContentTag contentTag) {
+        currentPage.addRowWithTaggedContentHyperlink(row, contentTag);
+    }
 
-        try {
-            out.write(htmlOutput.toString());
-        } catch (IOException ex) {
-            logger.log(Level.SEVERE, "Failed to write table start: {0}", ex); //NON-NLS
-        }
+    public void addThumbnailRows(List<Content> images) {
+        currentPage.addThumbnailRows(images);
     }
 
     /**
-     * End the current table.
+     * Writes one page of the report, for one data type.
      */
-    @Override
-    public void endTable() {
-        try {
-            out.write("</table>\n"); //NON-NLS
-        } catch (IOException ex) {
-            logger.log(Level.SEVERE, "Failed to write end of table: {0}", ex); //NON-NLS
+    class Page implements TableReportPage {
+
+        private String currentDataType = ""; // name of current data type
+        private Integer rowCount = 0;        // number of rows (aka artifacts or tags) for the current data type
+        private Writer out;
+
+        /**
+         * Start a new HTML page for the given data type. Update the output stream
+         * to this page, and setup the web page header. Note: This method is a
+         * temporary workaround to avoid modifying the TableReportModule interface.
+         *
+         * @param name    Name of the data type
+         * @param comment Comment on the data type, may be the empty string
+         */
+        @Override
+        public void startDataType(String name, String description) {
+            String title = dataTypeToFileName(name);
+            try {
+                out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(path + title + ".html"), "UTF-8")); //NON-NLS
+            } catch (FileNotFoundException ex) {
+                logger.log(Level.SEVERE, "File not found: {0}", ex); //NON-NLS
+            } catch (UnsupportedEncodingException ex) {
+                logger.log(Level.SEVERE, "Unrecognized encoding"); //NON-NLS
+            }
+
+            try {
+                StringBuilder page = new StringBuilder();
+                page.append("<html>\n<head>\n\t<title>").append(name).append("</title>\n\t<link rel=\"stylesheet\" type=\"text/css\" href=\"index.css\" />\n<meta http-equiv=\"Content-Type\" content=\"text/html; charset=utf-8\">\n</head>\n<body>\n"); //NON-NLS
+                page.append("<div id=\"header\">").append(name).append("</div>\n<div id=\"content\">\n"); //NON-NLS
+                if (!description.isEmpty()) {
+                    page.append("<p><strong>"); //NON-NLS
+                    page.append(description);
+                    page.append("</string></p>\n"); //NON-NLS
+                }
+                out.write(page.toString());
+                currentDataType = name;
+                rowCount = 0;
+            } catch (IOException ex) {
+                logger.log(Level.SEVERE, "Failed to write page head: {0}", ex); //NON-NLS
+            }
         }
-    }
 
-    /**
-     * Add a row to the current table.
-     *
-     * @param row values for each cell in the row
-     */
-    @Override
-    public void addRow(List<String> row) {
-        StringBuilder builder = new StringBuilder();
-        builder.append("\t<tr>\n"); //NON-NLS
-        for (String cell : row) {
-            builder.append("\t\t<td>").append(cell).append("</td>\n"); //NON-NLS
+        /**
+         * End the current data type. Write the end of the web page and close the
+         * output stream.
+         */
+        @Override
+        public void endDataType() {
+            dataTypes.put(currentDataType, rowCount);
+            try {
+                out.write("</div>\n</body>\n</html>\n"); //NON-NLS
+            } catch (IOException ex) {
+                logger.log(Level.SEVERE, "Failed to write end of HTML report.", ex); //NON-NLS
+            } finally {
+                if (out != null) {
+                    try {
+                        out.flush();
+                        out.close();
+                    } catch (IOException ex) {
+                        logger.log(Level.WARNING, "Could not close the output writer when ending data type.", ex); //NON-NLS
+                    }
+                    out = null;
+                }
+            }
         }
-        builder.append("\t</tr>\n"); //NON-NLS
-        rowCount++;
 
-        try {
-            out.write(builder.toString());
-        } catch (IOException ex) {
-            logger.log(Level.SEVERE, "Failed to write row to out.", ex); //NON-NLS
-        } catch (NullPointerException ex) {
-            logger.log(Level.SEVERE, "Output writer is null. Page was not initialized before writing.", ex); //NON-NLS
+        /**
+         * Start a new set under the current data type.
+         *
+         * @param setName name of the new set
+         */
+        @Override
+        public void startSet(String setName) {
+            StringBuilder set = new StringBuilder();
+            set.append("<h1><a name=\"").append(setName).append("\">").append(setName).append("</a></h1>\n"); //NON-NLS
+            set.append("<div class=\"keyword_list\">\n"); //NON-NLS
+
+            try {
+                out.write(set.toString());
+            } catch (IOException ex) {
+                logger.log(Level.SEVERE, "Failed to write set: {0}", ex); //NON-NLS
+            }
         }
-    }
 
-    /**
-     * Saves a local copy of a tagged file and adds a row with a hyper link to
-     * the file. The content of the hyperlink is provided in linkHTMLContent.
-     *
-     * @param row             Values for each data cell in the row
-     * @param file            The file to link to in the report.
-     * @param tagName         the name of the tag that the content was flagged
-     *                        by
-     * @param linkHTMLContent the html that will be the body of the link
-     */
-    public void addRowWithTaggedContentHyperlink(List<String> row, ContentTag contentTag) {
-        Content content = contentTag.getContent();
-        if (content instanceof AbstractFile == false) {
-            addRow(row);
-            return;
+        /**
+         * End the current set.
+         */
+        @Override
+        public void endSet() {
+            try {
+                out.write("</div>\n"); //NON-NLS
+            } catch (IOException ex) {
+                logger.log(Level.SEVERE, "Failed to write end of set: {0}", ex); //NON-NLS
+            }
         }
-        AbstractFile file = (AbstractFile) content;
-        // Add the hyperlink to the row. A column header for it was created in startTable().
-        StringBuilder localFileLink = new StringBuilder();
-        // Don't make a local copy of the file if it is a directory or unallocated space.
-        if (!(file.isDir()
-                || file.getType() == TSK_DB_FILES_TYPE_ENUM.UNALLOC_BLOCKS
-                || file.getType() == TSK_DB_FILES_TYPE_ENUM.UNUSED_BLOCKS)) {
-            localFileLink.append("<a href=\""); //NON-NLS
-            // save it in a folder based on the tag name
-            String localFilePath = saveContent(file, contentTag.getName().getDisplayName());
-            localFileLink.append(localFilePath);
-            localFileLink.append("\" target=\"_top\">");
+
+        /**
+         * Add an index to the current page for all the sets about to be added.
+         *
+         * @param sets list of set names to be added
+         */
+        @Override
+        public void addSetIndex(List<String> sets) {
+            StringBuilder index = new StringBuilder();
+            index.append("<ul>\n"); //NON-NLS
+            for (String set : sets) {
+                index.append("\t<li><a href=\"#").append(set).append("\">").append(set).append("</a></li>\n"); //NON-NLS
+            }
+            index.append("</ul>\n"); //NON-NLS
+            try {
+                out.write(index.toString());
+            } catch (IOException ex) {
+                logger.log(Level.SEVERE, "Failed to add set index: {0}", ex); //NON-NLS
+            }
         }
 
-        StringBuilder builder = new StringBuilder();
-        builder.append("\t<tr>\n"); //NON-NLS
-        int positionCounter = 0;
-        for (String cell : row) {
-            // position-dependent code used to format this report. Not great, but understandable for formatting.
-            if (positionCounter == 1) { // Convert the file name to a hyperlink and left-align it
-                builder.append("\t\t<td class=\"left_align_cell\">").append(localFileLink.toString()).append(cell).append("</a></td>\n"); //NON-NLS
-            } else if (positionCounter == 7) { // Right-align the bytes column.
-                builder.append("\t\t<td class=\"right_align_cell\">").append(cell).append("</td>\n"); //NON-NLS
-            } else { // Regular case, not a file name nor a byte count
-                builder.append("\t\t<td>").append(cell).append("</td>\n"); //NON-NLS
+        /**
+         * Add a new element to the current set.
+         *
+         * @param elementName name of the element
+         */
+        @Override
+        public void addSetElement(String elementName) {
+            try {
+                out.write("<h4>" + elementName + "</h4>\n"); //NON-NLS
+            } catch (IOException ex) {
+                logger.log(Level.SEVERE, "Failed to write set element: {0}", ex); //NON-NLS
             }
-            ++positionCounter;
         }
-        builder.append("\t</tr>\n"); //NON-NLS
-        rowCount++;
 
-        try {
-            out.write(builder.toString());
-        } catch (IOException ex) {
-            logger.log(Level.SEVERE, "Failed to write row to out.", ex); //NON-NLS
-        } catch (NullPointerException ex) {
-            logger.log(Level.SEVERE, "Output writer is null. Page was not initialized before writing.", ex); //NON-NLS
+        /**
+         * Start a new table with the given column titles.
+         *
+         * @param titles column titles
+         */
+        @Override
+        public void startTable(List<String> titles) {
+            StringBuilder ele = new StringBuilder();
+            ele.append("<table>\n<thead>\n\t<tr>\n"); //NON-NLS
+            for (String title : titles) {
+                ele.append("\t\t<th>").append(title).append("</th>\n"); //NON-NLS
+            }
+            ele.append("\t</tr>\n</thead>\n"); //NON-NLS
+
+            try {
+                out.write(ele.toString());
+            } catch (IOException ex) {
+                logger.log(Level.SEVERE, "Failed to write table start: {0}", ex); //NON-NLS
+            }
         }
-    }
 
-    /**
-     * Add the body of the thumbnails table.
-     *
-     * @param images
-     */
-    public void addThumbnailRows(List<Content> images) {
-        List<String> currentRow = new ArrayList<>();
-        int totalCount = 0;
-        int pages = 0;
-        for (Content content : images) {
-            if (currentRow.size() == THUMBNAIL_COLUMNS) {
-                addRow(currentRow);
-                currentRow.clear();
+        /**
+         * Start a new table with the given column headers. Note: This method is a
+         * temporary workaround to avoid modifying the TableReportModule interface.
+         *
+         * @param columnHeaders  column headers
+         * @param sourceArtifact source blackboard artifact for the table data
+         */
+        public void startContentTagsTable(List<String> columnHeaders) {
+            StringBuilder htmlOutput = new StringBuilder();
+            htmlOutput.append("<table>\n<thead>\n\t<tr>\n"); //NON-NLS
+
+            // Add the specified columns.
+            for (String columnHeader : columnHeaders) {
+                htmlOutput.append("\t\t<th>").append(columnHeader).append("</th>\n"); //NON-NLS
             }
 
-            if (totalCount == MAX_THUMBS_PER_PAGE) {
-                // manually set the row count so the count of items shown in the
-                // navigation page reflects the number of thumbnails instead of
-                // the number of rows.
-                rowCount = totalCount;
-                totalCount = 0;
-                pages++;
-                endTable();
-                endDataType();
-                startDataType(NbBundle.getMessage(this.getClass(), "ReportHTML.addThumbRows.dataType.title", pages),
-                        NbBundle.getMessage(this.getClass(), "ReportHTML.addThumbRows.dataType.msg"));
-                List<String> emptyHeaders = new ArrayList<>();
-                for (int i = 0; i < THUMBNAIL_COLUMNS; i++) {
-                    emptyHeaders.add("");
-                }
-                startTable(emptyHeaders);
+            // Add a column for a hyperlink to a local copy of the tagged content.
+            htmlOutput.append("\t\t<th></th>\n"); //NON-NLS
+
+            htmlOutput.append("\t</tr>\n</thead>\n"); //NON-NLS
+
+            try {
+                out.write(htmlOutput.toString());
+            } catch (IOException ex) {
+                logger.log(Level.SEVERE, "Failed to write table start: {0}", ex); //NON-NLS
+            }
+        }
+
+        /**
+         * End the current table.
+         */
+        @Override
+        public void endTable() {
+            try {
+                out.write("</table>\n"); //NON-NLS
+            } catch (IOException ex) {
+                logger.log(Level.SEVERE, "Failed to write end of table: {0}", ex); //NON-NLS
             }
+        }
+
+        /**
+         * Add a row to the current table.
+         *
+         * @param row values for each cell in the row
+         */
+        @Override
+        public void addRow(List<String> row) {
+            StringBuilder builder = new StringBuilder();
+            builder.append("\t<tr>\n"); //NON-NLS
+            for (String cell : row) {
+                builder.append("\t\t<td>").append(cell).append("</td>\n"); //NON-NLS
+            }
+            builder.append("\t</tr>\n"); //NON-NLS
+            rowCount++;
 
-            if (failsContentCheck(content)) {
-                continue;
+            try {
+                out.write(builder.toString());
+            } catch (IOException ex) {
+                logger.log(Level.SEVERE, "Failed to write row to out.", ex); //NON-NLS
+            } catch (NullPointerException ex) {
+                logger.log(Level.SEVERE, "Output writer is null. Page was not initialized before writing.", ex); //NON-NLS
             }
+        }
 
+        /**
+         * Saves a local copy of a tagged file and adds a row with a hyper link to
+         * the file. The content of the hyperlink is provided in linkHTMLContent.
+         *
+         * @param row             Values for each data cell in the row
+         * @param file            The file to link to in the report.
+         * @param tagName         the name of the tag that the content was flagged
+         *                        by
+         * @param linkHTMLContent the html that will be the body of the link
+         */
+        public void addRowWithTaggedContentHyperlink(List<String> row, ContentTag contentTag) {
+            Content content = contentTag.getContent();
+            if (content instanceof AbstractFile == false) {
+                addRow(row);
+                return;
+            }
             AbstractFile file = (AbstractFile) content;
+            // Add the hyperlink to the row. A column header for it was created in startTable().
+            StringBuilder localFileLink = new StringBuilder();
+            // Don't make a local copy of the file if it is a directory or unallocated space.
+            if (!(file.isDir()
+                    || file.getType() == TSK_DB_FILES_TYPE_ENUM.UNALLOC_BLOCKS
+                    || file.getType() == TSK_DB_FILES_TYPE_ENUM.UNUSED_BLOCKS)) {
+                localFileLink.append("<a href=\""); //NON-NLS
+                // save it in a folder based on the tag name
+                String localFilePath = saveContent(file, contentTag.getName().getDisplayName());
+                localFileLink.append(localFilePath);
+                localFileLink.append("\" target=\"_top\">");
+            }
 
-            // save copies of the orginal image and thumbnail image
-            String thumbnailPath = prepareThumbnail(file);
-            if (thumbnailPath == null) {
-                continue;
+            StringBuilder builder = new StringBuilder();
+            builder.append("\t<tr>\n"); //NON-NLS
+            int positionCounter = 0;
+            for (String cell : row) {
+                // position-dependent code used to format this report. Not great, but understandable for formatting.
+                if (positionCounter == 1) { // Convert the file name to a hyperlink and left-align it
+                    builder.append("\t\t<td class=\"left_align_cell\">").append(localFileLink.toString()).append(cell).append("</a></td>\n"); //NON-NLS
+                } else if (positionCounter == 7) { // Right-align the bytes column.
+                    builder.append("\t\t<td class=\"right_align_cell\">").append(cell).append("</td>\n"); //NON-NLS
+                } else { // Regular case, not a file name nor a byte count
+                    builder.append("\t\t<td>").append(cell).append("</td>\n"); //NON-NLS
+                }
+                ++positionCounter;
             }
-            String contentPath = saveContent(file, "thumbs_fullsize"); //NON-NLS
-            String nameInImage;
+            builder.append("\t</tr>\n"); //NON-NLS
+            rowCount++;
+
             try {
-                nameInImage = file.getUniquePath();
-            } catch (TskCoreException ex) {
-                nameInImage = file.getName();
+                out.write(builder.toString());
+            } catch (IOException ex) {
+                logger.log(Level.SEVERE, "Failed to write row to out.", ex); //NON-NLS
+            } catch (NullPointerException ex) {
+                logger.log(Level.SEVERE, "Output writer is null. Page was not initialized before writing.", ex); //NON-NLS
             }
+        }
 
-            StringBuilder linkToThumbnail = new StringBuilder();
-            linkToThumbnail.append("<a href=\""); //NON-NLS
-            linkToThumbnail.append(contentPath);
-            linkToThumbnail.append("\">");
-            linkToThumbnail.append("<img src=\"").append(thumbnailPath).append("\" title=\"").append(nameInImage).append("\"/>"); //NON-NLS
-            linkToThumbnail.append("</a><br>"); //NON-NLS
-            linkToThumbnail.append(file.getName()).append("<br>"); //NON-NLS
+        /**
+         * Add the body of the thumbnails table.
+         *
+         * @param images
+         */
+        public void addThumbnailRows(List<Content> images) {
+            List<String> currentRow = new ArrayList<>();
+            int totalCount = 0;
+            int pages = 0;
+            for (Content content : images) {
+                if (currentRow.size() == THUMBNAIL_COLUMNS) {
+                    addRow(currentRow);
+                    currentRow.clear();
+                }
 
-            Services services = currentCase.getServices();
-            TagsManager tagsManager = services.getTagsManager();
-            try {
-                List<ContentTag> tags = tagsManager.getContentTagsByContent(content);
-                if (tags.size() > 0) {
-                    linkToThumbnail.append(NbBundle.getMessage(this.getClass(), "ReportHTML.thumbLink.tags"));
+                if (totalCount == MAX_THUMBS_PER_PAGE) {
+                    // manually set the row count so the count of items shown in the
+                    // navigation page reflects the number of thumbnails instead of
+                    // the number of rows.
+                    rowCount = totalCount;
+                    totalCount = 0;
+                    pages++;
+                    endTable();
+                    endDataType();
+                    startDataType(NbBundle.getMessage(this.getClass(), "ReportHTML.addThumbRows.dataType.title", pages),
+                            NbBundle.getMessage(this.getClass(), "ReportHTML.addThumbRows.dataType.msg"));
+                    List<String> emptyHeaders = new ArrayList<>();
+                    for (int i = 0; i < THUMBNAIL_COLUMNS; i++) {
+                        emptyHeaders.add("");
+                    }
+                    startTable(emptyHeaders);
+                }
+
+                if (failsContentCheck(content)) {
+                    continue;
+                }
+
+                AbstractFile file = (AbstractFile) content;
+
+                // save copies of the orginal image and thumbnail image
+                String thumbnailPath = prepareThumbnail(file);
+                if (thumbnailPath == null) {
+                    continue;
+                }
+                String contentPath = saveContent(file, "thumbs_fullsize"); //NON-NLS
+                String nameInImage;
+                try {
+                    nameInImage = file.getUniquePath();
+                } catch (TskCoreException ex) {
+                    nameInImage = file.getName();
                 }
-                for (int i = 0; i < tags.size(); i++) {
-                    ContentTag tag = tags.get(i);
-                    linkToThumbnail.append(tag.getName().getDisplayName());
-                    if (i != tags.size() - 1) {
-                        linkToThumbnail.append(", ");
+
+                StringBuilder linkToThumbnail = new StringBuilder();
+                linkToThumbnail.append("<a href=\""); //NON-NLS
+                linkToThumbnail.append(contentPath);
+                linkToThumbnail.append("\">");
+                linkToThumbnail.append("<img src=\"").append(thumbnailPath).append("\" title=\"").append(nameInImage).append("\"/>"); //NON-NLS
+                linkToThumbnail.append("</a><br>"); //NON-NLS
+                linkToThumbnail.append(file.getName()).append("<br>"); //NON-NLS
+
+                Services services = currentCase.getServices();
+                TagsManager tagsManager = services.getTagsManager();
+                try {
+                    List<ContentTag> tags = tagsManager.getContentTagsByContent(content);
+                    if (tags.size() > 0) {
+                        linkToThumbnail.append(NbBundle.getMessage(this.getClass(), "ReportHTML.thumbLink.tags"));
                     }
+                    for (int i = 0; i < tags.size(); i++) {
+                        ContentTag tag = tags.get(i);
+                        linkToThumbnail.append(tag.getName().getDisplayName());
+                        if (i != tags.size() - 1) {
+                            linkToThumbnail.append(", ");
+                        }
+                    }
+                } catch (TskCoreException ex) {
+                    logger.log(Level.WARNING, "Could not find get tags for file.", ex); //NON-NLS
                 }
-            } catch (TskCoreException ex) {
-                logger.log(Level.WARNING, "Could not find get tags for file.", ex); //NON-NLS
+
+                currentRow.add(linkToThumbnail.toString());
+
+                totalCount++;
             }
 
-            currentRow.add(linkToThumbnail.toString());
+            if (currentRow.isEmpty() == false) {
+                int extraCells = THUMBNAIL_COLUMNS - currentRow.size();
+                for (int i = 0; i < extraCells; i++) {
+                    // Finish out the row.
+                    currentRow.add("");
+                }
+                addRow(currentRow);
+            }
 
-            totalCount++;
+            // manually set rowCount to be the total number of images.
+            rowCount = totalCount;
         }
 
-        if (currentRow.isEmpty() == false) {
-            int extraCells = THUMBNAIL_COLUMNS - currentRow.size();
-            for (int i = 0; i < extraCells; i++) {
-                // Finish out the row.
-                currentRow.add("");
+        /**
+         * Close the output stream of this page, if it is open.
+         */
+        private void close() {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ex) {
+                    logger.log(Level.WARNING, "Could not close the output writer of page.", ex); //NON-NLS
+                }
+                out = null;
             }
-            addRow(currentRow);
         }
 
-        // manually set rowCount to be the total number of images.
-        rowCount = totalCount;
+        @Override
+        public String dateToString(long date) {
+            return ReportHTML.this.dateToString(date);
+        }
     }
 
     private boolean failsContentCheck(Content c) {
@@ -1128,24 +1213,18 @@ private void writeSummary() {
     }
 
     private String prepareThumbnail(AbstractFile file) {
-        File thumbFile = ImageUtils.getCachedThumbnailFile(file, ImageUtils.ICON_SIZE_MEDIUM);
-        if (thumbFile.exists() == false) {
+        byte[] thumbnail = ImageUtils.getThumbnailData(file, ImageUtils.ICON_SIZE_MEDIUM);
+        if (thumbnail == null) {
             return null;
         }
-        File to = new File(thumbsPath);
-        FileObject from = FileUtil.toFileObject(thumbFile);
-        FileObject dest = FileUtil.toFileObject(to);
+        String thumbName = file.getId() + ".png"; //NON-NLS
         try {
-            FileUtil.copyFile(from, dest, thumbFile.getName(), "");
+            Files.write(Paths.get(thumbsPath, thumbName), thumbnail);
         } catch (IOException ex) {
             logger.log(Level.SEVERE, "Failed to write thumb file to report directory.", ex); //NON-NLS
-        } catch (NullPointerException ex) {
-            logger.log(Level.SEVERE, "NPE generated from FileUtil.copyFile, probably because FileUtil.toFileObject returned null. \n" +
-                    "The File argument for toFileObject was " + thumbFile + " with toString: " + thumbFile.toString() + "\n" +
-                    "The FileObject returned by toFileObject, passed into FileUtil.copyFile, was " + from, ex);
         }
 
-        return THUMBS_REL_PATH + thumbFile.getName();
+        return THUMBS_REL_PATH + thumbName;
     }
 
 }
@@ -19,24 +19,43 @@
  */
 package org.sleuthkit.autopsy.report;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.awt.EventQueue;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.swing.JPanel;
 
+import org.apache.commons.lang3.StringUtils;
 import org.openide.util.NbBundle;
 import org.sleuthkit.autopsy.casemodule.Case;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import org.sleuthkit.datamodel.*;
 import org.sleuthkit.autopsy.ingest.IngestManager;
 import org.sleuthkit.datamodel.BlackboardArtifact;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
-import org.jdom2.Document;
 import org.jdom2.Element;
 import org.jdom2.Namespace;
 import org.jdom2.output.Format;
@@ -46,6 +65,11 @@
 
 /**
  * Generates a KML file based on geospatial information from the BlackBoard.
+ *
+ * Each folder of the KML file, one per type of geospatial artifact, is written
+ * to its own temporary file by a pool of workers, reading the artifacts a page
+ * at a time. The folders are then joined, in order, into the KML file, so the
+ * whole document is never held in memory.
  */
 class ReportKML implements GeneralReportModule {
 
@@ -53,12 +77,21 @@ class ReportKML implements GeneralReportModule {
     private static final String KML_STYLE_FILE = "style.kml";
     private static final String REPORT_KML = "ReportKML.kml";
     private static final String STYLESHEETS_PATH = "/org/sleuthkit/autopsy/report/stylesheets/";
+    private static final String KML_NAMESPACE = "http://www.opengis.net/kml/2.2"; //NON-NLS
+    private static final int MAX_FOLDER_WRITERS = Math.min(4, Runtime.getRuntime().availableProcessors());
+    private static final int ARTIFACT_PAGE_SIZE = 1000;
     private static ReportKML instance = null;
     private Case currentCase;
     private SleuthkitCase skCase;
     private final SimpleDateFormat kmlDateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssX");
-    private Namespace ns;
+    /*
+     * The elements are written out one at a time inside the kml element, which
+     * declares the KML namespace as the default, so they are made without a
+     * namespace of their own.
+     */
+    private final Namespace ns = Namespace.NO_NAMESPACE;
     private final String SEP = "<br>";
+    private ReportKMLConfigPanel configPanel;
 
     private enum FeatureColor {
         RED("style.kml#redFeature"),
@@ -107,75 +140,19 @@ public void generateReport(String baseReportDir, ReportProgressPanel progressPan
         currentCase = Case.getCurrentCase();
         skCase = currentCase.getSleuthkitCase();
 
-        progressPanel.updateStatusLabel(NbBundle.getMessage(this.getClass(), "ReportKML.progress.loading"));
+        final TrackpointThinner thinner;
+        try {
+            thinner = getTrackpointThinner();
+        } catch (InterruptedException | InvocationTargetException ex) {
+            logger.log(Level.SEVERE, "Could not read the KML report options.", ex); //NON-NLS
+            if (ex instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            progressPanel.complete(ReportProgressPanel.ReportStatus.ERROR);
+            return;
+        }
 
-        ns = Namespace.getNamespace("", "http://www.opengis.net/kml/2.2"); //NON-NLS
-
-        Element kml = new Element("kml", ns); //NON-NLS
-        kml.addNamespaceDeclaration(Namespace.getNamespace("gx", "http://www.google.com/kml/ext/2.2")); //NON-NLS
-        kml.addNamespaceDeclaration(Namespace.getNamespace("kml", "http://www.opengis.net/kml/2.2")); //NON-NLS
-        kml.addNamespaceDeclaration(Namespace.getNamespace("atom", "http://www.w3.org/2005/Atom")); //NON-NLS
-        Document kmlDocument = new Document(kml);
-
-        Element document = new Element("Document", ns); //NON-NLS
-        kml.addContent(document);
-
-        Element name = new Element("name", ns); //NON-NLS
-        ReportBranding rb = new ReportBranding();
-        name.setText(rb.getReportTitle() + " KML"); //NON-NLS
-        document.addContent(name);
-
-        // Check if ingest has finished
-        if (IngestManager.getInstance().isIngestRunning()) {
-            Element ingestwarning = new Element("snippet", ns); //NON-NLS
-            ingestwarning.addContent(NbBundle.getMessage(this.getClass(), "ReportBodyFile.ingestWarning.text")); //NON-NLS
-            document.addContent(ingestwarning);
-        }
-
-        // Create folder structure
-        Element gpsExifMetadataFolder = new Element("Folder", ns); //NON-NLS
-        CDATA cdataExifMetadataFolder = new CDATA("https://raw.githubusercontent.com/sleuthkit/autopsy/develop/Core/src/org/sleuthkit/autopsy/images/camera-icon-16.png"); //NON-NLS
-        Element hrefExifMetadata = new Element("href", ns).addContent(cdataExifMetadataFolder); //NON-NLS
-        gpsExifMetadataFolder.addContent(new Element("Icon", ns).addContent(hrefExifMetadata)); //NON-NLS
-
-        Element gpsBookmarksFolder = new Element("Folder", ns); //NON-NLS
-        CDATA cdataBookmarks = new CDATA("https://raw.githubusercontent.com/sleuthkit/autopsy/develop/Core/src/org/sleuthkit/autopsy/images/gpsfav.png"); //NON-NLS
-        Element hrefBookmarks = new Element("href", ns).addContent(cdataBookmarks); //NON-NLS
-        gpsBookmarksFolder.addContent(new Element("Icon", ns).addContent(hrefBookmarks)); //NON-NLS
-
-        Element gpsLastKnownLocationFolder = new Element("Folder", ns); //NON-NLS
-        CDATA cdataLastKnownLocation = new CDATA("https://raw.githubusercontent.com/sleuthkit/autopsy/develop/Core/src/org/sleuthkit/autopsy/images/gps-lastlocation.png"); //NON-NLS
-        Element hrefLastKnownLocation = new Element("href", ns).addContent(cdataLastKnownLocation); //NON-NLS
-        gpsLastKnownLocationFolder.addContent(new Element("Icon", ns).addContent(hrefLastKnownLocation)); //NON-NLS
-
-        Element gpsRouteFolder = new Element("Folder", ns); //NON-NLS
-        CDATA cdataRoute = new CDATA("https://raw.githubusercontent.com/sleuthkit/autopsy/develop/Core/src/org/sleuthkit/autopsy/images/gps-trackpoint.png"); //NON-NLS
-        Element hrefRoute = new Element("href", ns).addContent(cdataRoute); //NON-NLS
-        gpsRouteFolder.addContent(new Element("Icon", ns).addContent(hrefRoute)); //NON-NLS
-
-        Element gpsSearchesFolder = new Element("Folder", ns); //NON-NLS
-        CDATA cdataSearches = new CDATA("https://raw.githubusercontent.com/sleuthkit/autopsy/develop/Core/src/org/sleuthkit/autopsy/images/gps-search.png"); //NON-NLS
-        Element hrefSearches = new Element("href", ns).addContent(cdataSearches); //NON-NLS
-        gpsSearchesFolder.addContent(new Element("Icon", ns).addContent(hrefSearches)); //NON-NLS
-
-        Element gpsTrackpointsFolder = new Element("Folder", ns); //NON-NLS
-        CDATA cdataTrackpoints = new CDATA("https://raw.githubusercontent.com/sleuthkit/autopsy/develop/Core/src/org/sleuthkit/autopsy/images/gps-trackpoint.png"); //NON-NLS
-        Element hrefTrackpoints = new Element("href", ns).addContent(cdataTrackpoints); //NON-NLS
-        gpsTrackpointsFolder.addContent(new Element("Icon", ns).addContent(hrefTrackpoints)); //NON-NLS
-
-        gpsExifMetadataFolder.addContent(new Element("name", ns).addContent("EXIF Metadata")); //NON-NLS
-        gpsBookmarksFolder.addContent(new Element("name", ns).addContent("GPS Bookmarks")); //NON-NLS
-        gpsLastKnownLocationFolder.addContent(new Element("name", ns).addContent("GPS Last Known Location")); //NON-NLS
-        gpsRouteFolder.addContent(new Element("name", ns).addContent("GPS Routes")); //NON-NLS
-        gpsSearchesFolder.addContent(new Element("name", ns).addContent("GPS Searches")); //NON-NLS
-        gpsTrackpointsFolder.addContent(new Element("name", ns).addContent("GPS Trackpoints")); //NON-NLS
-
-        document.addContent(gpsExifMetadataFolder);
-        document.addContent(gpsBookmarksFolder);
-        document.addContent(gpsLastKnownLocationFolder);
-        document.addContent(gpsRouteFolder);
-        document.addContent(gpsSearchesFolder);
-        document.addContent(gpsTrackpointsFolder);
+        progressPanel.updateStatusLabel(NbBundle.getMessage(this.getClass(), "ReportKML.progress.loading"));
 
         ReportProgressPanel.ReportStatus result = ReportProgressPanel.ReportStatus.COMPLETE;
 
@@ -194,167 +171,89 @@ public void generateReport(String baseReportDir, ReportProgressPanel progressPan
          * we use a best-effort method to generate KML information on everything
          * we can successfully pull out of the database.
          */
-        try {
-            for (BlackboardArtifact artifact : skCase.getBlackboardArtifacts(BlackboardArtifact.ARTIFACT_TYPE.TSK_METADATA_EXIF)) {
-                try {
-                    Long timestamp = getLong(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_DATETIME_CREATED);
-                    String desc = getDescriptionFromArtifact(artifact, "EXIF Metadata With Locations"); //NON-NLS
-                    Double lat = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LATITUDE);
-                    Double lon = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LONGITUDE);
-                    Element point = makePoint(lat, lon, getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_ALTITUDE));
-
-                    if (lat != null && lat != 0.0 && lon != null && lon != 0.0) {
-                        AbstractFile abstractFile = artifact.getSleuthkitCase().getAbstractFileById(artifact.getObjectID());
-                        Path path = null;
-                        copyFileUsingStream(abstractFile, Paths.get(baseReportDir, abstractFile.getName()).toFile());
-                        try {
-                            path = Paths.get(removeLeadingImgAndVol(abstractFile.getUniquePath()));
-                        } catch (TskCoreException ex) {
-                            path = Paths.get(abstractFile.getParentPath(), abstractFile.getName());
-                        }
-                        String formattedCoordinates = String.format("%.2f, %.2f", lat, lon);
-                        if (path == null) {
-                            path = Paths.get(abstractFile.getName());
-                        }
-                        gpsExifMetadataFolder.addContent(makePlacemarkWithPicture(abstractFile.getName(), FeatureColor.RED, desc, timestamp, point, path, formattedCoordinates));
-                    }
-                } catch (Exception ex) {
-                    logger.log(Level.SEVERE, "Could not extract photo information.", ex); //NON-NLS
-                    result = ReportProgressPanel.ReportStatus.ERROR;
-                }
+        List<FolderWriter> folders = new ArrayList<>();
+        folders.add(new FolderWriter("EXIF Metadata", //NON-NLS
+                "https://raw.githubusercontent.com/sleuthkit/autopsy/develop/Core/src/org/sleuthkit/autopsy/images/camera-icon-16.png", //NON-NLS
+                BlackboardArtifact.ARTIFACT_TYPE.TSK_METADATA_EXIF, "Could not extract photo information.", //NON-NLS
+                (artifact, attributes) -> makeExifPlacemarks(artifact, attributes, baseReportDir),
+                baseReportDir, progressPanel));
+        folders.add(new FolderWriter("GPS Bookmarks", //NON-NLS
+                "https://raw.githubusercontent.com/sleuthkit/autopsy/develop/Core/src/org/sleuthkit/autopsy/images/gpsfav.png", //NON-NLS
+                BlackboardArtifact.ARTIFACT_TYPE.TSK_GPS_BOOKMARK, "Could not extract Bookmark information.", //NON-NLS
+                this::makeBookmarkPlacemarks, baseReportDir, progressPanel));
+        folders.add(new FolderWriter("GPS Last Known Location", //NON-NLS
+                "https://raw.githubusercontent.com/sleuthkit/autopsy/develop/Core/src/org/sleuthkit/autopsy/images/gps-lastlocation.png", //NON-NLS
+                BlackboardArtifact.ARTIFACT_TYPE.TSK_GPS_LAST_KNOWN_LOCATION, "Could not extract Last Known Location information.", //NON-NLS
+                this::makeLastKnownLocationPlacemarks, baseReportDir, progressPanel));
+        folders.add(new FolderWriter("GPS Routes", //NON-NLS
+                "https://raw.githubusercontent.com/sleuthkit/autopsy/develop/Core/src/org/sleuthkit/autopsy/images/gps-trackpoint.png", //NON-NLS
+                BlackboardArtifact.ARTIFACT_TYPE.TSK_GPS_ROUTE, "Could not extract GPS Route information.", //NON-NLS
+                this::makeRoutePlacemarks, baseReportDir, progressPanel));
+        folders.add(new FolderWriter("GPS Searches", //NON-NLS
+                "https://raw.githubusercontent.com/sleuthkit/autopsy/develop/Core/src/org/sleuthkit/autopsy/images/gps-search.png", //NON-NLS
+                BlackboardArtifact.ARTIFACT_TYPE.TSK_GPS_SEARCH, "Could not extract GPS Search information.", //NON-NLS
+                this::makeSearchPlacemarks, baseReportDir, progressPanel));
+        folders.add(new FolderWriter("GPS Trackpoints", //NON-NLS
+                "https://raw.githubusercontent.com/sleuthkit/autopsy/develop/Core/src/org/sleuthkit/autopsy/images/gps-trackpoint.png", //NON-NLS
+                BlackboardArtifact.ARTIFACT_TYPE.TSK_GPS_TRACKPOINT, "Could not extract Trackpoint information.", //NON-NLS
+                (artifact, attributes) -> makeTrackpointPlacemarks(artifact, attributes, thinner),
+                baseReportDir, progressPanel));
+
+        ExecutorService folderWriters = Executors.newFixedThreadPool(MAX_FOLDER_WRITERS,
+                new ThreadFactoryBuilder().setNameFormat("kml-report-folder-writer-%d").build()); //NON-NLS
+        List<Future<Boolean>> folderResults = new ArrayList<>();
+        try (FileOutputStream outputStream = new FileOutputStream(kmlFileFullPath);
+                Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8))) {
+            for (FolderWriter folder : folders) {
+                folderResults.add(folderWriters.submit(folder));
             }
-        } catch (TskCoreException ex) {
-            logger.log(Level.SEVERE, "Could not extract photos with EXIF metadata.", ex); //NON-NLS
-            result = ReportProgressPanel.ReportStatus.ERROR;
-        }
 
-        try {
-            for (BlackboardArtifact artifact : skCase.getBlackboardArtifacts(BlackboardArtifact.ARTIFACT_TYPE.TSK_GPS_BOOKMARK)) {
-                try {
-                    Long timestamp = getLong(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_DATETIME);
-                    String desc = getDescriptionFromArtifact(artifact, "GPS Bookmark"); //NON-NLS
-                    Double lat = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LATITUDE);
-                    Double lon = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LONGITUDE);
-                    Element point = makePoint(lat, lon, getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_ALTITUDE));
-                    String bookmarkName = getString(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_NAME);
-                    String formattedCoordinates = String.format("%.2f, %.2f", lat, lon);
-                    gpsBookmarksFolder.addContent(makePlacemark(bookmarkName, FeatureColor.BLUE, desc, timestamp, point, formattedCoordinates));
-                } catch (Exception ex) {
-                    logger.log(Level.SEVERE, "Could not extract Bookmark information.", ex); //NON-NLS
-                    result = ReportProgressPanel.ReportStatus.ERROR;
-                }
+            XMLOutputter outputter = new XMLOutputter(Format.getPrettyFormat());
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"); //NON-NLS
+            writer.write("<kml xmlns=\"" + KML_NAMESPACE + "\" xmlns:gx=\"http://www.google.com/kml/ext/2.2\"" //NON-NLS
+                    + " xmlns:kml=\"" + KML_NAMESPACE + "\" xmlns:atom=\"http://www.w3.org/2005/Atom\">\n"); //NON-NLS
+            writer.write("<Document>\n"); //NON-NLS
+
+            Element name = new Element("name", ns); //NON-NLS
+            ReportBranding rb = new ReportBranding();
+            name.setText(rb.getReportTitle() + " KML"); //NON-NLS
+            outputter.output(name, writer);
+            writer.write("\n");
+
+            // Check if ingest has finished
+            if (IngestManager.getInstance().isIngestRunning()) {
+                Element ingestwarning = new Element("snippet", ns); //NON-NLS
+                ingestwarning.addContent(NbBundle.getMessage(this.getClass(), "ReportBodyFile.ingestWarning.text")); //NON-NLS
+                outputter.output(ingestwarning, writer);
+                writer.write("\n");
             }
-        } catch (TskCoreException ex) {
-            logger.log(Level.SEVERE, "Could not get GPS Bookmarks from database.", ex); //NON-NLS
-            result = ReportProgressPanel.ReportStatus.ERROR;
-        }
 
-        try {
-            for (BlackboardArtifact artifact : skCase.getBlackboardArtifacts(BlackboardArtifact.ARTIFACT_TYPE.TSK_GPS_LAST_KNOWN_LOCATION)) {
+            // Join the folders into the document in order, as each is done
+            writer.flush();
+            for (int i = 0; i < folders.size(); i++) {
                 try {
-                    Long timestamp = getLong(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_DATETIME);
-                    String desc = getDescriptionFromArtifact(artifact, "GPS Last Known Location"); //NON-NLS
-                    Double lat = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LATITUDE);
-                    Double lon = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LONGITUDE);
-                    Double alt = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_ALTITUDE);
-                    Element point = makePoint(lat, lon, alt);
-                    String formattedCoordinates = String.format("%.2f, %.2f", lat, lon);
-                    gpsLastKnownLocationFolder.addContent(makePlacemark("Last Known Location", FeatureColor.PURPLE, desc, timestamp, point, formattedCoordinates)); //NON-NLS
-                } catch (Exception ex) {
-                    logger.log(Level.SEVERE, "Could not extract Last Known Location information.", ex); //NON-NLS
+                    if (folderResults.get(i).get() == false) {
+                        result = ReportProgressPanel.ReportStatus.ERROR;
+                    }
+                    Files.copy(folders.get(i).getFolderFile(), outputStream);
+                    Files.deleteIfExists(folders.get(i).getFolderFile());
+                } catch (ExecutionException ex) {
+                    logger.log(Level.SEVERE, "Could not write KML folder.", ex); //NON-NLS
                     result = ReportProgressPanel.ReportStatus.ERROR;
                 }
             }
-        } catch (TskCoreException ex) {
-            logger.log(Level.SEVERE, "Could not get GPS Last Known Location from database.", ex); //NON-NLS
-            result = ReportProgressPanel.ReportStatus.ERROR;
-        }
 
-        try {
-            for (BlackboardArtifact artifact : skCase.getBlackboardArtifacts(BlackboardArtifact.ARTIFACT_TYPE.TSK_GPS_ROUTE)) {
-                try {
-                    Long timestamp = getLong(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_DATETIME);
-                    String desc = getDescriptionFromArtifact(artifact, "GPS Route");
-                    Double latitudeStart = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LATITUDE_START);
-                    Double longitudeStart = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LONGITUDE_START);
-                    Double latitudeEnd = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LATITUDE_END);
-                    Double longitudeEnd = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LONGITUDE_END);
-                    Double altitude = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_ALTITUDE);
-
-                    Element route = makeLineString(latitudeStart, longitudeStart, altitude, latitudeEnd, longitudeEnd, altitude);
-                    Element startingPoint = makePoint(latitudeStart, longitudeStart, altitude);
-                    Element endingPoint = makePoint(latitudeEnd, longitudeEnd, altitude);
-
-                    String formattedCoordinates = String.format("%.2f, %.2f to %.2f, %.2f", latitudeStart, longitudeStart, latitudeEnd, longitudeEnd);
-                    gpsRouteFolder.addContent(makePlacemark("As-the-crow-flies Route", FeatureColor.GREEN, desc, timestamp, route, formattedCoordinates)); //NON-NLS
-
-                    formattedCoordinates = String.format("%.2f, %.2f", latitudeStart, longitudeStart);
-                    gpsRouteFolder.addContent(makePlacemark("Start", FeatureColor.GREEN, desc, timestamp, startingPoint, formattedCoordinates)); //NON-NLS
-
-                    formattedCoordinates = String.format("%.2f, %.2f", latitudeEnd, longitudeEnd);
-                    gpsRouteFolder.addContent(makePlacemark("End", FeatureColor.GREEN, desc, timestamp, endingPoint, formattedCoordinates)); //NON-NLS
-                } catch (Exception ex) {
-                    logger.log(Level.SEVERE, "Could not extract GPS Route information.", ex); //NON-NLS
-                    result = ReportProgressPanel.ReportStatus.ERROR;
-                }
-            }
-        } catch (TskCoreException ex) {
-            logger.log(Level.SEVERE, "Could not get GPS Routes from database.", ex); //NON-NLS
+            writer.write("</Document>\n</kml>\n"); //NON-NLS
+        } catch (IOException ex) {
+            logger.log(Level.SEVERE, "Could not write the KML file.", ex); //NON-NLS
             result = ReportProgressPanel.ReportStatus.ERROR;
-        }
-
-        try {
-            for (BlackboardArtifact artifact : skCase.getBlackboardArtifacts(BlackboardArtifact.ARTIFACT_TYPE.TSK_GPS_SEARCH)) {
-                Long timestamp = getLong(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_DATETIME);
-                String desc = getDescriptionFromArtifact(artifact, "GPS Search"); //NON-NLS
-                Double lat = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LATITUDE);
-                Double lon = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LONGITUDE);
-                Double alt = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_ALTITUDE);
-                Element point = makePoint(lat, lon, alt);
-                String formattedCoordinates = String.format("%.2f, %.2f", lat, lon);
-                String searchName = getString(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_NAME);
-                if (searchName == null || searchName.isEmpty()) {
-                    searchName = getString(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_LOCATION);
-                }
-                if (searchName == null || searchName.isEmpty()) {
-                    searchName = "GPS Search";
-                }
-                gpsSearchesFolder.addContent(makePlacemark(searchName, FeatureColor.WHITE, desc, timestamp, point, formattedCoordinates)); //NON-NLS
-            }
-        } catch (TskCoreException ex) {
-            logger.log(Level.SEVERE, "Could not get GPS Searches from database.", ex); //NON-NLS
-            result = ReportProgressPanel.ReportStatus.ERROR;
-        }
-
-        try {
-            for (BlackboardArtifact artifact : skCase.getBlackboardArtifacts(BlackboardArtifact.ARTIFACT_TYPE.TSK_GPS_TRACKPOINT)) {
-                try {
-                    Long timestamp = getLong(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_DATETIME);
-                    String desc = getDescriptionFromArtifact(artifact, "GPS Trackpoint"); //NON-NLS
-                    Double lat = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LATITUDE);
-                    Double lon = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LONGITUDE);
-                    Double alt = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_ALTITUDE);
-                    Element point = makePoint(lat, lon, alt);
-                    String formattedCoordinates = String.format("%.2f, %.2f, %.2f", lat, lon, alt);
-                    String trackName = getString(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_NAME);
-                    if (trackName == null || trackName.isEmpty()) {
-                        trackName = getString(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_PROG_NAME);
-                    }
-                    if (trackName == null || trackName.isEmpty()) {
-                        trackName = getString(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_FLAG);
-                    }
-                    if (trackName == null || trackName.isEmpty()) {
-                        trackName = "GPS Trackpoint";
-                    }
-                    gpsTrackpointsFolder.addContent(makePlacemark(trackName, FeatureColor.YELLOW, desc, timestamp, point, formattedCoordinates));
-                } catch (Exception ex) {
-                    logger.log(Level.SEVERE, "Could not extract Trackpoint information.", ex); //NON-NLS
-                    result = ReportProgressPanel.ReportStatus.ERROR;
-                }
-            }
-        } catch (TskCoreException ex) {
-            logger.log(Level.SEVERE, "Could not get GPS Trackpoints from database.", ex); //NON-NLS
+        } catch (InterruptedException ex) {
+            logger.log(Level.WARNING, "Interrupted while waiting for KML folders to be written.", ex); //NON-NLS
+            folderResults.forEach(folderResult -> folderResult.cancel(true));
+            Thread.currentThread().interrupt();
             result = ReportProgressPanel.ReportStatus.ERROR;
+        } finally {
+            folderWriters.shutdown();
         }
 
         // Copy the style sheet
@@ -367,9 +266,13 @@ public void generateReport(String baseReportDir, ReportProgressPanel progressPan
             result = ReportProgressPanel.ReportStatus.ERROR;
         }
 
-        try (FileOutputStream writer = new FileOutputStream(kmlFileFullPath)) {
-            XMLOutputter outputter = new XMLOutputter(Format.getPrettyFormat());
-            outputter.output(kmlDocument, writer);
+        if (progressPanel.getStatus() == ReportProgressPanel.ReportStatus.CANCELED) {
+            //the folders stopped early, so the KML file is not added to the case as a report
+            progressPanel.complete(ReportProgressPanel.ReportStatus.CANCELED);
+            return;
+        }
+
+        try {
             String prependedStatus = "";
             if (result == ReportProgressPanel.ReportStatus.ERROR) {
                 prependedStatus = "Incomplete ";
@@ -377,9 +280,6 @@ public void generateReport(String baseReportDir, ReportProgressPanel progressPan
             Case.getCurrentCase().addReport(kmlFileFullPath,
                     NbBundle.getMessage(this.getClass(), "ReportKML.genReport.srcModuleName.text"),
                     prependedStatus + NbBundle.getMessage(this.getClass(), "ReportKML.genReport.reportName"));
-        } catch (IOException ex) {
-            logger.log(Level.SEVERE, "Could not write the KML file.", ex); //NON-NLS
-            progressPanel.complete(ReportProgressPanel.ReportStatus.ERROR);
         } catch (TskCoreException ex) {
             String errorMessage = String.format("Error adding %s to case as a report", kmlFileFullPath); //NON-NLS
             logger.log(Level.SEVERE, errorMessage, ex);
@@ -390,99 +290,457 @@ public void generateReport(String baseReportDir, ReportProgressPanel progressPan
     }
 
     /**
-     * Get a Double from an artifact if it exists, return null otherwise.
-     *
-     * @param artifact The artifact to query
-     * @param type     The attribute type we're looking for
+     * Save the options of the configuration panel as the defaults, and make
+     * the trackpoint thinner they call for. The panel is read on the event
+     * dispatch thread, since the report is generated on a background thread.
      *
-     * @return The Double if it exists, or null if not
+     * @return The trackpoint thinner, or null if trackpoints are not thinned.
      */
-    private Double getDouble(BlackboardArtifact artifact, BlackboardAttribute.ATTRIBUTE_TYPE type) {
-        Double returnValue = null;
-        try {
-            BlackboardAttribute bba = artifact.getAttribute(new BlackboardAttribute.Type(type));
-            if (bba != null) {
-                Double value = bba.getValueDouble();
-                if (value != null) {
-                    returnValue = value;
+    private TrackpointThinner getTrackpointThinner() throws InterruptedException, InvocationTargetException {
+        AtomicReference<TrackpointThinner> thinner = new AtomicReference<>();
+        Runnable readOptions = () -> {
+            if (configPanel != null) {
+                configPanel.saveSettings();
+                if (configPanel.getThinTrackpoints()) {
+                    thinner.set(new TrackpointThinner(configPanel.getDistanceTolerance(), configPanel.getTimeTolerance()));
                 }
             }
-        } catch (TskCoreException ex) {
-            logger.log(Level.SEVERE, "Error getting Double value: " + type.toString(), ex); //NON-NLS
+        };
+        if (EventQueue.isDispatchThread()) {
+            readOptions.run();
+        } else {
+            EventQueue.invokeAndWait(readOptions);
         }
-        return returnValue;
+        return thinner.get();
     }
 
     /**
-     * Get a Long from an artifact if it exists, return null otherwise.
-     *
-     * @param artifact The artifact to query
-     * @param type     The attribute type we're looking for
-     *
-     * @return The Long if it exists, or null if not
+     * Makes the placemarks for one artifact.
      */
-    private Long getLong(BlackboardArtifact artifact, BlackboardAttribute.ATTRIBUTE_TYPE type) {
-        Long returnValue = null;
-        try {
-            BlackboardAttribute bba = artifact.getAttribute(new BlackboardAttribute.Type(type));
-            if (bba != null) {
-                Long value = bba.getValueLong();
-                if (value != null) {
-                    returnValue = value;
+    @FunctionalInterface
+    private interface PlacemarkMaker {
+
+        /**
+         * Make the placemarks for an artifact.
+         *
+         * @param artifact   The artifact.
+         * @param attributes The attributes of the artifact, by attribute type
+         *                   id.
+         *
+         * @return The placemarks, which may be empty.
+         *
+         * @throws TskCoreException If there is a problem querying the case
+         *                          database.
+         * @throws IOException      If there is a problem copying a file for
+         *                          the placemark.
+         */
+        List<Element> makePlacemarks(BlackboardArtifact artifact, Map<Integer, BlackboardAttribute> attributes) throws TskCoreException, IOException;
+    }
+
+    /**
+     * Writes the KML folder for one type of artifact to a temporary file, to
+     * be joined into the KML file once it is done.
+     */
+    private final class FolderWriter implements Callable<Boolean> {
+
+        private final String folderName;
+        private final String iconURL;
+        private final BlackboardArtifact.ARTIFACT_TYPE artifactType;
+        private final String errorMessage;
+        private final PlacemarkMaker placemarkMaker;
+        private final String baseReportDir;
+        private final ReportProgressPanel progressPanel;
+        private Path folderFile;
+
+        /**
+         * Make a writer for a KML folder.
+         *
+         * @param folderName     The name of the folder.
+         * @param iconURL        The URL of the folder's icon.
+         * @param artifactType   The type of the artifacts in the folder.
+         * @param errorMessage   The message to log if the placemarks for an
+         *                       artifact can not be made.
+         * @param placemarkMaker Makes the placemarks for each artifact.
+         * @param baseReportDir  The report directory, where the temporary file
+         *                       is made.
+         * @param progressPanel  The panel to check for cancellation.
+         */
+        FolderWriter(String folderName, String iconURL, BlackboardArtifact.ARTIFACT_TYPE artifactType, String errorMessage,
+                PlacemarkMaker placemarkMaker, String baseReportDir, ReportProgressPanel progressPanel) {
+            this.folderName = folderName;
+            this.iconURL = iconURL;
+            this.artifactType = artifactType;
+            this.errorMessage = errorMessage;
+            this.placemarkMaker = placemarkMaker;
+            this.baseReportDir = baseReportDir;
+            this.progressPanel = progressPanel;
+        }
+
+        /**
+         * Get the temporary file the folder was written to. It is deleted once
+         * it has been joined into the KML file, or else when the application
+         * exits.
+         *
+         * @return The path of the file.
+         */
+        Path getFolderFile() {
+            return folderFile;
+        }
+
+        /**
+         * Write the folder.
+         *
+         * @return True if every placemark of the folder was written, false if
+         *         some were left out because of errors.
+         *
+         * @throws IOException If the folder can not be written.
+         */
+        @Override
+        public Boolean call() throws IOException {
+            boolean complete = true;
+            folderFile = Files.createTempFile(Paths.get(baseReportDir), "kml-folder-", ".tmp"); //NON-NLS
+            folderFile.toFile().deleteOnExit();
+            XMLOutputter outputter = new XMLOutputter(Format.getPrettyFormat());
+            try (Writer writer = Files.newBufferedWriter(folderFile, StandardCharsets.UTF_8)) {
+                writer.write("<Folder>\n"); //NON-NLS
+                Element href = new Element("href", ns).addContent(new CDATA(iconURL)); //NON-NLS
+                outputter.output(new Element("Icon", ns).addContent(href), writer); //NON-NLS
+                writer.write("\n");
+                outputter.output(new Element("name", ns).addContent(folderName), writer); //NON-NLS
+                writer.write("\n");
+
+                try {
+                    List<BlackboardArtifact> artifacts = getArtifactPage(null);
+                    while (artifacts.isEmpty() == false && progressPanel.getStatus() != ReportProgressPanel.ReportStatus.CANCELED) {
+                        Map<Long, Map<Integer, BlackboardAttribute>> attributesByArtifact = getAttributes(artifacts);
+                        for (BlackboardArtifact artifact : artifacts) {
+                            try {
+                                Map<Integer, BlackboardAttribute> attributes = attributesByArtifact.getOrDefault(artifact.getArtifactID(), Collections.emptyMap());
+                                for (Element placemark : placemarkMaker.makePlacemarks(artifact, attributes)) {
+                                    outputter.output(placemark, writer);
+                                    writer.write("\n");
+                                }
+                            } catch (TskCoreException | IOException | RuntimeException ex) {
+                                logger.log(Level.SEVERE, errorMessage, ex);
+                                complete = false;
+                            }
+                        }
+                        artifacts = artifacts.size() < ARTIFACT_PAGE_SIZE ? Collections.emptyList()
+                                : getArtifactPage(artifacts.get(artifacts.size() - 1).getArtifactID());
+                    }
+                } catch (TskCoreException ex) {
+                    logger.log(Level.SEVERE, String.format("Could not get %s from database.", folderName), ex); //NON-NLS
+                    complete = false;
                 }
+
+                writer.write("</Folder>\n"); //NON-NLS
             }
-        } catch (TskCoreException ex) {
-            logger.log(Level.SEVERE, "Error getting Long value: " + type.toString(), ex); //NON-NLS
+            return complete;
+        }
+
+        /**
+         * Get the next page of the folder's artifacts, in artifact id order.
+         *
+         * @param afterArtifactID If not null, only get the artifacts with
+         *                        greater ids.
+         *
+         * @return The artifacts.
+         *
+         * @throws TskCoreException If there is a problem querying the case
+         *                          database.
+         */
+        private List<BlackboardArtifact> getArtifactPage(Long afterArtifactID) throws TskCoreException {
+            return skCase.getMatchingArtifacts("WHERE blackboard_artifacts.artifact_type_id = " + artifactType.getTypeID() //NON-NLS
+                    + (afterArtifactID == null ? "" : " AND blackboard_artifacts.artifact_id > " + afterArtifactID) //NON-NLS
+                    + " ORDER BY blackboard_artifacts.artifact_id LIMIT " + ARTIFACT_PAGE_SIZE); //NON-NLS
+        }
+
+        /**
+         * Get the attributes of a page of artifacts with one query. Where an
+         * artifact has more than one attribute of a type, the first is used,
+         * as BlackboardArtifact.getAttribute does.
+         *
+         * @param artifacts The artifacts.
+         *
+         * @return The attributes by attribute type id, by artifact id.
+         *
+         * @throws TskCoreException If there is a problem querying the case
+         *                          database.
+         */
+        private Map<Long, Map<Integer, BlackboardAttribute>> getAttributes(List<BlackboardArtifact> artifacts) throws TskCoreException {
+            List<Long> artifactIDs = new ArrayList<>(artifacts.size());
+            for (BlackboardArtifact artifact : artifacts) {
+                artifactIDs.add(artifact.getArtifactID());
+            }
+            Map<Long, Map<Integer, BlackboardAttribute>> attributesByArtifact = new HashMap<>();
+            for (BlackboardAttribute attribute : skCase.getMatchingAttributes("WHERE artifact_id IN (" + StringUtils.join(artifactIDs, ", ") + ")")) { //NON-NLS
+                attributesByArtifact.computeIfAbsent(attribute.getArtifactID(), artifactID -> new HashMap<>())
+                        .putIfAbsent(attribute.getAttributeType().getTypeID(), attribute);
+            }
+            return attributesByArtifact;
         }
-        return returnValue;
+    }
+
+    private List<Element> makeExifPlacemarks(BlackboardArtifact artifact, Map<Integer, BlackboardAttribute> attributes, String baseReportDir) throws TskCoreException, IOException {
+        Long timestamp = getLong(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_DATETIME_CREATED);
+        String desc = getDescriptionFromArtifact(attributes, "EXIF Metadata With Locations"); //NON-NLS
+        Double lat = getDouble(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LATITUDE);
+        Double lon = getDouble(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LONGITUDE);
+        Element point = makePoint(lat, lon, getDouble(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_ALTITUDE));
+
+        if (lat != null && lat != 0.0 && lon != null && lon != 0.0) {
+            AbstractFile abstractFile = artifact.getSleuthkitCase().getAbstractFileById(artifact.getObjectID());
+            Path path = null;
+            copyFileUsingStream(abstractFile, Paths.get(baseReportDir, abstractFile.getName()).toFile());
+            try {
+                path = Paths.get(removeLeadingImgAndVol(abstractFile.getUniquePath()));
+            } catch (TskCoreException ex) {
+                path = Paths.get(abstractFile.getParentPath(), abstractFile.getName());
+            }
+            String formattedCoordinates = String.format("%.2f, %.2f", lat, lon);
+            if (path == null) {
+                path = Paths.get(abstractFile.getName());
+            }
+            return Collections.singletonList(makePlacemarkWithPicture(abstractFile.getName(), FeatureColor.RED, desc, timestamp, point, path, formattedCoordinates));
+        }
+        return Collections.emptyList();
+    }
+
+    private List<Element> makeBookmarkPlacemarks(BlackboardArtifact artifact, Map<Integer, BlackboardAttribute> attributes) {
+        Long timestamp = getLong(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_DATETIME);
+        String desc = getDescriptionFromArtifact(attributes, "GPS Bookmark"); //NON-NLS
+        Double lat = getDouble(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LATITUDE);
+        Double lon = getDouble(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LONGITUDE);
+        Element point = makePoint(lat, lon, getDouble(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_ALTITUDE));
+        String bookmarkName = getString(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_NAME);
+        String formattedCoordinates = String.format("%.2f, %.2f", lat, lon);
+        return Collections.singletonList(makePlacemark(bookmarkName, FeatureColor.BLUE, desc, timestamp, point, formattedCoordinates));
+    }
+
+    private List<Element> makeLastKnownLocationPlacemarks(BlackboardArtifact artifact, Map<Integer, BlackboardAttribute> attributes) {
+        Long timestamp = getLong(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_DATETIME);
+        String desc = getDescriptionFromArtifact(attributes, "GPS Last Known Location"); //NON-NLS
+        Double lat = getDouble(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LATITUDE);
+        Double lon = getDouble(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LONGITUDE);
+        Double alt = getDouble(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_ALTITUDE);
+        Element point = makePoint(lat, lon, alt);
+        String formattedCoordinates = String.format("%.2f, %.2f", lat, lon);
+        return Collections.singletonList(makePlacemark("Last Known Location", FeatureColor.PURPLE, desc, timestamp, point, formattedCoordinates)); //NON-NLS
+    }
+
+    private List<Element> makeRoutePlacemarks(BlackboardArtifact artifact, Map<Integer, BlackboardAttribute> attributes) {
+        Long timestamp = getLong(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_DATETIME);
+        String desc = getDescriptionFromArtifact(attributes, "GPS Route");
+        Double latitudeStart = getDouble(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LATITUDE_START);
+        Double longitudeStart = getDouble(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LONGITUDE_START);
+        Double latitudeEnd = getDouble(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LATITUDE_END);
+        Double longitudeEnd = getDouble(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LONGITUDE_END);
+        Double altitude = getDouble(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_ALTITUDE);
+
+        Element route = makeLineString(latitudeStart, longitudeStart, altitude, latitudeEnd, longitudeEnd, altitude);
+        Element startingPoint = makePoint(latitudeStart, longitudeStart, altitude);
+        Element endingPoint = makePoint(latitudeEnd, longitudeEnd, altitude);
+
+        List<Element> placemarks = new ArrayList<>(3);
+        String formattedCoordinates = String.format("%.2f, %.2f to %.2f, %.2f", latitudeStart, longitudeStart, latitudeEnd, longitudeEnd);
+        placemarks.add(makePlacemark("As-the-crow-flies Route", FeatureColor.GREEN, desc, timestamp, route, formattedCoordinates)); //NON-NLS
+
+        formattedCoordinates = String.format("%.2f, %.2f", latitudeStart, longitudeStart);
+        placemarks.add(makePlacemark("Start", FeatureColor.GREEN, desc, timestamp, startingPoint, formattedCoordinates)); //NON-NLS
+
+        formattedCoordinates = String.format("%.2f, %.2f", latitudeEnd, longitudeEnd);
+        placemarks.add(makePlacemark("End", FeatureColor.GREEN, desc, timestamp, endingPoint, formattedCoordinates)); //NON-NLS
+        return placemarks;
+    }
+
+    private List<Element> makeSearchPlacemarks(BlackboardArtifact artifact, Map<Integer, BlackboardAttribute> attributes) {
+        Long timestamp = getLong(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_DATETIME);
+        String desc = getDescriptionFromArtifact(attributes, "GPS Search"); //NON-NLS
+        Double lat = getDouble(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LATITUDE);
+        Double lon = getDouble(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LONGITUDE);
+        Double alt = getDouble(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_ALTITUDE);
+        Element point = makePoint(lat, lon, alt);
+        String formattedCoordinates = String.format("%.2f, %.2f", lat, lon);
+        String searchName = getString(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_NAME);
+        if (searchName == null || searchName.isEmpty()) {
+            searchName = getString(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_LOCATION);
+        }
+        if (searchName == null || searchName.isEmpty()) {
+            searchName = "GPS Search";
+        }
+        return Collections.singletonList(makePlacemark(searchName, FeatureColor.WHITE, desc, timestamp, point, formattedCoordinates)); //NON-NLS
+    }
+
+    private List<Element> makeTrackpointPlacemarks(BlackboardArtifact artifact, Map<Integer, BlackboardAttribute> attributes, TrackpointThinner thinner) {
+        Long timestamp = getLong(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_DATETIME);
+        Double lat = getDouble(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LATITUDE);
+        Double lon = getDouble(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LONGITUDE);
+        if (thinner != null && thinner.keep(artifact.getObjectID(), lat, lon, timestamp) == false) {
+            return Collections.emptyList();
+        }
+        String desc = getDescriptionFromArtifact(attributes, "GPS Trackpoint"); //NON-NLS
+        Double alt = getDouble(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_ALTITUDE);
+        Element point = makePoint(lat, lon, alt);
+        String formattedCoordinates = String.format("%.2f, %.2f, %.2f", lat, lon, alt);
+        String trackName = getString(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_NAME);
+        if (trackName == null || trackName.isEmpty()) {
+            trackName = getString(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_PROG_NAME);
+        }
+        if (trackName == null || trackName.isEmpty()) {
+            trackName = getString(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_FLAG);
+        }
+        if (trackName == null || trackName.isEmpty()) {
+            trackName = "GPS Trackpoint";
+        }
+        return Collections.singletonList(makePlacemark(trackName, FeatureColor.YELLOW, desc, timestamp, point, formattedCoordinates));
     }
 
     /**
-     * Get an Integer from an artifact if it exists, return null otherwise.
-     *
-     * @param artifact The artifact to query
-     * @param type     The attribute type we're looking for
+     * Thins out GPS trackpoints, by leaving out each trackpoint that is within
+     * a distance and a time of the last trackpoint kept from the same source
+     * file. The trackpoints of a source are expected in the order they were
+     * added to the blackboard, which is the order they were recorded in.
      *
-     * @return The Integer if it exists, or null if not
+     * Trackpoints without a latitude or longitude are always kept, and a
+     * trackpoint without a time is compared on distance alone.
      */
-    private Integer getInteger(BlackboardArtifact artifact, BlackboardAttribute.ATTRIBUTE_TYPE type) {
-        Integer returnValue = null;
-        try {
-            BlackboardAttribute bba = artifact.getAttribute(new BlackboardAttribute.Type(type));
-            if (bba != null) {
-                Integer value = bba.getValueInt();
-                if (value != null) {
-                    returnValue = value;
-                }
+    private static final class TrackpointThinner {
+
+        private static final double MEAN_EARTH_RADIUS_METERS = 6371008.8;
+
+        private final double distanceTolerance;
+        private final long timeTolerance;
+        private final Map<Long, KeptTrackpoint> lastKeptBySource = new HashMap<>();
+
+        /**
+         * Make a trackpoint thinner.
+         *
+         * @param distanceTolerance The distance, in meters, within which
+         *                          trackpoints are left out.
+         * @param timeTolerance     The time, in seconds, within which
+         *                          trackpoints are left out.
+         */
+        TrackpointThinner(double distanceTolerance, long timeTolerance) {
+            this.distanceTolerance = distanceTolerance;
+            this.timeTolerance = timeTolerance;
+        }
+
+        /**
+         * Should the given trackpoint be written to the report? If so, it
+         * becomes the trackpoint the next ones from its source are compared
+         * to.
+         *
+         * @param sourceID  The object id of the trackpoint's source file.
+         * @param latitude  The trackpoint's latitude, may be null.
+         * @param longitude The trackpoint's longitude, may be null.
+         * @param timestamp The trackpoint's time, in seconds since the epoch,
+         *                  may be null.
+         *
+         * @return True if the trackpoint should be kept.
+         */
+        boolean keep(long sourceID, Double latitude, Double longitude, Long timestamp) {
+            if (latitude == null || longitude == null) {
+                return true;
+            }
+            KeptTrackpoint lastKept = lastKeptBySource.get(sourceID);
+            if (lastKept != null
+                    && (timestamp == null || lastKept.timestamp == null || Math.abs(timestamp - lastKept.timestamp) <= timeTolerance)
+                    && getDistance(lastKept.latitude, lastKept.longitude, latitude, longitude) <= distanceTolerance) {
+                return false;
+            }
+            lastKeptBySource.put(sourceID, new KeptTrackpoint(latitude, longitude, timestamp));
+            return true;
+        }
+
+        /**
+         * Get the great circle distance between two points, using the
+         * haversine formula.
+         *
+         * @return The distance in meters.
+         */
+        private static double getDistance(double latitude1, double longitude1, double latitude2, double longitude2) {
+            double deltaLatitude = Math.toRadians(latitude2 - latitude1);
+            double deltaLongitude = Math.toRadians(longitude2 - longitude1);
+            double a = Math.sin(deltaLatitude / 2) * Math.sin(deltaLatitude / 2)
+                    + Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2))
+                    * Math.sin(deltaLongitude / 2) * Math.sin(deltaLongitude / 2);
+            return 2 * MEAN_EARTH_RADIUS_METERS * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+        }
+
+        private static final class KeptTrackpoint {
+
+            private final double latitude;
+            private final double longitude;
+            private final Long timestamp;
+
+            KeptTrackpoint(double latitude, double longitude, Long timestamp) {
+                this.latitude = latitude;
+                this.longitude = longitude;
+                this.timestamp = timestamp;
             }
-        } catch (TskCoreException ex) {
-            logger.log(Level.SEVERE, "Error getting Integer value: " + type.toString(), ex); //NON-NLS
         }
-        return returnValue;
     }
 
     /**
-     * Get a String from an artifact if it exists, return null otherwise.
+     * Get a Double from an artifact's attributes if it exists, return null
+     * otherwise.
      *
-     * @param artifact The artifact to query
-     * @param type     The attribute type we're looking for
+     * @param attributes The artifact's attributes, by attribute type id
+     * @param type       The attribute type we're looking for
+     *
+     * @return The Double if it exists, or null if not
+     */
+    private Double getDouble(Map<Integer, BlackboardAttribute> attributes, BlackboardAttribute.ATTRIBUTE_TYPE type) {
+        BlackboardAttribute bba = attributes.get(type.getTypeID());
+        return bba == null ? null : bba.getValueDouble();
+    }
+
+    /**
+     * Get a Long from an artifact's attributes if it exists, return null
+     * otherwise.
+     *
+     * @param attributes The artifact's attributes, by attribute type id
+     * @param type       The attribute type we're looking for
+     *
+     * @return The Long if it exists, or null if not
+     */
+    private Long getLong(Map<Integer, BlackboardAttribute> attributes, BlackboardAttribute.ATTRIBUTE_TYPE type) {
+        BlackboardAttribute bba = attributes.get(type.getTypeID());
+        return bba == null ? null : bba.getValueLong();
+    }
+
+    /**
+     * Get an Integer from an artifact's attributes if it exists, return null
+     * otherwise.
+     *
+     * @param attributes The artifact's attributes, by attribute type id
+     * @param type       The attribute type we're looking for
+     *
+     * @return The Integer if it exists, or null if not
+     */
+    private Integer getInteger(Map<Integer, BlackboardAttribute> attributes, BlackboardAttribute.ATTRIBUTE_TYPE type) {
+        BlackboardAttribute bba = attributes.get(type.getTypeID());
+        return bba == null ? null : bba.getValueInt();
+    }
+
+    /**
+     * Get a String from an artifact's attributes if it exists, return null
+     * otherwise.
+     *
+     * @param attributes The artifact's attributes, by attribute type id
+     * @param type       The attribute type we're looking for
      *
      * @return The String if it exists, or null if not
      */
-    private String getString(BlackboardArtifact artifact, BlackboardAttribute.ATTRIBUTE_TYPE type) {
-        String returnValue = null;
-        try {
-            BlackboardAttribute bba = artifact.getAttribute(new BlackboardAttribute.Type(type));
-            if (bba != null) {
-                String value = bba.getValueString();
-                if (value != null && !value.isEmpty()) {
-                    returnValue = value;
-                }
+    private String getString(Map<Integer, BlackboardAttribute> attributes, BlackboardAttribute.ATTRIBUTE_TYPE type) {
+        BlackboardAttribute bba = attributes.get(type.getTypeID());
+        if (bba != null) {
+            String value = bba.getValueString();
+            if (value != null && !value.isEmpty()) {
+                return value;
             }
-        } catch (TskCoreException ex) {
-            logger.log(Level.SEVERE, "Error getting String value: " + type.toString(), ex); //NON-NLS
         }
-        return returnValue;
+        return null;
     }
 
     /**
@@ -497,129 +755,130 @@ private String getString(BlackboardArtifact artifact, BlackboardAttribute.ATTRIB
      * TSK_GEO_MAPDATUM 61; TSK_DATETIME_START 83; TSK_DATETIME_END 84;
      * TSK_LOCATION 86; TSK_PATH_SOURCE 94;
      *
-     * @param artifact    the artifact to query.
+     * @param attributes  the attributes of the artifact, by attribute type
+     *                    id.
      * @param featureType the type of Artifact we're working on.
      *
      * @return a String with the information we have available
      */
-    private String getDescriptionFromArtifact(BlackboardArtifact artifact, String featureType) {
+    private String getDescriptionFromArtifact(Map<Integer, BlackboardAttribute> attributes, String featureType) {
         StringBuilder result = new StringBuilder("<h3>" + featureType + "</h3>"); //NON-NLS
 
-        String name = getString(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_NAME);
+        String name = getString(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_NAME);
         if (name != null && !name.isEmpty()) {
             result.append("<b>Name:</b> ").append(name).append(SEP); //NON-NLS
         }
 
-        String location = getString(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_LOCATION);
+        String location = getString(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_LOCATION);
         if (location != null && !location.isEmpty()) {
             result.append("<b>Location:</b> ").append(location).append(SEP); //NON-NLS
         }
 
-        Long timestamp = getLong(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_DATETIME);
+        Long timestamp = getLong(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_DATETIME);
         if (timestamp != null) {
             result.append("<b>Timestamp:</b> ").append(getTimeStamp(timestamp)).append(SEP); //NON-NLS
             result.append("<b>Unix timestamp:</b> ").append(timestamp).append(SEP); //NON-NLS
         }
 
-        Long startingTimestamp = getLong(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_DATETIME_START);
+        Long startingTimestamp = getLong(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_DATETIME_START);
         if (startingTimestamp != null) {
             result.append("<b>Starting Timestamp:</b> ").append(getTimeStamp(startingTimestamp)).append(SEP); //NON-NLS
             result.append("<b>Starting Unix timestamp:</b> ").append(startingTimestamp).append(SEP); //NON-NLS
         }
 
-        Long endingTimestamp = getLong(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_DATETIME_END);
+        Long endingTimestamp = getLong(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_DATETIME_END);
         if (endingTimestamp != null) {
             result.append("<b>Ending Timestamp:</b> ").append(getTimeStamp(endingTimestamp)).append(SEP); //NON-NLS
             result.append("<b>Ending Unix timestamp:</b> ").append(endingTimestamp).append(SEP); //NON-NLS
         }
 
-        Long createdTimestamp = getLong(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_DATETIME_CREATED);
+        Long createdTimestamp = getLong(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_DATETIME_CREATED);
         if (createdTimestamp != null) {
             result.append("<b>Created Timestamp:</b> ").append(getTimeStamp(createdTimestamp)).append(SEP); //NON-NLS
             result.append("<b>Created Unix timestamp:</b> ").append(createdTimestamp).append(SEP); //NON-NLS
         }
 
-        Double latitude = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LATITUDE);
+        Double latitude = getDouble(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LATITUDE);
         if (latitude != null) {
             result.append("<b>Latitude:</b> ").append(latitude).append(SEP); //NON-NLS
         }
 
-        Double longitude = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LONGITUDE);
+        Double longitude = getDouble(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LONGITUDE);
         if (longitude != null) {
             result.append("<b>Longitude:</b> ").append(longitude).append(SEP); //NON-NLS
         }
 
-        Double latitudeStart = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LATITUDE_START);
+        Double latitudeStart = getDouble(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LATITUDE_START);
         if (latitudeStart != null) {
             result.append("<b>Latitude Start:</b> ").append(latitudeStart).append(SEP); //NON-NLS
         }
 
-        Double longitudeStart = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LONGITUDE_START);
+        Double longitudeStart = getDouble(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LONGITUDE_START);
         if (longitudeStart != null) {
             result.append("<b>Longitude Start:</b> ").append(longitudeStart).append(SEP); //NON-NLS
         }
 
-        Double latitudeEnd = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LATITUDE_END);
+        Double latitudeEnd = getDouble(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LATITUDE_END);
         if (latitudeEnd != null) {
             result.append("<b>Latitude End:</b> ").append(latitudeEnd).append(SEP); //NON-NLS
         }
 
-        Double longitudeEnd = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LONGITUDE_END);
+        Double longitudeEnd = getDouble(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_LONGITUDE_END);
         if (longitudeEnd != null) {
             result.append("<b>Longitude End:</b> ").append(longitudeEnd).append(SEP); //NON-NLS
         }
 
-        Double velocity = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_VELOCITY);
+        Double velocity = getDouble(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_VELOCITY);
         if (velocity != null) {
             result.append("<b>Velocity:</b> ").append(velocity).append(SEP); //NON-NLS
         }
 
-        Double altitude = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_ALTITUDE);
+        Double altitude = getDouble(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_ALTITUDE);
         if (altitude != null) {
             result.append("<b>Altitude:</b> ").append(altitude).append(SEP); //NON-NLS
         }
 
-        Double bearing = getDouble(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_BEARING);
+        Double bearing = getDouble(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_BEARING);
         if (bearing != null) {
             result.append("<b>Bearing:</b> ").append(bearing).append(SEP); //NON-NLS
         }
 
-        Integer hPrecision = getInteger(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_HPRECISION);
+        Integer hPrecision = getInteger(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_HPRECISION);
         if (hPrecision != null) {
             result.append("<b>Horizontal Precision Figure of Merit:</b> ").append(hPrecision).append(SEP); //NON-NLS
         }
 
-        Integer vPrecision = getInteger(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_VPRECISION);
+        Integer vPrecision = getInteger(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_VPRECISION);
         if (vPrecision != null) {
             result.append("<b>Vertical Precision Figure of Merit:</b> ").append(vPrecision).append(SEP); //NON-NLS
         }
 
-        String mapDatum = getString(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_MAPDATUM);
+        String mapDatum = getString(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_GEO_MAPDATUM);
         if (mapDatum != null && !mapDatum.isEmpty()) {
             result.append("<b>Map Datum:</b> ").append(mapDatum).append(SEP); //NON-NLS
         }
 
-        String programName = getString(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_PROG_NAME);
+        String programName = getString(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_PROG_NAME);
         if (programName != null && !programName.isEmpty()) {
             result.append("<b>Reported by:</b> ").append(programName).append(SEP); //NON-NLS
         }
 
-        String flag = getString(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_FLAG);
+        String flag = getString(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_FLAG);
         if (flag != null && !flag.isEmpty()) {
             result.append("<b>Flag:</b> ").append(flag).append(SEP); //NON-NLS
         }
 
-        String pathSource = getString(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_PATH_SOURCE);
+        String pathSource = getString(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_PATH_SOURCE);
         if (pathSource != null && !pathSource.isEmpty()) {
             result.append("<b>Source:</b> ").append(pathSource).append(SEP); //NON-NLS
         }
 
-        String deviceMake = getString(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_DEVICE_MAKE);
+        String deviceMake = getString(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_DEVICE_MAKE);
         if (deviceMake != null && !deviceMake.isEmpty()) {
             result.append("<b>Device Make:</b> ").append(deviceMake).append(SEP); //NON-NLS
         }
 
-        String deviceModel = getString(artifact, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_DEVICE_MODEL);
+        String deviceModel = getString(attributes, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_DEVICE_MODEL);
         if (deviceModel != null && !deviceModel.isEmpty()) {
             result.append("<b>Device Model:</b> ").append(deviceModel).append(SEP); //NON-NLS
         }
@@ -628,7 +887,10 @@ private String getDescriptionFromArtifact(BlackboardArtifact artifact, String fe
     }
 
     private String getTimeStamp(long timeStamp) {
-        return kmlDateFormat.format(new java.util.Date(timeStamp * 1000));
+        // SimpleDateFormat is not thread safe, and the folders are written concurrently
+        synchronized (kmlDateFormat) {
+            return kmlDateFormat.format(new java.util.Date(timeStamp * 1000));
+        }
     }
 
     /**
@@ -843,7 +1105,8 @@ public String getDescription() {
 
     @Override
     public JPanel getConfigurationPanel() {
-        return null; // No configuration panel
+        configPanel = new ReportKMLConfigPanel();
+        return configPanel;
     }
 
     /**
@@ -0,0 +1,177 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2017 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.report;
+
+import org.sleuthkit.autopsy.coreutils.ModuleSettings;
+
+/**
+ * Configuration panel for the KML report, with the options for thinning out
+ * GPS trackpoints that are close together in space and time.
+ */
+class ReportKMLConfigPanel extends javax.swing.JPanel {
+
+    private static final long serialVersionUID = 1L;
+    private static final String MODULE_NAME = "ReportKML"; //NON-NLS
+    private static final String THIN_TRACKPOINTS_KEY = "thinTrackpoints"; //NON-NLS
+    private static final String DISTANCE_TOLERANCE_KEY = "trackpointDistanceTolerance"; //NON-NLS
+    private static final String TIME_TOLERANCE_KEY = "trackpointTimeTolerance"; //NON-NLS
+
+    /**
+     * Creates new form ReportKMLConfigPanel
+     */
+    ReportKMLConfigPanel() {
+        initComponents();
+
+        // Set the options to the last ones used
+        thinTrackpointsCheckBox.setSelected("true".equals(ModuleSettings.getConfigSetting(MODULE_NAME, THIN_TRACKPOINTS_KEY))); //NON-NLS
+        distanceSpinner.setValue(getIntSetting(DISTANCE_TOLERANCE_KEY, (Integer) distanceSpinner.getValue()));
+        timeSpinner.setValue(getIntSetting(TIME_TOLERANCE_KEY, (Integer) timeSpinner.getValue()));
+        enableToleranceSpinners();
+    }
+
+    /**
+     * Should trackpoints that are close to the last trackpoint written from the
+     * same source be left out of the report?
+     *
+     * @return True if trackpoints should be thinned.
+     */
+    boolean getThinTrackpoints() {
+        return thinTrackpointsCheckBox.isSelected();
+    }
+
+    /**
+     * @return The distance, in meters, within which trackpoints are thinned.
+     */
+    int getDistanceTolerance() {
+        return (Integer) distanceSpinner.getValue();
+    }
+
+    /**
+     * @return The time, in seconds, within which trackpoints are thinned.
+     */
+    int getTimeTolerance() {
+        return (Integer) timeSpinner.getValue();
+    }
+
+    /**
+     * Save the options so they are the defaults the next time.
+     */
+    void saveSettings() {
+        ModuleSettings.setConfigSetting(MODULE_NAME, THIN_TRACKPOINTS_KEY, Boolean.toString(getThinTrackpoints()));
+        ModuleSettings.setConfigSetting(MODULE_NAME, DISTANCE_TOLERANCE_KEY, Integer.toString(getDistanceTolerance()));
+        ModuleSettings.setConfigSetting(MODULE_NAME, TIME_TOLERANCE_KEY, Integer.toString(getTimeTolerance()));
+    }
+
+    private static int getIntSetting(String key, int defaultValue) {
+        String value = ModuleSettings.getConfigSetting(MODULE_NAME, key);
+        if (value != null && !value.isEmpty()) {
+            try {
+                return Math.max(0, Integer.parseInt(value));
+            } catch (NumberFormatException ex) {
+                return defaultValue;
+            }
+        }
+        return defaultValue;
+    }
+
+    private void enableToleranceSpinners() {
+        distanceLabel.setEnabled(thinTrackpointsCheckBox.isSelected());
+        distanceSpinner.setEnabled(thinTrackpointsCheckBox.isSelected());
+        timeLabel.setEnabled(thinTrackpointsCheckBox.isSelected());
+        timeSpinner.setEnabled(thinTrackpointsCheckBox.isSelected());
+    }
+
+    /**
+     * This method is called from within the constructor to initialize the form.
+     * WARNING: Do NOT modify this code. The content of this method is always
+     * regenerated by the Form Editor.
+     */
+    @SuppressWarnings("unchecked")
+    // <editor-fold defaultstate="collapsed" desc="Generated Code">//GEN-BEGIN:initComponents
+    private void initComponents() {
+
+        thinTrackpointsCheckBox = new javax.swing.JCheckBox();
+        distanceLabel = new javax.swing.JLabel();
+        distanceSpinner = new javax.swing.JSpinner();
+        timeLabel = new javax.swing.JLabel();
+        timeSpinner = new javax.swing.JSpinner();
+
+        thinTrackpointsCheckBox.setText(org.openide.util.NbBundle.getMessage(ReportKMLConfigPanel.class, "ReportKMLConfigPanel.thinTrackpointsCheckBox.text")); // NOI18N
+        thinTrackpointsCheckBox.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                thinTrackpointsCheckBoxActionPerformed(evt);
+            }
+        });
+
+        distanceLabel.setText(org.openide.util.NbBundle.getMessage(ReportKMLConfigPanel.class, "ReportKMLConfigPanel.distanceLabel.text")); // NOI18N
+
+        distanceSpinner.setModel(new javax.swing.SpinnerNumberModel(25, 0, null, 5));
+
+        timeLabel.setText(org.openide.util.NbBundle.getMessage(ReportKMLConfigPanel.class, "ReportKMLConfigPanel.timeLabel.text")); // NOI18N
+
+        timeSpinner.setModel(new javax.swing.SpinnerNumberModel(60, 0, null, 10));
+
+        javax.swing.GroupLayout layout = new javax.swing.GroupLayout(this);
+        this.setLayout(layout);
+        layout.setHorizontalGroup(
+            layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(layout.createSequentialGroup()
+                .addContainerGap()
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+                    .addComponent(thinTrackpointsCheckBox)
+                    .addGroup(layout.createSequentialGroup()
+                        .addGap(21, 21, 21)
+                        .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+                            .addComponent(distanceLabel)
+                            .addComponent(timeLabel))
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+                            .addComponent(distanceSpinner, javax.swing.GroupLayout.PREFERRED_SIZE, 80, javax.swing.GroupLayout.PREFERRED_SIZE)
+                            .addComponent(timeSpinner, javax.swing.GroupLayout.PREFERRED_SIZE, 80, javax.swing.GroupLayout.PREFERRED_SIZE))))
+                .addContainerGap(73, Short.MAX_VALUE))
+        );
+        layout.setVerticalGroup(
+            layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(layout.createSequentialGroup()
+                .addContainerGap()
+                .addComponent(thinTrackpointsCheckBox)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(distanceLabel)
+                    .addComponent(distanceSpinner, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(timeLabel)
+                    .addComponent(timeSpinner, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addContainerGap(225, Short.MAX_VALUE))
+        );
+    }// </editor-fold>//GEN-END:initComponents
+
+    private void thinTrackpointsCheckBoxActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_thinTrackpointsCheckBoxActionPerformed
+        enableToleranceSpinners();
+    }//GEN-LAST:event_thinTrackpointsCheckBoxActionPerformed
+
+    // Variables declaration - do not modify//GEN-BEGIN:variables
+    private javax.swing.JLabel distanceLabel;
+    private javax.swing.JSpinner distanceSpinner;
+    private javax.swing.JCheckBox thinTrackpointsCheckBox;
+    private javax.swing.JLabel timeLabel;
+    private javax.swing.JSpinner timeSpinner;
+    // End of variables declaration//GEN-END:variables
+}
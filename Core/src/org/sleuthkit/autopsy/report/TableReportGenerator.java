@@ -18,9 +18,8 @@
  */
 package org.sleuthkit.autopsy.report;
 
-import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Multimaps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
@@ -36,7 +35,15 @@
 import java.util.Objects;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
+import java.util.stream.Collectors;
+import org.apache.commons.lang3.StringUtils;
 import org.openide.util.NbBundle;
 import org.sleuthkit.autopsy.casemodule.Case;
 import org.sleuthkit.autopsy.coreutils.EscapeUtil;
@@ -45,7 +52,6 @@
 import org.sleuthkit.autopsy.datamodel.ContentUtils;
 import org.sleuthkit.datamodel.AbstractFile;
 import org.sleuthkit.datamodel.BlackboardArtifact;
-import org.sleuthkit.datamodel.BlackboardArtifactTag;
 import org.sleuthkit.datamodel.BlackboardAttribute;
 import org.sleuthkit.datamodel.BlackboardAttribute.Type;
 import org.sleuthkit.datamodel.Content;
@@ -65,14 +71,27 @@ class TableReportGenerator {
     private final Map<Integer, List<Column>> columnHeaderMap;
     private static final Logger logger = Logger.getLogger(TableReportGenerator.class.getName());
 
+    /**
+     * The number of artifacts whose attributes are fetched from the case
+     * database at a time while writing an artifact table.
+     */
+    private static final int ARTIFACT_PAGE_SIZE = 1000;
+
+    /**
+     * The most pages written at the same time, for report modules whose pages
+     * are independent.
+     */
+    private static final int MAX_PAGE_WRITERS = Math.min(4, Runtime.getRuntime().availableProcessors());
+
     private final List<String> errorList;
 
     TableReportGenerator(Map<BlackboardArtifact.Type, Boolean> artifactTypeSelections, Map<String, Boolean> tagNameSelections, ReportProgressPanel progressPanel, TableReportModule tableReport) {
 
         this.progressPanel = progressPanel;
         this.tableReport = tableReport;
-        this.columnHeaderMap = new HashMap<>();
-        errorList = new ArrayList<>();
+        // pages for different artifact types may be written concurrently
+        this.columnHeaderMap = new ConcurrentHashMap<>();
+        errorList = Collections.synchronizedList(new ArrayList<>());
         // Get the artifact types selected by the user.
         for (Map.Entry<BlackboardArtifact.Type, Boolean> entry : artifactTypeSelections.entrySet()) {
             if (entry.getValue()) {
@@ -96,116 +115,243 @@ protected void execute() {
         progressPanel.start();
         progressPanel.setIndeterminate(false);
         progressPanel.setMaximumProgress(this.artifactTypes.size() + 2); // +2 for content and blackboard artifact tags
-        // report on the blackboard results
-        if (progressPanel.getStatus() != ReportProgressPanel.ReportStatus.CANCELED) {
-            makeBlackboardArtifactTables();
-        }
 
-        // report on the tagged files and artifacts
-        if (progressPanel.getStatus() != ReportProgressPanel.ReportStatus.CANCELED) {
-            makeContentTagsTables();
+        /*
+         * If the module's pages are independent, each artifact type's page,
+         * and the tagged items pages, are written by a pool of workers.
+         * Otherwise they are written one at a time, in order, by a single
+         * worker. Either way, this returns once all the pages are done, so the
+         * module can write its index when the report is ended.
+         */
+        ExecutorService pageWriters = Executors.newFixedThreadPool(tableReport instanceof ReportHTML ? MAX_PAGE_WRITERS : 1,
+                new ThreadFactoryBuilder().setNameFormat("table-report-page-writer-%d").build()); //NON-NLS
+        List<Future<?>> pages = new ArrayList<>();
+        try {
+            // report on the blackboard results
+            makeBlackboardArtifactTables(pageWriters, pages);
+
+            // report on the tagged files and artifacts, and then the tagged
+            // images found among them
+            pages.add(pageWriters.submit(() -> {
+                if (progressPanel.getStatus() != ReportProgressPanel.ReportStatus.CANCELED) {
+                    makeContentTagsTables();
+                }
+
+                if (progressPanel.getStatus() != ReportProgressPanel.ReportStatus.CANCELED) {
+                    makeBlackboardArtifactTagsTables();
+                }
+
+                if (progressPanel.getStatus() != ReportProgressPanel.ReportStatus.CANCELED) {
+                    // report on the tagged images
+                    makeThumbnailTable();
+                }
+            }));
+
+            for (Future<?> page : pages) {
+                try {
+                    page.get();
+                } catch (ExecutionException ex) {
+                    errorList.add(NbBundle.getMessage(this.getClass(), "ReportGenerator.errList.failedWriteRptPage"));
+                    logger.log(Level.SEVERE, "Error writing report page.", ex); //NON-NLS
+                }
+            }
+        } catch (InterruptedException ex) {
+            logger.log(Level.WARNING, "Interrupted while waiting for report pages to be written.", ex); //NON-NLS
+            pages.forEach(page -> page.cancel(true));
+            Thread.currentThread().interrupt();
+        } finally {
+            pageWriters.shutdown();
+            awaitPageWriters(pageWriters);
         }
+    }
 
-        if (progressPanel.getStatus() != ReportProgressPanel.ReportStatus.CANCELED) {
-            makeBlackboardArtifactTagsTables();
+    /**
+     * Wait for the page writers to stop, even if this thread is interrupted,
+     * so no page is still being written when the report is ended.
+     *
+     * @param pageWriters The shut down executor of the page writers.
+     */
+    private void awaitPageWriters(ExecutorService pageWriters) {
+        boolean interrupted = Thread.interrupted();
+        try {
+            while (true) {
+                try {
+                    if (pageWriters.awaitTermination(1, TimeUnit.MINUTES)) {
+                        return;
+                    }
+                    logger.log(Level.INFO, "Still waiting for report pages to be written."); //NON-NLS
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
         }
+    }
 
-        if (progressPanel.getStatus() != ReportProgressPanel.ReportStatus.CANCELED) {
-            // report on the tagged images
-            makeThumbnailTable();
+    /**
+     * Get a writer for a new page of the report. Pages of an HTML report each
+     * get their own writer, so they can be written at the same time. Other
+     * modules write their pages one at a time, through the module itself.
+     *
+     * @return The page writer.
+     */
+    private TableReportPage newPage() {
+        if (tableReport instanceof ReportHTML) {
+            return ((ReportHTML) tableReport).newPage();
         }
+        return tableReport;
     }
 
     /**
      * Generate the tables for the selected blackboard artifacts
+     *
+     * @param pageWriters The executor to write the tables with.
+     * @param pages       The list to add the futures of the tables to.
      */
-    private void makeBlackboardArtifactTables() {
+    private void makeBlackboardArtifactTables(ExecutorService pageWriters, List<Future<?>> pages) {
         // Make a comment string describing the tag names filter in effect. 
         String comment = "";
         if (!tagNamesFilter.isEmpty()) {
             comment += NbBundle.getMessage(this.getClass(), "ReportGenerator.artifactTable.taggedResults.text");
             comment += makeCommaSeparatedList(tagNamesFilter);
         }
+        final String tagNamesFilterComment = comment;
 
         // Add a table to the report for every enabled blackboard artifact type.
         for (BlackboardArtifact.Type type : artifactTypes) {
-            // Check for cancellaton.
+            pages.add(pageWriters.submit(() -> makeBlackboardArtifactTable(type, tagNamesFilterComment)));
+        }
+    }
 
-            if (progressPanel.getStatus() == ReportProgressPanel.ReportStatus.CANCELED) {
-                return;
-            }
+    /**
+     * Generate the table, or tables, for one of the selected blackboard
+     * artifact types, on a page of its own.
+     *
+     * @param type    The artifact type.
+     * @param comment A comment to put in the header.
+     */
+    private void makeBlackboardArtifactTable(BlackboardArtifact.Type type, String comment) {
+        // Check for cancellaton.
 
-            progressPanel.updateStatusLabel(
-                    NbBundle.getMessage(this.getClass(), "ReportGenerator.progress.processing",
-                            type.getDisplayName()));
+        if (progressPanel.getStatus() == ReportProgressPanel.ReportStatus.CANCELED) {
+            return;
+        }
+        TableReportPage page = newPage();
 
-            // Keyword hits and hashset hit artifacts get special handling.
-            if (type.getTypeID() == BlackboardArtifact.ARTIFACT_TYPE.TSK_KEYWORD_HIT.getTypeID()) {
-                writeKeywordHits(tableReport, comment, tagNamesFilter);
-                continue;
-            } else if (type.getTypeID() == BlackboardArtifact.ARTIFACT_TYPE.TSK_HASHSET_HIT.getTypeID()) {
-                writeHashsetHits(tableReport, comment, tagNamesFilter);
-                continue;
-            }
+        progressPanel.updateStatusLabel(
+                NbBundle.getMessage(this.getClass(), "ReportGenerator.progress.processing",
+                        type.getDisplayName()));
 
-            List<ArtifactData> artifactList = getFilteredArtifacts(type, tagNamesFilter);
+        // Keyword hits and hashset hit artifacts get special handling.
+        if (type.getTypeID() == BlackboardArtifact.ARTIFACT_TYPE.TSK_KEYWORD_HIT.getTypeID()) {
+            writeKeywordHits(page, comment, tagNamesFilter);
+            return;
+        } else if (type.getTypeID() == BlackboardArtifact.ARTIFACT_TYPE.TSK_HASHSET_HIT.getTypeID()) {
+            writeHashsetHits(page, comment, tagNamesFilter);
+            return;
+        }
 
-            if (artifactList.isEmpty()) {
-                continue;
+        /* TSK_ACCOUNT artifacts get grouped by their TSK_ACCOUNT_TYPE
+         * attribute, and then handed off to the standard method for writing
+         * tables. */
+        if (type.getTypeID() == BlackboardArtifact.ARTIFACT_TYPE.TSK_ACCOUNT.getTypeID()) {
+            //Write a table for each account type
+            for (String accountType : getAccountTypes()) {
+                /* If the report is a ReportHTML, the data type name
+                 * eventualy makes it to useDataTypeIcon which expects but
+                 * does not require a artifact name, so we make a synthetic
+                 * compund name by appending a ":" and the account type.
+                 */
+                final String compundDataTypeName = BlackboardArtifact.ARTIFACT_TYPE.TSK_ACCOUNT.getDisplayName() + ": " + accountType;
+                String accountTypeCondition = "art.artifact_id IN (SELECT account_type.artifact_id FROM blackboard_attributes AS account_type " //NON-NLS
+                        + "WHERE account_type.attribute_type_id = " + BlackboardAttribute.ATTRIBUTE_TYPE.TSK_ACCOUNT_TYPE.getTypeID() //NON-NLS
+                        + " AND account_type.value_text = '" + escapeSQLString(accountType) + "')"; //NON-NLS
+                writeTableForDataType(page, type, compundDataTypeName, comment, accountTypeCondition);
             }
+        } else {
+            //all other artifact types are sent to writeTableForDataType directly
+            writeTableForDataType(page, type, type.getDisplayName(), comment, null);
+        }
+    }
 
-            /* TSK_ACCOUNT artifacts get grouped by their TSK_ACCOUNT_TYPE
-             * attribute, and then handed off to the standard method for writing
-             * tables. */
-            if (type.getTypeID() == BlackboardArtifact.ARTIFACT_TYPE.TSK_ACCOUNT.getTypeID()) {
-                //Group account artifacts by their account type
-                ListMultimap<String, ArtifactData> groupedArtifacts = Multimaps.index(artifactList,
-                        artifactData -> {
-                            try {
-                                return artifactData.getArtifact().getAttribute(new BlackboardAttribute.Type(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_ACCOUNT_TYPE)).getValueString();
-                            } catch (TskCoreException ex) {
-                                logger.log(Level.SEVERE, "Unable to get value of TSK_ACCOUNT_TYPE attribute. Defaulting to \"unknown\"", ex);
-                                return "unknown";
-                            }
-                        });
-                for (String accountType : groupedArtifacts.keySet()) {
-                    /* If the report is a ReportHTML, the data type name
-                     * eventualy makes it to useDataTypeIcon which expects but
-                     * does not require a artifact name, so we make a synthetic
-                     * compund name by appending a ":" and the account type.
-                     */
-                    final String compundDataTypeName = BlackboardArtifact.ARTIFACT_TYPE.TSK_ACCOUNT.getDisplayName() + ": " + accountType;
-                    writeTableForDataType(new ArrayList<>(groupedArtifacts.get(accountType)), type, compundDataTypeName, comment);
-                }
-            } else {
-                //all other artifact types are sent to writeTableForDataType directly
-                writeTableForDataType(artifactList, type, type.getDisplayName(), comment);
+    /**
+     * Get the distinct values of the TSK_ACCOUNT_TYPE attribute of the
+     * TSK_ACCOUNT artifacts in the case.
+     *
+     * @return The account types, in alphabetical order.
+     */
+    @SuppressWarnings("deprecation")
+    private List<String> getAccountTypes() {
+        List<String> accountTypes = new ArrayList<>();
+        String accountTypesQuery = "SELECT DISTINCT att.value_text AS account_type " //NON-NLS
+                + "FROM blackboard_attributes AS att, blackboard_artifacts AS art " //NON-NLS
+                + "WHERE att.artifact_id = art.artifact_id " //NON-NLS
+                + "AND art.artifact_type_id = " + BlackboardArtifact.ARTIFACT_TYPE.TSK_ACCOUNT.getTypeID() + " " //NON-NLS
+                + "AND att.attribute_type_id = " + BlackboardAttribute.ATTRIBUTE_TYPE.TSK_ACCOUNT_TYPE.getTypeID() + " " //NON-NLS
+                + "ORDER BY account_type ASC"; //NON-NLS
+
+        try (SleuthkitCase.CaseDbQuery dbQuery = Case.getCurrentCase().getSleuthkitCase().executeQuery(accountTypesQuery)) {
+            ResultSet resultSet = dbQuery.getResultSet();
+            while (resultSet.next()) {
+                accountTypes.add(resultSet.getString("account_type")); //NON-NLS
             }
+        } catch (TskCoreException | SQLException ex) {
+            errorList.add(NbBundle.getMessage(this.getClass(), "ReportGenerator.errList.failedGetBBArtifacts"));
+            logger.log(Level.SEVERE, "Failed to get account types when generating report.", ex); //NON-NLS
         }
+        return accountTypes;
     }
 
     /**
+     * Write the artifacts of the given type that pass the tag names filter to
+     * a table.
      *
-     * Write the given list of artifacts to the table for the given type.
+     * The artifacts are not all loaded up front. Instead, their ids are read,
+     * in the order they should appear in the table, from a single query, and
+     * the artifacts and their attributes are fetched a page at a time and
+     * added to the table as they arrive.
      *
-     * @param artifactList The List of artifacts to include in the table.
-     * @param type         The Type of artifacts included in the table. All the
-     *                     artifacts in artifactList should be of this type.
-     * @param tableName    The name of the table.
-     * @param comment      A comment to put in the header.
+     * @param page      The page to write the table to.
+     * @param type      The Type of artifacts included in the table.
+     * @param tableName The name of the table.
+     * @param comment   A comment to put in the header.
+     * @param condition An additional SQL condition on the artifacts (aliased
+     *                  as art) to include in the table, or null.
      */
-    private void writeTableForDataType(List<ArtifactData> artifactList, BlackboardArtifact.Type type, String tableName, String comment) {
+    @SuppressWarnings("deprecation")
+    private void writeTableForDataType(TableReportPage page, BlackboardArtifact.Type type, String tableName, String comment, String condition) {
+        SleuthkitCase caseDb = Case.getCurrentCase().getSleuthkitCase();
+        String artifactsWhereClause = "art.artifact_type_id = " + type.getTypeID() //NON-NLS
+                + (condition == null ? "" : " AND " + condition) //NON-NLS
+                + makeTagNamesFilterCondition();
+
         /*
          * Make a sorted set of all of the attribute types that are on any of
-         * the given artifacts.
+         * the artifacts.
          */
         Set<BlackboardAttribute.Type> attrTypeSet = new TreeSet<>(Comparator.comparing(BlackboardAttribute.Type::getDisplayName));
-        for (ArtifactData data : artifactList) {
-            List<BlackboardAttribute> attributes = data.getAttributes();
-            for (BlackboardAttribute attribute : attributes) {
-                attrTypeSet.add(attribute.getAttributeType());
+        String attributeTypesQuery = "SELECT DISTINCT attr_types.type_name AS type_name " //NON-NLS
+                + "FROM blackboard_attribute_types AS attr_types, blackboard_attributes AS attrs, blackboard_artifacts AS art " //NON-NLS
+                + "WHERE attr_types.attribute_type_id = attrs.attribute_type_id " //NON-NLS
+                + "AND attrs.artifact_id = art.artifact_id " //NON-NLS
+                + "AND " + artifactsWhereClause; //NON-NLS
+        try (SleuthkitCase.CaseDbQuery dbQuery = caseDb.executeQuery(attributeTypesQuery)) {
+            ResultSet resultSet = dbQuery.getResultSet();
+            while (resultSet.next()) {
+                BlackboardAttribute.Type attributeType = caseDb.getAttributeType(resultSet.getString("type_name")); //NON-NLS
+                if (attributeType != null) {
+                    attrTypeSet.add(attributeType);
+                }
             }
+        } catch (TskCoreException | SQLException ex) {
+            errorList.add(NbBundle.getMessage(this.getClass(), "ReportGenerator.errList.failedGetBBAttribs"));
+            logger.log(Level.SEVERE, "Failed to get Blackboard Attribute types when generating report.", ex); //NON-NLS
+            return;
         }
+
         /* Get the columns appropriate for the artifact type. This is used to
          * get the data that will be in the cells below based on type, and
          * display the column headers.
@@ -216,28 +362,176 @@ private void writeTableForDataType(List<ArtifactData> artifactList, BlackboardAr
         }
         columnHeaderMap.put(type.getTypeID(), columns);
 
-        /* The artifact list is sorted now, as getting the row data is dependent
-         * on having the columns, which is necessary for sorting.
+        /* The rows are sorted by the database, on the value of the first
+         * column, falling back to the artifact id. The sort value is computed
+         * once per artifact by a single ordered query. Its ids are read from
+         * the cursor a page at a time while the rows are written, so the
+         * report only holds one page of ids.
          */
-        Collections.sort(artifactList);
+        String sortValue = makeSortValueExpression(type, columns);
+        String artifactIDsQuery = "SELECT art.artifact_id AS artifact_id FROM blackboard_artifacts AS art WHERE " + artifactsWhereClause; //NON-NLS
+        if (sortValue == null) {
+            artifactIDsQuery += " ORDER BY art.artifact_id ASC"; //NON-NLS
+        } else if (Case.getCurrentCase().getCaseType() == Case.CaseType.MULTI_USER_CASE) {
+            artifactIDsQuery += " ORDER BY " + sortValue + " ASC NULLS FIRST, art.artifact_id ASC"; //NON-NLS
+        } else {
+            artifactIDsQuery += " ORDER BY " + sortValue + " ASC, art.artifact_id ASC"; //NON-NLS
+        }
 
-        tableReport.startDataType(tableName, comment);
-        tableReport.startTable(Lists.transform(columns, Column::getColumnHeader));
+        Map<Long, HashSet<String>> tagNamesByArtifact = null;
+        List<Long> artifactIDs = new ArrayList<>();
+        try (SleuthkitCase.CaseDbQuery dbQuery = caseDb.executeQuery(artifactIDsQuery)) {
+            ResultSet resultSet = dbQuery.getResultSet();
+            boolean more = resultSet.next();
+            while (more && progressPanel.getStatus() != ReportProgressPanel.ReportStatus.CANCELED) {
+                artifactIDs.clear();
+                while (more && artifactIDs.size() < ARTIFACT_PAGE_SIZE) {
+                    artifactIDs.add(resultSet.getLong("artifact_id")); //NON-NLS
+                    more = resultSet.next();
+                }
+                if (tagNamesByArtifact == null) {
+                    tagNamesByArtifact = getTagNamesByArtifact(type.getTypeID());
+                    page.startDataType(tableName, comment);
+                    page.startTable(Lists.transform(columns, Column::getColumnHeader));
+                }
+                writeArtifactRows(page, artifactIDs, tagNamesByArtifact);
+            }
+        } catch (TskCoreException | SQLException ex) {
+            errorList.add(NbBundle.getMessage(this.getClass(), "ReportGenerator.errList.failedGetBBArtifacts"));
+            logger.log(Level.SEVERE, "Failed to get Blackboard Artifacts when generating report.", ex); //NON-NLS
+        }
+        if (tagNamesByArtifact == null) {
+            //no artifacts of this type pass the filter, or they could not be read, so there is no table
+            return;
+        }
+
+        // Finish up this data type
+        progressPanel.increment();
+        page.endTable();
+        page.endDataType();
+    }
+
+    /**
+     * Fetch the artifacts with the given ids, and their attributes, and add a
+     * row for each of them to the current table, in the order of the ids.
+     *
+     * @param page               The page to write the rows to.
+     * @param artifactIDs        The ids of the artifacts to write.
+     * @param tagNamesByArtifact The tag names of the tagged artifacts of the
+     *                           type being written, by artifact id.
+     *
+     * @throws TskCoreException If there is a problem querying the case
+     *                          database.
+     */
+    private void writeArtifactRows(TableReportPage page, List<Long> artifactIDs, Map<Long, HashSet<String>> tagNamesByArtifact) throws TskCoreException {
+        SleuthkitCase caseDb = Case.getCurrentCase().getSleuthkitCase();
+        String artifactIDsList = StringUtils.join(artifactIDs, ", ");
+
+        Map<Long, BlackboardArtifact> artifacts = new HashMap<>();
+        for (BlackboardArtifact artifact : caseDb.getMatchingArtifacts("WHERE blackboard_artifacts.artifact_id IN (" + artifactIDsList + ")")) { //NON-NLS
+            artifacts.put(artifact.getArtifactID(), artifact);
+        }
+        Map<Long, List<BlackboardAttribute>> attributesByArtifact = caseDb.getMatchingAttributes("WHERE artifact_id IN (" + artifactIDsList + ")").stream() //NON-NLS
+                .collect(Collectors.groupingBy(BlackboardAttribute::getArtifactID));
+
+        for (Long artifactID : artifactIDs) {
+            BlackboardArtifact artifact = artifacts.get(artifactID);
+            if (artifact == null) {
+                //the artifact was deleted since its id was read
+                continue;
+            }
+            List<BlackboardAttribute> attributes = attributesByArtifact.getOrDefault(artifactID, new ArrayList<>());
+            HashSet<String> tagNames = new HashSet<>(tagNamesByArtifact.getOrDefault(artifactID, new HashSet<>()));
 
-        for (ArtifactData artifactData : artifactList) {
             // Get the row data for this artifact, and has the
             // module add it.
-            List<String> rowData = artifactData.getRow();
+            List<String> rowData = new ArtifactData(artifact, attributes, tagNames).getRow();
             if (rowData.isEmpty()) {
-                return;
+                continue;
             }
+            page.addRow(rowData);
+        }
+    }
 
-            tableReport.addRow(rowData);
+    /**
+     * Make a SQL expression that gives the value the rows of the table for the
+     * given artifact type should be sorted on: the value of the first column,
+     * if it can be read straight from the case database.
+     *
+     * @param type    The Type of artifacts in the table.
+     * @param columns The columns of the table.
+     *
+     * @return The sort value expression, in terms of the artifacts (aliased as
+     *         art), or null if the rows should just be sorted by artifact id.
+     */
+    private String makeSortValueExpression(BlackboardArtifact.Type type, List<Column> columns) {
+        String sortValue = null;
+        boolean isText = true;
+        if (type.getTypeID() == BlackboardArtifact.ARTIFACT_TYPE.TSK_EXT_MISMATCH_DETECTED.getTypeID()) {
+            sortValue = "(SELECT sort_file.name FROM tsk_files AS sort_file WHERE sort_file.obj_id = art.obj_id)"; //NON-NLS
+        } else {
+            BlackboardAttribute.Type sortAttributeType = null;
+            if (type.getTypeID() == BlackboardArtifact.ARTIFACT_TYPE.TSK_INTERESTING_FILE_HIT.getTypeID()) {
+                sortAttributeType = new BlackboardAttribute.Type(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_SET_NAME);
+            } else if (columns.get(0) instanceof AttributeColumn) {
+                sortAttributeType = ((AttributeColumn) columns.get(0)).attributeType;
+            }
+            if (sortAttributeType != null) {
+                String valueColumn;
+                switch (sortAttributeType.getValueType()) {
+                    case STRING:
+                        valueColumn = "value_text"; //NON-NLS
+                        break;
+                    case INTEGER:
+                        valueColumn = "value_int32"; //NON-NLS
+                        isText = false;
+                        break;
+                    case LONG:
+                    case DATETIME:
+                        valueColumn = "value_int64"; //NON-NLS
+                        isText = false;
+                        break;
+                    case DOUBLE:
+                        valueColumn = "value_double"; //NON-NLS
+                        isText = false;
+                        break;
+                    default:
+                        return null;
+                }
+                sortValue = "(SELECT MIN(sort_attr." + valueColumn + ") FROM blackboard_attributes AS sort_attr " //NON-NLS
+                        + "WHERE sort_attr.artifact_id = art.artifact_id " //NON-NLS
+                        + "AND sort_attr.attribute_type_id = " + sortAttributeType.getTypeID() + ")"; //NON-NLS
+            }
         }
-        // Finish up this data type
-        progressPanel.increment();
-        tableReport.endTable();
-        tableReport.endDataType();
+        if (sortValue != null && isText && Case.getCurrentCase().getCaseType() == Case.CaseType.MULTI_USER_CASE) {
+            sortValue = "convert_to(" + sortValue + ", 'SQL_ASCII')"; //NON-NLS
+        }
+        return sortValue;
+    }
+
+    /**
+     * Make a SQL condition that limits artifacts (aliased as art) to those
+     * tagged with one of the tag names in the tag names filter.
+     *
+     * @return The condition, starting with " AND ", or an empty string if
+     *         there is no tag names filter.
+     */
+    private String makeTagNamesFilterCondition() {
+        if (tagNamesFilter.isEmpty()) {
+            return "";
+        }
+        List<String> quotedTagNames = new ArrayList<>();
+        for (String tagName : tagNamesFilter) {
+            quotedTagNames.add("'" + escapeSQLString(tagName) + "'");
+        }
+        return " AND art.artifact_id IN (SELECT filter_tags.artifact_id " //NON-NLS
+                + "FROM blackboard_artifact_tags AS filter_tags, tag_names AS filter_names " //NON-NLS
+                + "WHERE filter_tags.tag_name_id = filter_names.tag_name_id " //NON-NLS
+                + "AND filter_names.display_name IN (" + StringUtils.join(quotedTagNames, ", ") + "))"; //NON-NLS
+    }
+
+    private static String escapeSQLString(String value) {
+        return value.replace("'", "''");
     }
 
     /**
@@ -245,6 +539,7 @@ private void writeTableForDataType(List<ArtifactData> artifactList, BlackboardAr
      */
     @SuppressWarnings("deprecation")
     private void makeContentTagsTables() {
+        TableReportPage page = newPage();
 
         // Get the content tags.
         List<ContentTag> tags;
@@ -279,13 +574,13 @@ private void makeContentTagsTables() {
                     NbBundle.getMessage(this.getClass(), "ReportGenerator.makeContTagTab.taggedFiles.msg"));
             comment.append(makeCommaSeparatedList(tagNamesFilter));
         }
-        if (tableReport instanceof ReportHTML) {
-            ReportHTML htmlReportModule = (ReportHTML) tableReport;
+        if (page instanceof ReportHTML.Page) {
+            ReportHTML.Page htmlReportModule = (ReportHTML.Page) page;
             htmlReportModule.startDataType(BlackboardArtifact.ARTIFACT_TYPE.TSK_TAG_FILE.getDisplayName(), comment.toString());
             htmlReportModule.startContentTagsTable(columnHeaders);
         } else {
-            tableReport.startDataType(BlackboardArtifact.ARTIFACT_TYPE.TSK_TAG_FILE.getDisplayName(), comment.toString());
-            tableReport.startTable(columnHeaders);
+            page.startDataType(BlackboardArtifact.ARTIFACT_TYPE.TSK_TAG_FILE.getDisplayName(), comment.toString());
+            page.startTable(columnHeaders);
         }
 
         // Give the modules the rows for the content tags. 
@@ -316,11 +611,11 @@ private void makeContentTagsTables() {
                 rowData.add(file.getMd5Hash());
             }
             // @@@ This casting is a tricky little workaround to allow the HTML report module to slip in a content hyperlink.
-            if (tableReport instanceof ReportHTML) {
-                ReportHTML htmlReportModule = (ReportHTML) tableReport;
+            if (page instanceof ReportHTML.Page) {
+                ReportHTML.Page htmlReportModule = (ReportHTML.Page) page;
                 htmlReportModule.addRowWithTaggedContentHyperlink(rowData, tag);
             } else {
-                tableReport.addRow(rowData);
+                page.addRow(rowData);
             }
 
             // see if it is for an image so that we later report on it
@@ -329,8 +624,8 @@ private void makeContentTagsTables() {
 
         // The the modules content tags reporting is ended.
         progressPanel.increment();
-        tableReport.endTable();
-        tableReport.endDataType();
+        page.endTable();
+        page.endDataType();
     }
 
     /**
@@ -338,6 +633,7 @@ private void makeContentTagsTables() {
      */
     @SuppressWarnings("deprecation")
     private void makeBlackboardArtifactTagsTables() {
+        TableReportPage page = newPage();
 
         List<BlackboardArtifactTag> tags;
         try {
@@ -359,8 +655,8 @@ private void makeBlackboardArtifactTagsTables() {
                     NbBundle.getMessage(this.getClass(), "ReportGenerator.makeBbArtTagTab.taggedRes.msg"));
             comment.append(makeCommaSeparatedList(tagNamesFilter));
         }
-        tableReport.startDataType(BlackboardArtifact.ARTIFACT_TYPE.TSK_TAG_ARTIFACT.getDisplayName(), comment.toString());
-        tableReport.startTable(new ArrayList<>(Arrays.asList(
+        page.startDataType(BlackboardArtifact.ARTIFACT_TYPE.TSK_TAG_ARTIFACT.getDisplayName(), comment.toString());
+        page.startTable(new ArrayList<>(Arrays.asList(
                 NbBundle.getMessage(this.getClass(), "ReportGenerator.tagTable.header.resultType"),
                 NbBundle.getMessage(this.getClass(), "ReportGenerator.tagTable.header.tag"),
                 NbBundle.getMessage(this.getClass(), "ReportGenerator.tagTable.header.comment"),
@@ -374,7 +670,7 @@ private void makeBlackboardArtifactTagsTables() {
 
             List<String> row;
             row = new ArrayList<>(Arrays.asList(tag.getArtifact().getArtifactTypeName(), tag.getName().getDisplayName(), tag.getComment(), tag.getContent().getName()));
-            tableReport.addRow(row);
+            page.addRow(row);
 
             // check if the tag is an image that we should later make a thumbnail for
             checkIfTagHasImage(tag);
@@ -382,8 +678,8 @@ private void makeBlackboardArtifactTagsTables() {
 
         // The the modules blackboard artifact tags reporting is ended.
         progressPanel.increment();
-        tableReport.endTable();
-        tableReport.endDataType();
+        page.endTable();
+        page.endDataType();
     }
 
     /**
@@ -404,8 +700,9 @@ private void makeThumbnailTable() {
         progressPanel.updateStatusLabel(
                 NbBundle.getMessage(this.getClass(), "ReportGenerator.progress.createdThumb.text"));
 
-        if (tableReport instanceof ReportHTML) {
-            ReportHTML htmlModule = (ReportHTML) tableReport;
+        TableReportPage page = newPage();
+        if (page instanceof ReportHTML.Page) {
+            ReportHTML.Page htmlModule = (ReportHTML.Page) page;
             htmlModule.startDataType(
                     NbBundle.getMessage(this.getClass(), "ReportGenerator.thumbnailTable.name"),
                     NbBundle.getMessage(this.getClass(), "ReportGenerator.thumbnailTable.desc"));
@@ -500,7 +797,7 @@ private String makeCommaSeparatedList(Collection<String> items) {
      * @param tableModule module to report on
      */
     @SuppressWarnings("deprecation")
-    private void writeKeywordHits(TableReportModule tableModule, String comment, HashSet<String> tagNamesFilter) {
+    private void writeKeywordHits(TableReportPage tableModule, String comment, HashSet<String> tagNamesFilter) {
 
         // Query for keyword lists-only so that we can tell modules what lists
         // will exist for their index.
@@ -584,6 +881,7 @@ private void writeKeywordHits(TableReportModule tableModule, String comment, Has
 
         try (SleuthkitCase.CaseDbQuery dbQuery = Case.getCurrentCase().getSleuthkitCase().executeQuery(keywordsQuery)) {
             ResultSet resultSet = dbQuery.getResultSet();
+            Map<Long, HashSet<String>> tagNamesByArtifact = getTagNamesByArtifact(BlackboardArtifact.ARTIFACT_TYPE.TSK_KEYWORD_HIT.getTypeID());
 
             String currentKeyword = "";
             String currentList = "";
@@ -594,7 +892,7 @@ private void writeKeywordHits(TableReportModule tableModule, String comment, Has
                 }
 
                 // Get any tags that associated with this artifact and apply the tag filter.
-                HashSet<String> uniqueTagNames = getUniqueTagNames(resultSet.getLong("artifact_id")); //NON-NLS
+                HashSet<String> uniqueTagNames = tagNamesByArtifact.getOrDefault(resultSet.getLong("artifact_id"), new HashSet<>()); //NON-NLS
                 if (failsTagFilter(uniqueTagNames, tagNamesFilter)) {
                     continue;
                 }
@@ -609,7 +907,7 @@ private void writeKeywordHits(TableReportModule tableModule, String comment, Has
                 try {
                     AbstractFile f = Case.getCurrentCase().getSleuthkitCase().getAbstractFileById(objId);
                     if (f != null) {
-                        uniquePath = Case.getCurrentCase().getSleuthkitCase().getAbstractFileById(objId).getUniquePath();
+                        uniquePath = f.getUniquePath();
                     }
                 } catch (TskCoreException ex) {
                     errorList.add(
@@ -664,7 +962,7 @@ private void writeKeywordHits(TableReportModule tableModule, String comment, Has
      * @param tableModule module to report on
      */
     @SuppressWarnings("deprecation")
-    private void writeHashsetHits(TableReportModule tableModule, String comment, HashSet<String> tagNamesFilter) {
+    private void writeHashsetHits(TableReportPage tableModule, String comment, HashSet<String> tagNamesFilter) {
         String orderByClause;
         if (Case.getCurrentCase().getCaseType() == Case.CaseType.MULTI_USER_CASE) {
             orderByClause = "ORDER BY convert_to(att.value_text, 'SQL_ASCII') ASC NULLS FIRST"; //NON-NLS
@@ -729,6 +1027,7 @@ private void writeHashsetHits(TableReportModule tableModule, String comment, Has
         try (SleuthkitCase.CaseDbQuery dbQuery = Case.getCurrentCase().getSleuthkitCase().executeQuery(hashsetHitsQuery)) {
             // Query for hashset hits
             ResultSet resultSet = dbQuery.getResultSet();
+            Map<Long, HashSet<String>> tagNamesByArtifact = getTagNamesByArtifact(BlackboardArtifact.ARTIFACT_TYPE.TSK_HASHSET_HIT.getTypeID());
             String currentSet = "";
             while (resultSet.next()) {
                 // Check to see if all the TableReportModules have been canceled
@@ -737,7 +1036,7 @@ private void writeHashsetHits(TableReportModule tableModule, String comment, Has
                 }
 
                 // Get any tags that associated with this artifact and apply the tag filter.
-                HashSet<String> uniqueTagNames = getUniqueTagNames(resultSet.getLong("artifact_id")); //NON-NLS
+                HashSet<String> uniqueTagNames = tagNamesByArtifact.getOrDefault(resultSet.getLong("artifact_id"), new HashSet<>()); //NON-NLS
                 if (failsTagFilter(uniqueTagNames, tagNamesFilter)) {
                     continue;
                 }
@@ -751,7 +1050,7 @@ private void writeHashsetHits(TableReportModule tableModule, String comment, Has
                 try {
                     AbstractFile f = Case.getCurrentCase().getSleuthkitCase().getAbstractFileById(objId);
                     if (f != null) {
-                        uniquePath = Case.getCurrentCase().getSleuthkitCase().getAbstractFileById(objId).getUniquePath();
+                        uniquePath = f.getUniquePath();
                     }
                 } catch (TskCoreException ex) {
                     errorList.add(
@@ -802,7 +1101,7 @@ List<String> getErrorList() {
      * Container class that holds data about an Artifact to eliminate duplicate
      * calls to the Sleuthkit database.
      */
-    private class ArtifactData implements Comparable<ArtifactData> {
+    private class ArtifactData {
 
         private BlackboardArtifact artifact;
         private List<BlackboardAttribute> attributes;
@@ -848,28 +1147,6 @@ public Content getContent() {
             return content;
         }
 
-        /**
-         * Compares ArtifactData objects by the first attribute they have in
-         * common in their List<BlackboardAttribute>. Should only be used on two
-         * artifacts of the same type
-         *
-         * If all attributes are the same, they are assumed duplicates and are
-         * compared by their artifact id. Should only be used with attributes of
-         * the same type.
-         */
-        @Override
-        public int compareTo(ArtifactData otherArtifactData) {
-            List<String> thisRow = getRow();
-            List<String> otherRow = otherArtifactData.getRow();
-            for (int i = 0; i < thisRow.size(); i++) {
-                int compare = thisRow.get(i).compareTo(otherRow.get(i));
-                if (compare != 0) {
-                    return compare;
-                }
-            }
-            return ((Long) this.getArtifactID()).compareTo(otherArtifactData.getArtifactID());
-        }
-
         /**
          * Get the values for each row in the table report.
          *
@@ -976,41 +1253,6 @@ private List<String> getOrderedRowDataAsStrings() throws TskCoreException {
 
     }
 
-    /**
-     * Get a List of the artifacts and data of the given type that pass the
-     * given Tag Filter.
-     *
-     * @param type           The artifact type to get
-     * @param tagNamesFilter The tag names that should be included.
-     *
-     * @return a list of the filtered tags.
-     */
-    private List<ArtifactData> getFilteredArtifacts(BlackboardArtifact.Type type, HashSet<String> tagNamesFilter) {
-        List<ArtifactData> artifacts = new ArrayList<>();
-        try {
-            for (BlackboardArtifact artifact : Case.getCurrentCase().getSleuthkitCase().getBlackboardArtifacts(type.getTypeID())) {
-                List<BlackboardArtifactTag> tags = Case.getCurrentCase().getServices().getTagsManager().getBlackboardArtifactTagsByArtifact(artifact);
-                HashSet<String> uniqueTagNames = new HashSet<>();
-                for (BlackboardArtifactTag tag : tags) {
-                    uniqueTagNames.add(tag.getName().getDisplayName());
-                }
-                if (failsTagFilter(uniqueTagNames, tagNamesFilter)) {
-                    continue;
-                }
-                try {
-                    artifacts.add(new ArtifactData(artifact, Case.getCurrentCase().getSleuthkitCase().getBlackboardAttributes(artifact), uniqueTagNames));
-                } catch (TskCoreException ex) {
-                    errorList.add(NbBundle.getMessage(this.getClass(), "ReportGenerator.errList.failedGetBBAttribs"));
-                    logger.log(Level.SEVERE, "Failed to get Blackboard Attributes when generating report.", ex); //NON-NLS
-                }
-            }
-        } catch (TskCoreException ex) {
-            errorList.add(NbBundle.getMessage(this.getClass(), "ReportGenerator.errList.failedGetBBArtifacts"));
-            logger.log(Level.SEVERE, "Failed to get Blackboard Artifacts when generating report.", ex); //NON-NLS
-        }
-        return artifacts;
-    }
-
     private Boolean failsTagFilter(HashSet<String> tagNames, HashSet<String> tagsNamesFilter) {
         if (null == tagsNamesFilter || tagsNamesFilter.isEmpty()) {
             return false;
@@ -1570,33 +1812,36 @@ private String getFileUniquePath(Content content) {
     }
 
     /**
-     * Get any tags associated with an artifact
+     * Get the tag names of all the tagged artifacts of the given type, with one
+     * query rather than one per artifact.
      *
-     * @param artifactId
+     * @param artifactTypeId The id of the artifact type.
      *
-     * @return hash set of tag display names
+     * @return A map from artifact id to the display names of the artifact's
+     *         tags. Untagged artifacts are not in the map.
      *
-     * @throws SQLException
+     * @throws TskCoreException
      */
     @SuppressWarnings("deprecation")
-    private HashSet<String> getUniqueTagNames(long artifactId) throws TskCoreException {
-        HashSet<String> uniqueTagNames = new HashSet<>();
+    private Map<Long, HashSet<String>> getTagNamesByArtifact(int artifactTypeId) throws TskCoreException {
+        Map<Long, HashSet<String>> tagNamesByArtifact = new HashMap<>();
 
-        String query = "SELECT display_name, artifact_id FROM tag_names AS tn, blackboard_artifact_tags AS bat "
-                + //NON-NLS 
-                "WHERE tn.tag_name_id = bat.tag_name_id AND bat.artifact_id = " + artifactId; //NON-NLS
+        String query = "SELECT tn.display_name AS display_name, bat.artifact_id AS artifact_id " //NON-NLS
+                + "FROM tag_names AS tn, blackboard_artifact_tags AS bat, blackboard_artifacts AS art " //NON-NLS
+                + "WHERE tn.tag_name_id = bat.tag_name_id AND bat.artifact_id = art.artifact_id " //NON-NLS
+                + "AND art.artifact_type_id = " + artifactTypeId; //NON-NLS
 
         try (SleuthkitCase.CaseDbQuery dbQuery = Case.getCurrentCase().getSleuthkitCase().executeQuery(query)) {
             ResultSet tagNameRows = dbQuery.getResultSet();
             while (tagNameRows.next()) {
-                uniqueTagNames.add(tagNameRows.getString("display_name")); //NON-NLS
+                tagNamesByArtifact.computeIfAbsent(tagNameRows.getLong("artifact_id"), artifactId -> new HashSet<>()) //NON-NLS
+                        .add(tagNameRows.getString("display_name")); //NON-NLS
             }
         } catch (TskCoreException | SQLException ex) {
-            throw new TskCoreException("Error getting tag names for artifact: ", ex);
+            throw new TskCoreException("Error getting tag names for artifacts: ", ex);
         }
 
-        return uniqueTagNames;
-
+        return tagNamesByArtifact;
     }
 
     private interface Column {
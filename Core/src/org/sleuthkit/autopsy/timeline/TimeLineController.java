@@ -54,6 +54,7 @@
 import javafx.concurrent.Worker;
 import static javafx.concurrent.Worker.State.FAILED;
 import static javafx.concurrent.Worker.State.SUCCEEDED;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.Immutable;
 import javax.swing.SwingUtilities;
@@ -78,6 +79,8 @@
 import org.sleuthkit.autopsy.coreutils.ThreadConfined;
 import org.sleuthkit.autopsy.events.AutopsyEvent;
 import org.sleuthkit.autopsy.ingest.IngestManager;
+import org.sleuthkit.autopsy.ingest.events.DataSourceAnalysisCompletedEvent;
+import org.sleuthkit.autopsy.ingest.events.DataSourceAnalysisStartedEvent;
 import static org.sleuthkit.autopsy.ingest.IngestManager.IngestJobEvent.CANCELLED;
 import org.sleuthkit.autopsy.timeline.datamodel.FilteredEventsModel;
 import org.sleuthkit.autopsy.timeline.datamodel.TimeLineEvent;
@@ -94,6 +97,7 @@
 import org.sleuthkit.autopsy.timeline.zooming.ZoomParams;
 import org.sleuthkit.datamodel.AbstractFile;
 import org.sleuthkit.datamodel.BlackboardArtifact;
+import org.sleuthkit.datamodel.Content;
 
 /**
  * Controller in the MVC design along with FilteredEventsModel TimeLineView.
@@ -514,6 +518,49 @@ private void rebuildTagsTable(AbstractFile file, BlackboardArtifact artifact) {
         rebuildRepoHelper(eventsRepository::rebuildTags, false, file, artifact);
     }
 
+    /**
+     * Add the events of the artifacts added to the case since the repo was
+     * last populated in the background. If the update fails or is cancelled,
+     * mark the db stale so the user is prompted to rebuild it.
+     */
+    @ThreadConfined(type = ThreadConfined.ThreadType.ANY)
+    private void updateRepo() {
+        updateRepo(null);
+    }
+
+    /**
+     * Add the events of the artifacts added to the case since the repo was
+     * last populated, and of the new files of the analyzed data source, in the
+     * background. If the update fails or is cancelled, or the analyzed data
+     * source had file system events added before its analysis finished, mark
+     * the db stale so the user is prompted to rebuild it.
+     *
+     * @param analyzedDataSourceID If not null, the id of a data source whose
+     *                             analysis just completed.
+     */
+    @ThreadConfined(type = ThreadConfined.ThreadType.ANY)
+    private void updateRepo(@Nullable Long analyzedDataSourceID) {
+        eventsRepository.updateRepository(analyzedDataSourceID, this::onRepoUpdateStateChange);
+    }
+
+    /**
+     * Handle a state change of a background update of the repo.
+     *
+     * @param newState the new state of the update
+     */
+    @ThreadConfined(type = ThreadConfined.ThreadType.JFX)
+    private void onRepoUpdateStateChange(Worker.State newState) {
+        switch (newState) {
+            case SUCCEEDED:
+                filteredEvents.postDBUpdated();
+                break;
+            case FAILED:
+            case CANCELLED:
+                setEventsDBStale(true);
+                break;
+        }
+    }
+
     /**
      * Show the entire range of the timeline.
      */
@@ -551,6 +598,7 @@ public void shutDownTimeLine() {
         IngestManager.getInstance().removeIngestModuleEventListener(ingestModuleListener);
         IngestManager.getInstance().removeIngestJobEventListener(ingestJobListener);
         Case.removePropertyChangeListener(caseListener);
+        eventsRepository.shutDown();
         if (topComponent != null) {
             topComponent.close();
             topComponent = null;
@@ -618,6 +666,8 @@ private void promptForRebuild(AbstractFile file, BlackboardArtifact artifact) {
          * //TODO: can we check the tags to see if we need to do this?
          */
         rebuildTagsTable(file, artifact);
+        //catch up with anything that was added to the case while the timeline was closed.
+        eventsRepository.catchUpRepository(this::onRepoUpdateStateChange);
     }
 
     /**
@@ -956,8 +1006,8 @@ public void propertyChange(PropertyChangeEvent evt) {
             switch (IngestManager.IngestModuleEvent.valueOf(evt.getPropertyName())) {
                 case CONTENT_CHANGED:
                 case DATA_ADDED:
-                    //since black board artifacts or new derived content have been added, the DB is stale.
-                    Platform.runLater(() -> setEventsDBStale(true));
+                    //black board artifacts or new derived content have been added, add their events to the DB.
+                    updateRepo();
                     break;
                 case FILE_DONE:
                     /*
@@ -979,11 +1029,18 @@ private class AutopsyIngestJobListener implements PropertyChangeListener {
         public void propertyChange(PropertyChangeEvent evt) {
             switch (IngestManager.IngestJobEvent.valueOf(evt.getPropertyName())) {
                 case DATA_SOURCE_ANALYSIS_COMPLETED:
-                    //mark db stale, and prompt to rebuild
-                    Platform.runLater(() -> setEventsDBStale(true));
+                    //the files of the data source are fully analyzed, add their events to the DB.
+                    Content dataSource = ((DataSourceAnalysisCompletedEvent) evt).getDataSource();
+                    updateRepo(dataSource == null ? null : dataSource.getId());
                     filteredEvents.postAutopsyEventLocally((AutopsyEvent) evt);
                     break;
                 case DATA_SOURCE_ANALYSIS_STARTED:
+                    //the events of the files the data source already has may become outdated.
+                    Content startedDataSource = ((DataSourceAnalysisStartedEvent) evt).getDataSource();
+                    if (startedDataSource != null) {
+                        eventsRepository.dataSourceAnalysisStarted(startedDataSource.getId());
+                    }
+                    break;
                 case CANCELLED:
                 case COMPLETED:
                 case STARTED:
@@ -1014,8 +1071,8 @@ public void propertyChange(PropertyChangeEvent evt) {
                     executor.submit(() -> filteredEvents.handleContentTagDeleted((ContentTagDeletedEvent) evt));
                     break;
                 case DATA_SOURCE_ADDED:
-                    //mark db stale, and prompt to rebuild
-                    Platform.runLater(() -> setEventsDBStale(true));
+                    //the file events of the new data source are added once its analysis completes.
+                    updateRepo();
                     filteredEvents.postAutopsyEventLocally((AutopsyEvent) evt);
                     break;
                 case CURRENT_CASE:
@@ -0,0 +1,750 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2016 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.timeline.db;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.logging.Level;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Interval;
+import org.joda.time.Period;
+import org.joda.time.Seconds;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.autopsy.timeline.TimeLineController;
+import org.sleuthkit.autopsy.timeline.datamodel.EventCluster;
+import org.sleuthkit.autopsy.timeline.datamodel.EventStripe;
+import org.sleuthkit.autopsy.timeline.datamodel.eventtype.BaseTypes;
+import org.sleuthkit.autopsy.timeline.datamodel.eventtype.EventType;
+import org.sleuthkit.autopsy.timeline.datamodel.eventtype.RootEventType;
+import org.sleuthkit.autopsy.timeline.filters.AbstractFilter;
+import org.sleuthkit.autopsy.timeline.filters.DataSourceFilter;
+import org.sleuthkit.autopsy.timeline.filters.DataSourcesFilter;
+import org.sleuthkit.autopsy.timeline.filters.HideKnownFilter;
+import org.sleuthkit.autopsy.timeline.filters.RootFilter;
+import org.sleuthkit.autopsy.timeline.utils.RangeDivisionInfo;
+import org.sleuthkit.autopsy.timeline.zooming.DescriptionLoD;
+import org.sleuthkit.autopsy.timeline.zooming.EventTypeZoomLevel;
+import org.sleuthkit.autopsy.timeline.zooming.TimeUnits;
+import org.sleuthkit.autopsy.timeline.zooming.ZoomParams;
+
+/**
+ * A read only, column oriented copy of the events table, for answering the
+ * range queries of the details and counts views of very large cases without
+ * going through SQLite.
+ *
+ * The rows are sorted by time, and each column is a file of primitive values
+ * that is memory mapped, so a query is a binary search of the time column for
+ * the start and end of the range, followed by a sequential scan of the other
+ * columns between them. The descriptions are dictionary encoded: the
+ * description columns hold codes, and each distinct description is stored
+ * once, in the order of the codes. To bound the memory used to write a store,
+ * descriptions first seen after the dictionary is full are stored once per
+ * row instead, so the same description may have more than one code.
+ *
+ * A store is written for one version of the events db (see
+ * EventDB.getEventsVersion()), into its own directory, and is only valid while
+ * the db is at that version. The store is immutable, so any number of threads
+ * can read it without locking.
+ *
+ * Only the type, data source and known filters can be evaluated against the
+ * store, the same filters that the event rollups support.
+ */
+final class ColumnarEventStore {
+
+    private static final Logger LOGGER = Logger.getLogger(ColumnarEventStore.class.getName());
+
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * The largest number of rows a store can hold, since each column is
+     * mapped as a single buffer.
+     */
+    private static final int MAX_ROW_COUNT = Integer.MAX_VALUE / Long.BYTES;
+
+    private static final String HEADER_FILE = "header"; //NON-NLS
+    private static final String EVENT_ID_COLUMN = "event_id.col"; //NON-NLS
+    private static final String TIME_COLUMN = "time.col"; //NON-NLS
+    private static final String DATASOURCE_ID_COLUMN = "datasource_id.col"; //NON-NLS
+    private static final String FILE_ID_COLUMN = "file_id.col"; //NON-NLS
+    private static final String ARTIFACT_ID_COLUMN = "artifact_id.col"; //NON-NLS
+    private static final String SUB_TYPE_COLUMN = "sub_type.col"; //NON-NLS
+    private static final String BASE_TYPE_COLUMN = "base_type.col"; //NON-NLS
+    private static final String FLAGS_COLUMN = "flags.col"; //NON-NLS
+    private static final String CODES_SUFFIX = ".col"; //NON-NLS
+    private static final String OFFSETS_SUFFIX = ".offsets"; //NON-NLS
+    private static final String DICTIONARY_SUFFIX = ".dict"; //NON-NLS
+
+    /*
+     * bits of the flags column
+     */
+    private static final byte KNOWN = 1;
+    private static final byte HASH_HIT = 1 << 1;
+    private static final byte TAGGED = 1 << 2;
+    private static final byte HAS_ARTIFACT = 1 << 3;
+
+    private final long eventsVersion;
+    private final int rowCount;
+    private final LongBuffer eventIDs;
+    private final LongBuffer times;
+    private final LongBuffer datasourceIDs;
+    private final LongBuffer fileIDs;
+    private final LongBuffer artifactIDs;
+    private final ByteBuffer subTypes;
+    private final ByteBuffer baseTypes;
+    private final ByteBuffer flags;
+    private final Map<DescriptionLoD, Dictionary> descriptions = new EnumMap<>(DescriptionLoD.class);
+
+    /**
+     * Get the directory the store for the given version of the events db is
+     * written to.
+     *
+     * @param storesRoot    the directory that holds the stores of the case
+     * @param eventsVersion the version of the events db
+     *
+     * @return the directory of the store
+     */
+    static Path getStoreDirectory(Path storesRoot, long eventsVersion) {
+        return storesRoot.resolve(Long.toHexString(eventsVersion));
+    }
+
+    /**
+     * Delete the stores for all but the given version of the events db. A
+     * store that is still mapped may not be deletable on some platforms, it
+     * will be deleted by a later call.
+     *
+     * @param storesRoot  the directory that holds the stores of the case
+     * @param keepVersion the version of the events db whose store should be
+     *                    kept, or null to delete all the stores
+     */
+    static void deleteOtherStores(Path storesRoot, @Nullable Long keepVersion) {
+        if (Files.isDirectory(storesRoot) == false) {
+            return;
+        }
+        Path keep = keepVersion == null ? null : getStoreDirectory(storesRoot, keepVersion);
+        try (DirectoryStream<Path> stores = Files.newDirectoryStream(storesRoot)) {
+            for (Path store : stores) {
+                if (store.equals(keep) == false) {
+                    FileUtils.deleteQuietly(store.toFile());
+                }
+            }
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Failed to list the columnar event stores in " + storesRoot, ex); // NON-NLS
+        }
+    }
+
+    /**
+     * Open the store in the given directory.
+     *
+     * @param directory     the directory of the store
+     * @param eventsVersion the current version of the events db
+     *
+     * @return the store, or null if there is no complete store for the given
+     *         version of the events db in the directory.
+     */
+    @Nullable
+    static ColumnarEventStore open(Path directory, long eventsVersion) {
+        Path header = directory.resolve(HEADER_FILE);
+        if (Files.exists(header) == false) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(header))) {
+            int formatVersion = in.readInt();
+            long storeVersion = in.readLong();
+            long rowCount = in.readLong();
+            if (formatVersion != FORMAT_VERSION || storeVersion != eventsVersion || rowCount > MAX_ROW_COUNT) {
+                return null;
+            }
+            return new ColumnarEventStore(directory, eventsVersion, (int) rowCount);
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Failed to open the columnar event store in " + directory, ex); // NON-NLS
+            return null;
+        }
+    }
+
+    /**
+     * Can the events that pass the given filter be selected from the store?
+     *
+     * @param filter the filter to check
+     *
+     * @return true if the filter only restricts the type, data source, and
+     *         known state of the events.
+     */
+    static boolean canEvaluate(RootFilter filter) {
+        //the store has the same filterable columns as the rollups.
+        return SQLHelper.isRollupCompatible(filter);
+    }
+
+    private ColumnarEventStore(Path directory, long eventsVersion, int rowCount) throws IOException {
+        this.eventsVersion = eventsVersion;
+        this.rowCount = rowCount;
+        eventIDs = map(directory.resolve(EVENT_ID_COLUMN)).asLongBuffer();
+        times = map(directory.resolve(TIME_COLUMN)).asLongBuffer();
+        datasourceIDs = map(directory.resolve(DATASOURCE_ID_COLUMN)).asLongBuffer();
+        fileIDs = map(directory.resolve(FILE_ID_COLUMN)).asLongBuffer();
+        artifactIDs = map(directory.resolve(ARTIFACT_ID_COLUMN)).asLongBuffer();
+        subTypes = map(directory.resolve(SUB_TYPE_COLUMN));
+        baseTypes = map(directory.resolve(BASE_TYPE_COLUMN));
+        flags = map(directory.resolve(FLAGS_COLUMN));
+        for (DescriptionLoD lod : DescriptionLoD.values()) {
+            String column = SQLHelper.getDescriptionColumn(lod);
+            descriptions.put(lod, new Dictionary(
+                    map(directory.resolve(column + CODES_SUFFIX)).asIntBuffer(),
+                    map(directory.resolve(column + OFFSETS_SUFFIX)).asLongBuffer(),
+                    map(directory.resolve(column + DICTIONARY_SUFFIX))));
+        }
+        if (times.limit() != rowCount || flags.limit() != rowCount) {
+            throw new IOException("The columnar event store in " + directory + " is incomplete."); // NON-NLS
+        }
+    }
+
+    private static MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            //the mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * @return the version of the events db this store is a copy of
+     */
+    long getEventsVersion() {
+        return eventsVersion;
+    }
+
+    /**
+     * Get the id of the file the event in the given row is derived from.
+     *
+     * @param row the row of the event
+     *
+     * @return the file id
+     */
+    long getFileID(int row) {
+        return fileIDs.get(row);
+    }
+
+    /**
+     * Get the id of the artifact the event in the given row is derived from.
+     *
+     * @param row the row of the event
+     *
+     * @return the artifact id, or null if the event is derived directly from a
+     *         file
+     */
+    @Nullable
+    Long getArtifactID(int row) {
+        return (flags.get(row) & HAS_ARTIFACT) == 0 ? null : artifactIDs.get(row);
+    }
+
+    /**
+     * Find the first row with a time at or after the given time.
+     *
+     * @param time a time in seconds from unix epoch
+     *
+     * @return the index of the first row with a time >= the given time, or the
+     *         row count if there is no such row
+     */
+    private int lowerBound(long time) {
+        int low = 0;
+        int high = rowCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times.get(mid) < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Count the events in the time range of the given params that pass their
+     * filter, by type.
+     *
+     * @param params the params that control what events to count and how to
+     *               organize the returned map
+     *
+     * @return a map from event type (of the requested level) to event counts
+     */
+    Map<EventType, Long> countEventsByType(ZoomParams params) {
+        if (params.getTimeRange() == null) {
+            return Collections.emptyMap();
+        }
+        long startTime = params.getTimeRange().getStartMillis() / 1000;
+        long endTime = params.getTimeRange().getEndMillis() / 1000;
+        if (startTime == endTime) {
+            endTime++;
+        }
+        final boolean useSubTypes = params.getTypeZoomLevel() == EventTypeZoomLevel.SUB_TYPE;
+        final ByteBuffer typeColumn = useSubTypes ? subTypes : baseTypes;
+        long[] counts = new long[useSubTypes ? RootEventType.allTypes.size() : BaseTypes.values().length];
+
+        RowFilter rowFilter = new RowFilter(params.getFilter());
+        for (int row = lowerBound(startTime), end = lowerBound(endTime); row < end; row++) {
+            if (rowFilter.accept(row)) {
+                int typeNum = typeColumn.get(row);
+                if (typeNum >= 0 && typeNum < counts.length) {
+                    counts[typeNum]++;
+                }
+            }
+        }
+
+        Map<EventType, Long> typeMap = new HashMap<>();
+        for (int typeNum = 0; typeNum < counts.length; typeNum++) {
+            if (counts[typeNum] > 0) {
+                typeMap.put(getEventType(typeNum, useSubTypes), counts[typeNum]);
+            }
+        }
+        return typeMap;
+    }
+
+    /**
+     * Get the event stripes for the given zoom params. The events are grouped
+     * the same way EventDB.getEventStripes() groups them.
+     *
+     * @param params the params that determine the zooming, filtering and
+     *               clustering
+     *
+     * @return a list of event stripes within the given time range, that pass
+     *         the given filter, aggregated according to the given event type
+     *         and description zoom levels
+     */
+    List<EventStripe> getEventStripes(ZoomParams params) {
+        Interval timeRange = params.getTimeRange();
+        DescriptionLoD descriptionLOD = params.getDescriptionLOD();
+        final boolean useSubTypes = params.getTypeZoomLevel() == EventTypeZoomLevel.SUB_TYPE;
+
+        long startTime = timeRange.getStartMillis() / 1000;
+        long endTime = Math.max(timeRange.getEndMillis() / 1000, startTime + 1);
+
+        RangeDivisionInfo rangeInfo = RangeDivisionInfo.getRangeDivisionInfo(timeRange);
+        TimeUnits periodSize = rangeInfo.getPeriodSize();
+        //group in the same time zone the sql query does
+        DateTimeZone bucketZone = TimeLineController.getTimeZone().get().equals(TimeZone.getDefault())
+                ? DateTimeZone.forTimeZone(TimeZone.getDefault())
+                : DateTimeZone.UTC;
+        final ByteBuffer typeColumn = useSubTypes ? subTypes : baseTypes;
+        final Dictionary dictionary = descriptions.get(descriptionLOD);
+
+        List<EventCluster> clusters = new ArrayList<>();
+        //the clusters of the current time bucket, by type and description code
+        Map<Long, ClusterBuilder> bucketClusters = new HashMap<>();
+        Map<Integer, String> decoded = new HashMap<>();
+        long bucketEndMillis = Long.MIN_VALUE;
+
+        RowFilter rowFilter = new RowFilter(params.getFilter());
+        for (int row = lowerBound(startTime), end = lowerBound(endTime); row < end; row++) {
+            if (rowFilter.accept(row) == false) {
+                continue;
+            }
+            long time = times.get(row);
+            if (time * 1000 >= bucketEndMillis) {
+                //the rows are sorted by time, so the previous bucket is done
+                buildClusters(bucketClusters, dictionary, decoded, useSubTypes, descriptionLOD, clusters);
+                DateTime bucketStart = floor(new DateTime(time * 1000, bucketZone), periodSize);
+                bucketEndMillis = bucketStart.plus(getPeriod(periodSize)).getMillis();
+            }
+            int typeNum = typeColumn.get(row);
+            int code = dictionary.codes.get(row);
+            ClusterBuilder cluster = bucketClusters.computeIfAbsent(((long) typeNum << 32) | (code & 0xFFFFFFFFL),
+                    key -> new ClusterBuilder(typeNum, code));
+            cluster.add(time, eventIDs.get(row), flags.get(row));
+        }
+        buildClusters(bucketClusters, dictionary, decoded, useSubTypes, descriptionLOD, clusters);
+        clusters.sort(Comparator.comparingLong(cluster -> cluster.getSpan().getStartMillis()));
+
+        return EventDB.mergeClustersToStripes(periodSize.getPeriod(), clusters);
+    }
+
+    private static void buildClusters(Map<Long, ClusterBuilder> bucketClusters, Dictionary dictionary, Map<Integer, String> decoded,
+            boolean useSubTypes, DescriptionLoD descriptionLOD, List<EventCluster> clusters) {
+        //a description may have more than one code, so merge the builders by decoded description
+        Map<String, ClusterBuilder> merged = new HashMap<>();
+        for (ClusterBuilder builder : bucketClusters.values()) {
+            String description = decoded.computeIfAbsent(builder.code, dictionary::get);
+            merged.merge(builder.typeNum + ":" + description, builder, ClusterBuilder::merge);
+        }
+        for (ClusterBuilder builder : merged.values()) {
+            Interval span = new Interval(builder.minTime * 1000, builder.maxTime * 1000, TimeLineController.getJodaTimeZone());
+            clusters.add(new EventCluster(span, getEventType(builder.typeNum, useSubTypes),
+                    builder.eventIDs, builder.hashHits, builder.tagged, decoded.get(builder.code), descriptionLOD));
+        }
+        bucketClusters.clear();
+    }
+
+    private static EventType getEventType(int typeNum, boolean useSubTypes) {
+        return useSubTypes ? RootEventType.allTypes.get(typeNum) : BaseTypes.values()[typeNum];
+    }
+
+    /**
+     * Get the start of the bucket of the given size that the given time is
+     * in.
+     */
+    private static DateTime floor(DateTime time, TimeUnits periodSize) {
+        switch (periodSize) {
+            case YEARS:
+                return time.year().roundFloorCopy();
+            case MONTHS:
+                return time.monthOfYear().roundFloorCopy();
+            case DAYS:
+                return time.dayOfMonth().roundFloorCopy();
+            case HOURS:
+                return time.hourOfDay().roundFloorCopy();
+            case MINUTES:
+                return time.minuteOfHour().roundFloorCopy();
+            case SECONDS:
+            default:    //seconds - should never happen
+                return time.secondOfMinute().roundFloorCopy();
+        }
+    }
+
+    private static Period getPeriod(TimeUnits periodSize) {
+        return periodSize.getPeriod() == null ? Seconds.ONE.toPeriod() : periodSize.getPeriod();
+    }
+
+    /**
+     * Accumulates the events of one cluster: the events in one time bucket
+     * with the same type and description.
+     */
+    private static final class ClusterBuilder {
+
+        private final int typeNum;
+        private final int code;
+        private long minTime = Long.MAX_VALUE;
+        private long maxTime = Long.MIN_VALUE;
+        private final List<Long> eventIDs = new ArrayList<>();
+        private final List<Long> hashHits = new ArrayList<>();
+        private final List<Long> tagged = new ArrayList<>();
+
+        ClusterBuilder(int typeNum, int code) {
+            this.typeNum = typeNum;
+            this.code = code;
+        }
+
+        void add(long time, long eventID, byte eventFlags) {
+            minTime = Math.min(minTime, time);
+            maxTime = Math.max(maxTime, time);
+            eventIDs.add(eventID);
+            if ((eventFlags & HASH_HIT) != 0) {
+                hashHits.add(eventID);
+            }
+            if ((eventFlags & TAGGED) != 0) {
+                tagged.add(eventID);
+            }
+        }
+
+        /**
+         * Add the events of another builder for the same type and
+         * description to this one.
+         *
+         * @return this builder
+         */
+        ClusterBuilder merge(ClusterBuilder other) {
+            minTime = Math.min(minTime, other.minTime);
+            maxTime = Math.max(maxTime, other.maxTime);
+            eventIDs.addAll(other.eventIDs);
+            hashHits.addAll(other.hashHits);
+            tagged.addAll(other.tagged);
+            return this;
+        }
+    }
+
+    /**
+     * The type, data source and known filters of a RootFilter, evaluated
+     * against the rows of the store.
+     */
+    private final class RowFilter {
+
+        /**
+         * Which sub types pass, by index in RootEventType.allTypes, or null if
+         * all do.
+         */
+        @Nullable
+        private final boolean[] acceptedSubTypes;
+        @Nullable
+        private final Set<Long> acceptedDataSourceIDs;
+        private final boolean hideKnown;
+
+        RowFilter(RootFilter filter) {
+            List<Integer> subTypeNums = filter.getTypeFilter() == null ? null : SQLHelper.getAcceptedSubTypes(filter.getTypeFilter());
+            if (subTypeNums == null) {
+                acceptedSubTypes = null;
+            } else {
+                acceptedSubTypes = new boolean[RootEventType.allTypes.size()];
+                for (int subTypeNum : subTypeNums) {
+                    if (subTypeNum >= 0 && subTypeNum < acceptedSubTypes.length) {
+                        acceptedSubTypes[subTypeNum] = true;
+                    }
+                }
+            }
+
+            DataSourcesFilter dataSourcesFilter = filter.getDataSourcesFilter();
+            acceptedDataSourceIDs = (dataSourcesFilter != null && dataSourcesFilter.isActive())
+                    ? dataSourcesFilter.getSubFilters().stream()
+                    .filter(AbstractFilter::isActive)
+                    .map(DataSourceFilter::getDataSourceID)
+                    .collect(Collectors.toSet())
+                    : null;
+
+            HideKnownFilter knownFilter = filter.getKnownFilter();
+            hideKnown = knownFilter != null && knownFilter.isActive();
+        }
+
+        boolean accept(int row) {
+            if (acceptedSubTypes != null) {
+                int subTypeNum = subTypes.get(row);
+                if (subTypeNum < 0 || subTypeNum >= acceptedSubTypes.length || acceptedSubTypes[subTypeNum] == false) {
+                    return false;
+                }
+            }
+            if (hideKnown && (flags.get(row) & KNOWN) != 0) {
+                return false;
+            }
+            return acceptedDataSourceIDs == null || acceptedDataSourceIDs.contains(datasourceIDs.get(row));
+        }
+    }
+
+    /**
+     * A dictionary encoded description column.
+     */
+    private static final class Dictionary {
+
+        private final IntBuffer codes;
+        /**
+         * The offset of the bytes of each description, plus the total length
+         * of the bytes.
+         */
+        private final LongBuffer offsets;
+        private final ByteBuffer bytes;
+
+        Dictionary(IntBuffer codes, LongBuffer offsets, ByteBuffer bytes) {
+            this.codes = codes;
+            this.offsets = offsets;
+            this.bytes = bytes;
+        }
+
+        String get(int code) {
+            int start = (int) offsets.get(code);
+            int end = (int) offsets.get(code + 1);
+            byte[] utf8 = new byte[end - start];
+            //use a duplicate, since a relative get changes the position
+            ByteBuffer view = bytes.duplicate();
+            view.position(start);
+            view.get(utf8);
+            return new String(utf8, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Writes a new store. The rows must be added in order of time.
+     */
+    static final class Writer implements Closeable {
+
+        private final Path directory;
+        private final DataOutputStream eventIDOut;
+        private final DataOutputStream timeOut;
+        private final DataOutputStream datasourceIDOut;
+        private final DataOutputStream fileIDOut;
+        private final DataOutputStream artifactIDOut;
+        private final DataOutputStream subTypeOut;
+        private final DataOutputStream baseTypeOut;
+        private final DataOutputStream flagsOut;
+        private final Map<DescriptionLoD, DictionaryWriter> descriptionOuts = new EnumMap<>(DescriptionLoD.class);
+        private final List<Closeable> outputs = new ArrayList<>();
+
+        private long rowCount = 0;
+        private long lastTime = Long.MIN_VALUE;
+
+        Writer(Path directory) throws IOException {
+            this.directory = directory;
+            FileUtils.deleteQuietly(directory.toFile());
+            Files.createDirectories(directory);
+            eventIDOut = openColumn(EVENT_ID_COLUMN);
+            timeOut = openColumn(TIME_COLUMN);
+            datasourceIDOut = openColumn(DATASOURCE_ID_COLUMN);
+            fileIDOut = openColumn(FILE_ID_COLUMN);
+            artifactIDOut = openColumn(ARTIFACT_ID_COLUMN);
+            subTypeOut = openColumn(SUB_TYPE_COLUMN);
+            baseTypeOut = openColumn(BASE_TYPE_COLUMN);
+            flagsOut = openColumn(FLAGS_COLUMN);
+            for (DescriptionLoD lod : DescriptionLoD.values()) {
+                String column = SQLHelper.getDescriptionColumn(lod);
+                descriptionOuts.put(lod, new DictionaryWriter(openColumn(column + CODES_SUFFIX),
+                        openColumn(column + OFFSETS_SUFFIX), openColumn(column + DICTIONARY_SUFFIX)));
+            }
+        }
+
+        private DataOutputStream openColumn(String fileName) throws IOException {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(directory.resolve(fileName))));
+            outputs.add(out);
+            return out;
+        }
+
+        void addRow(long eventID, long time, long datasourceID, long fileID, @Nullable Long artifactID,
+                int subType, int baseType, String fullDescription, String medDescription, String shortDescription,
+                boolean known, boolean hashHit, boolean tagged) throws IOException {
+            if (time < lastTime) {
+                throw new IllegalArgumentException("The rows of a columnar event store must be added in order of time."); // NON-NLS
+            }
+            if (rowCount == MAX_ROW_COUNT) {
+                throw new IOException("There are too many events for a columnar event store."); // NON-NLS
+            }
+            lastTime = time;
+            rowCount++;
+
+            eventIDOut.writeLong(eventID);
+            timeOut.writeLong(time);
+            datasourceIDOut.writeLong(datasourceID);
+            fileIDOut.writeLong(fileID);
+            artifactIDOut.writeLong(artifactID == null ? 0 : artifactID);
+            subTypeOut.writeByte(subType);
+            baseTypeOut.writeByte(baseType);
+            flagsOut.writeByte((known ? KNOWN : 0)
+                    | (hashHit ? HASH_HIT : 0)
+                    | (tagged ? TAGGED : 0)
+                    | (artifactID != null ? HAS_ARTIFACT : 0));
+            descriptionOuts.get(DescriptionLoD.FULL).add(fullDescription);
+            descriptionOuts.get(DescriptionLoD.MEDIUM).add(medDescription);
+            descriptionOuts.get(DescriptionLoD.SHORT).add(shortDescription);
+        }
+
+        /**
+         * Finish writing the store, and open it.
+         *
+         * @param eventsVersion the version of the events db the rows were
+         *                      read from
+         *
+         * @return the store
+         *
+         * @throws IOException if the store could not be written or opened
+         */
+        ColumnarEventStore finish(long eventsVersion) throws IOException {
+            for (DictionaryWriter dictionaryWriter : descriptionOuts.values()) {
+                dictionaryWriter.finish();
+            }
+            close();
+            //write the header last, so a store with a header is complete
+            try (DataOutputStream headerOut = new DataOutputStream(Files.newOutputStream(directory.resolve(HEADER_FILE)))) {
+                headerOut.writeInt(FORMAT_VERSION);
+                headerOut.writeLong(eventsVersion);
+                headerOut.writeLong(rowCount);
+            }
+            return new ColumnarEventStore(directory, eventsVersion, (int) rowCount);
+        }
+
+        @Override
+        public void close() throws IOException {
+            IOException failure = null;
+            for (Closeable output : outputs) {
+                try {
+                    output.close();
+                } catch (IOException ex) {
+                    failure = ex;
+                }
+            }
+            outputs.clear();
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Writes a dictionary encoded description column, assigning codes to the
+     * descriptions in the order they are first seen. Once the descriptions in
+     * the dictionary would take more than MAX_DICTIONARY_HEAP_BYTES of heap,
+     * new descriptions get a code of their own for every row.
+     */
+    private static final class DictionaryWriter {
+
+        /**
+         * A rough bound on the heap used by the dictionary of one column, with
+         * each entry costed at two bytes per char plus the overhead of the
+         * string, its array, the boxed code, and the map entry.
+         */
+        private static final long MAX_DICTIONARY_HEAP_BYTES = 32L * 1024 * 1024;
+        private static final int DICTIONARY_ENTRY_OVERHEAD_BYTES = 96;
+
+        private final Map<String, Integer> codes = new HashMap<>();
+        private long dictionaryHeapBytes = 0;
+        private int codeCount = 0;
+        private final DataOutputStream codesOut;
+        private final DataOutputStream offsetsOut;
+        private final DataOutputStream bytesOut;
+        private long byteCount = 0;
+
+        DictionaryWriter(DataOutputStream codesOut, DataOutputStream offsetsOut, DataOutputStream bytesOut) {
+            this.codesOut = codesOut;
+            this.offsetsOut = offsetsOut;
+            this.bytesOut = bytesOut;
+        }
+
+        void add(String description) throws IOException {
+            String key = StringUtils.defaultString(description);
+            Integer code = codes.get(key);
+            if (code == null) {
+                byte[] utf8 = key.getBytes(StandardCharsets.UTF_8);
+                if (byteCount + utf8.length > Integer.MAX_VALUE) {
+                    throw new IOException("The descriptions are too large for a columnar event store."); // NON-NLS
+                }
+                code = codeCount++;
+                long entryHeapBytes = 2L * key.length() + DICTIONARY_ENTRY_OVERHEAD_BYTES;
+                if (dictionaryHeapBytes + entryHeapBytes <= MAX_DICTIONARY_HEAP_BYTES) {
+                    codes.put(key, code);
+                    dictionaryHeapBytes += entryHeapBytes;
+                }
+                offsetsOut.writeLong(byteCount);
+                bytesOut.write(utf8);
+                byteCount += utf8.length;
+            }
+            codesOut.writeInt(code);
+        }
+
+        void finish() throws IOException {
+            offsetsOut.writeLong(byteCount);
+        }
+    }
+}
@@ -20,6 +20,8 @@
 
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.SetMultimap;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.DriverManager;
@@ -41,7 +43,12 @@
 import java.util.Objects;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
@@ -123,18 +130,13 @@ public static EventDB getEventDB(Case autoCase) {
 
     private final String dbPath;
 
-    private PreparedStatement getEventByIDStmt;
-    private PreparedStatement getMaxTimeStmt;
-    private PreparedStatement getMinTimeStmt;
-    private PreparedStatement getDataSourceIDsStmt;
-    private PreparedStatement getHashSetNamesStmt;
     private PreparedStatement insertRowStmt;
+    private PreparedStatement insertRowsStmt;
     private PreparedStatement insertHashSetStmt;
     private PreparedStatement insertHashHitStmt;
     private PreparedStatement insertTagStmt;
     private PreparedStatement deleteTagStmt;
     private PreparedStatement selectHashSetStmt;
-    private PreparedStatement countAllEventsStmt;
     private PreparedStatement dropEventsTableStmt;
     private PreparedStatement dropHashSetHitsTableStmt;
     private PreparedStatement dropHashSetsTableStmt;
@@ -145,11 +147,94 @@ public static EventDB getEventDB(Case autoCase) {
 
     private final Set<PreparedStatement> preparedStatements = new HashSet<>();
 
-    private final Lock DBLock = new ReentrantReadWriteLock(true).writeLock(); //using exclusive lock for all db ops for now
+    /*
+     * This SQL query is really just a select count(*), but that has performance
+     * problems on very large tables unless you include a where clause see
+     * http://stackoverflow.com/a/9338276/4004683 for more.
+     */
+    private static final String COUNT_ALL_EVENTS = "SELECT count(event_id) AS count FROM events WHERE event_id IS NOT null"; //NON-NLS
+
+    private static final String INSERT_EVENTS_COLUMNS = "INSERT INTO events (datasource_id,file_id ,artifact_id, time, sub_type, base_type, full_description, med_description, short_description, known_state, hash_hit, tagged) VALUES "; //NON-NLS
+    private static final String INSERT_EVENTS_ROW_VALUES = "(?,?,?,?,?,?,?,?,?,?,?,?)"; //NON-NLS
+    private static final int INSERT_EVENTS_COLUMN_COUNT = 12;
+
+    /*
+     * The number of rows inserted by one multi-row insert statement. SQLite
+     * allows at most 999 parameters per statement.
+     */
+    private static final int MULTI_ROW_INSERT_SIZE = 999 / INSERT_EVENTS_COLUMN_COUNT;
+
+    /**
+     * The columns of the indices of the events table. The indices are created
+     * when the table is created, and can be dropped and recreated around a
+     * bulk load of the table.
+     */
+    private static final List<List<String>> EVENTS_INDEX_COLUMNS = Arrays.asList(
+            Arrays.asList("datasource_id"), //NON-NLS
+            Arrays.asList("event_id", "hash_hit"), //NON-NLS
+            Arrays.asList("event_id", "tagged"), //NON-NLS
+            Arrays.asList("file_id"), //NON-NLS
+            Arrays.asList("artifact_id"), //NON-NLS
+            Arrays.asList("sub_type", "short_description", "time"), //NON-NLS
+            Arrays.asList("base_type", "short_description", "time"), //NON-NLS
+            Arrays.asList("time"), //NON-NLS
+            Arrays.asList("known_state")); //NON-NLS
+
+    /*
+     * Cache of hash set name to hash_set_id, guarded by DBLock.
+     */
+    private final Map<String, Integer> hashSetIDs = new HashMap<>();
+
+    /*
+     * Does the event_rollups table exist, as seen by the writer connection?
+     * Guarded by DBLock. If it does, it is kept up to date with every insert.
+     */
+    private boolean rollupTableExists;
+
+    /*
+     * Can queries count events from the event_rollups table? Only true once
+     * the table has been committed, so that the read connections can see it.
+     */
+    private volatile boolean rollupsQueryable;
+
+    /*
+     * The db_info key of the version of the events, see getEventsVersion().
+     */
+    private static final String EVENTS_VERSION_KEY = "events_version"; //NON-NLS
+
+    /*
+     * Were the events modified in the current transaction? Guarded by DBLock.
+     */
+    private boolean eventsModified = false;
+
+    /*
+     * All changes to the database go through the single writer connection,
+     * con, and are serialized by DBLock. When the database is in WAL mode,
+     * queries use a pool of read only connections instead and do not take
+     * DBLock, so they run concurrently with each other and with the writer,
+     * each seeing a consistent snapshot of the database. Operations that drop
+     * or recreate tables, or close the connections, take the write half of
+     * schemaLock to exclude the queries.
+     *
+     * Lock order: DBLock before schemaLock.
+     */
+    private final Lock DBLock = new ReentrantLock(true);
+    private final ReentrantReadWriteLock schemaLock = new ReentrantReadWriteLock(true);
+
+    private static final int READ_CONNECTION_POOL_SIZE = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private final boolean useReadConnectionPool;
+    private final BlockingQueue<Connection> readConnectionPool = new LinkedBlockingQueue<>();
+    private final List<Connection> readConnections = new CopyOnWriteArrayList<>();
+    private volatile boolean walEnabled;
 
     private EventDB(Case autoCase) throws SQLException, Exception {
         //should this go into module output (or even cache, we should be able to rebuild it)?
         this.dbPath = Paths.get(autoCase.getCaseDirectory(), "events.db").toString(); //NON-NLS
+        /*
+         * WAL mode relies on shared memory, so it can't be used for a database
+         * on a network share, i.e., in a multi-user case directory.
+         */
+        this.useReadConnectionPool = autoCase.getCaseType() == Case.CaseType.SINGLE_USER_CASE;
         initializeDB();
     }
 
@@ -163,20 +248,107 @@ public void finalize() throws Throwable {
     }
 
     void closeDBCon() {
-        if (con != null) {
+        schemaLock.writeLock().lock();
+        try {
+            closeReadConnections();
+            if (con != null) {
+                try {
+                    closeStatements();
+                    con.close();
+                } catch (SQLException ex) {
+                    LOGGER.log(Level.WARNING, "Failed to close connection to evetns.db", ex); // NON-NLS
+                }
+            }
+            con = null;
+        } finally {
+            schemaLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Opens the pool of read only connections used by queries, if the database
+     * is in WAL mode and the pool is not already open.
+     */
+    private void openReadConnections() {
+        if (!readConnections.isEmpty()) {
+            return;
+        }
+        try {
+            for (int i = 0; i < READ_CONNECTION_POOL_SIZE; i++) {
+                Connection readConnection = DriverManager.getConnection("jdbc:sqlite:" + dbPath); // NON-NLS
+                readConnections.add(readConnection);
+                try (Statement statement = readConnection.createStatement()) {
+                    //guard against accidental writes, all changes go through the writer connection
+                    statement.execute("PRAGMA query_only = true"); // NON-NLS
+                    statement.execute("PRAGMA temp_store = MEMORY"); // NON-NLS
+                    statement.execute("PRAGMA cache_size = 10000"); // NON-NLS
+                }
+                readConnectionPool.add(readConnection);
+            }
+        } catch (SQLException ex) {
+            LOGGER.log(Level.WARNING, "Failed to open read connections to events.db, queries will use the writer connection", ex); // NON-NLS
+            closeReadConnections();
+        }
+    }
+
+    /**
+     * Closes the pool of read only connections. Must be called with the write
+     * half of schemaLock held, or before any queries are run, so that all of
+     * the connections are in the pool.
+     */
+    private void closeReadConnections() {
+        readConnectionPool.clear();
+        for (Connection readConnection : readConnections) {
             try {
-                closeStatements();
-                con.close();
+                readConnection.close();
             } catch (SQLException ex) {
-                LOGGER.log(Level.WARNING, "Failed to close connection to evetns.db", ex); // NON-NLS
+                LOGGER.log(Level.WARNING, "Failed to close read connection to events.db", ex); // NON-NLS
             }
         }
-        con = null;
+        readConnections.clear();
     }
 
-    public Interval getSpanningInterval(Collection<Long> eventIDs) {
+    /**
+     * Gets a connection for a query, from the pool of read only connections if
+     * it is open, otherwise the writer connection. Must be paired with a call
+     * to releaseReadConnection in a finally block.
+     *
+     * @return the connection
+     */
+    private Connection acquireReadConnection() {
+        schemaLock.readLock().lock();
+        //the pool can't be closed while the read lock is held
+        if (!readConnections.isEmpty()) {
+            try {
+                return readConnectionPool.take();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        schemaLock.readLock().unlock();
         DBLock.lock();
-        try (Statement stmt = con.createStatement();
+        schemaLock.readLock().lock();
+        return con;
+    }
+
+    /**
+     * Releases a connection acquired with acquireReadConnection.
+     *
+     * @param connection the connection
+     */
+    private void releaseReadConnection(Connection connection) {
+        if (readConnections.contains(connection)) {
+            readConnectionPool.add(connection);
+            schemaLock.readLock().unlock();
+        } else {
+            schemaLock.readLock().unlock();
+            DBLock.unlock();
+        }
+    }
+
+    public Interval getSpanningInterval(Collection<Long> eventIDs) {
+        Connection connection = acquireReadConnection();
+        try (Statement stmt = connection.createStatement();
                 ResultSet rs = stmt.executeQuery("SELECT Min(time), Max(time) FROM events WHERE event_id IN (" + StringUtils.join(eventIDs, ", ") + ")");) { // NON-NLS
             while (rs.next()) {
                 return new Interval(rs.getLong("Min(time)") * 1000, (rs.getLong("Max(time)") + 1) * 1000, DateTimeZone.UTC); // NON-NLS
@@ -184,7 +356,7 @@ public Interval getSpanningInterval(Collection<Long> eventIDs) {
         } catch (SQLException ex) {
             LOGGER.log(Level.SEVERE, "Error executing get spanning interval query.", ex); // NON-NLS
         } finally {
-            DBLock.unlock();
+            releaseReadConnection(connection);
         }
         return null;
     }
@@ -205,15 +377,16 @@ void commitTransaction(EventTransaction tr) {
      *         error.
      */
     int countAllEvents() {
-        DBLock.lock();
-        try (ResultSet rs = countAllEventsStmt.executeQuery()) { // NON-NLS
+        Connection connection = acquireReadConnection();
+        try (PreparedStatement countAllEventsStmt = connection.prepareStatement(COUNT_ALL_EVENTS);
+                ResultSet rs = countAllEventsStmt.executeQuery()) { // NON-NLS
             while (rs.next()) {
                 return rs.getInt("count"); // NON-NLS
             }
         } catch (SQLException ex) {
             LOGGER.log(Level.SEVERE, "Error counting all events", ex); //NON-NLS
         } finally {
-            DBLock.unlock();
+            releaseReadConnection(connection);
         }
         return -1;
     }
@@ -247,8 +420,8 @@ Map<EventType, Long> countEventsByType(ZoomParams params) {
      */
     Map<String, Long> getTagCountsByTagName(Set<Long> eventIDsWithTags) {
         HashMap<String, Long> counts = new HashMap<>();
-        DBLock.lock();
-        try (Statement createStatement = con.createStatement();
+        Connection connection = acquireReadConnection();
+        try (Statement createStatement = connection.createStatement();
                 ResultSet rs = createStatement.executeQuery("SELECT tag_name_display_name, COUNT(DISTINCT tag_id) AS count FROM tags" //NON-NLS
                         + " WHERE event_id IN (" + StringUtils.join(eventIDsWithTags, ", ") + ")" //NON-NLS
                         + " GROUP BY tag_name_id" //NON-NLS
@@ -259,7 +432,7 @@ Map<String, Long> getTagCountsByTagName(Set<Long> eventIDsWithTags) {
         } catch (SQLException ex) {
             LOGGER.log(Level.SEVERE, "Failed to get tag counts by tag name.", ex); //NON-NLS
         } finally {
-            DBLock.unlock();
+            releaseReadConnection(connection);
         }
         return counts;
     }
@@ -270,16 +443,20 @@ Map<String, Long> getTagCountsByTagName(Set<Long> eventIDsWithTags) {
      */
     void reInitializeDB() {
         DBLock.lock();
+        schemaLock.writeLock().lock();
         try {
             dropEventsTableStmt.executeUpdate();
             dropHashSetHitsTableStmt.executeUpdate();
             dropHashSetsTableStmt.executeUpdate();
             dropTagsTableStmt.executeUpdate();
             dropDBInfoTableStmt.executeUpdate();
+            dropEventRollups();
+            hashSetIDs.clear();
             initializeDB();
         } catch (SQLException ex) {
             LOGGER.log(Level.SEVERE, "could not drop old tables", ex); // NON-NLS
         } finally {
+            schemaLock.writeLock().unlock();
             DBLock.unlock();
         }
     }
@@ -290,12 +467,14 @@ void reInitializeDB() {
      */
     void reInitializeTags() {
         DBLock.lock();
+        schemaLock.writeLock().lock();
         try {
             dropTagsTableStmt.executeUpdate();
             initializeTagsTable();
         } catch (SQLException ex) {
             LOGGER.log(Level.SEVERE, "could not drop old tags table", ex); // NON-NLS
         } finally {
+            schemaLock.writeLock().unlock();
             DBLock.unlock();
         }
     }
@@ -304,8 +483,8 @@ Interval getBoundingEventsInterval(Interval timeRange, RootFilter filter) {
         long start = timeRange.getStartMillis() / 1000;
         long end = timeRange.getEndMillis() / 1000;
         final String sqlWhere = SQLHelper.getSQLWhere(filter);
-        DBLock.lock();
-        try (Statement stmt = con.createStatement(); //can't use prepared statement because of complex where clause
+        Connection connection = acquireReadConnection();
+        try (Statement stmt = connection.createStatement(); //can't use prepared statement because of complex where clause
                 ResultSet rs = stmt.executeQuery(" SELECT (SELECT Max(time) FROM events " + useHashHitTablesHelper(filter) + useTagTablesHelper(filter) + " WHERE time <=" + start + " AND " + sqlWhere + ") AS start," //NON-NLS
                         + "(SELECT Min(time)  FROM events" + useHashHitTablesHelper(filter) + useTagTablesHelper(filter) + " WHERE time >= " + end + " AND " + sqlWhere + ") AS end")) { // NON-NLS
             while (rs.next()) {
@@ -314,23 +493,22 @@ Interval getBoundingEventsInterval(Interval timeRange, RootFilter filter) {
                 long end2 = rs.getLong("end"); // NON-NLS
 
                 if (end2 == 0) {
-                    end2 = getMaxTime();
+                    end2 = getMaxTime(connection);
                 }
                 return new Interval(start2 * 1000, (end2 + 1) * 1000, TimeLineController.getJodaTimeZone());
             }
         } catch (SQLException ex) {
             LOGGER.log(Level.SEVERE, "Failed to get MIN time.", ex); // NON-NLS
         } finally {
-            DBLock.unlock();
+            releaseReadConnection(connection);
         }
         return null;
     }
 
     SingleEvent getEventById(Long eventID) {
         SingleEvent result = null;
-        DBLock.lock();
-        try {
-            getEventByIDStmt.clearParameters();
+        Connection connection = acquireReadConnection();
+        try (PreparedStatement getEventByIDStmt = connection.prepareStatement("SELECT * FROM events WHERE event_id =  ?")) { // NON-NLS
             getEventByIDStmt.setLong(1, eventID);
             try (ResultSet rs = getEventByIDStmt.executeQuery()) {
                 while (rs.next()) {
@@ -341,7 +519,7 @@ SingleEvent getEventById(Long eventID) {
         } catch (SQLException sqlEx) {
             LOGGER.log(Level.SEVERE, "exception while querying for event with id = " + eventID, sqlEx); // NON-NLS
         } finally {
-            DBLock.unlock();
+            releaseReadConnection(connection);
         }
         return result;
     }
@@ -366,10 +544,10 @@ List<Long> getEventIDs(Interval timeRange, RootFilter filter) {
 
         ArrayList<Long> resultIDs = new ArrayList<>();
 
-        DBLock.lock();
+        Connection connection = acquireReadConnection();
         final String query = "SELECT events.event_id AS event_id FROM events" + useHashHitTablesHelper(filter) + useTagTablesHelper(filter)
                 + " WHERE time >=  " + startTime + " AND time <" + endTime + " AND " + SQLHelper.getSQLWhere(filter) + " ORDER BY time ASC"; // NON-NLS
-        try (Statement stmt = con.createStatement();
+        try (Statement stmt = connection.createStatement();
                 ResultSet rs = stmt.executeQuery(query)) {
             while (rs.next()) {
                 resultIDs.add(rs.getLong("event_id")); //NON-NLS
@@ -378,7 +556,7 @@ List<Long> getEventIDs(Interval timeRange, RootFilter filter) {
         } catch (SQLException sqlEx) {
             LOGGER.log(Level.SEVERE, "failed to execute query for event ids in range", sqlEx); // NON-NLS
         } finally {
-            DBLock.unlock();
+            releaseReadConnection(connection);
         }
 
         return resultIDs;
@@ -405,12 +583,12 @@ List<CombinedEvent> getCombinedEvents(Interval timeRange, RootFilter filter) {
 
         ArrayList<CombinedEvent> results = new ArrayList<>();
 
-        DBLock.lock();
+        Connection connection = acquireReadConnection();
         final String query = "SELECT full_description, time, file_id, GROUP_CONCAT(events.event_id), GROUP_CONCAT(sub_type)"
                 + " FROM events " + useHashHitTablesHelper(filter) + useTagTablesHelper(filter)
                 + " WHERE time >= " + startTime + " AND time <" + endTime + " AND " + SQLHelper.getSQLWhere(filter)
                 + " GROUP BY time,full_description, file_id ORDER BY time ASC, full_description";
-        try (Statement stmt = con.createStatement();
+        try (Statement stmt = connection.createStatement();
                 ResultSet rs = stmt.executeQuery(query)) {
             while (rs.next()) {
 
@@ -427,7 +605,7 @@ List<CombinedEvent> getCombinedEvents(Interval timeRange, RootFilter filter) {
         } catch (SQLException sqlEx) {
             LOGGER.log(Level.SEVERE, "failed to execute query for combined events", sqlEx); // NON-NLS
         } finally {
-            DBLock.unlock();
+            releaseReadConnection(connection);
         }
 
         return results;
@@ -444,8 +622,9 @@ boolean hasNewColumns() {
 
     Set<Long> getDataSourceIDs() {
         HashSet<Long> hashSet = new HashSet<>();
-        DBLock.lock();
-        try (ResultSet rs = getDataSourceIDsStmt.executeQuery()) {
+        Connection connection = acquireReadConnection();
+        try (PreparedStatement getDataSourceIDsStmt = connection.prepareStatement("SELECT DISTINCT datasource_id FROM events WHERE datasource_id != 0"); // NON-NLS
+                ResultSet rs = getDataSourceIDsStmt.executeQuery()) {
             while (rs.next()) {
                 long datasourceID = rs.getLong("datasource_id"); //NON-NLS
                 hashSet.add(datasourceID);
@@ -453,15 +632,16 @@ Set<Long> getDataSourceIDs() {
         } catch (SQLException ex) {
             LOGGER.log(Level.SEVERE, "Failed to get MAX time.", ex); // NON-NLS
         } finally {
-            DBLock.unlock();
+            releaseReadConnection(connection);
         }
         return hashSet;
     }
 
     Map<Long, String> getHashSetNames() {
         Map<Long, String> hashSets = new HashMap<>();
-        DBLock.lock();
-        try (ResultSet rs = getHashSetNamesStmt.executeQuery();) {
+        Connection connection = acquireReadConnection();
+        try (PreparedStatement getHashSetNamesStmt = connection.prepareStatement("SELECT hash_set_id, hash_set_name FROM hash_sets"); // NON-NLS
+                ResultSet rs = getHashSetNamesStmt.executeQuery();) {
             while (rs.next()) {
                 long hashSetID = rs.getLong("hash_set_id"); //NON-NLS
                 String hashSetName = rs.getString("hash_set_name"); //NON-NLS
@@ -470,7 +650,7 @@ Map<Long, String> getHashSetNames() {
         } catch (SQLException ex) {
             LOGGER.log(Level.SEVERE, "Failed to get hash sets.", ex); // NON-NLS
         } finally {
-            DBLock.unlock();
+            releaseReadConnection(connection);
         }
         return Collections.unmodifiableMap(hashSets);
     }
@@ -490,15 +670,27 @@ void analyze() {
      * @return maximum time in seconds from unix epoch
      */
     Long getMaxTime() {
-        DBLock.lock();
-        try (ResultSet rs = getMaxTimeStmt.executeQuery()) {
+        Connection connection = acquireReadConnection();
+        try {
+            return getMaxTime(connection);
+        } finally {
+            releaseReadConnection(connection);
+        }
+    }
+
+    /**
+     * @param connection the connection to query
+     *
+     * @return maximum time in seconds from unix epoch
+     */
+    private static Long getMaxTime(Connection connection) {
+        try (PreparedStatement getMaxTimeStmt = connection.prepareStatement("SELECT Max(time) AS max FROM events"); // NON-NLS
+                ResultSet rs = getMaxTimeStmt.executeQuery()) {
             while (rs.next()) {
                 return rs.getLong("max"); // NON-NLS
             }
         } catch (SQLException ex) {
             LOGGER.log(Level.SEVERE, "Failed to get MAX time.", ex); // NON-NLS
-        } finally {
-            DBLock.unlock();
         }
         return -1l;
     }
@@ -507,15 +699,16 @@ Long getMaxTime() {
      * @return maximum time in seconds from unix epoch
      */
     Long getMinTime() {
-        DBLock.lock();
-        try (ResultSet rs = getMinTimeStmt.executeQuery()) {
+        Connection connection = acquireReadConnection();
+        try (PreparedStatement getMinTimeStmt = connection.prepareStatement("SELECT Min(time) AS min FROM events"); // NON-NLS
+                ResultSet rs = getMinTimeStmt.executeQuery()) {
             while (rs.next()) {
                 return rs.getLong("min"); // NON-NLS
             }
         } catch (SQLException ex) {
             LOGGER.log(Level.SEVERE, "Failed to get MIN time.", ex); // NON-NLS
         } finally {
-            DBLock.unlock();
+            releaseReadConnection(connection);
         }
         return -1l;
     }
@@ -622,48 +815,33 @@ final synchronized void initializeDB() {
 
             initializeTagsTable();
 
-            createIndex("events", Arrays.asList("datasource_id")); //NON-NLS
-            createIndex("events", Arrays.asList("event_id", "hash_hit")); //NON-NLS
-            createIndex("events", Arrays.asList("event_id", "tagged")); //NON-NLS
-            createIndex("events", Arrays.asList("file_id")); //NON-NLS
-            createIndex("events", Arrays.asList("artifact_id")); //NON-NLS
-            createIndex("events", Arrays.asList("sub_type", "short_description", "time")); //NON-NLS
-            createIndex("events", Arrays.asList("base_type", "short_description", "time")); //NON-NLS
-            createIndex("events", Arrays.asList("time")); //NON-NLS
-            createIndex("events", Arrays.asList("known_state")); //NON-NLS
+            createEventsIndices();
 
             try {
-                insertRowStmt = prepareStatement(
-                        "INSERT INTO events (datasource_id,file_id ,artifact_id, time, sub_type, base_type, full_description, med_description, short_description, known_state, hash_hit, tagged) " // NON-NLS
-                        + "VALUES (?,?,?,?,?,?,?,?,?,?,?,?)"); // NON-NLS
-                getHashSetNamesStmt = prepareStatement("SELECT hash_set_id, hash_set_name FROM hash_sets"); // NON-NLS
-                getDataSourceIDsStmt = prepareStatement("SELECT DISTINCT datasource_id FROM events WHERE datasource_id != 0"); // NON-NLS
-                getMaxTimeStmt = prepareStatement("SELECT Max(time) AS max FROM events"); // NON-NLS
-                getMinTimeStmt = prepareStatement("SELECT Min(time) AS min FROM events"); // NON-NLS
-                getEventByIDStmt = prepareStatement("SELECT * FROM events WHERE event_id =  ?"); // NON-NLS
+                insertRowStmt = prepareStatement(INSERT_EVENTS_COLUMNS + INSERT_EVENTS_ROW_VALUES);
+                insertRowsStmt = prepareStatement(multiRowInsertSQL(MULTI_ROW_INSERT_SIZE));
                 insertHashSetStmt = prepareStatement("INSERT OR IGNORE INTO hash_sets (hash_set_name)  values (?)"); //NON-NLS
                 selectHashSetStmt = prepareStatement("SELECT hash_set_id FROM hash_sets WHERE hash_set_name = ?"); //NON-NLS
                 insertHashHitStmt = prepareStatement("INSERT OR IGNORE INTO hash_set_hits (hash_set_id, event_id) values (?,?)"); //NON-NLS
                 insertTagStmt = prepareStatement("INSERT OR IGNORE INTO tags (tag_id, tag_name_id,tag_name_display_name, event_id) values (?,?,?,?)"); //NON-NLS
                 deleteTagStmt = prepareStatement("DELETE FROM tags WHERE tag_id = ?"); //NON-NLS
 
-                /*
-                 * This SQL query is really just a select count(*), but that has
-                 * performance problems on very large tables unless you include
-                 * a where clause see http://stackoverflow.com/a/9338276/4004683
-                 * for more.
-                 */
-                countAllEventsStmt = prepareStatement("SELECT count(event_id) AS count FROM events WHERE event_id IS NOT null"); //NON-NLS
                 dropEventsTableStmt = prepareStatement("DROP TABLE IF EXISTS events"); //NON-NLS
                 dropHashSetHitsTableStmt = prepareStatement("DROP TABLE IF EXISTS hash_set_hits"); //NON-NLS
                 dropHashSetsTableStmt = prepareStatement("DROP TABLE IF EXISTS hash_sets"); //NON-NLS
                 dropTagsTableStmt = prepareStatement("DROP TABLE IF EXISTS tags"); //NON-NLS
-                dropDBInfoTableStmt = prepareStatement("DROP TABLE IF EXISTS db_ino"); //NON-NLS
+                dropDBInfoTableStmt = prepareStatement("DROP TABLE IF EXISTS db_info"); //NON-NLS
                 selectNonArtifactEventIDsByObjectIDStmt = prepareStatement("SELECT event_id FROM events WHERE file_id == ? AND artifact_id IS NULL"); //NON-NLS
                 selectEventIDsBYObjectAndArtifactIDStmt = prepareStatement("SELECT event_id FROM events WHERE file_id == ? AND artifact_id = ?"); //NON-NLS
             } catch (SQLException sQLException) {
                 LOGGER.log(Level.SEVERE, "failed to prepareStatment", sQLException); // NON-NLS
             }
+
+            refreshRollupState();
+
+            if (walEnabled) {
+                openReadConnections();
+            }
         } finally {
             DBLock.unlock();
         }
@@ -679,12 +857,12 @@ final synchronized void initializeDB() {
      *         given artifact.
      */
     List<Long> getEventIDsForArtifact(BlackboardArtifact artifact) {
-        DBLock.lock();
+        Connection connection = acquireReadConnection();
 
         String query = "SELECT event_id FROM events WHERE artifact_id == " + artifact.getArtifactID();
 
         ArrayList<Long> results = new ArrayList<>();
-        try (Statement stmt = con.createStatement();
+        try (Statement stmt = connection.createStatement();
                 ResultSet rs = stmt.executeQuery(query);) {
             while (rs.next()) {
                 results.add(rs.getLong("event_id"));
@@ -692,7 +870,7 @@ List<Long> getEventIDsForArtifact(BlackboardArtifact artifact) {
         } catch (SQLException ex) {
             LOGGER.log(Level.SEVERE, "Error executing getEventIDsForArtifact query.", ex); // NON-NLS
         } finally {
-            DBLock.unlock();
+            releaseReadConnection(connection);
         }
         return results;
     }
@@ -713,13 +891,13 @@ List<Long> getEventIDsForArtifact(BlackboardArtifact artifact) {
      *         given file.
      */
     List<Long> getEventIDsForFile(AbstractFile file, boolean includeDerivedArtifacts) {
-        DBLock.lock();
+        Connection connection = acquireReadConnection();
 
         String query = "SELECT event_id FROM events WHERE file_id == " + file.getId()
                 + (includeDerivedArtifacts ? "" : " AND artifact_id IS NULL");
 
         ArrayList<Long> results = new ArrayList<>();
-        try (Statement stmt = con.createStatement();
+        try (Statement stmt = connection.createStatement();
                 ResultSet rs = stmt.executeQuery(query);) {
             while (rs.next()) {
                 results.add(rs.getLong("event_id"));
@@ -727,7 +905,7 @@ List<Long> getEventIDsForFile(AbstractFile file, boolean includeDerivedArtifacts
         } catch (SQLException ex) {
             LOGGER.log(Level.SEVERE, "Error executing getEventIDsForFile query.", ex); // NON-NLS
         } finally {
-            DBLock.unlock();
+            releaseReadConnection(connection);
         }
         return results;
     }
@@ -750,6 +928,140 @@ private void initializeTagsTable() {
         }
     }
 
+    /**
+     * Prepare for a bulk load of the events table by dropping the indices of
+     * the table and the event rollups, so they don't have to be maintained
+     * during the load. endBulkLoad() must be called after the load.
+     */
+    void beginBulkLoad() {
+        DBLock.lock();
+        try (Statement stmt = con.createStatement()) {
+            for (List<String> columnList : EVENTS_INDEX_COLUMNS) {
+                stmt.execute("DROP INDEX IF EXISTS " + getIndexName("events", columnList)); // NON-NLS
+            }
+            dropEventRollups();
+        } catch (SQLException ex) {
+            LOGGER.log(Level.SEVERE, "problem dropping events indices", ex); // NON-NLS
+        } finally {
+            DBLock.unlock();
+        }
+    }
+
+    /**
+     * Finish a bulk load of the events table by recreating the indices of the
+     * table and the event rollups. Creating them once after the load is much
+     * faster than maintaining them during the load.
+     */
+    void endBulkLoad() {
+        DBLock.lock();
+        try {
+            createEventsIndices();
+            rebuildEventRollups();
+        } finally {
+            DBLock.unlock();
+        }
+    }
+
+    /**
+     * Create the indices of the events table, if they don't already exist.
+     * <p>
+     * NOTE: does not lock the db, must be called form inside a
+     * DBLock.lock/unlock pair
+     */
+    private void createEventsIndices() {
+        for (List<String> columnList : EVENTS_INDEX_COLUMNS) {
+            createIndex("events", columnList); //NON-NLS
+        }
+    }
+
+    /**
+     * Drop the event rollups. Until they are rebuilt, events are counted from
+     * the events table.
+     * <p>
+     * NOTE: does not lock the db, must be called form inside a
+     * DBLock.lock/unlock pair
+     */
+    private void dropEventRollups() throws SQLException {
+        rollupsQueryable = false;
+        rollupTableExists = false;
+        try (Statement stmt = con.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS " + EventRollups.TABLE_NAME); // NON-NLS
+        }
+    }
+
+    /**
+     * Rebuild the event rollups from the events table.
+     * <p>
+     * NOTE: does not lock the db, must be called form inside a
+     * DBLock.lock/unlock pair
+     */
+    private void rebuildEventRollups() {
+        try (Statement stmt = con.createStatement()) {
+            dropEventRollups();
+            stmt.execute(EventRollups.getCreateTableSQL());
+            for (String sql : EventRollups.getPopulateTableSQL(TskData.FileKnown.UNKNOWN.getFileKnownValue())) {
+                stmt.execute(sql);
+            }
+            rollupTableExists = true;
+            if (con.getAutoCommit()) {
+                rollupsQueryable = true;
+            }
+        } catch (SQLException ex) {
+            LOGGER.log(Level.SEVERE, "problem building event rollups", ex); // NON-NLS
+            refreshRollupState();
+        }
+    }
+
+    /**
+     * Check whether the event_rollups table exists. A database created by an
+     * older version, or whose population was interrupted, has no rollups, and
+     * events are counted from the events table until it is repopulated.
+     * <p>
+     * NOTE: does not lock the db, must be called form inside a
+     * DBLock.lock/unlock pair
+     */
+    private void refreshRollupState() {
+        try (Statement stmt = con.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT name FROM sqlite_master WHERE type = 'table' AND name = '" + EventRollups.TABLE_NAME + "'")) { // NON-NLS
+            rollupTableExists = rs.next();
+        } catch (SQLException ex) {
+            LOGGER.log(Level.SEVERE, "problem checking for event rollups", ex); // NON-NLS
+            rollupTableExists = false;
+        }
+        rollupsQueryable = rollupTableExists;
+    }
+
+    /**
+     * Add events to the counts in the event rollups, if they exist.
+     * <p>
+     * NOTE: does not lock the db, must be called form inside a
+     * DBLock.lock/unlock pair
+     *
+     * @param rollupCounts the number of events to add for each rollup key
+     */
+    private void addToEventRollups(Map<EventRollups.Key, Long> rollupCounts) throws SQLException {
+        if (rollupTableExists == false || rollupCounts.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement insertKeyStmt = con.prepareStatement(EventRollups.INSERT_KEY_SQL);
+                PreparedStatement addToCountStmt = con.prepareStatement(EventRollups.ADD_TO_COUNT_SQL)) {
+            for (Map.Entry<EventRollups.Key, Long> entry : rollupCounts.entrySet()) {
+                entry.getKey().addToCount(insertKeyStmt, addToCountStmt, entry.getValue());
+            }
+        }
+    }
+
+    private static void countTowardsRollups(Map<EventRollups.Key, Long> rollupCounts, long time, long datasourceID, int typeNum, int superTypeNum, TskData.FileKnown known) {
+        byte knownState = known == null ? TskData.FileKnown.UNKNOWN.getFileKnownValue() : known.getFileKnownValue();
+        for (EventRollups.Key key : EventRollups.Key.getKeys(time, datasourceID, typeNum, superTypeNum, knownState)) {
+            rollupCounts.merge(key, 1L, Long::sum);
+        }
+    }
+
+    private static String getIndexName(final String tableName, final List<String> columnList) {
+        return tableName + "_" + StringUtils.join(columnList, "_") + "_idx"; //NON-NLS
+    }
+
     /**
      *
      * @param tableName  the value of tableName
@@ -757,7 +1069,7 @@ private void initializeTagsTable() {
      */
     private void createIndex(final String tableName, final List<String> columnList) {
         String indexColumns = columnList.stream().collect(Collectors.joining(",", "(", ")"));
-        String indexName = tableName + "_" + StringUtils.join(columnList, "_") + "_idx"; //NON-NLS
+        String indexName = getIndexName(tableName, columnList);
         try (Statement stmt = con.createStatement()) {
 
             String sql = "CREATE INDEX IF NOT EXISTS " + indexName + " ON " + tableName + indexColumns; // NON-NLS
@@ -856,30 +1168,17 @@ void insertEvent(long time, EventType type, long datasourceID, long objID,
             insertRowStmt.setInt(12, tags.isEmpty() ? 0 : 1);
 
             insertRowStmt.executeUpdate();
+            markEventsModified();
+            if (rollupTableExists) {
+                Map<EventRollups.Key, Long> rollupCounts = new HashMap<>();
+                countTowardsRollups(rollupCounts, time, datasourceID, typeNum, superTypeNum, known);
+                addToEventRollups(rollupCounts);
+            }
 
             try (ResultSet generatedKeys = insertRowStmt.getGeneratedKeys()) {
                 while (generatedKeys.next()) {
                     long eventID = generatedKeys.getLong("last_insert_rowid()"); //NON-NLS
-                    for (String name : hashSetNames) {
-
-                        // "insert or ignore into hash_sets (hash_set_name)  values (?)"
-                        insertHashSetStmt.setString(1, name);
-                        insertHashSetStmt.executeUpdate();
-
-                        //TODO: use nested select to get hash_set_id rather than seperate statement/query ?
-                        //"select hash_set_id from hash_sets where hash_set_name = ?"
-                        selectHashSetStmt.setString(1, name);
-                        try (ResultSet rs = selectHashSetStmt.executeQuery()) {
-                            while (rs.next()) {
-                                int hashsetID = rs.getInt("hash_set_id"); //NON-NLS
-                                //"insert or ignore into hash_set_hits (hash_set_id, obj_id) values (?,?)";
-                                insertHashHitStmt.setInt(1, hashsetID);
-                                insertHashHitStmt.setLong(2, eventID);
-                                insertHashHitStmt.executeUpdate();
-                                break;
-                            }
-                        }
-                    }
+                    insertHashHits(hashSetNames, eventID);
                     for (Tag tag : tags) {
                         //could this be one insert?  is there a performance win?
                         insertTag(tag, eventID);
@@ -895,6 +1194,337 @@ void insertEvent(long time, EventType type, long datasourceID, long objID,
         }
     }
 
+    /**
+     * Insert a batch of events, using multi-row insert statements.
+     *
+     * @param events        the events to insert
+     * @param skipExisting  if true, skip the events of files and artifacts
+     *                      that already have events in the db
+     * @param transaction   the transaction to insert the events in
+     *
+     * @return the number of events inserted
+     */
+    int insertEvents(List<EventRow> events, boolean skipExisting, EventTransaction transaction) {
+        if (transaction.isClosed()) {
+            throw new IllegalArgumentException("can't update database with closed transaction"); // NON-NLS
+        }
+        DBLock.lock();
+        try {
+            if (skipExisting) {
+                events = withoutExistingEvents(events);
+            }
+            if (events.isEmpty() == false) {
+                markEventsModified();
+            }
+            if (rollupTableExists) {
+                Map<EventRollups.Key, Long> rollupCounts = new HashMap<>();
+                for (EventRow event : events) {
+                    countTowardsRollups(rollupCounts, event.time, event.datasourceID,
+                            RootEventType.allTypes.indexOf(event.type), event.type.getSuperType().ordinal(), event.known);
+                }
+                addToEventRollups(rollupCounts);
+            }
+            for (int start = 0; start < events.size(); start += MULTI_ROW_INSERT_SIZE) {
+                List<EventRow> rows = events.subList(start, Math.min(events.size(), start + MULTI_ROW_INSERT_SIZE));
+                if (rows.size() == MULTI_ROW_INSERT_SIZE) {
+                    insertEventRows(insertRowsStmt, rows);
+                } else {
+                    try (PreparedStatement insertRemainingRowsStmt = con.prepareStatement(multiRowInsertSQL(rows.size()))) {
+                        insertEventRows(insertRemainingRowsStmt, rows);
+                    }
+                }
+            }
+            return events.size();
+        } catch (SQLException ex) {
+            LOGGER.log(Level.SEVERE, "failed to insert events", ex); // NON-NLS
+            return 0;
+        } finally {
+            DBLock.unlock();
+        }
+    }
+
+    /**
+     * Filter out the events of files and artifacts that already have events
+     * in the db.
+     * <p>
+     * NOTE: does not lock the db, must be called form inside a
+     * DBLock.lock/unlock pair
+     *
+     * @param events the events to filter
+     *
+     * @return the events of files and artifacts without events in the db
+     */
+    private List<EventRow> withoutExistingEvents(List<EventRow> events) throws SQLException {
+        Map<ImmutablePair<Long, Long>, Boolean> hasEvents = new HashMap<>();
+        List<EventRow> newEvents = new ArrayList<>(events.size());
+        for (EventRow event : events) {
+            ImmutablePair<Long, Long> source = ImmutablePair.of(event.objID, event.artifactID);
+            Boolean exists = hasEvents.get(source);
+            if (exists == null) {
+                exists = getEventIDs(event.objID, event.artifactID).isEmpty() == false;
+                hasEvents.put(source, exists);
+            }
+            if (exists == false) {
+                newEvents.add(event);
+            }
+        }
+        return newEvents;
+    }
+
+    /**
+     * Get a value from the db_info table.
+     *
+     * @param key the key of the value
+     *
+     * @return the value, or null if there is no value for the key
+     */
+    @Nullable
+    Long getDBInfo(String key) {
+        DBLock.lock();
+        try (PreparedStatement stmt = con.prepareStatement("SELECT value FROM db_info WHERE key = ?")) { // NON-NLS
+            stmt.setString(1, key);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getLong("value"); // NON-NLS
+                }
+            }
+        } catch (SQLException ex) {
+            LOGGER.log(Level.SEVERE, "failed to read db_info value " + key, ex); // NON-NLS
+        } finally {
+            DBLock.unlock();
+        }
+        return null;
+    }
+
+    /**
+     * Are there file system events of files of any of the given data sources
+     * in the db?
+     *
+     * @param datasourceIDs the ids of the data sources
+     *
+     * @return true if there are file system events of the data sources, or
+     *         if the db could not be checked
+     */
+    boolean hasFileEvents(Collection<Long> datasourceIDs) {
+        if (datasourceIDs.isEmpty()) {
+            return false;
+        }
+        DBLock.lock();
+        try (Statement stmt = con.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT event_id FROM events WHERE artifact_id IS NULL" // NON-NLS
+                        + " AND datasource_id IN (" + StringUtils.join(datasourceIDs, ", ") + ") LIMIT 1")) { // NON-NLS
+            return rs.next();
+        } catch (SQLException ex) {
+            LOGGER.log(Level.SEVERE, "failed to check for file system events of data sources " + datasourceIDs, ex); // NON-NLS
+        } finally {
+            DBLock.unlock();
+        }
+        return true;
+    }
+
+    /**
+     * Set a value in the db_info table.
+     *
+     * @param key         the key of the value
+     * @param value       the value
+     * @param transaction the transaction to set the value in
+     */
+    void setDBInfo(String key, long value, EventTransaction transaction) {
+        if (transaction.isClosed()) {
+            throw new IllegalArgumentException("can't update database with closed transaction"); // NON-NLS
+        }
+        DBLock.lock();
+        try (PreparedStatement stmt = con.prepareStatement("INSERT OR REPLACE INTO db_info (key, value) VALUES (?, ?)")) { // NON-NLS
+            stmt.setString(1, key);
+            stmt.setLong(2, value);
+            stmt.executeUpdate();
+        } catch (SQLException ex) {
+            LOGGER.log(Level.SEVERE, "failed to write db_info value " + key, ex); // NON-NLS
+        } finally {
+            DBLock.unlock();
+        }
+    }
+
+    /**
+     * Get the version of the events in the db. The version changes whenever
+     * events are added or their tagged state changes, and a rebuild of the db
+     * removes it.
+     *
+     * @return the version, or null if the db has no version
+     */
+    @Nullable
+    Long getEventsVersion() {
+        return getDBInfo(EVENTS_VERSION_KEY);
+    }
+
+    /**
+     * Record that the events were modified, so that the events version
+     * changes when the modification is committed.
+     * <p>
+     * NOTE: does not lock the db, must be called form inside a
+     * DBLock.lock/unlock pair
+     */
+    private void markEventsModified() throws SQLException {
+        if (con.getAutoCommit()) {
+            writeEventsVersion();
+        } else {
+            eventsModified = true;
+        }
+    }
+
+    /**
+     * Give the events a new, random, version.
+     * <p>
+     * NOTE: does not lock the db, must be called form inside a
+     * DBLock.lock/unlock pair
+     */
+    private void writeEventsVersion() throws SQLException {
+        try (PreparedStatement stmt = con.prepareStatement("INSERT OR REPLACE INTO db_info (key, value) VALUES (?, ?)")) { // NON-NLS
+            stmt.setString(1, EVENTS_VERSION_KEY);
+            stmt.setLong(2, ThreadLocalRandom.current().nextLong());
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Write a columnar copy of the events table to the given directory. The
+     * copy is read from a read connection, so it does not block writers, and
+     * is abandoned if the events change while it is being written.
+     *
+     * @param directory the directory to write the copy to
+     *
+     * @return the copy, or null if it could not be written
+     */
+    @Nullable
+    ColumnarEventStore writeColumnarEventStore(Path directory) {
+        Long version = getEventsVersion();
+        if (version == null) {
+            return null;
+        }
+        Connection connection = acquireReadConnection();
+        try (ColumnarEventStore.Writer writer = new ColumnarEventStore.Writer(directory);
+                Statement stmt = connection.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT event_id, time, datasource_id, file_id, artifact_id, sub_type, base_type," //NON-NLS
+                        + " full_description, med_description, short_description, known_state, hash_hit, tagged" //NON-NLS
+                        + " FROM events ORDER BY time, event_id")) { //NON-NLS
+            while (rs.next()) {
+                long artifactID = rs.getLong("artifact_id"); //NON-NLS
+                writer.addRow(rs.getLong("event_id"), rs.getLong("time"), rs.getLong("datasource_id"), rs.getLong("file_id"), //NON-NLS
+                        rs.wasNull() ? null : artifactID,
+                        rs.getInt("sub_type"), rs.getInt("base_type"), //NON-NLS
+                        rs.getString("full_description"), rs.getString("med_description"), rs.getString("short_description"), //NON-NLS
+                        rs.getByte("known_state") == TskData.FileKnown.KNOWN.getFileKnownValue(), //NON-NLS
+                        rs.getInt("hash_hit") == 1, rs.getInt("tagged") == 1); //NON-NLS
+            }
+            if (version.equals(getEventsVersion()) == false) {
+                LOGGER.log(Level.INFO, "The events changed while the columnar event store was being written."); // NON-NLS
+                return null;
+            }
+            return writer.finish(version);
+        } catch (SQLException | IOException ex) {
+            LOGGER.log(Level.WARNING, "Failed to write the columnar event store.", ex); // NON-NLS
+            return null;
+        } finally {
+            releaseReadConnection(connection);
+        }
+    }
+
+    private static String multiRowInsertSQL(int rowCount) {
+        return INSERT_EVENTS_COLUMNS + StringUtils.repeat(INSERT_EVENTS_ROW_VALUES, ",", rowCount);
+    }
+
+    /**
+     * Insert the given rows with the given multi-row insert statement, along
+     * with their hash set hits and tags.
+     * <p>
+     * NOTE: does not lock the db, must be called form inside a
+     * DBLock.lock/unlock pair
+     */
+    private void insertEventRows(PreparedStatement insertStmt, List<EventRow> rows) throws SQLException {
+        insertStmt.clearParameters();
+        int paramIndex = 1;
+        for (EventRow row : rows) {
+            int typeNum = RootEventType.allTypes.indexOf(row.type);
+            insertStmt.setLong(paramIndex++, row.datasourceID);
+            insertStmt.setLong(paramIndex++, row.objID);
+            if (row.artifactID != null) {
+                insertStmt.setLong(paramIndex++, row.artifactID);
+            } else {
+                insertStmt.setNull(paramIndex++, Types.NULL);
+            }
+            insertStmt.setLong(paramIndex++, row.time);
+            if (typeNum != -1) {
+                insertStmt.setInt(paramIndex++, typeNum);
+            } else {
+                insertStmt.setNull(paramIndex++, Types.INTEGER);
+            }
+            insertStmt.setInt(paramIndex++, row.type.getSuperType().ordinal());
+            insertStmt.setString(paramIndex++, row.fullDescription);
+            insertStmt.setString(paramIndex++, row.medDescription);
+            insertStmt.setString(paramIndex++, row.shortDescription);
+            insertStmt.setByte(paramIndex++, row.known == null ? TskData.FileKnown.UNKNOWN.getFileKnownValue() : row.known.getFileKnownValue());
+            insertStmt.setInt(paramIndex++, row.hashSetNames.isEmpty() ? 0 : 1);
+            insertStmt.setInt(paramIndex++, row.tags.isEmpty() ? 0 : 1);
+        }
+        insertStmt.executeUpdate();
+
+        /*
+         * All writes go through this connection under DBLock, and SQLite gives
+         * the rows of a multi-row insert into a table without AUTOINCREMENT
+         * consecutive rowids, so the event ids of the rows end at the last
+         * inserted rowid.
+         */
+        try (ResultSet generatedKeys = insertStmt.getGeneratedKeys()) {
+            if (generatedKeys.next()) {
+                long eventID = generatedKeys.getLong("last_insert_rowid()") - rows.size() + 1; //NON-NLS
+                for (EventRow row : rows) {
+                    insertHashHits(row.hashSetNames, eventID);
+                    for (Tag tag : row.tags) {
+                        insertTag(tag, eventID);
+                    }
+                    eventID++;
+                }
+            }
+        }
+    }
+
+    /**
+     * record the hash set hits of an event
+     * <p>
+     * NOTE: does not lock the db, must be called form inside a
+     * DBLock.lock/unlock pair
+     *
+     * @param hashSetNames the names of the hash sets the event's file is in
+     * @param eventID      the event id
+     *
+     * @throws SQLException if there was a problem executing insert
+     */
+    private void insertHashHits(Set<String> hashSetNames, long eventID) throws SQLException {
+        for (String name : hashSetNames) {
+            Integer hashsetID = hashSetIDs.get(name);
+            if (hashsetID == null) {
+                // "insert or ignore into hash_sets (hash_set_name)  values (?)"
+                insertHashSetStmt.setString(1, name);
+                insertHashSetStmt.executeUpdate();
+
+                //"select hash_set_id from hash_sets where hash_set_name = ?"
+                selectHashSetStmt.setString(1, name);
+                try (ResultSet rs = selectHashSetStmt.executeQuery()) {
+                    if (rs.next()) {
+                        hashsetID = rs.getInt("hash_set_id"); //NON-NLS
+                        hashSetIDs.put(name, hashsetID);
+                    }
+                }
+            }
+            if (hashsetID != null) {
+                //"insert or ignore into hash_set_hits (hash_set_id, obj_id) values (?,?)";
+                insertHashHitStmt.setInt(1, hashsetID);
+                insertHashHitStmt.setLong(2, eventID);
+                insertHashHitStmt.executeUpdate();
+            }
+        }
+    }
+
     /**
      * mark any events with the given object and artifact ids as tagged, and
      * record the tag it self.
@@ -1003,6 +1633,34 @@ Set<Long> deleteTag(long objectID, @Nullable Long artifactID, long tagID, boolea
      */
     private Set<Long> markEventsTagged(long objectID, @Nullable Long artifactID, boolean tagged) throws SQLException {
 
+        Set<Long> eventIDs = getEventIDs(objectID, artifactID);
+
+        //update tagged state for all event with selected ids
+        try (Statement updateStatement = con.createStatement();) {
+            int updated = updateStatement.executeUpdate("UPDATE events SET tagged = " + (tagged ? 1 : 0) //NON-NLS
+                    + " WHERE event_id IN (" + StringUtils.join(eventIDs, ",") + ")" //NON-NLS
+                    + " AND tagged IS NOT " + (tagged ? 1 : 0)); //NON-NLS
+            if (updated > 0) {
+                markEventsModified();
+            }
+        }
+
+        return eventIDs;
+    }
+
+    /**
+     * Get the ids of the events derived from the given object and, optionally,
+     * artifact. Callers must hold the DBLock.
+     *
+     * @param objectID   the obj_id of the file the events are derived from
+     * @param artifactID the id of the artifact the events are derived from, or
+     *                   null to get the events derived directly from the file
+     *
+     * @return the ids of the matching events
+     *
+     * @throws SQLException
+     */
+    private Set<Long> getEventIDs(long objectID, @Nullable Long artifactID) throws SQLException {
         PreparedStatement selectStmt;
         if (Objects.isNull(artifactID)) {
             //"SELECT event_id FROM events WHERE file_id == ? AND artifact_id IS NULL"
@@ -1023,13 +1681,6 @@ private Set<Long> markEventsTagged(long objectID, @Nullable Long artifactID, boo
                 eventIDs.add(executeQuery.getLong("event_id")); //NON-NLS
             }
         }
-
-        //update tagged state for all event with selected ids
-        try (Statement updateStatement = con.createStatement();) {
-            updateStatement.executeUpdate("UPDATE events SET tagged = " + (tagged ? 1 : 0) //NON-NLS
-                    + " WHERE event_id IN (" + StringUtils.join(eventIDs, ",") + ")"); //NON-NLS
-        }
-
         return eventIDs;
     }
 
@@ -1060,6 +1711,15 @@ private void configureDB() throws SQLException {
             statement.execute("PRAGMA auto_vacuum = 0"); // NON-NLS
             //allow to query while in transaction - no need read locks
             statement.execute("PRAGMA read_uncommitted = True;"); // NON-NLS
+            //let the read connections query while the writer connection is in a transaction
+            if (useReadConnectionPool) {
+                try (ResultSet rs = statement.executeQuery("PRAGMA journal_mode = WAL")) { // NON-NLS
+                    walEnabled = rs.next() && "wal".equalsIgnoreCase(rs.getString(1)); // NON-NLS
+                }
+                if (!walEnabled) {
+                    LOGGER.log(Level.WARNING, "Failed to put events.db in WAL mode, queries will use the writer connection"); // NON-NLS
+                }
+            }
         } finally {
             DBLock.unlock();
         }
@@ -1111,27 +1771,56 @@ private Map<EventType, Long> countEventsByType(Long startTime, Long endTime, Roo
 
         //do we want the root or subtype column of the databse
         final boolean useSubTypes = (zoomLevel == EventTypeZoomLevel.SUB_TYPE);
+        final String typeColumn = typeColumnHelper(useSubTypes);
+
+        List<String> queries = new ArrayList<>();
+        if (rollupsQueryable && SQLHelper.isRollupCompatible(filter)) {
+            /*
+             * sum the counts of the whole rollup buckets in the range, and only
+             * count the events in the leftovers at either end of the range
+             */
+            List<EventRollups.TimeRange> bucketRanges = new ArrayList<>();
+            List<EventRollups.TimeRange> rawRanges = new ArrayList<>();
+            EventRollups.splitTimeRange(startTime, endTime, bucketRanges, rawRanges);
+            if (bucketRanges.isEmpty() == false) {
+                queries.add("SELECT sum(event_count) AS count, " + typeColumn //NON-NLS
+                        + " FROM " + EventRollups.TABLE_NAME + " WHERE " + EventRollups.getBucketRangesSQL(bucketRanges) + " AND " + SQLHelper.getSQLWhere(filter) // NON-NLS
+                        + " GROUP BY " + typeColumn); // NON-NLS
+            }
+            if (rawRanges.isEmpty() == false) {
+                queries.add("SELECT count(events.event_id) AS count, " + typeColumn //NON-NLS
+                        + " FROM events WHERE " + EventRollups.getRawRangesSQL(rawRanges) + " AND " + SQLHelper.getSQLWhere(filter) // NON-NLS
+                        + " GROUP BY " + typeColumn); // NON-NLS
+            }
+        } else {
+            //get some info about the range of dates requested
+            queries.add("SELECT count(DISTINCT events.event_id) AS count, " + typeColumn //NON-NLS
+                    + " FROM events" + useHashHitTablesHelper(filter) + useTagTablesHelper(filter) + " WHERE time >= " + startTime + " AND time < " + endTime + " AND " + SQLHelper.getSQLWhere(filter) // NON-NLS
+                    + " GROUP BY " + typeColumn); // NON-NLS
+        }
 
-        //get some info about the range of dates requested
-        final String queryString = "SELECT count(DISTINCT events.event_id) AS count, " + typeColumnHelper(useSubTypes) //NON-NLS
-                + " FROM events" + useHashHitTablesHelper(filter) + useTagTablesHelper(filter) + " WHERE time >= " + startTime + " AND time < " + endTime + " AND " + SQLHelper.getSQLWhere(filter) // NON-NLS
-                + " GROUP BY " + typeColumnHelper(useSubTypes); // NON-NLS
-
-        DBLock.lock();
-        try (Statement stmt = con.createStatement();
-                ResultSet rs = stmt.executeQuery(queryString);) {
-            while (rs.next()) {
-                EventType type = useSubTypes
-                        ? RootEventType.allTypes.get(rs.getInt("sub_type")) //NON-NLS
-                        : BaseTypes.values()[rs.getInt("base_type")]; //NON-NLS
+        Connection connection = acquireReadConnection();
+        try (Statement stmt = connection.createStatement();) {
+            for (String queryString : queries) {
+                try (ResultSet rs = stmt.executeQuery(queryString)) {
+                    while (rs.next()) {
+                        int typeNum = rs.getInt(typeColumn);
+                        if (useSubTypes && typeNum < 0) {
+                            //the rollups count events without a sub type as sub type -1
+                            continue;
+                        }
+                        EventType type = useSubTypes
+                                ? RootEventType.allTypes.get(typeNum)
+                                : BaseTypes.values()[typeNum];
 
-                typeMap.put(type, rs.getLong("count")); // NON-NLS
+                        typeMap.merge(type, rs.getLong("count"), Long::sum); // NON-NLS
+                    }
+                }
             }
-
         } catch (Exception ex) {
             LOGGER.log(Level.SEVERE, "Error getting count of events from db.", ex); // NON-NLS
         } finally {
-            DBLock.unlock();
+            releaseReadConnection(connection);
         }
         return typeMap;
     }
@@ -1192,8 +1881,8 @@ List<EventStripe> getEventStripes(ZoomParams params) {
         // perform query and map results to AggregateEvent objects
         List<EventCluster> events = new ArrayList<>();
 
-        DBLock.lock();
-        try (Statement createStatement = con.createStatement();
+        Connection connection = acquireReadConnection();
+        try (Statement createStatement = connection.createStatement();
                 ResultSet rs = createStatement.executeQuery(query)) {
             while (rs.next()) {
                 events.add(eventClusterHelper(rs, useSubTypes, descriptionLOD, filter.getTagsFilter()));
@@ -1201,7 +1890,7 @@ List<EventStripe> getEventStripes(ZoomParams params) {
         } catch (SQLException ex) {
             LOGGER.log(Level.SEVERE, "Failed to get events with query: " + query, ex); // NON-NLS
         } finally {
-            DBLock.unlock();
+            releaseReadConnection(connection);
         }
 
         return mergeClustersToStripes(rangeInfo.getPeriodSize().getPeriod(), events);
@@ -1247,7 +1936,7 @@ private EventCluster eventClusterHelper(ResultSet rs, boolean useSubTypes, Descr
      *
      * @return
      */
-    static private List<EventStripe> mergeClustersToStripes(Period timeUnitLength, List<EventCluster> preMergedEvents) {
+    static List<EventStripe> mergeClustersToStripes(Period timeUnitLength, List<EventCluster> preMergedEvents) {
 
         //effectively map from type to (map from description to events)
         Map<EventType, SetMultimap< String, EventCluster>> typeMap = new HashMap<>();
@@ -1337,7 +2026,12 @@ private EventTransaction() {
         private void rollback() {
             if (!closed) {
                 try {
+                    eventsModified = false;
                     con.rollback();
+                    //the rolled back hash sets may have been cached
+                    hashSetIDs.clear();
+                    //the rollups may have been dropped or created
+                    refreshRollupState();
 
                 } catch (SQLException ex1) {
                     LOGGER.log(Level.SEVERE, "Exception while attempting to rollback!!", ex1); // NON-NLS
@@ -1350,7 +2044,12 @@ private void rollback() {
         private void commit() {
             if (!closed) {
                 try {
+                    if (eventsModified) {
+                        writeEventsVersion();
+                        eventsModified = false;
+                    }
                     con.commit();
+                    rollupsQueryable = rollupTableExists;
                     // make sure we close before we update, bc they'll need locks
                     close();
 
@@ -1379,4 +2078,45 @@ public Boolean isClosed() {
             return closed;
         }
     }
+
+    /**
+     * The values of one row of the events table, along with the hash set
+     * hits and tags of the event, to be inserted with
+     * insertEvents(java.util.List, EventTransaction).
+     */
+    static final class EventRow {
+
+        private final long time;
+        private final EventType type;
+        private final long datasourceID;
+        private final long objID;
+        private final Long artifactID;
+        private final String fullDescription;
+        private final String medDescription;
+        private final String shortDescription;
+        private final TskData.FileKnown known;
+        private final Set<String> hashSetNames;
+        private final List<? extends Tag> tags;
+
+        EventRow(long time, EventType type, long datasourceID, long objID,
+                @Nullable Long artifactID, String fullDescription, String medDescription,
+                String shortDescription, @Nullable TskData.FileKnown known, Set<String> hashSetNames,
+                List<? extends Tag> tags) {
+            this.time = time;
+            this.type = type;
+            this.datasourceID = datasourceID;
+            this.objID = objID;
+            this.artifactID = artifactID;
+            this.fullDescription = fullDescription;
+            this.medDescription = medDescription;
+            this.shortDescription = shortDescription;
+            this.known = known;
+            this.hashSetNames = hashSetNames;
+            this.tags = tags;
+        }
+
+        long getTime() {
+            return time;
+        }
+    }
 }
@@ -0,0 +1,383 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2016 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.timeline.db;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+/**
+ * Helpers for the event_rollups table, which holds the number of events per
+ * time bucket, at a fixed set of granularities, for each combination of data
+ * source, event sub type, base type and known state. These are all of the
+ * columns that the type, data source and known filters restrict, so counts of
+ * events that only have to pass those filters can be summed from the rollups
+ * instead of being counted from the events table.
+ *
+ * The buckets are in UTC. A time range in any time zone is split into the
+ * whole buckets of the coarsest granularities that fit in it, and the
+ * leftovers, which are less than an hour at either end, are counted from the
+ * events table.
+ */
+final class EventRollups {
+
+    static final String TABLE_NAME = "event_rollups"; //NON-NLS
+
+    /**
+     * The granularities of the rollups, from coarsest to finest.
+     */
+    enum Granularity {
+
+        YEAR {
+            @Override
+            DateTime floor(DateTime time) {
+                return time.year().roundFloorCopy();
+            }
+
+            @Override
+            DateTime next(DateTime bucketStart) {
+                return bucketStart.plusYears(1);
+            }
+
+            @Override
+            String getBucketStartSQL() {
+                return "CAST(strftime('%s', bucket_start, 'unixepoch', 'start of year') AS INTEGER)"; //NON-NLS
+            }
+        },
+        MONTH {
+            @Override
+            DateTime floor(DateTime time) {
+                return time.monthOfYear().roundFloorCopy();
+            }
+
+            @Override
+            DateTime next(DateTime bucketStart) {
+                return bucketStart.plusMonths(1);
+            }
+
+            @Override
+            String getBucketStartSQL() {
+                return "CAST(strftime('%s', bucket_start, 'unixepoch', 'start of month') AS INTEGER)"; //NON-NLS
+            }
+        },
+        DAY {
+            @Override
+            DateTime floor(DateTime time) {
+                return time.dayOfMonth().roundFloorCopy();
+            }
+
+            @Override
+            DateTime next(DateTime bucketStart) {
+                return bucketStart.plusDays(1);
+            }
+
+            @Override
+            String getBucketStartSQL() {
+                return "((bucket_start / 86400) * 86400)"; //NON-NLS
+            }
+        },
+        HOUR {
+            @Override
+            DateTime floor(DateTime time) {
+                return time.hourOfDay().roundFloorCopy();
+            }
+
+            @Override
+            DateTime next(DateTime bucketStart) {
+                return bucketStart.plusHours(1);
+            }
+
+            /**
+             * The hour rollups are computed from the events table, so this
+             * expression is in terms of the events.time column.
+             */
+            @Override
+            String getBucketStartSQL() {
+                return "((time / 3600) * 3600)"; //NON-NLS
+            }
+        };
+
+        abstract DateTime floor(DateTime time);
+
+        abstract DateTime next(DateTime bucketStart);
+
+        /**
+         * Get an SQL expression for the start of the bucket of this
+         * granularity that contains the start of an hour rollup bucket.
+         *
+         * @return the SQL expression, in terms of the bucket_start column
+         */
+        abstract String getBucketStartSQL();
+
+        /**
+         * Get the start of the bucket that contains the given time.
+         *
+         * @param time seconds since the unix epoch
+         *
+         * @return the start of the bucket, in seconds since the unix epoch
+         */
+        long getBucketStart(long time) {
+            return floor(new DateTime(time * 1000, DateTimeZone.UTC)).getMillis() / 1000;
+        }
+
+        /**
+         * Get the start of the first bucket that starts at or after the given
+         * time.
+         *
+         * @param time seconds since the unix epoch
+         *
+         * @return the start of the bucket, in seconds since the unix epoch
+         */
+        long getNextBucketStart(long time) {
+            DateTime bucketStart = floor(new DateTime(time * 1000, DateTimeZone.UTC));
+            if (bucketStart.getMillis() / 1000 < time) {
+                bucketStart = next(bucketStart);
+            }
+            return bucketStart.getMillis() / 1000;
+        }
+    }
+
+    /**
+     * A half open range of time, [start, end), either of whole buckets of a
+     * granularity, or of raw event times if the granularity is null.
+     */
+    static final class TimeRange {
+
+        private final Granularity granularity;
+        private final long start;
+        private final long end;
+
+        private TimeRange(Granularity granularity, long start, long end) {
+            this.granularity = granularity;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Split the time range [start, end) into ranges of whole buckets, using the
+     * coarsest granularities that fit, and the leftover ranges that are not
+     * covered by any whole bucket.
+     *
+     * @param start        the start of the range, in seconds since the unix
+     *                     epoch
+     * @param end          the end of the range (exclusive)
+     * @param bucketRanges the list to add the ranges of whole buckets to
+     * @param rawRanges    the list to add the leftover ranges to
+     */
+    static void splitTimeRange(long start, long end, List<TimeRange> bucketRanges, List<TimeRange> rawRanges) {
+        splitTimeRange(start, end, 0, bucketRanges, rawRanges);
+    }
+
+    private static void splitTimeRange(long start, long end, int granularityIndex, List<TimeRange> bucketRanges, List<TimeRange> rawRanges) {
+        if (start >= end) {
+            return;
+        }
+        if (granularityIndex == Granularity.values().length) {
+            rawRanges.add(new TimeRange(null, start, end));
+            return;
+        }
+        Granularity granularity = Granularity.values()[granularityIndex];
+        long firstBucketStart = granularity.getNextBucketStart(start);
+        long endBucketStart = granularity.getBucketStart(end);
+        if (firstBucketStart >= endBucketStart) {
+            splitTimeRange(start, end, granularityIndex + 1, bucketRanges, rawRanges);
+        } else {
+            bucketRanges.add(new TimeRange(granularity, firstBucketStart, endBucketStart));
+            splitTimeRange(start, firstBucketStart, granularityIndex + 1, bucketRanges, rawRanges);
+            splitTimeRange(endBucketStart, end, granularityIndex + 1, bucketRanges, rawRanges);
+        }
+    }
+
+    /**
+     * Get an SQL condition that selects the rollup rows of the given ranges of
+     * whole buckets.
+     *
+     * @param bucketRanges the ranges of whole buckets
+     *
+     * @return the SQL condition
+     */
+    static String getBucketRangesSQL(List<TimeRange> bucketRanges) {
+        return bucketRanges.stream()
+                .map(range -> "(granularity = " + range.granularity.ordinal() //NON-NLS
+                        + " AND bucket_start >= " + range.start + " AND bucket_start < " + range.end + ")") //NON-NLS
+                .collect(Collectors.joining(" OR ", "(", ")")); //NON-NLS
+    }
+
+    /**
+     * Get an SQL condition that selects the events in the given ranges of raw
+     * event times.
+     *
+     * @param rawRanges the ranges of raw event times
+     *
+     * @return the SQL condition
+     */
+    static String getRawRangesSQL(List<TimeRange> rawRanges) {
+        return rawRanges.stream()
+                .map(range -> "(time >= " + range.start + " AND time < " + range.end + ")") //NON-NLS
+                .collect(Collectors.joining(" OR ", "(", ")")); //NON-NLS
+    }
+
+    static String getCreateTableSQL() {
+        return "CREATE TABLE " + TABLE_NAME //NON-NLS
+                + " (granularity INTEGER NOT NULL, " //NON-NLS
+                + " bucket_start INTEGER NOT NULL, " //NON-NLS
+                + " datasource_id INTEGER NOT NULL, " //NON-NLS
+                + " sub_type INTEGER NOT NULL, " //NON-NLS
+                + " base_type INTEGER NOT NULL, " //NON-NLS
+                + " known_state INTEGER NOT NULL, " //NON-NLS
+                + " event_count INTEGER NOT NULL, " //NON-NLS
+                + " PRIMARY KEY (granularity, bucket_start, datasource_id, sub_type, base_type, known_state))"; //NON-NLS
+    }
+
+    /**
+     * Get the SQL statements that fill the empty rollup table from the events
+     * table. The hour rollups are counted from the events, and the coarser
+     * rollups are summed from the hour rollups.
+     *
+     * @param unknownKnownState the known state value to use for events
+     *                          without one
+     *
+     * @return the SQL statements, to be executed in order
+     */
+    static List<String> getPopulateTableSQL(byte unknownKnownState) {
+        List<String> statements = new ArrayList<>();
+        statements.add("INSERT INTO " + TABLE_NAME //NON-NLS
+                + " SELECT " + Granularity.HOUR.ordinal() + ", " + Granularity.HOUR.getBucketStartSQL() + ", " //NON-NLS
+                + " IFNULL(datasource_id, 0), IFNULL(sub_type, -1), base_type, IFNULL(known_state, " + unknownKnownState + "), count(*)" //NON-NLS
+                + " FROM events GROUP BY 2, 3, 4, 5, 6"); //NON-NLS
+        for (Granularity granularity : Arrays.asList(Granularity.DAY, Granularity.MONTH, Granularity.YEAR)) {
+            statements.add("INSERT INTO " + TABLE_NAME //NON-NLS
+                    + " SELECT " + granularity.ordinal() + ", " + granularity.getBucketStartSQL() + ", " //NON-NLS
+                    + " datasource_id, sub_type, base_type, known_state, sum(event_count)" //NON-NLS
+                    + " FROM " + TABLE_NAME + " WHERE granularity = " + Granularity.HOUR.ordinal() //NON-NLS
+                    + " GROUP BY 2, 3, 4, 5, 6"); //NON-NLS
+        }
+        return statements;
+    }
+
+    static final String INSERT_KEY_SQL = "INSERT OR IGNORE INTO " + TABLE_NAME //NON-NLS
+            + " (granularity, bucket_start, datasource_id, sub_type, base_type, known_state, event_count) VALUES (?,?,?,?,?,?,0)"; //NON-NLS
+
+    static final String ADD_TO_COUNT_SQL = "UPDATE " + TABLE_NAME + " SET event_count = event_count + ?" //NON-NLS
+            + " WHERE granularity = ? AND bucket_start = ? AND datasource_id = ? AND sub_type = ? AND base_type = ? AND known_state = ?"; //NON-NLS
+
+    /**
+     * The key of a row of the rollup table.
+     */
+    static final class Key {
+
+        private final Granularity granularity;
+        private final long bucketStart;
+        private final long datasourceID;
+        private final int subType;
+        private final int baseType;
+        private final byte knownState;
+
+        private Key(Granularity granularity, long bucketStart, long datasourceID, int subType, int baseType, byte knownState) {
+            this.granularity = granularity;
+            this.bucketStart = bucketStart;
+            this.datasourceID = datasourceID;
+            this.subType = subType;
+            this.baseType = baseType;
+            this.knownState = knownState;
+        }
+
+        /**
+         * Get the keys of the rows, one per granularity, that an event counts
+         * towards.
+         *
+         * @param time         the time of the event, in seconds since the
+         *                     unix epoch
+         * @param datasourceID the data source id of the event
+         * @param subType      the sub type of the event, or -1
+         * @param baseType     the base type of the event
+         * @param knownState   the known state of the event
+         *
+         * @return the keys
+         */
+        static List<Key> getKeys(long time, long datasourceID, int subType, int baseType, byte knownState) {
+            List<Key> keys = new ArrayList<>(Granularity.values().length);
+            for (Granularity granularity : Granularity.values()) {
+                keys.add(new Key(granularity, granularity.getBucketStart(time), datasourceID, subType, baseType, knownState));
+            }
+            return keys;
+        }
+
+        /**
+         * Add the given number of events to the count of the row with this
+         * key, creating the row if needed.
+         *
+         * @param insertKeyStmt  a statement prepared from INSERT_KEY_SQL
+         * @param addToCountStmt a statement prepared from ADD_TO_COUNT_SQL
+         * @param count          the number of events to add
+         *
+         * @throws SQLException if there is a problem executing the statements
+         */
+        void addToCount(PreparedStatement insertKeyStmt, PreparedStatement addToCountStmt, long count) throws SQLException {
+            insertKeyStmt.setInt(1, granularity.ordinal());
+            insertKeyStmt.setLong(2, bucketStart);
+            insertKeyStmt.setLong(3, datasourceID);
+            insertKeyStmt.setInt(4, subType);
+            insertKeyStmt.setInt(5, baseType);
+            insertKeyStmt.setByte(6, knownState);
+            insertKeyStmt.executeUpdate();
+
+            addToCountStmt.setLong(1, count);
+            addToCountStmt.setInt(2, granularity.ordinal());
+            addToCountStmt.setLong(3, bucketStart);
+            addToCountStmt.setLong(4, datasourceID);
+            addToCountStmt.setInt(5, subType);
+            addToCountStmt.setInt(6, baseType);
+            addToCountStmt.setByte(7, knownState);
+            addToCountStmt.executeUpdate();
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(granularity, bucketStart, datasourceID, subType, baseType, knownState);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return granularity == other.granularity
+                    && bucketStart == other.bucketStart
+                    && datasourceID == other.datasourceID
+                    && subType == other.subType
+                    && baseType == other.baseType
+                    && knownState == other.knownState;
+        }
+    }
+
+    private EventRollups() {
+    }
+}
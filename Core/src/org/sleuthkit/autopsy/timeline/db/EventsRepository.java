@@ -21,21 +21,37 @@
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import static java.util.Objects.isNull;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 import javafx.application.Platform;
@@ -46,6 +62,7 @@
 import javafx.collections.ObservableList;
 import javafx.collections.ObservableMap;
 import javafx.concurrent.Worker;
+import javax.annotation.Nullable;
 import javax.swing.JOptionPane;
 import org.apache.commons.lang3.StringUtils;
 import org.joda.time.Interval;
@@ -55,6 +72,7 @@
 import org.sleuthkit.autopsy.casemodule.services.TagsManager;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import org.sleuthkit.autopsy.coreutils.ThreadConfined;
+import org.sleuthkit.autopsy.ingest.IngestManager;
 import org.sleuthkit.autopsy.timeline.CancellationProgressTask;
 import org.sleuthkit.autopsy.timeline.datamodel.CombinedEvent;
 import org.sleuthkit.autopsy.timeline.datamodel.EventStripe;
@@ -71,6 +89,7 @@
 import org.sleuthkit.datamodel.AbstractFile;
 import org.sleuthkit.datamodel.BlackboardArtifact;
 import org.sleuthkit.datamodel.BlackboardArtifactTag;
+import org.sleuthkit.datamodel.Content;
 import org.sleuthkit.datamodel.ContentTag;
 import org.sleuthkit.datamodel.SleuthkitCase;
 import org.sleuthkit.datamodel.Tag;
@@ -89,8 +108,8 @@
  * Concurrency Policy:
  *
  * Since almost everything just delegates to the EventDB, which is internally
- * synchronized, we only have to worry about rebuildRepository() which we
- * synchronize on our intrinsic lock.
+ * synchronized, we only have to worry about rebuildRepository() and
+ * updateRepository() which we synchronize on our intrinsic lock.
  *
  */
 public class EventsRepository {
@@ -98,7 +117,62 @@ public class EventsRepository {
     private final static Logger LOGGER = Logger.getLogger(EventsRepository.class.getName());
 
     private final Executor workerExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("eventrepository-worker-%d").build()); //NON-NLS
+
+    /*
+     * A full rebuild of the repository builds the event rows for pages of
+     * files and artifacts in parallel on the producer threads, and inserts
+     * them in batches on the worker thread, the only thread that writes to the
+     * db.
+     */
+    private static final int PRODUCER_THREAD_COUNT = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+    private static final int PRODUCER_PAGE_SIZE = 500;
+    private static final int EVENT_BATCH_QUEUE_CAPACITY = 4 * PRODUCER_THREAD_COUNT;
+    private final ExecutorService producerExecutor = Executors.newFixedThreadPool(PRODUCER_THREAD_COUNT, new ThreadFactoryBuilder().setNameFormat("eventrepository-producer-%d").build()); //NON-NLS
+
+    private static final String FILES_WITH_EVENTS_CONDITION = "name != '.' AND name != '..'" //NON-NLS
+            + " AND type != " + TskData.TSK_DB_FILES_TYPE_ENUM.SLACK.ordinal(); //NON-NLS
+
+    /*
+     * The ids of the newest file and artifact whose events are in the db, kept
+     * in the db_info table so that the events of files and artifacts added to
+     * the case later can be added without rebuilding the whole db.
+     */
+    private static final String FILE_HIGH_WATER_MARK_KEY = "file_obj_id_high_water_mark"; //NON-NLS
+    private static final String ARTIFACT_HIGH_WATER_MARK_KEY = "artifact_id_high_water_mark"; //NON-NLS
+
+    /*
+     * The file events of a data source are added when its analysis completes,
+     * so each data source has its own file high water mark, which defaults to
+     * the mark of the last full population. A data source whose file events
+     * were added before its analysis finished is recorded as outdated, since
+     * the known state and hash set hits of its files may have changed.
+     */
+    private static final String DATA_SOURCE_FILE_HIGH_WATER_MARK_KEY_PREFIX = "file_obj_id_high_water_mark_"; //NON-NLS
+    private static final String OUTDATED_FILE_EVENTS_KEY_PREFIX = "outdated_file_events_"; //NON-NLS
+
+    /*
+     * the data sources whose analysis started but has not completed, guarded
+     * by our intrinsic lock
+     */
+    private final Set<Long> dataSourcesUnderAnalysis = new HashSet<>();
+
     private DBPopulationWorker dbWorker;
+    private DBPopulationWorker updateWorker;
+
+    /*
+     * For cases with many events, the event counts and stripes are read from a
+     * columnar copy of the events table, while there is one for the current
+     * version of the db. The copy is rewritten in the background once the
+     * events have stopped changing for a while and ingest is idle, rather than
+     * on every change.
+     */
+    private static final long COLUMNAR_STORE_MIN_EVENTS = 1_000_000;
+    private static final long COLUMNAR_STORE_REBUILD_DELAY_SECONDS = 30;
+    private final ScheduledExecutorService columnarStoreExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("eventrepository-columnar-store-%d").build()); //NON-NLS
+    private ScheduledFuture<?> columnarStoreRefresh; //guarded by this
+    private final Path columnarStoresRoot;
+    private volatile ColumnarEventStore columnarStore;
+    private long columnarStoreGeneration = 0; //guarded by this
     private final EventDB eventDB;
     private final Case autoCase;
     private final FilteredEventsModel modelInstance;
@@ -145,6 +219,7 @@ public EventsRepository(Case autoCase, ReadOnlyObjectProperty<ZoomParams> curren
         this.autoCase = autoCase;
         //TODO: we should check that case is open, or get passed a case object/directory -jm
         this.eventDB = EventDB.getEventDB(autoCase);
+        this.columnarStoresRoot = Paths.get(autoCase.getCaseDirectory(), "events_columns"); //NON-NLS
         populateFilterData(autoCase.getSleuthkitCase());
         idToEventCache = CacheBuilder.newBuilder()
                 .maximumSize(5000L)
@@ -153,14 +228,93 @@ public EventsRepository(Case autoCase, ReadOnlyObjectProperty<ZoomParams> curren
         eventCountsCache = CacheBuilder.newBuilder()
                 .maximumSize(1000L)
                 .expireAfterAccess(10, TimeUnit.MINUTES)
-                .build(CacheLoader.from(eventDB::countEventsByType));
+                .build(CacheLoader.from(this::countEventsByType));
         eventStripeCache = CacheBuilder.newBuilder()
                 .maximumSize(1000L)
                 .expireAfterAccess(10, TimeUnit.MINUTES
-                ).build(CacheLoader.from(eventDB::getEventStripes));
+                ).build(CacheLoader.from(this::loadEventStripes));
         maxCache = CacheBuilder.newBuilder().build(CacheLoader.from(eventDB::getMaxTime));
         minCache = CacheBuilder.newBuilder().build(CacheLoader.from(eventDB::getMinTime));
         this.modelInstance = new FilteredEventsModel(this, currentStateProperty);
+        refreshColumnarStore();
+    }
+
+    private Map<EventType, Long> countEventsByType(ZoomParams params) {
+        ColumnarEventStore store = columnarStore;
+        if (store != null && ColumnarEventStore.canEvaluate(params.getFilter())) {
+            return store.countEventsByType(params);
+        }
+        return eventDB.countEventsByType(params);
+    }
+
+    private List<EventStripe> loadEventStripes(ZoomParams params) {
+        ColumnarEventStore store = columnarStore;
+        if (store != null && ColumnarEventStore.canEvaluate(params.getFilter())) {
+            return store.getEventStripes(params);
+        }
+        return eventDB.getEventStripes(params);
+    }
+
+    /**
+     * Stop using the columnar event store, since the events may have changed,
+     * and open or build the store for the current version of the events db in
+     * the background. The first refresh opens an existing store right away;
+     * later refreshes wait until the events have not changed for a while, and
+     * each refresh replaces the one that is still waiting.
+     */
+    synchronized private void refreshColumnarStore() {
+        columnarStore = null;
+        columnarStoreGeneration++;
+        if (autoCase.getCaseType() != Case.CaseType.SINGLE_USER_CASE) {
+            //mapping files on a network share is not reliable.
+            return;
+        }
+        if (columnarStoreRefresh != null) {
+            columnarStoreRefresh.cancel(false);
+        }
+        if (columnarStoreExecutor.isShutdown() == false) {
+            long delay = columnarStoreGeneration == 1 ? 0 : COLUMNAR_STORE_REBUILD_DELAY_SECONDS;
+            columnarStoreRefresh = columnarStoreExecutor.schedule(this::loadColumnarStore, delay, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Open the columnar event store for the current version of the events db,
+     * or build it if there are enough events. While ingest is running the
+     * events are likely to change again soon, so building the store is put off
+     * until ingest is idle.
+     */
+    private void loadColumnarStore() {
+        final long generation;
+        synchronized (this) {
+            generation = columnarStoreGeneration;
+        }
+        Long version = eventDB.getEventsVersion();
+        ColumnarEventStore store = null;
+        if (version != null) {
+            Path directory = ColumnarEventStore.getStoreDirectory(columnarStoresRoot, version);
+            store = ColumnarEventStore.open(directory, version);
+            if (store == null && eventDB.countAllEvents() >= COLUMNAR_STORE_MIN_EVENTS) {
+                if (IngestManager.getInstance().isIngestRunning()) {
+                    synchronized (this) {
+                        //if the events changed in the mean time, a newer refresh is already scheduled.
+                        if (generation == columnarStoreGeneration && columnarStoreExecutor.isShutdown() == false) {
+                            columnarStoreRefresh = columnarStoreExecutor.schedule(this::loadColumnarStore, COLUMNAR_STORE_REBUILD_DELAY_SECONDS, TimeUnit.SECONDS);
+                        }
+                    }
+                    return;
+                }
+                LOGGER.log(Level.INFO, "Building the columnar event store."); //NON-NLS
+                store = eventDB.writeColumnarEventStore(directory);
+            }
+        }
+        ColumnarEventStore.deleteOtherStores(columnarStoresRoot, store == null ? null : store.getEventsVersion());
+        synchronized (this) {
+            //if the events changed in the mean time, a newer refresh will take over.
+            if (store != null && generation == columnarStoreGeneration) {
+                columnarStore = store;
+            }
+        }
     }
 
     /**
@@ -240,6 +394,7 @@ public List<Long> getEventIDsForArtifact(BlackboardArtifact artifact) {
     }
 
     private void invalidateCaches() {
+        refreshColumnarStore();
         minCache.invalidateAll();
         maxCache.invalidateAll();
         eventCountsCache.invalidateAll();
@@ -330,7 +485,42 @@ synchronized public Set<Long> deleteTag(long objID, Long artifactID, long tagID,
         return updatedEventIDs;
     }
 
+    /**
+     * Invalidate the cached results that may have changed by adding events
+     * between the given times.
+     *
+     * @param minTime the time of the earliest added event, in seconds from
+     *                unix epoch
+     * @param maxTime the time of the latest added event, in seconds from unix
+     *                epoch
+     */
+    synchronized private void invalidateCaches(long minTime, long maxTime) {
+        refreshColumnarStore();
+        Long cachedMin = minCache.getIfPresent("min"); // NON-NLS
+        if (cachedMin == null || cachedMin <= 0 || minTime < cachedMin) {
+            minCache.invalidateAll();
+        }
+        Long cachedMax = maxCache.getIfPresent("max"); // NON-NLS
+        if (cachedMax == null || cachedMax <= 0 || maxTime > cachedMax) {
+            maxCache.invalidateAll();
+        }
+        //only the counts and stripes of time ranges that overlap the new events can have changed
+        final long minMillis = TimeUnit.SECONDS.toMillis(minTime);
+        final long maxMillis = TimeUnit.SECONDS.toMillis(maxTime);
+        eventCountsCache.invalidateAll(eventCountsCache.asMap().keySet().stream()
+                .filter(zoomParams -> overlaps(zoomParams.getTimeRange(), minMillis, maxMillis))
+                .collect(Collectors.toList()));
+        eventStripeCache.invalidateAll(eventStripeCache.asMap().keySet().stream()
+                .filter(zoomParams -> overlaps(zoomParams.getTimeRange(), minMillis, maxMillis))
+                .collect(Collectors.toList()));
+    }
+
+    private static boolean overlaps(Interval timeRange, long minMillis, long maxMillis) {
+        return timeRange.getStartMillis() <= maxMillis && timeRange.getEndMillis() > minMillis;
+    }
+
     synchronized private void invalidateCaches(Set<Long> updatedEventIDs) {
+        refreshColumnarStore();
         eventCountsCache.invalidateAll();
         eventStripeCache.invalidateAll();
         idToEventCache.invalidateAll(updatedEventIDs);
@@ -406,20 +596,123 @@ public CancellationProgressTask<Void> rebuildTags(Consumer<Worker.State> onState
      *         task has already been started.
      */
     @ThreadConfined(type = ThreadConfined.ThreadType.JFX)
-    private CancellationProgressTask<Void> rebuildRepository(final DBPopulationMode mode, Consumer<Worker.State> onStateChange) {
+    synchronized private CancellationProgressTask<Void> rebuildRepository(final DBPopulationMode mode, Consumer<Worker.State> onStateChange) {
         LOGGER.log(Level.INFO, "(re)starting {0} db population task", mode); //NON-NLS
         if (dbWorker != null) {
             dbWorker.cancel();
         }
+        if (mode == DBPopulationMode.FULL && updateWorker != null) {
+            //the rebuild will include everything the update would have added.
+            updateWorker.cancel();
+        }
         dbWorker = new DBPopulationWorker(mode, onStateChange);
         workerExecutor.execute(dbWorker);
         return dbWorker;
     }
 
+    /**
+     * Add the events of the artifacts that were added to the case since the
+     * repo was last populated or updated, and the file system events of the
+     * new files of the given data source, in a background thread. Requests
+     * made while an earlier update is still waiting to start are merged into
+     * that update.
+     *
+     * The file system events of a data source are only added once its
+     * analysis completes, since the known state and hash set hits of its files
+     * are not final until then.
+     *
+     * If the repo was never fully populated, it can't be updated and the
+     * update is cancelled. The update is also cancelled, after adding the new
+     * events, if the analyzed data source had file system events added before
+     * its analysis finished: the existing events are not updated.
+     *
+     * @param analyzedDataSourceID If not null, the id of a data source whose
+     *                             analysis just completed.
+     * @param onStateChange        called when the background task changes
+     *                             state, if a new update task is started.
+     */
+    synchronized public void updateRepository(@Nullable Long analyzedDataSourceID, Consumer<Worker.State> onStateChange) {
+        DBPopulationWorker worker = getUpdateWorker(onStateChange);
+        if (analyzedDataSourceID != null) {
+            dataSourcesUnderAnalysis.remove(analyzedDataSourceID);
+            worker.analyzedDataSourceIDs.add(analyzedDataSourceID);
+        }
+    }
+
+    /**
+     * Add the events of the files and artifacts that were added to the case
+     * while the repo was not listening for changes, in a background thread.
+     * If ingest is not running when the update starts, the file system events
+     * of the new files of all the data sources are added, as for data sources
+     * whose analysis completed. Otherwise only the artifact events are added.
+     *
+     * @param onStateChange called when the background task changes state, if
+     *                      a new update task is started.
+     */
+    synchronized public void catchUpRepository(Consumer<Worker.State> onStateChange) {
+        getUpdateWorker(onStateChange).allDataSources = true;
+    }
+
+    /**
+     * Get the update task that is waiting to start, starting a new one if
+     * there is none.
+     */
+    private DBPopulationWorker getUpdateWorker(Consumer<Worker.State> onStateChange) {
+        if (updateWorker == null || updateWorker.started || updateWorker.isDone()) {
+            LOGGER.log(Level.INFO, "starting incremental db population task"); //NON-NLS
+            updateWorker = new DBPopulationWorker(DBPopulationMode.INCREMENTAL, onStateChange);
+            workerExecutor.execute(updateWorker);
+        }
+        return updateWorker;
+    }
+
+    /**
+     * Record that the analysis of a data source started. If the data source
+     * already has file system events in the repo, they are recorded as
+     * outdated, since its analysis may change the known state and hash set
+     * hits of its files.
+     *
+     * @param dataSourceID the id of the data source
+     */
+    synchronized public void dataSourceAnalysisStarted(long dataSourceID) {
+        dataSourcesUnderAnalysis.add(dataSourceID);
+        //run on the worker thread, after any population or update that was already queued.
+        workerExecutor.execute(() -> {
+            if (eventDB.hasFileEvents(Collections.singleton(dataSourceID))) {
+                EventDB.EventTransaction trans = eventDB.beginTransaction();
+                eventDB.setDBInfo(OUTDATED_FILE_EVENTS_KEY_PREFIX + dataSourceID, 1, trans);
+                eventDB.commitTransaction(trans);
+            }
+        });
+    }
+
+    /**
+     * Cancel the population of the repo and any waiting refresh of the
+     * columnar event store, and shut down the producer and columnar store
+     * threads. The repo can not be populated again afterwards, so this should
+     * only be called when the timeline is closed with the case.
+     */
+    synchronized public void shutDown() {
+        if (dbWorker != null) {
+            dbWorker.cancel();
+        }
+        if (updateWorker != null) {
+            updateWorker.cancel();
+        }
+        //let producers that are already queued run, they return immediately once the workers are cancelled.
+        producerExecutor.shutdown();
+        if (columnarStoreRefresh != null) {
+            columnarStoreRefresh.cancel(false);
+        }
+        //a store that is being written is finished, so it is not left incomplete.
+        columnarStoreExecutor.shutdown();
+    }
+
     private enum DBPopulationMode {
 
         FULL,
-        TAGS_ONLY;
+        TAGS_ONLY,
+        INCREMENTAL;
     }
 
     /**
@@ -436,6 +729,37 @@ private class DBPopulationWorker extends CancellationProgressTask<Void> {
 
         private ProgressHandle progressHandle;
 
+        /*
+         * state shared by the producers and the consumer of a full population
+         */
+        private final BlockingQueue<List<EventDB.EventRow>> eventBatches = new ArrayBlockingQueue<>(EVENT_BATCH_QUEUE_CAPACITY);
+        private final AtomicInteger pendingProducers = new AtomicInteger();
+        private final AtomicLong itemsProduced = new AtomicLong();
+        private final AtomicBoolean consumerStopped = new AtomicBoolean();
+
+        /*
+         * state of the consumer: the newest artifact the events were built for
+         * and the time span of the inserted events
+         */
+        private long maxArtifactID = Long.MIN_VALUE;
+        private long minEventTime = Long.MAX_VALUE;
+        private long maxEventTime = Long.MIN_VALUE;
+
+        /*
+         * state of an incremental update, guarded by the EventsRepository's
+         * intrinsic lock
+         */
+        private boolean started = false;
+        private boolean allDataSources = false;
+        private final Set<Long> analyzedDataSourceIDs = new HashSet<>();
+
+        /*
+         * the smallest ids of the files and artifacts whose events could not
+         * be built, so that the high water marks are not advanced past them
+         */
+        private final AtomicLong firstFailedFileID = new AtomicLong(Long.MAX_VALUE);
+        private final AtomicLong firstFailedArtifactID = new AtomicLong(Long.MAX_VALUE);
+
         @Override
         public ReadOnlyBooleanProperty cancellableProperty() {
             return cancellable.getReadOnlyProperty();
@@ -506,24 +830,44 @@ void restartProgressHandle(String title, String message, Double workDone, double
         @NbBundle.Messages({"progressWindow.msg.refreshingFileTags=Refreshing file tags",
             "progressWindow.msg.refreshingResultTags=Refreshing result tags",
             "progressWindow.msg.gatheringData=Gathering event data",
+            "progressWindow.msg.creatingIndices=Indexing events database",
             "progressWindow.msg.commitingDb=Committing events database"})
         protected Void call() throws Exception {
             EventDB.EventTransaction trans = null;
 
+            if (dbPopulationMode == DBPopulationMode.INCREMENTAL) {
+                updateEvents();
+                return null;
+            }
+
             if (dbPopulationMode == DBPopulationMode.FULL) {
                 //drop old db, and add back MAC and artifact events
                 LOGGER.log(Level.INFO, "Beginning population of timeline db."); // NON-NLS
                 restartProgressHandle(Bundle.progressWindow_msg_gatheringData(), "", -1D, 1, true);
+                //the file events of data sources under analysis now may be outdated once their analysis completes.
+                final boolean ingestRunning = IngestManager.getInstance().isIngestRunning();
                 //reset database //TODO: can we do more incremental updates? -jm
                 eventDB.reInitializeDB();
                 //grab ids of all files
-                List<Long> fileIDs = skCase.findAllFileIdsWhere("name != '.' AND name != '..'" + 
-                        " AND type != " + TskData.TSK_DB_FILES_TYPE_ENUM.SLACK.ordinal()); //NON-NLS
-                final int numFiles = fileIDs.size();
+                List<Long> fileIDs = skCase.findAllFileIdsWhere(FILES_WITH_EVENTS_CONDITION);
 
                 trans = eventDB.beginTransaction();
-                insertMACTimeEvents(numFiles, fileIDs, trans);
-                insertArtifactDerivedEvents(trans);
+                //bulk load the events table without indices, and index it afterwards
+                eventDB.beginBulkLoad();
+                try {
+                    populateEvents(fileIDs, null, false, trans);
+                } finally {
+                    restartProgressHandle(Bundle.progressWindow_msg_creatingIndices(), "", -1D, 1, true);
+                    eventDB.endBulkLoad();
+                }
+                if (isCancelRequested() == false) {
+                    //a partially populated db can't be updated, it has to be rebuilt
+                    eventDB.setDBInfo(FILE_HIGH_WATER_MARK_KEY, getHighWaterMark(-1, fileIDs, firstFailedFileID.get()), trans);
+                    eventDB.setDBInfo(ARTIFACT_HIGH_WATER_MARK_KEY, maxArtifactID, trans);
+                    for (long dataSourceID : getOutdatedDataSources(ingestRunning)) {
+                        eventDB.setDBInfo(OUTDATED_FILE_EVENTS_KEY_PREFIX + dataSourceID, 1, trans);
+                    }
+                }
             }
 
             //tags
@@ -561,6 +905,135 @@ protected Void call() throws Exception {
             return null;
         }
 
+        /**
+         * Get the data sources whose file events were just populated before
+         * their analysis finished.
+         *
+         * @param ingestRunning true if ingest was running when the population
+         *                      started, in which case any data source may be
+         *                      under analysis.
+         *
+         * @return the ids of the data sources
+         */
+        private Set<Long> getOutdatedDataSources(boolean ingestRunning) throws TskCoreException {
+            Set<Long> outdated = new HashSet<>();
+            synchronized (EventsRepository.this) {
+                outdated.addAll(dataSourcesUnderAnalysis);
+            }
+            if (ingestRunning) {
+                for (Content dataSource : skCase.getRootObjects()) {
+                    outdated.add(dataSource.getId());
+                }
+            }
+            return outdated;
+        }
+
+        /**
+         * Add the events of the artifacts newer than the artifact high water
+         * mark and of the files of the analyzed data sources newer than their
+         * file high water marks, and advance the marks. Events that are
+         * already in the db are skipped, so a cancelled update can simply be
+         * retried.
+         */
+        @NbBundle.Messages({"progressWindow.msg.updatingEvents=Updating timeline events"})
+        private void updateEvents() throws TskCoreException, InterruptedException {
+            final Set<Long> analyzedDataSources;
+            final boolean withAllDataSources;
+            synchronized (EventsRepository.this) {
+                started = true;
+                analyzedDataSources = new HashSet<>(analyzedDataSourceIDs);
+                withAllDataSources = allDataSources && IngestManager.getInstance().isIngestRunning() == false;
+            }
+            if (withAllDataSources) {
+                for (Content dataSource : skCase.getRootObjects()) {
+                    analyzedDataSources.add(dataSource.getId());
+                }
+            }
+            Long fileHighWaterMark = eventDB.getDBInfo(FILE_HIGH_WATER_MARK_KEY);
+            Long artifactHighWaterMark = eventDB.getDBInfo(ARTIFACT_HIGH_WATER_MARK_KEY);
+            if (fileHighWaterMark == null || artifactHighWaterMark == null) {
+                LOGGER.log(Level.INFO, "The timeline db was not fully populated, so it can't be updated."); // NON-NLS
+                cancel();
+                return;
+            }
+
+            restartProgressHandle(Bundle.progressWindow_msg_updatingEvents(), "", -1D, 1, true);
+            final Set<Long> outdatedDataSources = new HashSet<>();
+            final Map<Long, Long> dataSourceFileHighWaterMarks = new HashMap<>();
+            final Map<Long, List<Long>> dataSourceFileIDs = new HashMap<>();
+            List<Long> fileIDs = new ArrayList<>();
+            for (long dataSourceID : analyzedDataSources) {
+                if (eventDB.getDBInfo(OUTDATED_FILE_EVENTS_KEY_PREFIX + dataSourceID) != null) {
+                    outdatedDataSources.add(dataSourceID);
+                }
+                Long dataSourceMark = eventDB.getDBInfo(DATA_SOURCE_FILE_HIGH_WATER_MARK_KEY_PREFIX + dataSourceID);
+                long mark = dataSourceMark == null ? fileHighWaterMark : dataSourceMark;
+                List<Long> ids = skCase.findAllFileIdsWhere("obj_id > " + mark //NON-NLS
+                        + " AND data_source_obj_id = " + dataSourceID + " AND " + FILES_WITH_EVENTS_CONDITION); //NON-NLS
+                dataSourceFileHighWaterMarks.put(dataSourceID, mark);
+                dataSourceFileIDs.put(dataSourceID, ids);
+                fileIDs.addAll(ids);
+            }
+
+            EventDB.EventTransaction trans = eventDB.beginTransaction();
+            //artifact ids start at Long.MIN_VALUE, so a mark of Long.MIN_VALUE means no artifacts were seen yet.
+            long eventsInserted = populateEvents(fileIDs, artifactHighWaterMark == Long.MIN_VALUE ? null : artifactHighWaterMark, true, trans);
+            if (isCancelRequested() == false) {
+                for (Map.Entry<Long, List<Long>> entry : dataSourceFileIDs.entrySet()) {
+                    long mark = dataSourceFileHighWaterMarks.get(entry.getKey());
+                    long newMark = getHighWaterMark(mark, entry.getValue(), firstFailedFileID.get());
+                    if (newMark > mark) {
+                        eventDB.setDBInfo(DATA_SOURCE_FILE_HIGH_WATER_MARK_KEY_PREFIX + entry.getKey(), newMark, trans);
+                    }
+                }
+                if (maxArtifactID > artifactHighWaterMark) {
+                    eventDB.setDBInfo(ARTIFACT_HIGH_WATER_MARK_KEY, maxArtifactID, trans);
+                }
+            }
+
+            Platform.runLater(() -> cancellable.set(false));
+            restartProgressHandle(Bundle.progressWindow_msg_commitingDb(), "", -1D, 1, false);
+            eventDB.commitTransaction(trans);
+
+            populateFilterData(skCase);
+            if (eventsInserted > 0) {
+                invalidateCaches(minEventTime, maxEventTime);
+            }
+            progressHandle.finish();
+            if (outdatedDataSources.isEmpty() == false) {
+                LOGGER.log(Level.INFO, "The events of the files of data sources {0} were added before their analysis finished, so they may be out of date.", outdatedDataSources); // NON-NLS
+                cancel();
+            } else if (isCancelRequested()) {
+                cancel();
+            }
+        }
+
+        /**
+         * Get the new high water mark for the given ids: the greatest id below
+         * the first one whose events could not be built, so that those events
+         * are added by the next update.
+         *
+         * @param currentMark   the current high water mark
+         * @param ids           the ids whose events were populated
+         * @param firstFailedID the smallest id whose events could not be
+         *                      built, or Long.MAX_VALUE
+         *
+         * @return the new high water mark, never less than the current one
+         */
+        private long getHighWaterMark(long currentMark, Collection<Long> ids, long firstFailedID) {
+            long mark = currentMark;
+            for (long id : ids) {
+                if (id < firstFailedID) {
+                    mark = Math.max(mark, id);
+                }
+            }
+            return mark;
+        }
+
+        private void recordFailure(AtomicLong firstFailedID, long id) {
+            firstFailedID.accumulateAndGet(id, Math::min);
+        }
+
         private void insertArtifactTags(int currentWorkTotal, List<BlackboardArtifactTag> artifactTags, EventDB.EventTransaction trans) {
             for (int i = 0; i < currentWorkTotal; i++) {
                 if (isCancelRequested()) {
@@ -583,45 +1056,197 @@ private void insertContentTags(int currentWorkTotal, List<ContentTag> contentTag
             }
         }
 
-        private void insertArtifactDerivedEvents(EventDB.EventTransaction trans) {
-            //insert artifact based events
+        /**
+         * Populate the MAC time events of the given files and the artifact
+         * derived events. The event rows are built for pages of files, by id
+         * range, and pages of artifacts, by the producer threads and inserted
+         * in batches by the calling thread.
+         *
+         * @param fileIDs         the ids of the files to populate the events of
+         * @param afterArtifactID if not null, only populate the events of
+         *                        artifacts with greater ids
+         * @param skipExisting    if true, don't insert the events of files and
+         *                        artifacts that already have events in the db
+         * @param trans           the db transaction to use
+         *
+         * @return the number of events inserted
+         */
+        @NbBundle.Messages({"progressWindow.msg.populateEvents=Populating timeline events",
+            "# {0} - number of events inserted", "# {1} - number of events inserted per second",
+            "progressWindow.msg.insertRate={0} events inserted ({1} events/s)"})
+        private long populateEvents(List<Long> fileIDs, @Nullable Long afterArtifactID, boolean skipExisting, EventDB.EventTransaction trans) throws InterruptedException {
             //TODO: use (not-yet existing api) to grab all artifacts with timestamps, rather than the hardcoded lists in EventType -jm
-            for (EventType type : RootEventType.allTypes) {
-                if (isCancelRequested()) {
-                    break;
+            Map<Integer, ArtifactEventType> artifactEventTypes = RootEventType.allTypes.stream()
+                    .filter(ArtifactEventType.class::isInstance)
+                    .map(ArtifactEventType.class::cast)
+                    .collect(Collectors.toMap(ArtifactEventType::getArtifactTypeID, Function.identity()));
+
+            long eventsInserted = 0;
+            try {
+                List<Long> sortedFileIDs = new ArrayList<>(fileIDs);
+                Collections.sort(sortedFileIDs);
+                for (List<Long> page : Lists.partition(sortedFileIDs, PRODUCER_PAGE_SIZE)) {
+                    submitProducer(() -> produceFileEvents(page), () -> recordFailure(firstFailedFileID, page.get(0)));
                 }
-                //skip file_system events, they are already handled above.
-                if (type instanceof ArtifactEventType) {
-                    populateEventType((ArtifactEventType) type, trans);
+
+                //get the ids of the artifacts of all the event types with one query, so they are all from the same point in time
+                List<Long> artifactIDs = getArtifactIDs(artifactEventTypes.keySet(), afterArtifactID);
+                for (List<Long> page : Lists.partition(artifactIDs, PRODUCER_PAGE_SIZE)) {
+                    submitProducer(() -> produceArtifactEvents(artifactEventTypes, page), () -> recordFailure(firstFailedArtifactID, page.get(0)));
                 }
+
+                long totalWork = (long) fileIDs.size() + artifactIDs.size();
+                restartProgressHandle(Bundle.progressWindow_msg_populateEvents(), "", 0D, totalWork, true);
+
+                final long startTime = System.nanoTime();
+                while (true) {
+                    //check for producers before polling, so that an empty poll after they are done means there are no more batches
+                    boolean producersDone = pendingProducers.get() == 0;
+                    List<EventDB.EventRow> batch = eventBatches.poll(100, TimeUnit.MILLISECONDS);
+                    if (batch == null) {
+                        if (producersDone) {
+                            break;
+                        }
+                    } else if (isCancelRequested() == false) {
+                        //after a cancel, keep draining the queue so the producers don't block, but don't insert anything more
+                        for (EventDB.EventRow event : batch) {
+                            minEventTime = Math.min(minEventTime, event.getTime());
+                            maxEventTime = Math.max(maxEventTime, event.getTime());
+                        }
+                        eventsInserted += eventDB.insertEvents(batch, skipExisting, trans);
+                        long eventsPerSecond = eventsInserted * TimeUnit.SECONDS.toNanos(1) / Math.max(1, System.nanoTime() - startTime);
+                        updateProgress(Math.min(itemsProduced.get(), totalWork), totalWork);
+                        updateMessage(Bundle.progressWindow_msg_insertRate(eventsInserted, eventsPerSecond));
+                    }
+                }
+                LOGGER.log(Level.INFO, "Inserted {0} events in {1} ms", //NON-NLS
+                        new Object[]{eventsInserted, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)});
+                //all the producers are done, so the failures are known.
+                maxArtifactID = getHighWaterMark(maxArtifactID, artifactIDs, firstFailedArtifactID.get());
+            } finally {
+                consumerStopped.set(true);
+            }
+            return eventsInserted;
+        }
+
+        /**
+         * Get the ids of the artifacts of the given types.
+         *
+         * @param artifactTypeIDs the ids of the artifact types
+         * @param afterArtifactID if not null, only get the ids of the
+         *                        artifacts with greater ids
+         *
+         * @return the artifact ids, in ascending order
+         */
+        private List<Long> getArtifactIDs(Collection<Integer> artifactTypeIDs, @Nullable Long afterArtifactID) {
+            String query = "SELECT artifact_id FROM blackboard_artifacts" //NON-NLS
+                    + " WHERE " + getArtifactTypesCondition(artifactTypeIDs) //NON-NLS
+                    + (afterArtifactID == null ? "" : " AND artifact_id > " + afterArtifactID) //NON-NLS
+                    + " ORDER BY artifact_id"; //NON-NLS
+            List<Long> artifactIDs = new ArrayList<>();
+            try (SleuthkitCase.CaseDbQuery dbQuery = skCase.executeQuery(query)) {
+                ResultSet resultSet = dbQuery.getResultSet();
+                while (resultSet.next()) {
+                    artifactIDs.add(resultSet.getLong("artifact_id")); //NON-NLS
+                }
+            } catch (TskCoreException | SQLException ex) {
+                LOGGER.log(Level.SEVERE, "There was a problem getting the artifacts with events.", ex); // NON-NLS
+                return Collections.emptyList();
+            }
+            return artifactIDs;
+        }
+
+        private String getArtifactTypesCondition(Collection<Integer> artifactTypeIDs) {
+            return "blackboard_artifacts.artifact_type_id IN (" + StringUtils.join(artifactTypeIDs, ",") + ")"; //NON-NLS
+        }
+
+        /**
+         * Run the given producer on a producer thread, keeping count of the
+         * producers that have not finished.
+         *
+         * @param producer  the producer to run
+         * @param onFailure called if the producer throws an unexpected
+         *                  exception
+         */
+        private void submitProducer(Runnable producer, Runnable onFailure) {
+            pendingProducers.incrementAndGet();
+            try {
+                producerExecutor.execute(() -> {
+                    try {
+                        producer.run();
+                    } catch (RuntimeException ex) {
+                        LOGGER.log(Level.SEVERE, "Unexpected exception while building timeline events.", ex); // NON-NLS
+                        onFailure.run();
+                    } finally {
+                        pendingProducers.decrementAndGet();
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                pendingProducers.decrementAndGet();
+                throw ex;
+            }
+        }
+
+        /**
+         * Hand a batch of event rows to the consumer, waiting for room in the
+         * queue unless the population is cancelled or the consumer is gone.
+         *
+         * @param batch     the event rows
+         * @param itemCount the number of files or artifacts the rows were built
+         *                  for
+         */
+        private void publishEvents(List<EventDB.EventRow> batch, int itemCount) {
+            try {
+                while (eventBatches.offer(batch, 100, TimeUnit.MILLISECONDS) == false) {
+                    if (isCancelRequested() || consumerStopped.get()) {
+                        return;
+                    }
+                }
+                itemsProduced.addAndGet(itemCount);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
             }
         }
 
-        @NbBundle.Messages("progressWindow.msg.populateMacEventsFiles=Populating MAC time events for files")
-        private void insertMACTimeEvents(final int numFiles, List<Long> fileIDs, EventDB.EventTransaction trans) {
-            restartProgressHandle(Bundle.progressWindow_msg_populateMacEventsFiles(), "", 0D, numFiles, true);
-            for (int i = 0; i < numFiles; i++) {
+        /**
+         * Build the MAC time events of a page of files.
+         *
+         * @param fileIDs the ids of the files, in ascending order
+         */
+        private void produceFileEvents(List<Long> fileIDs) {
+            if (isCancelRequested() || consumerStopped.get()) {
+                return;
+            }
+            List<AbstractFile> files;
+            try {
+                //the ids are all of the ids that meet the condition within the range, so get the whole page with one query
+                files = skCase.findAllFilesWhere("obj_id BETWEEN " + fileIDs.get(0) + " AND " + fileIDs.get(fileIDs.size() - 1) //NON-NLS
+                        + " AND " + FILES_WITH_EVENTS_CONDITION);
+            } catch (TskCoreException tskCoreException) {
+                LOGGER.log(Level.SEVERE, "Failed to get data for files with ids " + fileIDs.get(0) + " to " + fileIDs.get(fileIDs.size() - 1), tskCoreException); // NON-NLS
+                recordFailure(firstFailedFileID, fileIDs.get(0));
+                return;
+            }
+            if (files.size() != fileIDs.size()) {
+                LOGGER.log(Level.WARNING, "Failed to get data for {0} files with ids from {1} to {2}", //NON-NLS
+                        new Object[]{fileIDs.size() - files.size(), fileIDs.get(0), fileIDs.get(fileIDs.size() - 1)});
+            }
+            List<EventDB.EventRow> batch = new ArrayList<>(files.size() * 4);
+            for (AbstractFile f : files) {
                 if (isCancelRequested()) {
-                    break;
+                    return;
                 }
-                long fID = fileIDs.get(i);
                 try {
-                    AbstractFile f = skCase.getAbstractFileById(fID);
-
-                    if (isNull(f)) {
-                        LOGGER.log(Level.WARNING, "Failed to get data for file : {0}", fID); // NON-NLS
-                    } else {
-                        insertEventsForFile(f, trans);
-                        updateProgress(i, numFiles);
-                        updateMessage(f.getName());
-                    }
+                    buildEventsForFile(f, batch);
                 } catch (TskCoreException tskCoreException) {
-                    LOGGER.log(Level.SEVERE, "Failed to insert MAC time events for file : " + fID, tskCoreException); // NON-NLS
+                    LOGGER.log(Level.SEVERE, "Failed to build MAC time events for file : " + f.getId(), tskCoreException); // NON-NLS
+                    recordFailure(firstFailedFileID, f.getId());
                 }
             }
+            publishEvents(batch, fileIDs.size());
         }
 
-        private void insertEventsForFile(AbstractFile f, EventDB.EventTransaction trans) throws TskCoreException {
+        private void buildEventsForFile(AbstractFile f, List<EventDB.EventRow> events) throws TskCoreException {
             //gather time stamps into map
             EnumMap<FileSystemTypes, Long> timeMap = new EnumMap<>(FileSystemTypes.class);
             timeMap.put(FileSystemTypes.FILE_CREATED, f.getCrtime());
@@ -653,9 +1278,9 @@ private void insertEventsForFile(AbstractFile f, EventDB.EventTransaction trans)
                 for (Map.Entry<FileSystemTypes, Long> timeEntry : timeMap.entrySet()) {
                     if (timeEntry.getValue() > 0) {
                         // if the time is legitimate ( greater than zero ) insert it
-                        eventDB.insertEvent(timeEntry.getValue(), timeEntry.getKey(),
+                        events.add(new EventDB.EventRow(timeEntry.getValue(), timeEntry.getKey(),
                                 datasourceID, f.getId(), null, uniquePath, medDesc,
-                                shortDesc, known, hashSets, tags, trans);
+                                shortDesc, known, hashSets, tags));
                     }
                 }
             }
@@ -673,38 +1298,56 @@ protected void done() {
                         + " Not all events may be present or accurate."); // NON-NLS
             } catch (Exception ex) {
                 LOGGER.log(Level.WARNING, "Unexpected exception while populating database.", ex); // NON-NLS
-                JOptionPane.showMessageDialog(null, Bundle.msgdlg_problem_text());
+                if (dbPopulationMode != DBPopulationMode.INCREMENTAL) {
+                    //a failed update in the background just marks the db stale.
+                    JOptionPane.showMessageDialog(null, Bundle.msgdlg_problem_text());
+                }
             }
         }
 
         /**
-         * populate all the events of one type
+         * Build the events of a page of artifacts.
          *
-         * @param type the type to populate
-         * @param trans   the db transaction to use
+         * @param artifactEventTypes the event types, by the id of their
+         *                           artifact type
+         * @param artifactIDs        the ids of the artifacts, in ascending
+         *                           order
          */
-        @NbBundle.Messages({"# {0} - event type ", "progressWindow.populatingXevents=Populating {0} events"})
-        private void populateEventType(final ArtifactEventType type, EventDB.EventTransaction trans) {
+        private void produceArtifactEvents(Map<Integer, ArtifactEventType> artifactEventTypes, List<Long> artifactIDs) {
+            if (isCancelRequested() || consumerStopped.get()) {
+                return;
+            }
+            List<BlackboardArtifact> artifacts;
             try {
-                //get all the blackboard artifacts corresponding to the given event sub_type
-                final ArrayList<BlackboardArtifact> blackboardArtifacts = skCase.getBlackboardArtifacts(type.getArtifactTypeID());
-                final int numArtifacts = blackboardArtifacts.size();
-                restartProgressHandle(Bundle.progressWindow_populatingXevents(type.getDisplayName()), "", 0D, numArtifacts, true);
-                for (int i = 0; i < numArtifacts; i++) {
-                    try {
-                        //for each artifact, extract the relevant information for the descriptions
-                        insertEventForArtifact(type, blackboardArtifacts.get(i), trans);
-                        updateProgress(i, numArtifacts);
-                    } catch (TskCoreException ex) {
-                        LOGGER.log(Level.SEVERE, "There was a problem inserting event for artifact: " + blackboardArtifacts.get(i).getArtifactID(), ex); // NON-NLS
+                //the ids are all of the ids of the event types within the range, so get the whole page with one query
+                artifacts = skCase.getMatchingArtifacts("WHERE " + getArtifactTypesCondition(artifactEventTypes.keySet()) //NON-NLS
+                        + " AND blackboard_artifacts.artifact_id BETWEEN " + artifactIDs.get(0) + " AND " + artifactIDs.get(artifactIDs.size() - 1)); //NON-NLS
+            } catch (TskCoreException ex) {
+                LOGGER.log(Level.SEVERE, "Failed to get data for artifacts with ids " + artifactIDs.get(0) + " to " + artifactIDs.get(artifactIDs.size() - 1), ex); // NON-NLS
+                recordFailure(firstFailedArtifactID, artifactIDs.get(0));
+                return;
+            }
+            List<EventDB.EventRow> batch = new ArrayList<>(artifacts.size());
+            for (BlackboardArtifact bbart : artifacts) {
+                if (isCancelRequested()) {
+                    return;
+                }
+                try {
+                    //for each artifact, extract the relevant information for the descriptions
+                    EventDB.EventRow event = buildEventForArtifact(artifactEventTypes.get(bbart.getArtifactTypeID()), bbart);
+                    if (event != null) {
+                        batch.add(event);
                     }
+                } catch (TskCoreException ex) {
+                    LOGGER.log(Level.SEVERE, "There was a problem building event for artifact: " + bbart.getArtifactID(), ex); // NON-NLS
+                    recordFailure(firstFailedArtifactID, bbart.getArtifactID());
                 }
-            } catch (TskCoreException ex) {
-                LOGGER.log(Level.SEVERE, "There was a problem getting events with sub type " + type.toString() + ".", ex); // NON-NLS
             }
+            publishEvents(batch, artifactIDs.size());
         }
 
-        private void insertEventForArtifact(final ArtifactEventType type, BlackboardArtifact bbart, EventDB.EventTransaction trans) throws TskCoreException {
+        @Nullable
+        private EventDB.EventRow buildEventForArtifact(final ArtifactEventType type, BlackboardArtifact bbart) throws TskCoreException {
             ArtifactEventType.AttributeEventDescription eventDescription = ArtifactEventType.buildEventDescription(type, bbart);
 
             // if the time is legitimate ( greater than zero ) insert it into the db
@@ -718,8 +1361,9 @@ private void insertEventForArtifact(final ArtifactEventType type, BlackboardArti
                 String fullDescription = eventDescription.getFullDescription();
                 String medDescription = eventDescription.getMedDescription();
                 String shortDescription = eventDescription.getShortDescription();
-                eventDB.insertEvent(eventDescription.getTime(), type, datasourceID, objectID, artifactID, fullDescription, medDescription, shortDescription, null, hashSets, tags, trans);
+                return new EventDB.EventRow(eventDescription.getTime(), type, datasourceID, objectID, artifactID, fullDescription, medDescription, shortDescription, null, hashSets, tags);
             }
+            return null;
         }
     }
 }
@@ -24,6 +24,7 @@
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import org.apache.commons.lang3.StringUtils;
 import org.sleuthkit.autopsy.timeline.datamodel.eventtype.RootEventType;
 import org.sleuthkit.autopsy.timeline.filters.AbstractFilter;
@@ -126,6 +127,35 @@ static String getSQLWhere(RootFilter filter) {
         return getSQLWhere((Filter) filter);
     }
 
+    /**
+     * Can the events that pass the given filter be counted from the event
+     * rollups? They can if the filter only restricts the columns the rollups
+     * are keyed by: the type, data source and known state of the events.
+     *
+     * @param filter the filter to check
+     *
+     * @return true if the SQL where clause of the filter can be applied to the
+     *         event_rollups table instead of the events table
+     */
+    static boolean isRollupCompatible(RootFilter filter) {
+        for (Filter subFilter : filter.getSubFilters()) {
+            if (subFilter instanceof TypeFilter
+                    || subFilter instanceof DataSourcesFilter
+                    || subFilter instanceof HideKnownFilter) {
+                continue;
+            }
+            if (subFilter instanceof TagsFilter || subFilter instanceof HashHitsFilter) {
+                //these need the tags and hash hit tables
+                if (subFilter.isActive()) {
+                    return false;
+                }
+            } else if (subFilter.isActive() && getSQLWhere(subFilter).equals("1") == false) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * get the SQL where clause corresponding to the given filter
      *
@@ -267,6 +297,25 @@ private static String getSQLWhere(TypeFilter typeFilter) {
         return "(sub_type IN (" + StringUtils.join(getActiveSubTypes(typeFilter), ",") + "))"; //NON-NLS
     }
 
+    /**
+     * Get the sub types of the events that pass the given type filter.
+     *
+     * @param typeFilter the type filter
+     *
+     * @return the indices in RootEventType.allTypes of the sub types that
+     *         pass the filter, or null if events of any type pass
+     */
+    @Nullable
+    static List<Integer> getAcceptedSubTypes(TypeFilter typeFilter) {
+        String sqlWhere = getSQLWhere(typeFilter);
+        if (sqlWhere.equals("0")) {
+            return Collections.emptyList();
+        } else if (sqlWhere.equals("1")) {
+            return null;
+        }
+        return getActiveSubTypes(typeFilter);
+    }
+
     private static List<Integer> getActiveSubTypes(TypeFilter filter) {
         if (filter.isActive()) {
             if (filter.getSubFilters().isEmpty()) {
@@ -20,6 +20,7 @@
 
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.BlockingQueue;
@@ -509,6 +510,11 @@ public ReadOnlyIntegerProperty getDBTasksQueueSizeProperty() {
     // @@@ review this class for synchronization issues (i.e. reset and cancel being called, add, etc.)
     static private class DBWorkerThread extends Thread implements Cancellable {
 
+        /**
+         * The maximum number of queued file tasks to run in one transaction.
+         */
+        private static final int MAX_FILE_TASK_BATCH_SIZE = 500;
+
         private final ImageGalleryController controller;
 
         DBWorkerThread(ImageGalleryController controller) {
@@ -563,7 +569,11 @@ public void run() {
                     BackgroundTask it = workQueue.take();
 
                     if (it.isCancelled() == false) {
-                        it.run();
+                        if (it instanceof BatchableFileTask) {
+                            runBatch((BatchableFileTask) it);
+                        } else {
+                            it.run();
+                        }
                     }
                     int size = workQueue.size();
                     Platform.runLater(() -> controller.queueSizeProperty.set(size));
@@ -573,6 +583,59 @@ public void run() {
                 }
             }
         }
+
+        /**
+         * Run the given file task together with the file tasks for the same
+         * database that are queued right behind it, in one transaction. During
+         * ingest, file done events arrive faster than the files can be
+         * committed one at a time, so the batches grow with the backlog.
+         *
+         * @param first the task taken from the head of the queue
+         */
+        private void runBatch(BatchableFileTask first) {
+            final DrawableDB taskDB = first.getTaskDB();
+            List<BatchableFileTask> batch = new ArrayList<>();
+            batch.add(first);
+            while (batch.size() < MAX_FILE_TASK_BATCH_SIZE) {
+                BackgroundTask next = workQueue.peek();
+                if (next instanceof BatchableFileTask == false
+                        || ((BatchableFileTask) next).getTaskDB() != taskDB
+                        || workQueue.poll() != next) {
+                    //this is the only consumer, so the poll only misses if the queue was cancelled
+                    break;
+                }
+                batch.add((BatchableFileTask) next);
+            }
+
+            DrawableDB.DrawableTransaction tr = null;
+            try {
+                tr = taskDB.beginTransaction();
+                for (BatchableFileTask task : batch) {
+                    if (task.isCancelled() == false) {
+                        try {
+                            task.run(tr);
+                        } catch (RuntimeException ex) {
+                            //only the failed file is lost, the rest of the batch is still committed.
+                            if (Case.isCaseOpen()) {
+                                LOGGER.log(Level.SEVERE, "Error running file task", ex); //NON-NLS
+                            }
+                        }
+                    }
+                }
+                taskDB.commitTransaction(tr, true);
+            } catch (RuntimeException ex) {
+                // This is one of the places where we get many errors (mostly NullPointerExceptions) if the case is closed during processing.
+                // We don't want to print out a ton of exceptions if this is the case.
+                if (Case.isCaseOpen()) {
+                    LOGGER.log(Level.SEVERE, "Error running batch of file tasks", ex); //NON-NLS
+                }
+            } finally {
+                //roll back a transaction that was not committed, which also releases the db write lock
+                if (tr != null && tr.isClosed() == false) {
+                    tr.rollback();
+                }
+            }
+        }
     }
 
     public synchronized SleuthkitCase getSleuthKitCase() {
@@ -663,10 +726,35 @@ public FileTask(AbstractFile f, DrawableDB taskDB) {
         }
     }
 
+    /**
+     * Abstract base class for file tasks that the {@link DBWorkerThread} can
+     * run together with other queued file tasks, in one transaction.
+     */
+    static private abstract class BatchableFileTask extends FileTask {
+
+        BatchableFileTask(AbstractFile f, DrawableDB taskDB) {
+            super(f, taskDB);
+        }
+
+        /**
+         * Run this task as part of the given transaction
+         *
+         * @param tr the transaction to use, must not be null
+         */
+        abstract void run(DrawableDB.DrawableTransaction tr);
+
+        @Override
+        public void run() {
+            DrawableDB.DrawableTransaction tr = getTaskDB().beginTransaction();
+            run(tr);
+            getTaskDB().commitTransaction(tr, true);
+        }
+    }
+
     /**
      * task that updates one file in database with results from ingest
      */
-    static private class UpdateFileTask extends FileTask {
+    static private class UpdateFileTask extends BatchableFileTask {
 
         UpdateFileTask(AbstractFile f, DrawableDB taskDB) {
             super(f, taskDB);
@@ -676,10 +764,10 @@ static private class UpdateFileTask extends FileTask {
          * Update a file in the database
          */
         @Override
-        public void run() {
+        void run(DrawableDB.DrawableTransaction tr) {
             try {
                 DrawableFile drawableFile = DrawableFile.create(getFile(), true, false);
-                getTaskDB().updateFile(drawableFile);
+                getTaskDB().updateFile(drawableFile, tr);
             } catch (NullPointerException ex) {
                 // This is one of the places where we get many errors if the case is closed during processing.
                 // We don't want to print out a ton of exceptions if this is the case.
@@ -693,7 +781,7 @@ public void run() {
     /**
      * task that updates one file in database with results from ingest
      */
-    static private class RemoveFileTask extends FileTask {
+    static private class RemoveFileTask extends BatchableFileTask {
 
         RemoveFileTask(AbstractFile f, DrawableDB taskDB) {
             super(f, taskDB);
@@ -703,9 +791,9 @@ static private class RemoveFileTask extends FileTask {
          * Update a file in the database
          */
         @Override
-        public void run() {
+        void run(DrawableDB.DrawableTransaction tr) {
             try {
-                getTaskDB().removeFile(getFile().getId());
+                getTaskDB().removeFile(getFile().getId(), tr);
             } catch (NullPointerException ex) {
                 // This is one of the places where we get many errors if the case is closed during processing.
                 // We don't want to print out a ton of exceptions if this is the case.
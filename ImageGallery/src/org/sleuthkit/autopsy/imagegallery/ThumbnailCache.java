@@ -20,25 +20,29 @@
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.util.concurrent.UncheckedExecutionException;
-import java.awt.image.BufferedImage;
-import java.io.BufferedInputStream;
-import java.io.File;
+import com.google.common.cache.CacheStats;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.net.MalformedURLException;
-import java.util.Optional;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
-import javafx.beans.Observable;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.concurrent.Task;
-import javafx.embed.swing.SwingFXUtils;
 import javafx.scene.image.Image;
-import javafx.scene.image.WritableImage;
 import javax.annotation.Nullable;
-import javax.imageio.ImageIO;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.sleuthkit.autopsy.coreutils.ImageUtils;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import org.sleuthkit.autopsy.imagegallery.datamodel.DrawableFile;
@@ -63,13 +67,68 @@ public enum ThumbnailCache {
     private static final Logger LOGGER = Logger.getLogger(ThumbnailCache.class.getName());
 
     /**
-     * in memory cache. keeps at most 1000 items each for up to 10 minutes.
-     * items may be garbage collected if there are no strong references to them.
+     * GIFs are cached as is, to preserve potential animation, if they are no
+     * bigger than this.
      */
-    private final Cache<Long, Image> cache = CacheBuilder.newBuilder()
-            .maximumSize(1000)
-            .softValues()
-            .expireAfterAccess(10, TimeUnit.MINUTES).build();
+    private static final long MAX_CACHED_GIF_BYTES = 1L << 20;
+
+    /**
+     * approximate overhead of a cache entry, so that files without a thumbnail
+     * still count against the budget.
+     */
+    private static final int ENTRY_OVERHEAD_BYTES = 64;
+
+    private static final byte[] NO_THUMBNAIL = new byte[0];
+
+    /**
+     * the in memory cache holds at most this many bytes of compressed
+     * thumbnails: 1/16 of the max heap, but between 16MB and 256MB.
+     */
+    private final long maxCacheBytes = Math.max(16L << 20, Math.min(256L << 20, Runtime.getRuntime().maxMemory() / 16));
+
+    private final int generatorThreads = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+
+    /**
+     * in memory cache of compressed (PNG, or raw GIF) thumbnails, bounded by
+     * their total size. keeps items for up to 10 minutes. an empty array means
+     * no thumbnail could be generated for the file.
+     */
+    private final Cache<Long, byte[]> cache = CacheBuilder.newBuilder()
+            .maximumWeight(maxCacheBytes)
+            .weigher((Long fileID, byte[] thumbnail) -> thumbnail.length + ENTRY_OVERHEAD_BYTES)
+            .expireAfterAccess(10, TimeUnit.MINUTES)
+            .recordStats()
+            .build();
+
+    /**
+     * the thumbnails that are being loaded or generated, by file id, so that
+     * concurrent requests for the same file share the work.
+     */
+    private final Map<Long, InFlightLoad> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * incremented by each call to clearCache(), so that loads that were
+     * started before it don't put their thumbnails in the cleared cache.
+     * guarded by cacheLock, as are puts to the cache.
+     */
+    private long cacheGeneration = 0;
+    private final Object cacheLock = new Object();
+
+    /**
+     * pool that loads and generates thumbnails. requests for thumbnails that
+     * are being displayed are run before prefetch requests.
+     */
+    private final ThreadPoolExecutor generatorPool = new ThreadPoolExecutor(generatorThreads, generatorThreads,
+            0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(),
+            new BasicThreadFactory.Builder().namingPattern("thumbnail-generator-%d").daemon(true).build()); //NON-NLS
+
+    private final AtomicLong jobSequence = new AtomicLong();
+
+    /**
+     * incremented by each call to prefetch(), so that queued prefetch requests
+     * that are no longer wanted can be skipped.
+     */
+    private final AtomicLong prefetchGeneration = new AtomicLong();
 
     public static ThumbnailCache getDefault() {
         return instance;
@@ -84,7 +143,21 @@ public static ThumbnailCache getDefault() {
      * Clear out the cache between cases
      */
     public final void clearCache() {
-        cache.invalidateAll();
+        prefetchGeneration.incrementAndGet();
+        synchronized (cacheLock) {
+            cacheGeneration++;
+            inFlight.clear();
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * get the statistics of the in memory cache, eg for its hit rate.
+     *
+     * @return the statistics of the in memory cache
+     */
+    public CacheStats getStats() {
+        return cache.stats();
     }
 
     /**
@@ -99,8 +172,8 @@ public final void clearCache() {
     @Nullable
     public Image get(DrawableFile file) {
         try {
-            return cache.get(file.getId(), () -> load(file));
-        } catch (UncheckedExecutionException | CacheLoader.InvalidCacheLoadException | ExecutionException ex) {
+            return toImage(getThumbnailData(file.getId(), file, false));
+        } catch (InterruptedException | ExecutionException ex) {
             LOGGER.log(Level.WARNING, "Failed to load thumbnail for file: " + file.getName(), ex.getCause()); //NON-NLS
             return null;
         }
@@ -116,87 +189,217 @@ public Image get(Long fileID) {
         }
     }
 
+    /**
+     * Load or generate the thumbnails of the given files in the background, so
+     * that they are in the cache by the time they are displayed. Prefetch
+     * requests from earlier calls that have not started yet are dropped.
+     *
+     * @param fileIDs the ids of the files, in the order they should be
+     *                prefetched
+     */
+    public void prefetch(List<Long> fileIDs) {
+        final long generation = prefetchGeneration.incrementAndGet();
+        for (Long fileID : fileIDs) {
+            if (cache.asMap().containsKey(fileID) == false) {
+                getThumbnailData(fileID, null, true, generation);
+            }
+        }
+    }
+
+    /**
+     * Get the compressed thumbnail for the given file from the cache, or from
+     * the generator pool, waiting for it if needed.
+     */
+    private byte[] getThumbnailData(Long fileID, DrawableFile file, boolean prefetch) throws InterruptedException, ExecutionException {
+        return getThumbnailData(fileID, file, prefetch, prefetchGeneration.get()).get();
+    }
+
+    /**
+     * Get a future for the compressed thumbnail of the given file. If it is
+     * not in the cache, it is loaded or generated on the generator pool, or
+     * the request is attached to the one already in flight for the file.
+     *
+     * @param fileID     the id of the file
+     * @param file       the file, or null to look it up from the id when it
+     *                   is needed
+     * @param prefetch   true if the thumbnail is not being displayed yet
+     * @param generation the prefetch generation of the request
+     *
+     * @return a future for the compressed thumbnail
+     */
+    private ListenableFuture<byte[]> getThumbnailData(Long fileID, @Nullable DrawableFile file, boolean prefetch, long generation) {
+        if (prefetch == false) {
+            final byte[] thumbnail = cache.getIfPresent(fileID);
+            if (thumbnail != null) {
+                return Futures.immediateFuture(thumbnail);
+            }
+        }
+
+        final long loadCacheGeneration;
+        synchronized (cacheLock) {
+            loadCacheGeneration = cacheGeneration;
+        }
+        final InFlightLoad[] created = new InFlightLoad[1];
+        final InFlightLoad inFlightLoad = inFlight.compute(fileID, (id, current) -> {
+            if (current == null) {
+                current = new InFlightLoad(ListenableFutureTask.create(() -> load(fileID, file, loadCacheGeneration)));
+                created[0] = current;
+            }
+            current.pendingJobs++;
+            return current;
+        });
+        if (created[0] != null) {
+            inFlightLoad.task.addListener(() -> inFlight.remove(fileID, inFlightLoad), MoreExecutors.directExecutor());
+        }
+        /*
+         * Always queue a job: if the task has already been run by an earlier
+         * job, or is run by an earlier one first, this job does nothing. This
+         * way a displayed thumbnail doesn't wait behind the prefetch requests
+         * for the same file.
+         */
+        generatorPool.execute(new GeneratorJob(fileID, inFlightLoad, prefetch, generation));
+        return inFlightLoad.task;
+    }
+
     /**
      * load a thumbnail from the disk based cache for the given file, or
-     * generate and save a new thumbnail if one doesn't already exist
+     * generate and save a new thumbnail if one doesn't already exist, and put
+     * it in the in memory cache.
      *
-     * @param file the DrawableFile to load a thumbnail of
+     * @param fileID          the id of the file to load a thumbnail of
+     * @param file            the file, or null to look it up from the id
+     * @param cacheGeneration the generation of the cache when the load was
+     *                        requested; the thumbnail is not cached if the
+     *                        cache has been cleared since
      *
-     * @return an (possibly empty) optional containing a thumbnail
+     * @return the compressed thumbnail, or an empty array if none could be
+     *         generated
      */
-    private Image load(DrawableFile file) {
+    private byte[] load(Long fileID, @Nullable DrawableFile file, long cacheGeneration) throws TskCoreException, IOException {
+        //another request may have finished it since this one was queued
+        final byte[] cached = cache.asMap().get(fileID);
+        if (cached != null) {
+            return cached;
+        }
+        if (file == null) {
+            file = ImageGalleryController.getDefault().getFileFromId(fileID);
+            if (file == null) {
+                return NO_THUMBNAIL;
+            }
+        }
+        final byte[] thumbnail = generate(file);
+        synchronized (cacheLock) {
+            if (cacheGeneration == this.cacheGeneration) {
+                cache.put(fileID, thumbnail);
+            }
+        }
+        return thumbnail;
+    }
 
-        if (ImageUtils.isGIF(file.getAbstractFile())) {
+    private byte[] generate(DrawableFile file) throws IOException {
+        if (ImageUtils.isGIF(file.getAbstractFile())
+                && file.getAbstractFile().getSize() <= MAX_CACHED_GIF_BYTES) {
             //directly read gif to preserve potential animation,
             //NOTE: not saved to disk!
-            return new Image(new BufferedInputStream(new ReadContentInputStream(file.getAbstractFile())), MAX_THUMBNAIL_SIZE, MAX_THUMBNAIL_SIZE, true, true);
+            try (InputStream gif = new ReadContentInputStream(file.getAbstractFile())) {
+                return ByteStreams.toByteArray(gif);
+            }
         }
 
-        BufferedImage thumbnail = getCacheFile(file).map(cachFile -> {
-            if (cachFile.exists()) {
-                // If a thumbnail file is already saved locally, load it
-                try {
-                    BufferedImage cachedThumbnail = ImageIO.read(cachFile);
+        //stored or freshly generated PNG, used as is
+        byte[] thumbnail = ImageUtils.getThumbnailData(file.getAbstractFile(), MAX_THUMBNAIL_SIZE);
+        return thumbnail == null ? NO_THUMBNAIL : thumbnail;
+    }
 
-                    if (cachedThumbnail.getWidth() < MAX_THUMBNAIL_SIZE) {
-                        return cachedThumbnail;
-                    }
-                } catch (MalformedURLException ex) {
-                    LOGGER.log(Level.WARNING, "Unable to parse cache file path: " + cachFile.getPath(), ex); //NON-NLS
-                } catch (IOException ex) {
-                    LOGGER.log(Level.WARNING, "Unable to read cache file " + cachFile.getPath(), ex); //NON-NLS
-                }
-            }
+    /**
+     * Decode a compressed thumbnail.
+     *
+     * @param thumbnail the compressed thumbnail
+     *
+     * @return the thumbnail, or null if there is none
+     */
+    @Nullable
+    private static Image toImage(byte[] thumbnail) {
+        if (thumbnail.length == 0) {
             return null;
-        }).orElseGet(() -> {
-            return ImageUtils.getThumbnail(file.getAbstractFile(), MAX_THUMBNAIL_SIZE);
-        });
-
-        WritableImage jfxthumbnail;
-        if (thumbnail == ImageUtils.getDefaultThumbnail()) {
-            // if we go the default icon, ignore it
-            jfxthumbnail = null;
+        } else if (thumbnail.length >= 3 && thumbnail[0] == 'G' && thumbnail[1] == 'I' && thumbnail[2] == 'F') {
+            return new Image(new ByteArrayInputStream(thumbnail), MAX_THUMBNAIL_SIZE, MAX_THUMBNAIL_SIZE, true, true);
         } else {
-            jfxthumbnail = SwingFXUtils.toFXImage(thumbnail, null);
+            return new Image(new ByteArrayInputStream(thumbnail));
         }
+    }
 
-        return jfxthumbnail; //return icon, or null if generation failed
+    public Task<Image> getThumbnailTask(DrawableFile file) {
+        //start loading the thumbnail now, the task only waits for it
+        final ListenableFuture<byte[]> thumbnail = getThumbnailData(file.getId(), file, false, prefetchGeneration.get());
+        return TaskUtils.taskFrom(() -> toImage(thumbnail.get()));
     }
 
     /**
-     * get a File to store the cached icon in.
-     *
-     * @param id the obj id of the file to get a cache file for
-     *
-     * @return a Optional containing a File to store the cached icon in or an
-     *         empty optional if there was a problem.
+     * A thumbnail task that is in flight, with the number of queued jobs that
+     * may still run it.
      */
-    private static Optional<File> getCacheFile(DrawableFile file) {
-        try {
-            return Optional.of(ImageUtils.getCachedThumbnailFile(file.getAbstractFile(), MAX_THUMBNAIL_SIZE));
+    private static class InFlightLoad {
+
+        private final ListenableFutureTask<byte[]> task;
+        private int pendingJobs = 0; //only changed in inFlight.compute*()
 
-        } catch (Exception e) {
-            LOGGER.log(Level.WARNING, "Failed to create cache file.{0}", e.getLocalizedMessage()); //NON-NLS
-            return Optional.empty();
+        InFlightLoad(ListenableFutureTask<byte[]> task) {
+            this.task = task;
         }
     }
 
-    public Task<Image> getThumbnailTask(DrawableFile file) {
-        final Image thumbnail = cache.getIfPresent(file.getId());
-        if (thumbnail != null) {
-            return TaskUtils.taskFrom(() -> thumbnail);
-        }
-        final Task<Image> newGetThumbnailTask = ImageUtils.newGetThumbnailTask(file.getAbstractFile(), MAX_THUMBNAIL_SIZE, false);
-        newGetThumbnailTask.stateProperty().addListener((Observable observable) -> {
-            switch (newGetThumbnailTask.getState()) {
-                case SUCCEEDED:
-                    try {
-                        cache.put(Long.MIN_VALUE, newGetThumbnailTask.get());
-                    } catch (InterruptedException | ExecutionException ex) {
-                        LOGGER.log(Level.SEVERE, "There was an exception even though thumbnail task succedded for.  This should not be possible.", ex); //NON-NLS
+    /**
+     * A request to run a thumbnail task on the generator pool. Requests for
+     * displayed thumbnails are run first, then prefetch requests, each in the
+     * order they were made.
+     */
+    private class GeneratorJob implements Runnable, Comparable<GeneratorJob> {
+
+        private final Long fileID;
+        private final InFlightLoad inFlightLoad;
+        private final boolean prefetch;
+        private final long generation;
+        private final long sequence = jobSequence.getAndIncrement();
+
+        GeneratorJob(Long fileID, InFlightLoad inFlightLoad, boolean prefetch, long generation) {
+            this.fileID = fileID;
+            this.inFlightLoad = inFlightLoad;
+            this.prefetch = prefetch;
+            this.generation = generation;
+        }
+
+        @Override
+        public void run() {
+            if (prefetch && generation != prefetchGeneration.get()) {
+                /*
+                 * This prefetch request has been superseded. If no other job
+                 * is left to run the task, cancel it and stop tracking it, so
+                 * it doesn't stay in flight forever.
+                 */
+                final boolean[] abandoned = new boolean[1];
+                inFlight.computeIfPresent(fileID, (id, current) -> {
+                    if (current == inFlightLoad && --current.pendingJobs == 0) {
+                        abandoned[0] = true;
+                        return null;
                     }
+                    return current;
+                });
+                if (abandoned[0]) {
+                    //outside of computeIfPresent(), since the task's listener updates inFlight
+                    inFlightLoad.task.cancel(false);
+                }
+                return;
             }
-        });
-        return newGetThumbnailTask;
+            inFlightLoad.task.run();
+        }
+
+        @Override
+        public int compareTo(GeneratorJob other) {
+            if (prefetch != other.prefetch) {
+                return prefetch ? 1 : -1;
+            }
+            return Long.compare(sequence, other.sequence);
+        }
     }
 }
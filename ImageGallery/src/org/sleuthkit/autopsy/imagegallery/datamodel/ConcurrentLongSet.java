@@ -0,0 +1,281 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2016 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.imagegallery.datamodel;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A set of primitive longs that is safe for concurrent use.
+ *
+ * The set is split into stripes, each of which is an open addressing hash
+ * table with its own lock, so that writers to different stripes don't contend.
+ * Lookups read optimistically and only take a stripe's read lock if they raced
+ * a writer to that stripe.
+ */
+final class ConcurrentLongSet {
+
+    private static final int STRIPE_BITS = 4;
+
+    private final Stripe[] stripes = new Stripe[1 << STRIPE_BITS];
+
+    ConcurrentLongSet() {
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Is the given value in the set?
+     *
+     * @param value the value to look for
+     *
+     * @return true if the value is in the set
+     */
+    boolean contains(long value) {
+        long hash = mix(value);
+        return stripeFor(hash).contains(value, hash);
+    }
+
+    /**
+     * Add the given value to the set.
+     *
+     * @param value the value to add
+     *
+     * @return true if the value was not already in the set
+     */
+    boolean add(long value) {
+        long hash = mix(value);
+        return stripeFor(hash).add(value, hash);
+    }
+
+    /**
+     * Remove the given value from the set.
+     *
+     * @param value the value to remove
+     *
+     * @return true if the value was in the set
+     */
+    boolean remove(long value) {
+        long hash = mix(value);
+        return stripeFor(hash).remove(value, hash);
+    }
+
+    /**
+     * Get the number of values in the set. The count is only exact if the set
+     * is not being modified concurrently.
+     *
+     * @return the number of values in the set
+     */
+    int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    /**
+     * Remove all the values from the set.
+     */
+    void clear() {
+        for (Stripe stripe : stripes) {
+            stripe.clear();
+        }
+    }
+
+    private Stripe stripeFor(long hash) {
+        //the top bits pick the stripe, the low bits pick the slot within it
+        return stripes[(int) (hash >>> (Long.SIZE - STRIPE_BITS))];
+    }
+
+    /**
+     * Spread the bits of the value, so that sequential ids, like object ids,
+     * are scattered over the stripes and slots. This is the finalizer of the
+     * 64 bit MurmurHash3.
+     */
+    private static long mix(long value) {
+        long hash = value;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * One stripe of the set: a linear probing hash table. Zero marks an empty
+     * slot, so whether zero is in the set is tracked separately.
+     */
+    private static final class Stripe {
+
+        private static final int INITIAL_CAPACITY = 64;
+
+        private final StampedLock lock = new StampedLock();
+        private long[] table = new long[INITIAL_CAPACITY];
+        private int size;
+        private boolean containsZero;
+
+        boolean contains(long value, long hash) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                boolean found = find(value, hash);
+                if (lock.validate(stamp)) {
+                    return found;
+                }
+            }
+            stamp = lock.readLock();
+            try {
+                return find(value, hash);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * Look for the value in the table. May be called without the lock, in
+         * which case the result is only valid if the stamp validates, and the
+         * probe is bounded by the table length so that it always terminates.
+         */
+        private boolean find(long value, long hash) {
+            if (value == 0) {
+                return containsZero;
+            }
+            long[] slots = table;
+            int mask = slots.length - 1;
+            int slot = (int) hash & mask;
+            for (int probes = 0; probes < slots.length; probes++) {
+                long current = slots[slot];
+                if (current == value) {
+                    return true;
+                } else if (current == 0) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return false;
+        }
+
+        boolean add(long value, long hash) {
+            long stamp = lock.writeLock();
+            try {
+                if (value == 0) {
+                    boolean added = !containsZero;
+                    containsZero = true;
+                    return added;
+                }
+                int mask = table.length - 1;
+                int slot = (int) hash & mask;
+                while (table[slot] != 0) {
+                    if (table[slot] == value) {
+                        return false;
+                    }
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = value;
+                size++;
+                //keep the load factor under 3/4 so probes stay short
+                if (size * 4 > table.length * 3) {
+                    resize();
+                }
+                return true;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        boolean remove(long value, long hash) {
+            long stamp = lock.writeLock();
+            try {
+                if (value == 0) {
+                    boolean removed = containsZero;
+                    containsZero = false;
+                    return removed;
+                }
+                int mask = table.length - 1;
+                int slot = (int) hash & mask;
+                while (table[slot] != value) {
+                    if (table[slot] == 0) {
+                        return false;
+                    }
+                    slot = (slot + 1) & mask;
+                }
+                /*
+                 * Shift later entries of the probe run back into the hole,
+                 * rather than leaving a tombstone, unless that would move an
+                 * entry before its home slot.
+                 */
+                int hole = slot;
+                int next = (hole + 1) & mask;
+                while (table[next] != 0) {
+                    int home = (int) mix(table[next]) & mask;
+                    if (((next - home) & mask) >= ((next - hole) & mask)) {
+                        table[hole] = table[next];
+                        hole = next;
+                    }
+                    next = (next + 1) & mask;
+                }
+                table[hole] = 0;
+                size--;
+                return true;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        int size() {
+            long stamp = lock.readLock();
+            try {
+                return containsZero ? size + 1 : size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        void clear() {
+            long stamp = lock.writeLock();
+            try {
+                table = new long[INITIAL_CAPACITY];
+                size = 0;
+                containsZero = false;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * Double the capacity of the table. Must be called with the write lock
+         * held.
+         */
+        private void resize() {
+            long[] newTable = new long[table.length * 2];
+            int mask = newTable.length - 1;
+            for (long value : table) {
+                if (value != 0) {
+                    int slot = (int) mix(value) & mask;
+                    while (newTable[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    newTable[slot] = value;
+                }
+            }
+            table = newTable;
+        }
+    }
+}
@@ -37,13 +37,16 @@
 import static java.util.Objects.isNull;
 import static java.util.Objects.nonNull;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 import javax.annotation.Nonnull;
-import javax.annotation.concurrent.GuardedBy;
 import javax.swing.SortOrder;
 import org.apache.commons.lang3.StringUtils;
 import org.sleuthkit.autopsy.casemodule.Case;
@@ -84,9 +87,11 @@ public final class DrawableDB {
 
     private static final String HASH_SET_NAME = "hash_set_name"; //NON-NLS
 
-    private final PreparedStatement insertHashSetStmt;
+    private static final String GROUP_SEEN_QUERY = "SELECT seen FROM groups WHERE value = ? AND attribute = ?"; //NON-NLS
+
+    private static final String HASH_SET_NAMES_QUERY = "SELECT DISTINCT hash_set_name FROM hash_sets"; //NON-NLS
 
-    private final PreparedStatement groupSeenQueryStmt;
+    private final PreparedStatement insertHashSetStmt;
 
     private final PreparedStatement insertGroupStmt;
 
@@ -98,34 +103,17 @@ public final class DrawableDB {
 
     private final PreparedStatement selectHashSetStmt;
 
-    private final PreparedStatement selectHashSetNamesStmt;
-
     private final PreparedStatement insertHashHitStmt;
 
     private final PreparedStatement updateFileStmt;
     private final PreparedStatement insertFileStmt;
 
-    private final PreparedStatement pathGroupStmt;
-
-    private final PreparedStatement nameGroupStmt;
-
-    private final PreparedStatement created_timeGroupStmt;
-
-    private final PreparedStatement modified_timeGroupStmt;
-
-    private final PreparedStatement makeGroupStmt;
-
-    private final PreparedStatement modelGroupStmt;
-
-    private final PreparedStatement analyzedGroupStmt;
-
-    private final PreparedStatement hashSetGroupStmt;
-
     /**
-     * map from {@link DrawableAttribute} to the {@link PreparedStatement} thet
-     * is used to select groups for that attribute
+     * map from {@link DrawableAttribute} to the query that is used to select
+     * groups for that attribute. The queries run on the read connections, so
+     * they are prepared for each use rather than once up front.
      */
-    private final Map<DrawableAttribute<?>, PreparedStatement> groupStatementMap = new HashMap<>();
+    private final Map<DrawableAttribute<?>, String> groupQueryMap = new HashMap<>();
 
     private final GroupManager groupManager;
 
@@ -133,9 +121,25 @@ public final class DrawableDB {
 
     volatile private Connection con;
 
-    private final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock(true); //use fairness policy
+    /*
+     * All changes to the database go through the single writer connection,
+     * con, and are serialized by DBLock. When the database is in WAL mode,
+     * queries use a pool of read only connections instead and do not take
+     * DBLock, so group queries don't wait behind the inserts made during
+     * ingest, and each query sees a consistent snapshot of the database.
+     * Closing the connections takes the write half of closeLock to exclude
+     * the queries.
+     *
+     * Lock order: DBLock before closeLock.
+     */
+    private final Lock DBLock = new ReentrantLock(true); //use fairness policy
+    private final ReentrantReadWriteLock closeLock = new ReentrantReadWriteLock(true);
 
-    private final Lock DBLock = rwLock.writeLock(); //using exclusing lock for all db ops for now
+    private static final int READ_CONNECTION_POOL_SIZE = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private final boolean useReadConnectionPool;
+    private final BlockingQueue<Connection> readConnectionPool = new LinkedBlockingQueue<>();
+    private final List<Connection> readConnections = new CopyOnWriteArrayList<>();
+    private volatile boolean walEnabled;
 
     static {//make sure sqlite driver is loaded // possibly redundant
         try {
@@ -156,7 +160,7 @@ public final class DrawableDB {
      * where dbWriteLock() was called
      */
     public void dbWriteLock() {
-        //Logger.getLogger("LOCK").log(Level.INFO, "Locking " + rwLock.toString());
+        //Logger.getLogger("LOCK").log(Level.INFO, "Locking " + DBLock.toString());
         DBLock.lock();
     }
 
@@ -166,27 +170,46 @@ public void dbWriteLock() {
      * released.
      */
     public void dbWriteUnlock() {
-        //Logger.getLogger("LOCK").log(Level.INFO, "UNLocking " + rwLock.toString());
+        //Logger.getLogger("LOCK").log(Level.INFO, "UNLocking " + DBLock.toString());
         DBLock.unlock();
     }
 
     /**
-     * Lock to protect against read while it is in a write transaction state.
-     * Supports multiple concurrent readers if there is no writer. MUST always
-     * call dbReadUnLock() as early as possible, in the same thread where
-     * dbReadLock() was called.
+     * Gets a connection for a query, from the pool of read only connections if
+     * it is open, otherwise the writer connection. Must be paired with a call
+     * to releaseReadConnection in a finally block.
+     *
+     * @return the connection
      */
-    void dbReadLock() {
+    private Connection acquireReadConnection() {
+        closeLock.readLock().lock();
+        //the pool can't be closed while the read lock is held
+        if (!readConnections.isEmpty()) {
+            try {
+                return readConnectionPool.take();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        closeLock.readLock().unlock();
         DBLock.lock();
+        closeLock.readLock().lock();
+        return con;
     }
 
     /**
-     * Release previously acquired read lock acquired in this thread using
-     * dbReadLock(). Call in "finally" block to ensure the lock is always
-     * released.
+     * Releases a connection acquired with acquireReadConnection.
+     *
+     * @param connection the connection
      */
-    void dbReadUnlock() {
-        DBLock.unlock();
+    private void releaseReadConnection(Connection connection) {
+        if (readConnections.contains(connection)) {
+            readConnectionPool.add(connection);
+            closeLock.readLock().unlock();
+        } else {
+            closeLock.readLock().unlock();
+            DBLock.unlock();
+        }
     }
 
     /**
@@ -199,6 +222,11 @@ private DrawableDB(Path dbPath, ImageGalleryController controller) throws SQLExc
         this.controller = controller;
         this.tskCase = controller.getSleuthKitCase();
         this.groupManager = controller.getGroupManager();
+        /*
+         * WAL mode relies on shared memory, so it can't be used for a database
+         * on a network share, i.e., in a multi-user case directory.
+         */
+        this.useReadConnectionPool = Case.getCurrentCase().getCaseType() == Case.CaseType.SINGLE_USER_CASE;
         Files.createDirectories(dbPath.getParent());
         if (initializeDBSchema()) {
             updateFileStmt = prepareStatement(
@@ -210,21 +238,18 @@ private DrawableDB(Path dbPath, ImageGalleryController controller) throws SQLExc
 
             removeFileStmt = prepareStatement("DELETE FROM drawable_files WHERE obj_id = ?"); //NON-NLS
 
-            pathGroupStmt = prepareStatement("SELECT obj_id , analyzed FROM drawable_files WHERE path  = ? ", DrawableAttribute.PATH); //NON-NLS
-            nameGroupStmt = prepareStatement("SELECT obj_id , analyzed FROM drawable_files WHERE  name  = ? ", DrawableAttribute.NAME); //NON-NLS
-            created_timeGroupStmt = prepareStatement("SELECT obj_id , analyzed FROM drawable_files WHERE created_time  = ? ", DrawableAttribute.CREATED_TIME); //NON-NLS
-            modified_timeGroupStmt = prepareStatement("SELECT obj_id , analyzed FROM drawable_files WHERE  modified_time  = ? ", DrawableAttribute.MODIFIED_TIME); //NON-NLS
-            makeGroupStmt = prepareStatement("SELECT obj_id , analyzed FROM drawable_files WHERE make  = ? ", DrawableAttribute.MAKE); //NON-NLS
-            modelGroupStmt = prepareStatement("SELECT obj_id , analyzed FROM drawable_files WHERE model  = ? ", DrawableAttribute.MODEL); //NON-NLS
-            analyzedGroupStmt = prepareStatement("SELECT obj_id , analyzed FROM drawable_files WHERE analyzed = ?", DrawableAttribute.ANALYZED); //NON-NLS
-            hashSetGroupStmt = prepareStatement("SELECT drawable_files.obj_id AS obj_id, analyzed FROM drawable_files ,  hash_sets , hash_set_hits  WHERE drawable_files.obj_id = hash_set_hits.obj_id AND hash_sets.hash_set_id = hash_set_hits.hash_set_id AND hash_sets.hash_set_name = ?", DrawableAttribute.HASHSET); //NON-NLS
+            groupQueryMap.put(DrawableAttribute.PATH, "SELECT obj_id , analyzed FROM drawable_files WHERE path  = ? "); //NON-NLS
+            groupQueryMap.put(DrawableAttribute.NAME, "SELECT obj_id , analyzed FROM drawable_files WHERE  name  = ? "); //NON-NLS
+            groupQueryMap.put(DrawableAttribute.CREATED_TIME, "SELECT obj_id , analyzed FROM drawable_files WHERE created_time  = ? "); //NON-NLS
+            groupQueryMap.put(DrawableAttribute.MODIFIED_TIME, "SELECT obj_id , analyzed FROM drawable_files WHERE  modified_time  = ? "); //NON-NLS
+            groupQueryMap.put(DrawableAttribute.MAKE, "SELECT obj_id , analyzed FROM drawable_files WHERE make  = ? "); //NON-NLS
+            groupQueryMap.put(DrawableAttribute.MODEL, "SELECT obj_id , analyzed FROM drawable_files WHERE model  = ? "); //NON-NLS
+            groupQueryMap.put(DrawableAttribute.ANALYZED, "SELECT obj_id , analyzed FROM drawable_files WHERE analyzed = ?"); //NON-NLS
+            groupQueryMap.put(DrawableAttribute.HASHSET, "SELECT drawable_files.obj_id AS obj_id, analyzed FROM drawable_files ,  hash_sets , hash_set_hits  WHERE drawable_files.obj_id = hash_set_hits.obj_id AND hash_sets.hash_set_id = hash_set_hits.hash_set_id AND hash_sets.hash_set_name = ?"); //NON-NLS
 
             updateGroupStmt = prepareStatement("insert or replace into groups (seen, value, attribute) values( ?, ? , ?)"); //NON-NLS
             insertGroupStmt = prepareStatement("insert or ignore into groups (value, attribute) values (?,?)"); //NON-NLS
 
-            groupSeenQueryStmt = prepareStatement("SELECT seen FROM groups WHERE value = ? AND attribute = ?"); //NON-NLS
-
-            selectHashSetNamesStmt = prepareStatement("SELECT DISTINCT hash_set_name FROM hash_sets"); //NON-NLS
             insertHashSetStmt = prepareStatement("INSERT OR IGNORE INTO hash_sets (hash_set_name)  VALUES (?)"); //NON-NLS
             selectHashSetStmt = prepareStatement("SELECT hash_set_id FROM hash_sets WHERE hash_set_name = ?"); //NON-NLS
 
@@ -233,6 +258,9 @@ private DrawableDB(Path dbPath, ImageGalleryController controller) throws SQLExc
             for (Category cat : Category.values()) {
                 insertGroup(cat.getDisplayName(), DrawableAttribute.CATEGORY);
             }
+            if (walEnabled) {
+                openReadConnections();
+            }
             initializeImageList();
         } else {
             throw new ExceptionInInitializerError();
@@ -257,28 +285,6 @@ private PreparedStatement prepareStatement(String stmtString) throws SQLExceptio
         return prepareStatement;
     }
 
-    /**
-     * calls {@link DrawableDB#prepareStatement(java.lang.String) ,
-     *  and then add the statement to the groupStatmentMap used to lookup
-     * statements by the attribute/column they group on
-     *
-     * @param stmtString the string representation of the sqlite statement to
-     *                   prepare
-     * @param attr       the {@link DrawableAttribute} this query groups by
-     *
-     * @return the prepared statement
-     *
-     * @throws SQLExceptionif unable to prepare the statement
-     */
-    private PreparedStatement prepareStatement(String stmtString, DrawableAttribute<?> attr) throws SQLException {
-        PreparedStatement prepareStatement = prepareStatement(stmtString);
-        if (attr != null) {
-            groupStatementMap.put(attr, prepareStatement);
-        }
-
-        return prepareStatement;
-    }
-
     /**
      * public factory method. Creates and opens a connection to a new database *
      * at the given path.
@@ -306,15 +312,22 @@ private void setPragmas() throws SQLException {
         try (Statement statement = con.createStatement()) {
             //reduce i/o operations, we have no OS crash recovery anyway
             statement.execute("PRAGMA synchronous = OFF;"); //NON-NLS
-            //allow to query while in transaction - no need read locks
-            statement.execute("PRAGMA read_uncommitted = True;"); //NON-NLS
 
             //TODO: do we need this?
             statement.execute("PRAGMA foreign_keys = ON"); //NON-NLS
 
-            //TODO: test this
-            statement.execute("PRAGMA journal_mode  = MEMORY"); //NON-NLS
-//
+            //let the read connections query while the writer connection is in a transaction
+            if (useReadConnectionPool) {
+                try (ResultSet rs = statement.executeQuery("PRAGMA journal_mode = WAL")) { //NON-NLS
+                    walEnabled = rs.next() && "wal".equalsIgnoreCase(rs.getString(1)); //NON-NLS
+                }
+            }
+            if (walEnabled == false) {
+                if (useReadConnectionPool) {
+                    LOGGER.log(Level.WARNING, "Failed to put drawable.db in WAL mode, queries will use the writer connection"); //NON-NLS
+                }
+                statement.execute("PRAGMA journal_mode  = MEMORY"); //NON-NLS
+            }
             //we don't use this feature, so turn it off for minimal speed up on queries
             //this is deprecated and not recomended
             statement.execute("PRAGMA count_changes = OFF;"); //NON-NLS
@@ -451,15 +464,64 @@ public void finalize() throws Throwable {
     }
 
     public void closeDBCon() {
-        if (con != null) {
+        closeLock.writeLock().lock();
+        try {
+            closeReadConnections();
+            if (con != null) {
+                try {
+                    closeStatements();
+                    con.close();
+                } catch (SQLException ex) {
+                    LOGGER.log(Level.WARNING, "Failed to close connection to drawable.db", ex); //NON-NLS
+                }
+            }
+            con = null;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Opens the pool of read only connections used by queries, if it is not
+     * already open.
+     */
+    private void openReadConnections() {
+        if (!readConnections.isEmpty()) {
+            return;
+        }
+        try {
+            for (int i = 0; i < READ_CONNECTION_POOL_SIZE; i++) {
+                Connection readConnection = DriverManager.getConnection("jdbc:sqlite:" + dbPath.toString()); //NON-NLS
+                readConnections.add(readConnection);
+                try (Statement statement = readConnection.createStatement()) {
+                    //guard against accidental writes, all changes go through the writer connection
+                    statement.execute("PRAGMA query_only = true"); //NON-NLS
+                    statement.execute("PRAGMA temp_store = MEMORY"); //NON-NLS
+                    statement.execute("PRAGMA cache_size = 10000"); //NON-NLS
+                }
+                readConnectionPool.add(readConnection);
+            }
+        } catch (SQLException ex) {
+            LOGGER.log(Level.WARNING, "Failed to open read connections to drawable.db, queries will use the writer connection", ex); //NON-NLS
+            closeReadConnections();
+        }
+    }
+
+    /**
+     * Closes the pool of read only connections. Must be called with the write
+     * half of closeLock held, or before any queries are run, so that all of
+     * the connections are in the pool.
+     */
+    private void closeReadConnections() {
+        readConnectionPool.clear();
+        for (Connection readConnection : readConnections) {
             try {
-                closeStatements();
-                con.close();
+                readConnection.close();
             } catch (SQLException ex) {
-                LOGGER.log(Level.WARNING, "Failed to close connection to drawable.db", ex); //NON-NLS
+                LOGGER.log(Level.WARNING, "Failed to close read connection to drawable.db", ex); //NON-NLS
             }
         }
-        con = null;
+        readConnections.clear();
     }
 
     public void openDBCon() {
@@ -512,24 +574,23 @@ Set<String> getHashSetsForFile(long fileID) throws TskCoreException {
      */
     public Set<String> getHashSetNames() {
         Set<String> names = new HashSet<>();
-        // "SELECT DISTINCT hash_set_name FROM hash_sets"
-        dbReadLock();
-        try (ResultSet rs = selectHashSetNamesStmt.executeQuery();) {
+        Connection connection = acquireReadConnection();
+        try (PreparedStatement selectHashSetNamesStmt = connection.prepareStatement(HASH_SET_NAMES_QUERY);
+                ResultSet rs = selectHashSetNamesStmt.executeQuery();) {
             while (rs.next()) {
                 names.add(rs.getString(HASH_SET_NAME));
             }
         } catch (SQLException sQLException) {
             LOGGER.log(Level.WARNING, "failed to get hash set names", sQLException); //NON-NLS
         } finally {
-            dbReadUnlock();
+            releaseReadConnection(connection);
         }
         return names;
     }
 
     public boolean isGroupSeen(GroupKey<?> groupKey) {
-        dbReadLock();
-        try {
-            groupSeenQueryStmt.clearParameters();
+        Connection connection = acquireReadConnection();
+        try (PreparedStatement groupSeenQueryStmt = connection.prepareStatement(GROUP_SEEN_QUERY)) {
             groupSeenQueryStmt.setString(1, groupKey.getValueDisplayName());
             groupSeenQueryStmt.setString(2, groupKey.getAttribute().attrName.toString());
             try (ResultSet rs = groupSeenQueryStmt.executeQuery()) {
@@ -541,7 +602,7 @@ public boolean isGroupSeen(GroupKey<?> groupKey) {
             String msg = String.format("Failed to get is group seen for group key %s", groupKey.getValueDisplayName()); //NON-NLS
             LOGGER.log(Level.WARNING, msg, ex);
         } finally {
-            dbReadUnlock();
+            releaseReadConnection(connection);
         }
         return false;
     }
@@ -620,8 +681,8 @@ private void insertOrUpdateFile(DrawableFile f, @Nonnull DrawableTransaction tr,
             stmt.setString(7, f.getModel());
             stmt.setBoolean(8, f.isAnalyzed());
             stmt.executeUpdate();
-            // Update the list of file IDs in memory
-            addImageFileToList(f.getId());
+            // Update the list of file IDs in memory when the transaction is committed
+            tr.addFileInDB(f.getId());
 
             try {
                 for (String name : f.getHashSetNames()) {
@@ -691,8 +752,8 @@ public Boolean isFileAnalyzed(DrawableFile f) {
     }
 
     public Boolean isFileAnalyzed(long fileId) {
-        dbReadLock();
-        try (Statement stmt = con.createStatement();
+        Connection connection = acquireReadConnection();
+        try (Statement stmt = connection.createStatement();
                 ResultSet analyzedQuery = stmt.executeQuery("SELECT analyzed FROM drawable_files WHERE obj_id = " + fileId)) { //NON-NLS
             while (analyzedQuery.next()) {
                 return analyzedQuery.getBoolean(ANALYZED);
@@ -701,7 +762,7 @@ public Boolean isFileAnalyzed(long fileId) {
             String msg = String.format("Failed to determine if file %s is finalized", String.valueOf(fileId)); //NON-NLS
             LOGGER.log(Level.WARNING, msg, ex);
         } finally {
-            dbReadUnlock();
+            releaseReadConnection(connection);
         }
 
         return false;
@@ -709,8 +770,8 @@ public Boolean isFileAnalyzed(long fileId) {
 
     public Boolean areFilesAnalyzed(Collection<Long> fileIds) {
 
-        dbReadLock();
-        try (Statement stmt = con.createStatement();
+        Connection connection = acquireReadConnection();
+        try (Statement stmt = connection.createStatement();
                 //Can't make this a preprared statement because of the IN ( ... )
                 ResultSet analyzedQuery = stmt.executeQuery("SELECT COUNT(analyzed) AS analyzed FROM drawable_files WHERE analyzed = 1 AND obj_id IN (" + StringUtils.join(fileIds, ", ") + ")")) { //NON-NLS
             while (analyzedQuery.next()) {
@@ -719,22 +780,28 @@ public Boolean areFilesAnalyzed(Collection<Long> fileIds) {
         } catch (SQLException ex) {
             LOGGER.log(Level.WARNING, "problem counting analyzed files: ", ex); //NON-NLS
         } finally {
-            dbReadUnlock();
+            releaseReadConnection(connection);
         }
 
         return false;
     }
 
     public Boolean isGroupAnalyzed(GroupKey<?> gk) {
-        dbReadLock();
+        final Set<Long> fileIDsInGroup;
         try {
-            Set<Long> fileIDsInGroup = getFileIDsInGroup(gk);
+            //get the group's files before taking a connection, getFileIDsInGroup takes its own
+            fileIDsInGroup = getFileIDsInGroup(gk);
+        } catch (TskCoreException tskCoreException) {
+            LOGGER.log(Level.WARNING, "problem counting analyzed files: ", tskCoreException); //NON-NLS
+            return false;
+        }
 
-            try {
-                // In testing, this method appears to be a lot faster than doing one large select statement
-                for (Long fileID : fileIDsInGroup) {
-                    Statement stmt = con.createStatement();
-                    ResultSet analyzedQuery = stmt.executeQuery("SELECT analyzed FROM drawable_files WHERE obj_id = " + fileID); //NON-NLS
+        Connection connection = acquireReadConnection();
+        try {
+            // In testing, this method appears to be a lot faster than doing one large select statement
+            for (Long fileID : fileIDsInGroup) {
+                try (Statement stmt = connection.createStatement();
+                        ResultSet analyzedQuery = stmt.executeQuery("SELECT analyzed FROM drawable_files WHERE obj_id = " + fileID)) { //NON-NLS
                     while (analyzedQuery.next()) {
                         if (analyzedQuery.getInt(ANALYZED) == 0) {
                             return false;
@@ -742,14 +809,11 @@ public Boolean isGroupAnalyzed(GroupKey<?> gk) {
                     }
                     return true;
                 }
-
-            } catch (SQLException ex) {
-                LOGGER.log(Level.WARNING, "problem counting analyzed files: ", ex); //NON-NLS
             }
-        } catch (TskCoreException tskCoreException) {
-            LOGGER.log(Level.WARNING, "problem counting analyzed files: ", tskCoreException); //NON-NLS
+        } catch (SQLException ex) {
+            LOGGER.log(Level.WARNING, "problem counting analyzed files: ", ex); //NON-NLS
         } finally {
-            dbReadUnlock();
+            releaseReadConnection(connection);
         }
         return false;
     }
@@ -770,9 +834,9 @@ public Set<Long> findAllFileIdsWhere(String sqlWhereClause) throws TskCoreExcept
         Statement statement = null;
         ResultSet rs = null;
         Set<Long> ret = new HashSet<>();
-        dbReadLock();
+        Connection connection = acquireReadConnection();
         try {
-            statement = con.createStatement();
+            statement = connection.createStatement();
             rs = statement.executeQuery("SELECT obj_id FROM drawable_files WHERE " + sqlWhereClause); //NON-NLS
             while (rs.next()) {
                 ret.add(rs.getLong(1));
@@ -794,7 +858,7 @@ public Set<Long> findAllFileIdsWhere(String sqlWhereClause) throws TskCoreExcept
                     LOGGER.log(Level.SEVERE, "Error closing statement after executing  findAllFileIdsWhere", ex); //NON-NLS
                 }
             }
-            dbReadUnlock();
+            releaseReadConnection(connection);
         }
         return ret;
     }
@@ -813,9 +877,9 @@ public Set<Long> findAllFileIdsWhere(String sqlWhereClause) throws TskCoreExcept
     public long countFilesWhere(String sqlWhereClause) throws TskCoreException {
         Statement statement = null;
         ResultSet rs = null;
-        dbReadLock();
+        Connection connection = acquireReadConnection();
         try {
-            statement = con.createStatement();
+            statement = connection.createStatement();
             rs = statement.executeQuery("SELECT COUNT (*) FROM drawable_files WHERE " + sqlWhereClause); //NON-NLS
             return rs.getLong(1);
         } catch (SQLException e) {
@@ -835,7 +899,7 @@ public long countFilesWhere(String sqlWhereClause) throws TskCoreException {
                     LOGGER.log(Level.SEVERE, "Error closing statement after executing countFilesWhere", ex); //NON-NLS
                 }
             }
-            dbReadUnlock();
+            releaseReadConnection(connection);
         }
     }
 
@@ -850,9 +914,9 @@ public long countFilesWhere(String sqlWhereClause) throws TskCoreException {
     public long countFiles() throws TskCoreException {
         Statement statement = null;
         ResultSet rs = null;
-        dbReadLock();
+        Connection connection = acquireReadConnection();
         try {
-            statement = con.createStatement();
+            statement = connection.createStatement();
             rs = statement.executeQuery("SELECT COUNT (*) FROM drawable_files"); //NON-NLS
             return rs.getLong(1);
         } catch (SQLException e) {
@@ -872,7 +936,7 @@ public long countFiles() throws TskCoreException {
                     LOGGER.log(Level.SEVERE, "Error closing statement after executing countFiles", ex); //NON-NLS
                 }
             }
-            dbReadUnlock();
+            releaseReadConnection(connection);
         }
     }
 
@@ -898,7 +962,7 @@ public <A extends Comparable<A>> List<A> findValuesForAttribute(DrawableAttribut
                 //they should have special handling at a higher level of the stack.
                 throw new UnsupportedOperationException();
             default:
-                dbReadLock();
+                Connection connection = acquireReadConnection();
                 //TODO: convert this to prepared statement 
                 StringBuilder query = new StringBuilder("SELECT " + groupBy.attrName.toString() + ", COUNT(*) FROM drawable_files GROUP BY " + groupBy.attrName.toString()); //NON-NLS
 
@@ -928,7 +992,7 @@ public <A extends Comparable<A>> List<A> findValuesForAttribute(DrawableAttribut
                     query.append(sortOrderClause);
                 }
 
-                try (Statement stmt = con.createStatement();
+                try (Statement stmt = connection.createStatement();
                         ResultSet valsResults = stmt.executeQuery(query.toString())) {
                     while (valsResults.next()) {
                         /*
@@ -944,7 +1008,7 @@ public <A extends Comparable<A>> List<A> findValuesForAttribute(DrawableAttribut
                 } catch (SQLException ex) {
                     LOGGER.log(Level.WARNING, "Unable to get values for attribute", ex); //NON-NLS
                 } finally {
-                    dbReadUnlock();
+                    releaseReadConnection(connection);
                 }
         }
 
@@ -1021,9 +1085,8 @@ public Set<Long> getFileIDsInGroup(GroupKey<?> groupKey) throws TskCoreException
             }
         }
         Set<Long> files = new HashSet<>();
-        dbReadLock();
-        try {
-            PreparedStatement statement = getGroupStatment(groupKey.getAttribute());
+        Connection connection = acquireReadConnection();
+        try (PreparedStatement statement = connection.prepareStatement(groupQueryMap.get(groupKey.getAttribute()))) {
             statement.setObject(1, groupKey.getValue());
 
             try (ResultSet valsResults = statement.executeQuery()) {
@@ -1034,7 +1097,7 @@ public Set<Long> getFileIDsInGroup(GroupKey<?> groupKey) throws TskCoreException
         } catch (SQLException ex) {
             LOGGER.log(Level.WARNING, "failed to get file for group:" + groupKey.getAttribute() + " == " + groupKey.getValue(), ex); //NON-NLS
         } finally {
-            dbReadUnlock();
+            releaseReadConnection(connection);
         }
 
         return files;
@@ -1046,15 +1109,11 @@ private void closeStatements() throws SQLException {
         }
     }
 
-    private PreparedStatement getGroupStatment(DrawableAttribute<?> groupBy) {
-        return groupStatementMap.get(groupBy);
-
-    }
-
     public int countAllFiles() {
         int result = -1;
-        dbReadLock();
-        try (ResultSet rs = con.createStatement().executeQuery("SELECT COUNT(*) AS COUNT FROM drawable_files")) { //NON-NLS
+        Connection connection = acquireReadConnection();
+        try (Statement stmt = connection.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT COUNT(*) AS COUNT FROM drawable_files")) { //NON-NLS
             while (rs.next()) {
 
                 result = rs.getInt("COUNT");
@@ -1063,7 +1122,7 @@ public int countAllFiles() {
         } catch (SQLException ex) {
             LOGGER.log(Level.SEVERE, "Error accessing SQLite database"); //NON-NLS
         } finally {
-            dbReadUnlock();
+            releaseReadConnection(connection);
         }
         return result;
     }
@@ -1083,9 +1142,6 @@ public boolean removeFile(long id, DrawableTransaction tr) {
         dbWriteLock();
 
         try {
-            // Update the list of file IDs in memory
-            removeImageFileFromList(id);
-
             //"delete from drawable_files where (obj_id = " + id + ")"
             removeFileStmt.setLong(1, id);
             removeFileStmt.executeUpdate();
@@ -1113,51 +1169,41 @@ public MultipleTransactionException() {
     }
 
     /**
-     * For performance reasons, keep a list of all file IDs currently in the
+     * For performance reasons, keep a set of all file IDs currently in the
      * drawable database. Otherwise the database is queried many times to
-     * retrieve the same data.
+     * retrieve the same data. The set is checked for every tag event and for
+     * every file in the category and tag groups, so it is a concurrent set of
+     * primitive longs, which doesn't box the IDs or serialize the lookups.
      */
-    @GuardedBy("fileIDlist")
-    private final Set<Long> fileIDsInDB = new HashSet<>();
+    private final ConcurrentLongSet fileIDsInDB = new ConcurrentLongSet();
 
     public boolean isInDB(Long id) {
-        synchronized (fileIDsInDB) {
-            return fileIDsInDB.contains(id);
-        }
+        return fileIDsInDB.contains(id);
     }
 
     private void addImageFileToList(Long id) {
-        synchronized (fileIDsInDB) {
-            fileIDsInDB.add(id);
-        }
+        fileIDsInDB.add(id);
     }
 
     private void removeImageFileFromList(Long id) {
-        synchronized (fileIDsInDB) {
-            fileIDsInDB.remove(id);
-        }
+        fileIDsInDB.remove(id);
     }
 
     public int getNumberOfImageFilesInList() {
-        synchronized (fileIDsInDB) {
-            return fileIDsInDB.size();
-        }
+        return fileIDsInDB.size();
     }
 
     private void initializeImageList() {
-        synchronized (fileIDsInDB) {
-            dbReadLock();
-            try {
-                Statement stmt = con.createStatement();
-                ResultSet analyzedQuery = stmt.executeQuery("select obj_id from drawable_files"); //NON-NLS
-                while (analyzedQuery.next()) {
-                    addImageFileToList(analyzedQuery.getLong(OBJ_ID));
-                }
-            } catch (SQLException ex) {
-                LOGGER.log(Level.WARNING, "problem loading file IDs: ", ex); //NON-NLS
-            } finally {
-                dbReadUnlock();
+        Connection connection = acquireReadConnection();
+        try (Statement stmt = connection.createStatement();
+                ResultSet analyzedQuery = stmt.executeQuery("select obj_id from drawable_files")) { //NON-NLS
+            while (analyzedQuery.next()) {
+                addImageFileToList(analyzedQuery.getLong(OBJ_ID));
             }
+        } catch (SQLException ex) {
+            LOGGER.log(Level.WARNING, "problem loading file IDs: ", ex); //NON-NLS
+        } finally {
+            releaseReadConnection(connection);
         }
     }
 
@@ -1264,6 +1310,13 @@ public class DrawableTransaction {
 
         private final Set<Long> removedFiles;
 
+        /**
+         * the changes to the list of file IDs in memory, true for files
+         * inserted and false for files removed, applied only if the
+         * transaction is committed
+         */
+        private final Map<Long, Boolean> fileIDsInDBChanges;
+
         private boolean closed = false;
 
         /**
@@ -1278,6 +1331,7 @@ public class DrawableTransaction {
         private DrawableTransaction() {
             this.updatedFiles = new HashSet<>();
             this.removedFiles = new HashSet<>();
+            this.fileIDsInDBChanges = new HashMap<>();
             //get the write lock, released in close()
             dbWriteLock();
             try {
@@ -1294,6 +1348,7 @@ synchronized public void rollback() {
                 try {
                     con.rollback();
                     updatedFiles.clear();
+                    fileIDsInDBChanges.clear();
                 } catch (SQLException ex1) {
                     LOGGER.log(Level.SEVERE, "Exception while attempting to rollback!!", ex1); //NON-NLS
                 } finally {
@@ -1306,6 +1361,13 @@ synchronized private void commit(Boolean notify) {
             if (!closed) {
                 try {
                     con.commit();
+                    fileIDsInDBChanges.forEach((id, inDB) -> {
+                        if (inDB) {
+                            addImageFileToList(id);
+                        } else {
+                            removeImageFileFromList(id);
+                        }
+                    });
                     // make sure we close before we update, bc they'll need locks
                     close();
 
@@ -1353,6 +1415,11 @@ synchronized private void addUpdatedFile(Long f) {
 
         synchronized private void addRemovedFile(long id) {
             removedFiles.add(id);
+            fileIDsInDBChanges.put(id, false);
+        }
+
+        synchronized private void addFileInDB(long id) {
+            fileIDsInDBChanges.put(id, true);
         }
     }
 }
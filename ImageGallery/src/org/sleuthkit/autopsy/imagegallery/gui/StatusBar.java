@@ -18,16 +18,24 @@
  */
 package org.sleuthkit.autopsy.imagegallery.gui;
 
+import com.google.common.cache.CacheStats;
 import java.io.IOException;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Platform;
+import javafx.beans.value.ChangeListener;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.control.Label;
 import javafx.scene.control.ProgressBar;
 import javafx.scene.control.Tooltip;
 import javafx.scene.layout.AnchorPane;
+import javafx.stage.Window;
+import javafx.util.Duration;
 import org.openide.util.NbBundle;
 import org.sleuthkit.autopsy.imagegallery.ImageGalleryController;
+import org.sleuthkit.autopsy.imagegallery.ThumbnailCache;
 
 /**
  *
@@ -51,15 +59,39 @@ public class StatusBar extends AnchorPane {
     @FXML
     private ProgressBar bgTaskProgressBar;
 
+    @FXML
+    private Label thumbnailCacheLabel;
+
+    /**
+     * periodically updates the thumbnail cache hit rate shown in
+     * thumbnailCacheLabel, while the status bar is in a showing window.
+     */
+    private final Timeline thumbnailCacheStatsUpdater = new Timeline(new KeyFrame(Duration.seconds(2), event -> updateThumbnailCacheLabel()));
+
+    private final ChangeListener<Boolean> windowShowingListener = (showing, wasShowing, isShowing) -> updateThumbnailCacheStatsUpdater(isShowing);
+
+    private final ChangeListener<Window> windowListener = (window, oldWindow, newWindow) -> {
+        if (oldWindow != null) {
+            oldWindow.showingProperty().removeListener(windowShowingListener);
+        }
+        if (newWindow != null) {
+            newWindow.showingProperty().addListener(windowShowingListener);
+        }
+        updateThumbnailCacheStatsUpdater(newWindow != null && newWindow.isShowing());
+    };
+
     @FXML
     @NbBundle.Messages({"StatusBar.fileUpdateTaskLabel.text= File Update Tasks",
         "StatusBar.bgTaskLabel.text=Regrouping",
-        "StatuBar.toolTip=Some data may be out of date.  Enable Image Gallery in Tools | Options | Image /Video Gallery , after ingest is complete to update the Image Gallery data."})
+        "StatuBar.toolTip=Some data may be out of date.  Enable Image Gallery in Tools | Options | Image /Video Gallery , after ingest is complete to update the Image Gallery data.",
+        "# {0} - hit rate percentage",
+        "StatusBar.thumbnailCacheLabel.text=Thumbnail Cache Hits: {0}%"})
     void initialize() {
         assert fileTaskProgresBar != null : "fx:id=\"fileTaskProgresBar\" was not injected: check your FXML file 'StatusBar.fxml'.";
         assert fileUpdateTaskLabel != null : "fx:id=\"fileUpdateTaskLabel\" was not injected: check your FXML file 'StatusBar.fxml'.";
         assert bgTaskLabel != null : "fx:id=\"bgTaskLabel\" was not injected: check your FXML file 'StatusBar.fxml'.";
         assert bgTaskProgressBar != null : "fx:id=\"bgTaskProgressBar\" was not injected: check your FXML file 'StatusBar.fxml'.";
+        assert thumbnailCacheLabel != null : "fx:id=\"thumbnailCacheLabel\" was not injected: check your FXML file 'StatusBar.fxml'.";
 
         fileUpdateTaskLabel.textProperty().bind(controller.getDBTasksQueueSizeProperty().asString().concat(Bundle.StatusBar_fileUpdateTaskLabel_text()));
         fileTaskProgresBar.progressProperty().bind(controller.getDBTasksQueueSizeProperty().negate());
@@ -80,6 +112,41 @@ void initialize() {
 
         Platform.runLater(() -> staleLabel.setTooltip(new Tooltip(Bundle.StatuBar_toolTip())));
         staleLabel.visibleProperty().bind(controller.stale());
+
+        thumbnailCacheStatsUpdater.setCycleCount(Animation.INDEFINITE);
+        sceneProperty().addListener((scene, oldScene, newScene) -> {
+            if (oldScene != null) {
+                oldScene.windowProperty().removeListener(windowListener);
+            }
+            if (newScene != null) {
+                newScene.windowProperty().addListener(windowListener);
+            }
+            windowListener.changed(null, oldScene == null ? null : oldScene.getWindow(), newScene == null ? null : newScene.getWindow());
+        });
+    }
+
+    /**
+     * Start or stop updating the thumbnail cache hit rate, so the updater does
+     * not keep running once the status bar is no longer shown.
+     *
+     * @param showing true if the status bar is in a showing window
+     */
+    private void updateThumbnailCacheStatsUpdater(boolean showing) {
+        if (showing) {
+            thumbnailCacheStatsUpdater.play();
+        } else {
+            thumbnailCacheStatsUpdater.stop();
+        }
+    }
+
+    /**
+     * Show the hit rate of the thumbnail cache, once it has been used.
+     */
+    private void updateThumbnailCacheLabel() {
+        CacheStats stats = ThumbnailCache.getDefault().getStats();
+        if (stats.requestCount() > 0) {
+            thumbnailCacheLabel.setText(Bundle.StatusBar_thumbnailCacheLabel_text(Math.round(stats.hitRate() * 100)));
+        }
     }
 
     public StatusBar(ImageGalleryController controller) {
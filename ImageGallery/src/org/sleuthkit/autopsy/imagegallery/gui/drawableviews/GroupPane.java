@@ -112,6 +112,7 @@
 import org.sleuthkit.autopsy.imagegallery.FileIDSelectionModel;
 import org.sleuthkit.autopsy.imagegallery.ImageGalleryController;
 import org.sleuthkit.autopsy.imagegallery.ImageGalleryTopComponent;
+import org.sleuthkit.autopsy.imagegallery.ThumbnailCache;
 import org.sleuthkit.autopsy.imagegallery.actions.AddTagAction;
 import org.sleuthkit.autopsy.imagegallery.actions.Back;
 import org.sleuthkit.autopsy.imagegallery.actions.CategorizeAction;
@@ -263,6 +264,19 @@ GroupViewMode getGroupViewMode() {
      */
     @ThreadConfined(type = ThreadType.JFX)
     private final Map<Long, DrawableCell> cellMap = new HashMap<>();
+
+    /**
+     * the minimum number of tiles prefetched ahead of and behind the visible
+     * ones, when fewer tiles than this are visible.
+     */
+    private static final int MIN_PREFETCH_PAGE_SIZE = 50;
+
+    /**
+     * the index of the tile around which thumbnails were last prefetched, or
+     * -1 if none have been prefetched for the current group.
+     */
+    @ThreadConfined(type = ThreadType.JFX)
+    private int prefetchIndex = -1;
     
     private final InvalidationListener filesSyncListener = (observable) -> {
         final String header = getHeaderString();
@@ -628,6 +642,8 @@ void setViewState(GroupViewState viewState) {
                     slideShowToggle.setDisable(gridView.getItems().isEmpty());
                     groupLabel.setText(header);
                     resetScrollBar();
+                    prefetchIndex = -1;
+                    prefetchThumbnails(0);
                     if (viewState.getMode() == GroupViewMode.TILE) {
                         activateTileViewer();
                     } else {
@@ -638,6 +654,28 @@ void setViewState(GroupViewState viewState) {
         }
     }
     
+    /**
+     * Prefetch the thumbnails of the pages of tiles after and before the given
+     * one, unless that was already done for a nearby tile.
+     *
+     * @param index the index of a tile that is being displayed
+     */
+    @ThreadConfined(type = ThreadType.JFX)
+    private void prefetchThumbnails(int index) {
+        final List<Long> fileIDs = gridView.getItems();
+        final int pageSize = Math.max(MIN_PREFETCH_PAGE_SIZE, cellMap.size());
+        if (index < 0 || index >= fileIDs.size()
+                || (prefetchIndex >= 0 && Math.abs(index - prefetchIndex) < pageSize / 2)) {
+            return;
+        }
+        prefetchIndex = index;
+
+        //the next pages first, as scrolling down is more likely
+        List<Long> prefetchIDs = new ArrayList<>(fileIDs.subList(index, Math.min(fileIDs.size(), index + 2 * pageSize)));
+        prefetchIDs.addAll(Lists.reverse(fileIDs.subList(Math.max(0, index - pageSize), index)));
+        ThumbnailCache.getDefault().prefetch(prefetchIDs);
+    }
+
     @ThreadConfined(type = ThreadType.JFX)
     private void resetScrollBar() {
         getScrollBar().ifPresent((scrollBar) -> {
@@ -700,6 +738,9 @@ private class DrawableCell extends GridCell<Long> {
         protected void updateItem(Long item, boolean empty) {
             super.updateItem(item, empty);
             tile.setFile(item);
+            if (item != null) {
+                prefetchThumbnails(getIndex());
+            }
         }
         
         void resetItem() {
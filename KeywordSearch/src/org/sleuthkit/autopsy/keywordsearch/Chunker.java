@@ -19,10 +19,7 @@
 package org.sleuthkit.autopsy.keywordsearch;
 
 import java.io.IOException;
-import java.io.PushbackReader;
 import java.io.Reader;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 import javax.annotation.concurrent.NotThreadSafe;
@@ -35,14 +32,16 @@
  * for loop. The base chunk is the part of the chunk before the overlapping
  * window. The window will be included at the end of the current chunk as well
  * as at the beginning of the next chunk.
+ *
+ * To keep allocations down, the text is read into a lookahead buffer and
+ * sanitized as it is added to the chunk, the UTF-8 size of the chunk is
+ * tracked as the text is read, and the buffers are reused by all of the
+ * Chunkers created on a thread. As a consequence, only one Chunker may be in use on a thread at a time and the
+ * text of a Chunk is only valid until the next call to next().
  */
 @NotThreadSafe
 class Chunker implements Iterator<Chunk>, Iterable<Chunk> {
 
-    //local references to standard encodings
-    private static final Charset UTF_16 = StandardCharsets.UTF_16;
-    private static final Charset UTF_8 = StandardCharsets.UTF_8;
-
     //Chunking algorithm paramaters-------------------------------------//
     /** the maximum size of a chunk, including the window. */
     private static final int MAX_TOTAL_CHUNK_SIZE = 32760; //bytes
@@ -57,16 +56,31 @@ class Chunker implements Iterator<Chunk>, Iterable<Chunk> {
     private static final int WHITE_SPACE_BUFFER_SIZE = 512; //bytes
     /** The number of characters to read in one go from the Reader. */
     private static final int READ_CHARS_BUFFER_SIZE = 512; //chars
+    /** The size of the lookahead buffer. It must be able to hold a window
+     * (which is never more chars than MAX_TOTAL_CHUNK_SIZE bytes) pushed back
+     * in front of the chars that have been read but not yet consumed. */
+    private static final int LOOKAHEAD_BUFFER_SIZE = MAX_TOTAL_CHUNK_SIZE + 2 * READ_CHARS_BUFFER_SIZE; //chars
+    /** The character used to replace invalid UTF-16 code units. */
+    private static final char REPLACEMENT_CHAR = '\uFFFD';
+
+    /** The buffers shared by the Chunkers created on each thread. */
+    private static final ThreadLocal<ChunkBuffers> THREAD_BUFFERS = ThreadLocal.withInitial(ChunkBuffers::new);
 
     ////chunker state--------------------------------------------///
-    /** The Reader that this chunk reads from, and divides into chunks. It must
-     * be a buffered reader to ensure that mark/reset are supported. */
-    private final PushbackReader reader;
-    /** The local buffer of characters read from the Reader. */
-    private final char[] tempChunkBuf = new char[READ_CHARS_BUFFER_SIZE];
+    /** The Reader that this chunk reads from, and divides into chunks. */
+    private final Reader reader;
+    /** The chars read from the Reader but not yet added to a chunk, in
+     * lookahead[lookaheadStart, lookaheadEnd). */
+    private final char[] lookahead;
+    private int lookaheadStart = 0;
+    private int lookaheadEnd = 0;
+    /** The text of the current chunk. */
+    private final StringBuilder currentChunk;
 
     /** the size in bytes of the chunk (so far). */
     private int chunkSizeBytes = 0;
+    /** Has the Reader returned end of stream? */
+    private boolean readerExhausted = false;
     /** Has the chunker reached the end of the Reader? If so, there are no more
      * chunks, and the current chunk does not need a window. */
     private boolean endOfReaderReached = false;
@@ -79,8 +93,11 @@ class Chunker implements Iterator<Chunk>, Iterable<Chunk> {
      * @param reader The content to chunk.
      */
     Chunker(Reader reader) {
-        //Using MAX_TOTAL_CHUNK_SIZE is safe but probably overkill.
-        this.reader = new PushbackReader(reader, MAX_TOTAL_CHUNK_SIZE);
+        this.reader = reader;
+        ChunkBuffers buffers = THREAD_BUFFERS.get();
+        this.lookahead = buffers.lookahead;
+        this.currentChunk = buffers.chunkText;
+        this.currentChunk.setLength(0);
     }
 
     @Override
@@ -114,41 +131,51 @@ public boolean hasNext() {
     }
 
     /**
-     * Sanitize the given StringBuilder by replacing non-UTF-8 characters with
-     * caret '^'
+     * Append the given range of chars to the given text, sanitized by
+     * replacing invalid UTF-16 code units (unpaired surrogates) with the
+     * default replacement character U+FFFD and non-UTF-8 characters with caret
+     * '^', and get the size in bytes of the UTF-8 encoding of the sanitized
+     * chars. The chars themselves are not changed, so that chars that are read
+     * again are sanitized the same way as the first time.
      *
-     * @param sb the StringBuilder to sanitize
+     * @param chars The buffer holding the chars.
+     * @param start The index of the first char to sanitize.
+     * @param end   The index after the last char to sanitize.
+     * @param text  The text to append the sanitized chars to.
      *
-     * //JMTODO: use Charsequence.chars() or codePoints() and then a mapping
-     * function?
+     * @return The size in UTF-8 bytes of the sanitized chars.
      */
-    private static StringBuilder sanitizeToUTF8(StringBuilder sb) {
-        final int length = sb.length();
-        for (int i = 0; i < length; i++) {
-            if (TextUtil.isValidSolrUTF8(sb.charAt(i)) == false) {
-                sb.replace(i, i + 1, "^");
+    private static int appendSanitized(char[] chars, int start, int end, StringBuilder text) {
+        int sizeBytes = 0;
+        int i = start;
+        while (i < end) {
+            final char ch = chars[i];
+            if (Character.isHighSurrogate(ch) && i + 1 < end && Character.isLowSurrogate(chars[i + 1])) {
+                //a valid surrogate pair, a supplementary code point.
+                text.append(ch).append(chars[i + 1]);
+                sizeBytes += 4;
+                i += 2;
+                continue;
+            }
+            if (Character.isSurrogate(ch)) {
+                text.append(REPLACEMENT_CHAR);
+                sizeBytes += 3;
+            } else if (TextUtil.isValidSolrUTF8(ch) == false) {
+                text.append('^');
+                sizeBytes += 1;
+            } else {
+                text.append(ch);
+                if (ch < 0x80) {
+                    sizeBytes += 1;
+                } else if (ch < 0x800) {
+                    sizeBytes += 2;
+                } else {
+                    sizeBytes += 3;
+                }
             }
+            i++;
         }
-        return sb;
-    }
-
-    /**
-     * Cleanup invalid codepoint sequences by replacing them with the default
-     * replacement character: U+FFFD / �.
-     *
-     * @param s The string to cleanup.
-     *
-     * @return A StringBuilder with the same content as s but where all invalid
-     *         code     *         points have been replaced.
-     */
-    private static StringBuilder replaceInvalidUTF16(String s) {
-        /* encode the string to UTF-16 which does the replcement, see
-         * Charset.encode(), then decode back to a StringBuilder. */
-        return new StringBuilder(UTF_16.decode(UTF_16.encode(s)));
-    }
-
-    private static StringBuilder sanitize(String s) {
-        return sanitizeToUTF8(replaceInvalidUTF16(s));
+        return sizeBytes;
     }
 
     @Override
@@ -160,15 +187,13 @@ public Chunk next() {
 
         chunkSizeBytes = 0;
         int baseChunkSizeChars = 0;
-        StringBuilder currentChunk = new StringBuilder();
-        StringBuilder currentWindow = new StringBuilder();
+        currentChunk.setLength(0);
 
         try {
-            currentChunk.append(readBaseChunk());
+            readBaseChunk();
             baseChunkSizeChars = currentChunk.length(); //save the base chunk length
-            currentWindow.append(readWindow());
-                //add the window text to the current chunk.
-        currentChunk.append(currentWindow);
+            //add the window text to the current chunk.
+            readWindow();
             if (endOfReaderReached) {
                 /* if we have reached the end of the content,we won't make
                  * another overlapping chunk, so the length of the base chunk
@@ -176,15 +201,14 @@ public Chunk next() {
                 baseChunkSizeChars = currentChunk.length();
             } else {
                 /* otherwise we will make another chunk, so unread the window */
-                reader.unread(currentWindow.toString().toCharArray());
+                unread(currentChunk, baseChunkSizeChars);
             }
         } catch (Exception ioEx) {
             /* Save the exception, which will cause hasNext() to return false,
              * and break any chunking loop in client code. */
             ex = ioEx;
         }
-    
-        //sanitize the text and return a Chunk object, that includes the base chunk length.
+
         return new Chunk(currentChunk, baseChunkSizeChars, chunkSizeBytes);
     }
 
@@ -193,14 +217,12 @@ public Chunk next() {
      *
      * @throws IOException if there is a problem reading from the reader.
      */
-    private StringBuilder readBaseChunk() throws IOException {
-        StringBuilder currentChunk = new StringBuilder();
+    private void readBaseChunk() throws IOException {
         //read the chunk until the minimum base chunk size
-        readHelper(MINIMUM_BASE_CHUNK_SIZE, currentChunk);
+        readHelper(MINIMUM_BASE_CHUNK_SIZE);
 
         //keep reading until the maximum base chunk size or white space is reached.
-        readToWhiteSpaceHelper(MAXIMUM_BASE_CHUNK_SIZE, currentChunk);
-        return currentChunk;
+        readToWhiteSpaceHelper(MAXIMUM_BASE_CHUNK_SIZE);
     }
 
     /**
@@ -208,58 +230,108 @@ private StringBuilder readBaseChunk() throws IOException {
      *
      * @throws IOException if there is a problem reading from the reader.
      */
-    private StringBuilder readWindow() throws IOException {
-        StringBuilder currentWindow = new StringBuilder();
+    private void readWindow() throws IOException {
         //read the window, leaving some room to look for white space to break at.
-        readHelper(MAX_TOTAL_CHUNK_SIZE - WHITE_SPACE_BUFFER_SIZE, currentWindow);
+        readHelper(MAX_TOTAL_CHUNK_SIZE - WHITE_SPACE_BUFFER_SIZE);
 
         //keep reading until the max chunk size, or until whitespace is reached.
-        readToWhiteSpaceHelper(MAX_TOTAL_CHUNK_SIZE, currentWindow);
-        return currentWindow;
+        readToWhiteSpaceHelper(MAX_TOTAL_CHUNK_SIZE);
+    }
+
+    /**
+     * Read a segment of up to the given number of chars into the front of the
+     * lookahead buffer, the way a PushbackReader does: the chars already in the
+     * lookahead buffer come first and, if there are not enough of them, the
+     * rest are read from the Reader with a single read. This keeps the
+     * segments, and so the chunk boundaries, the same as reading through a
+     * PushbackReader.
+     *
+     * @param maxChars The most chars in the segment.
+     *
+     * @return The number of chars in the segment, at
+     *         lookahead[lookaheadStart, lookaheadStart + length), or -1 if the
+     *         end of the reader has been reached.
+     *
+     * @throws IOException
+     */
+    private int readSegment(int maxChars) throws IOException {
+        final int available = lookaheadEnd - lookaheadStart;
+        if (available >= maxChars) {
+            return maxChars;
+        }
+        //move the unconsumed chars to the front of the buffer, if there is not room after them
+        if (lookahead.length - lookaheadEnd < maxChars - available) {
+            System.arraycopy(lookahead, lookaheadStart, lookahead, 0, available);
+            lookaheadEnd = available;
+            lookaheadStart = 0;
+        }
+        int charsRead = reader.read(lookahead, lookaheadEnd, maxChars - available);
+        if (-1 == charsRead) {
+            readerExhausted = true;
+            return (available == 0) ? -1 : available;
+        }
+        lookaheadEnd += charsRead;
+        return available + charsRead;
+    }
+
+    /**
+     * Push the chars of the given text from the given index on back to the
+     * front of the lookahead buffer, so that they will be read again.
+     *
+     * @param text  The text.
+     * @param start The index of the first char to push back.
+     */
+    private void unread(StringBuilder text, int start) {
+        final int length = text.length() - start;
+        if (lookaheadStart < length) {
+            //make room in front of the unconsumed chars
+            System.arraycopy(lookahead, lookaheadStart, lookahead, length, lookaheadEnd - lookaheadStart);
+            lookaheadEnd += length - lookaheadStart;
+            lookaheadStart = length;
+        }
+        lookaheadStart -= length;
+        text.getChars(start, text.length(), lookahead, lookaheadStart);
     }
 
     /**
      * Read until the maxBytes reached, or end of reader.
      *
      * @param maxBytes
-     * @param currentSegment
      *
      * @throws IOException
      */
-    private void readHelper(int maxBytes, StringBuilder currentSegment) throws IOException {
-        int charsRead = 0;
+    private void readHelper(int maxBytes) throws IOException {
         //read chars up to maxBytes, or the end of the reader.
         while ((chunkSizeBytes < maxBytes)
                 && (endOfReaderReached == false)) {
-            charsRead = reader.read(tempChunkBuf, 0, READ_CHARS_BUFFER_SIZE);
+            int charsRead = readSegment(READ_CHARS_BUFFER_SIZE);
             if (-1 == charsRead) {
                 //this is the last chunk
                 endOfReaderReached = true;
                 return;
-            } else {
-                //if the last char might be part of a surroate pair, unread it.
-                final char lastChar = tempChunkBuf[charsRead - 1];
-                if (Character.isHighSurrogate(lastChar)) {
-                    charsRead--;
-                    reader.unread(lastChar);
-                }
-
-                //cleanup any invalid utf-16 sequences
-                StringBuilder chunkSegment = sanitize(new String(tempChunkBuf, 0, charsRead));
+            }
+            int segmentEnd = lookaheadStart + charsRead;
+            //if the last char might be part of a surroate pair, leave it for the next segment,
+            //unless there is nothing more to pair it with.
+            if (Character.isHighSurrogate(lookahead[segmentEnd - 1])
+                    && (readerExhausted == false || segmentEnd < lookaheadEnd)) {
+                segmentEnd--;
+            }
 
-                //get the length in utf8 bytes of the read chars
-                int segmentSize = chunkSegment.toString().getBytes(UTF_8).length;
+            //add the read chars to the chunk, cleaning up any invalid utf-16
+            //sequences, and get the length in utf8 bytes of the read chars
+            final int chunkLength = currentChunk.length();
+            int segmentSize = appendSanitized(lookahead, lookaheadStart, segmentEnd, currentChunk);
 
-                //if it will not put us past maxBytes
-                if (chunkSizeBytes + segmentSize < maxBytes) {
-                    //add it to the chunk
-                    currentSegment.append(chunkSegment);
-                    chunkSizeBytes += segmentSize;
-                } else {
-                    //unread it, and break out of read loop.
-                    reader.unread(tempChunkBuf, 0, charsRead);
-                    return;
-                }
+            //if it will not put us past maxBytes
+            if (chunkSizeBytes + segmentSize < maxBytes) {
+                //keep it in the chunk
+                lookaheadStart = segmentEnd;
+                chunkSizeBytes += segmentSize;
+            } else {
+                //take it back out of the chunk, leave it in the lookahead buffer, and break out of read loop.
+                currentChunk.setLength(chunkLength);
+                return;
             }
         }
     }
@@ -268,53 +340,50 @@ private void readHelper(int maxBytes, StringBuilder currentSegment) throws IOExc
      * Read until the maxBytes reached, whitespace, or end of reader.
      *
      * @param maxBytes
-     * @param currentChunk
      *
      * @throws IOException
      */
-    private void readToWhiteSpaceHelper(int maxBytes, StringBuilder currentChunk) throws IOException {
-        int charsRead = 0;
+    private void readToWhiteSpaceHelper(int maxBytes) throws IOException {
         boolean whitespaceFound = false;
         //read 1 char at a time up to maxBytes, whitespaceFound, or we reach the end of the reader.
         while ((chunkSizeBytes < maxBytes)
                 && (whitespaceFound == false)
                 && (endOfReaderReached == false)) {
-            charsRead = reader.read(tempChunkBuf, 0, 1);
-            if (-1 == charsRead) {
+            if (-1 == readSegment(1)) {
                 //this is the last chunk
                 endOfReaderReached = true;
                 return;
-            } else {
-                //if the last charcter might be part of a surroate pair, read another char
-                final char ch = tempChunkBuf[0];
-                String chunkSegment;
-                if (Character.isHighSurrogate(ch)) {
-                    //read another char into the buffer.
-                    charsRead = reader.read(tempChunkBuf, 1, 1);
-                    if (charsRead == -1) {
-                        //this is the last chunk, so just drop the unpaired surrogate
-                        endOfReaderReached = true;
-                        return;
-                    } else {
-                        //try to use the pair together.
-                        chunkSegment = new String(tempChunkBuf, 0, 2);
-                    }
-                } else {
-                    //one char
-                    chunkSegment = new String(tempChunkBuf, 0, 1);
+            }
+            int length = 1;
+            //if the charcter might be part of a surroate pair, use the pair together.
+            if (Character.isHighSurrogate(lookahead[lookaheadStart])) {
+                if (readSegment(2) < 2) {
+                    //this is the last chunk, so just drop the unpaired surrogate
+                    lookaheadStart = lookaheadEnd;
+                    endOfReaderReached = true;
+                    return;
                 }
-
-                //cleanup any invalid utf-16 sequences
-                StringBuilder sanitizedChunkSegment = sanitize(chunkSegment);
-                //check for whitespace.
-                whitespaceFound = Character.isWhitespace(sanitizedChunkSegment.codePointAt(0));
-                //add read chars to the chunk and update the length.
-                currentChunk.append(sanitizedChunkSegment);
-                chunkSizeBytes += sanitizedChunkSegment.toString().getBytes(UTF_8).length;
+                length = 2;
             }
+
+            //add read chars to the chunk, cleaning up any invalid utf-16 sequences, and update the length.
+            final int chunkLength = currentChunk.length();
+            chunkSizeBytes += appendSanitized(lookahead, lookaheadStart, lookaheadStart + length, currentChunk);
+            lookaheadStart += length;
+            //check for whitespace.
+            whitespaceFound = Character.isWhitespace(currentChunk.codePointAt(chunkLength));
         }
     }
 
+    /**
+     * The buffers reused by the Chunkers created on a thread.
+     */
+    private static final class ChunkBuffers {
+
+        private final char[] lookahead = new char[LOOKAHEAD_BUFFER_SIZE];
+        private final StringBuilder chunkText = new StringBuilder(MAX_TOTAL_CHUNK_SIZE);
+    }
+
     /**
      * Represents one chunk as the text in it and the length of the base chunk,
      * in chars.
@@ -341,6 +410,17 @@ public String toString() {
             return sb.toString();
         }
 
+        /**
+         * Get a view of the content of the chunk, without copying it. The view
+         * is only valid until the next chunk is read from the Chunker that
+         * made this chunk.
+         *
+         * @return The content of the chunk.
+         */
+        CharSequence getText() {
+            return sb;
+        }
+
         /**
          * Get the size in bytes of the utf-8 encoding of the entire chunk.
          *
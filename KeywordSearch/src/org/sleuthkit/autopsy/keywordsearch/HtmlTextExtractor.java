@@ -19,6 +19,7 @@
 package org.sleuthkit.autopsy.keywordsearch;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
 import java.io.StringReader;
 import java.util.Arrays;
@@ -32,8 +33,8 @@
 import net.htmlparser.jericho.StartTag;
 import net.htmlparser.jericho.StartTagType;
 import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.autopsy.ingest.FileContentCache;
 import org.sleuthkit.datamodel.AbstractFile;
-import org.sleuthkit.datamodel.ReadContentInputStream;
 
 /**
  * Extracts text from AbstractFile HTML content.
@@ -71,7 +72,7 @@ boolean isSupported(AbstractFile file, String detectedFormat) {
 
     @Override
     public Reader getReader(AbstractFile sourceFile) throws TextExtractorException {
-        ReadContentInputStream stream = new ReadContentInputStream(sourceFile);
+        InputStream stream = FileContentCache.openStream(sourceFile);
 
         //Parse the stream with Jericho and put the results in a Reader
         try {
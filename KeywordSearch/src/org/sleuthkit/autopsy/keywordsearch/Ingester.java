@@ -18,9 +18,18 @@
  */
 package org.sleuthkit.autopsy.keywordsearch;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.BufferedReader;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.logging.Level;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.common.SolrInputDocument;
@@ -54,6 +63,22 @@ class Ingester {
     private static Ingester instance;
     private static final int SINGLE_READ_CHARS = 512;
 
+    /*
+     * The chunk documents for a source are sent to Solr in batches by a small
+     * pool of sender threads while the text of the source is still being
+     * extracted and chunked. A batch is sent when it is full or when its first
+     * document has been waiting for longer than the maximum batch age. The
+     * number of batches that may be queued or in flight is bounded, so an
+     * ingest thread that gets too far ahead of Solr blocks until a batch has
+     * been sent.
+     */
+    private static final int MAX_DOCS_PER_BATCH = 32;
+    private static final long MAX_BATCH_AGE_MS = 2000;
+    static final int NUM_BATCH_SENDER_THREADS = 2;
+    private static final int MAX_PENDING_BATCHES = 4 * NUM_BATCH_SENDER_THREADS;
+    private final ExecutorService batchSenderExecutor = Executors.newFixedThreadPool(NUM_BATCH_SENDER_THREADS, new ThreadFactoryBuilder().setNameFormat("KWS-solr-batch-sender-%d").setDaemon(true).build()); //NON-NLS
+    private final Semaphore pendingBatches = new Semaphore(MAX_PENDING_BATCHES);
+
     private Ingester() {
     }
 
@@ -149,6 +174,8 @@ < T extends SleuthkitVisitableItem> boolean indexText(TextExtractor< T> extracto
         }
 
         Map<String, String> fields = getContentFields(source);
+        DocumentBatcher batcher = new DocumentBatcher(sourceName);
+        boolean result = true;
         //Get a reader for the content of the given source
         try (BufferedReader reader = new BufferedReader(extractor.getReader(source));) {
             Chunker chunker = new Chunker(reader);
@@ -157,8 +184,8 @@ < T extends SleuthkitVisitableItem> boolean indexText(TextExtractor< T> extracto
                 fields.put(Server.Schema.ID.toString(), chunkId);
                 fields.put(Server.Schema.CHUNK_SIZE.toString(), String.valueOf(chunk.getBaseChunkLength()));
                 try {
-                    //add the chunk text to Solr index
-                    indexChunk(chunk.toString(), sourceName, fields);
+                    //add the chunk text to the batch of documents for the Solr index
+                    batcher.add(createSolrDocument(chunk.getText(), sourceName, fields));
                     numChunks++;
                 } catch (Ingester.IngesterException ingEx) {
                     extractor.logWarning("Ingester had a problem with extracted string from file '" //NON-NLS
@@ -169,22 +196,39 @@ < T extends SleuthkitVisitableItem> boolean indexText(TextExtractor< T> extracto
             }
             if (chunker.hasException()) {
                 extractor.logWarning("Error chunking content from " + sourceID + ": " + sourceName, chunker.getException());
-                return false;
+                result = false;
             }
         } catch (Exception ex) {
             extractor.logWarning("Unexpected error, can't read content stream from " + sourceID + ": " + sourceName, ex);//NON-NLS
-            return false;
-        } finally {
-            //after all chunks, index just the meta data, including the  numChunks, of the parent file
-            fields.put(Server.Schema.NUM_CHUNKS.toString(), Integer.toString(numChunks));
-            //reset id field to base document id
-            fields.put(Server.Schema.ID.toString(), Long.toString(sourceID));
-            //"parent" docs don't have chunk_size
-            fields.remove(Server.Schema.CHUNK_SIZE.toString());
-            indexChunk(null, sourceName, fields);
+            result = false;
         }
 
-        return true;
+        //after all chunks, index just the meta data, including the  numChunks, of the parent file
+        fields.put(Server.Schema.NUM_CHUNKS.toString(), Integer.toString(numChunks));
+        //reset id field to base document id
+        fields.put(Server.Schema.ID.toString(), Long.toString(sourceID));
+        //"parent" docs don't have chunk_size
+        fields.remove(Server.Schema.CHUNK_SIZE.toString());
+        try {
+            //a failure reported here may be for an earlier batch, the parent
+            //document is still in the current batch, which finish() sends
+            batcher.add(createSolrDocument(null, sourceName, fields));
+        } catch (Ingester.IngesterException ingEx) {
+            extractor.logWarning("Ingester had a problem indexing the parent document of file '" //NON-NLS
+                    + sourceName + "' (id: " + sourceID + ").", ingEx);//NON-NLS
+            result = false;
+        }
+        try {
+            //wait for all of the batches for the source to be sent, so that
+            //any failure is reported for this source
+            batcher.finish();
+        } catch (Ingester.IngesterException ingEx) {
+            extractor.logWarning("Ingester had a problem sending the documents for file '" //NON-NLS
+                    + sourceName + "' (id: " + sourceID + ") to Solr.", ingEx);//NON-NLS
+            result = false;
+        }
+
+        return result;
     }
 
     /**
@@ -201,6 +245,32 @@ < T extends SleuthkitVisitableItem> boolean indexText(TextExtractor< T> extracto
      * @throws org.sleuthkit.autopsy.keywordsearch.Ingester.IngesterException
      */
     private void indexChunk(String chunk, String sourceName, Map<String, String> fields) throws IngesterException {
+        SolrInputDocument updateDoc = createSolrDocument(chunk, sourceName, fields);
+        try {
+            //TODO: consider timeout thread, or vary socket timeout based on size of indexed content
+            solrServer.addDocument(updateDoc);
+            uncommitedIngests = true;
+
+        } catch (KeywordSearchModuleException | NoOpenCoreException ex) {
+            //JMTODO: does this need to be internationalized?
+            throw new IngesterException(
+                    NbBundle.getMessage(Ingester.class, "Ingester.ingest.exception.err.msg", sourceName), ex);
+        }
+    }
+
+    /**
+     * Makes a Solr document for one chunk of a source.
+     *
+     * @param chunk      The chunk content. It is copied into the document, so
+     *                   it may be a view of a reused buffer.
+     * @param sourceName The name of the source of the chunk.
+     * @param fields     The field map for the chunk.
+     *
+     * @return The Solr document.
+     *
+     * @throws org.sleuthkit.autopsy.keywordsearch.Ingester.IngesterException
+     */
+    private SolrInputDocument createSolrDocument(CharSequence chunk, String sourceName, Map<String, String> fields) throws IngesterException {
         if (fields.get(Server.Schema.IMAGE_ID.toString()) == null) {
             //JMTODO: actually if the we couldn't get the image id it is set to -1,
             // but does this really mean we don't want to index it?
@@ -220,17 +290,131 @@ private void indexChunk(String chunk, String sourceName, Map<String, String> fie
         }
         //add the content to the SolrInputDocument
         //JMTODO: can we just add it to the field map before passing that in?
-        updateDoc.addField(Server.Schema.CONTENT.toString(), chunk);
+        updateDoc.addField(Server.Schema.CONTENT.toString(), (null != chunk) ? chunk.toString() : null);
+        return updateDoc;
+    }
 
-        try {
-            //TODO: consider timeout thread, or vary socket timeout based on size of indexed content
-            solrServer.addDocument(updateDoc);
-            uncommitedIngests = true;
+    /**
+     * Collects the Solr documents for the chunks of a single source into
+     * batches and hands the batches off to the batch sender threads. Failures
+     * to send a batch are reported as an IngesterException for the source, as
+     * soon as the failure is noticed or, at the latest, by finish().
+     */
+    private final class DocumentBatcher {
 
-        } catch (KeywordSearchModuleException | NoOpenCoreException ex) {
-            //JMTODO: does this need to be internationalized?
-            throw new IngesterException(
-                    NbBundle.getMessage(Ingester.class, "Ingester.ingest.exception.err.msg", sourceName), ex);
+        private final String sourceName;
+        private final List<Future<Void>> sentBatches;
+        private List<SolrInputDocument> batch;
+        private long batchStartTime;
+
+        DocumentBatcher(String sourceName) {
+            this.sourceName = sourceName;
+            this.sentBatches = new ArrayList<>();
+            this.batch = new ArrayList<>(MAX_DOCS_PER_BATCH);
+        }
+
+        /**
+         * Adds a document to the current batch, sending the batch if it is
+         * full or old enough.
+         *
+         * @param doc The document.
+         *
+         * @throws IngesterException if a previously sent batch for the source
+         *                           failed or the calling thread was
+         *                           interrupted while waiting to send.
+         */
+        void add(SolrInputDocument doc) throws IngesterException {
+            if (batch.isEmpty()) {
+                batchStartTime = System.currentTimeMillis();
+            }
+            batch.add(doc);
+            if (batch.size() >= MAX_DOCS_PER_BATCH || System.currentTimeMillis() - batchStartTime >= MAX_BATCH_AGE_MS) {
+                send();
+            }
+            checkSentBatches(false);
+        }
+
+        /**
+         * Sends the current batch, if any, and waits for all of the batches
+         * for the source to be sent.
+         *
+         * @throws IngesterException if any of the batches for the source
+         *                           failed.
+         */
+        void finish() throws IngesterException {
+            if (!batch.isEmpty()) {
+                send();
+            }
+            checkSentBatches(true);
+        }
+
+        /**
+         * Hands the current batch off to the batch sender threads, blocking if
+         * the maximum number of batches are already pending.
+         *
+         * @throws IngesterException if the calling thread was interrupted.
+         */
+        private void send() throws IngesterException {
+            final List<SolrInputDocument> docs = batch;
+            batch = new ArrayList<>(MAX_DOCS_PER_BATCH);
+            try {
+                pendingBatches.acquire();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IngesterException(
+                        NbBundle.getMessage(Ingester.class, "Ingester.ingest.exception.err.msg", sourceName), ex);
+            }
+            try {
+                sentBatches.add(batchSenderExecutor.submit(() -> {
+                    try {
+                        solrServer.addDocuments(docs);
+                        uncommitedIngests = true;
+                        return null;
+                    } finally {
+                        pendingBatches.release();
+                    }
+                }));
+            } catch (RuntimeException ex) {
+                pendingBatches.release();
+                throw ex;
+            }
+        }
+
+        /**
+         * Checks the outcomes of the batches sent for the source. Each batch
+         * that is done is removed, whether it succeeded or failed, so a
+         * failure is only reported once.
+         *
+         * @param wait Whether or not to wait for batches that are still pending.
+         *
+         * @throws IngesterException if a batch failed or the calling thread was
+         *                           interrupted while waiting.
+         */
+        private void checkSentBatches(boolean wait) throws IngesterException {
+            Throwable failure = null;
+            Iterator<Future<Void>> iterator = sentBatches.iterator();
+            while (iterator.hasNext()) {
+                Future<Void> sentBatch = iterator.next();
+                if (!wait && !sentBatch.isDone()) {
+                    continue;
+                }
+                try {
+                    sentBatch.get();
+                } catch (ExecutionException ex) {
+                    if (null == failure) {
+                        failure = ex.getCause();
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IngesterException(
+                            NbBundle.getMessage(Ingester.class, "Ingester.ingest.exception.err.msg", sourceName), ex);
+                }
+                iterator.remove();
+            }
+            if (null != failure) {
+                throw new IngesterException(
+                        NbBundle.getMessage(Ingester.class, "Ingester.ingest.exception.err.msg", sourceName), failure);
+            }
         }
     }
 
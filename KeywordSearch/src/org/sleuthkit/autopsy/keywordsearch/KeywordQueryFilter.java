@@ -25,13 +25,15 @@
 /**
  *
  * Filter to restrict query only specific files, chunks, images Single filter
- * supports multiple ids per file/chunk/image, that act as OR filter
+ * supports multiple ids per file/chunk/image, that act as OR filter. An
+ * INDEXED_SINCE filter instead restricts the query to documents sent to the
+ * index at or after the time, in ms, given as its id.
  */
 class KeywordQueryFilter {
 
     public static enum FilterType {
 
-        FILE, CHUNK, DATA_SOURCE
+        FILE, CHUNK, DATA_SOURCE, INDEXED_SINCE
     };
     private Set<Long> idFilters;
     private FilterType filterType;
@@ -66,6 +68,13 @@ public String toString() {
                 sb.append(" "); //OR
             }
             long idVal = it.next();
+            if (filterType == FilterType.INDEXED_SINCE) {
+                sb.append(Server.Schema.INDEXED_TIME.toString());
+                sb.append(":[");
+                sb.append(idVal);
+                sb.append(" TO *]");
+                continue;
+            }
             if (filterType == FilterType.DATA_SOURCE) {
                 id = Server.Schema.IMAGE_ID.toString();
             } else {
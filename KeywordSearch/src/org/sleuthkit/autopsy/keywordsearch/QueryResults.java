@@ -24,6 +24,7 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.BiConsumer;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 import javax.swing.SwingWorker;
@@ -100,6 +101,30 @@ Set<Keyword> getKeywords() {
      * @return The artifacts that were created.
      */
     Collection<BlackboardArtifact> writeAllHitsToBlackBoard(ProgressHandle progress, ProgressContributor subProgress, SwingWorker<Object, Void> worker, boolean notifyInbox) {
+        return writeAllHitsToBlackBoard(progress, subProgress, worker, notifyInbox, (keyword, hit) -> {
+        });
+    }
+
+    /**
+     * Writes the keyword hits encapsulated in this query result to the
+     * blackboard, as above, and reports each hit that has been dealt with, so
+     * the caller can tell which hits were left unwritten if the writing is
+     * cancelled part way through.
+     *
+     * @param progress     Can be null.
+     * @param subProgress  Can be null.
+     * @param worker       The Swing worker that is writing the hits, needed to
+     *                     support cancellation.
+     * @param notifyInbox  Whether or not write a message to the ingest messages
+     *                     inbox.
+     * @param hitProcessed Called with the keyword and the hit once the hit has
+     *                     been written to the blackboard, or could not be
+     *                     written because of an error that writing it again
+     *                     would not fix.
+     *
+     * @return The artifacts that were created.
+     */
+    Collection<BlackboardArtifact> writeAllHitsToBlackBoard(ProgressHandle progress, ProgressContributor subProgress, SwingWorker<Object, Void> worker, boolean notifyInbox, BiConsumer<Keyword, KeywordHit> hitProcessed) {
         final Collection<BlackboardArtifact> newArtifacts = new ArrayList<>();
         if (progress != null) {
             progress.start(getKeywords().size());
@@ -142,6 +167,7 @@ Collection<BlackboardArtifact> writeAllHitsToBlackBoard(ProgressHandle progress,
                         break;
                     } catch (Exception e) {
                         logger.log(Level.WARNING, "Error querying snippet: " + snippetQuery, e); //NON-NLS
+                        hitProcessed.accept(keyword, hit);
                         continue;
                     }
                 }
@@ -154,6 +180,7 @@ Collection<BlackboardArtifact> writeAllHitsToBlackBoard(ProgressHandle progress,
                 } else {
                     logger.log(Level.WARNING, "BB artifact for keyword hit not written, file: {0}, hit: {1}", new Object[]{hit.getContent(), keyword.toString()}); //NON-NLS
                 }
+                hitProcessed.accept(keyword, hit);
             }
             ++unitProgress;
         }
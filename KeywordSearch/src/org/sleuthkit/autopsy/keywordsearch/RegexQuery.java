@@ -36,9 +36,9 @@
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrQuery.SortClause;
 import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.StreamingResponseCallback;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrDocument;
-import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.params.CursorMarkParams;
 import org.openide.util.NbBundle;
 import org.sleuthkit.autopsy.coreutils.Logger;
@@ -87,6 +87,11 @@ final class RegexQuery implements KeywordSearchQuery {
 
     private final int MIN_EMAIL_ADDR_LENGTH = 8;
 
+    // Used to trim the boundary characters from phone number and IP address hits.
+    private static final Pattern PHONE_NUMBER_PREFIX_PATTERN = Pattern.compile("^[^0-9\\(]"); //NON-NLS
+    private static final Pattern NON_NUMERIC_PREFIX_PATTERN = Pattern.compile("^[^0-9]"); //NON-NLS
+    private static final Pattern NON_NUMERIC_SUFFIX_PATTERN = Pattern.compile("[^0-9]$"); //NON-NLS
+
     private final ListMultimap<Keyword, KeywordHit> hitsMultiMap = ArrayListMultimap.create();
 
     // Lucene regular expressions do not support the following Java predefined
@@ -191,25 +196,39 @@ public QueryResults performQuery() throws NoOpenCoreException {
         solrQuery.setSort(SortClause.asc(Server.Schema.ID.toString()));
 
         String cursorMark = CursorMarkParams.CURSOR_MARK_START;
-        SolrDocumentList resultList ;
         boolean allResultsProcessed = false;
 
+        /*
+         * The Java regex used to find the hits in the documents returned by
+         * Solr is compiled once per query, rather than once per document,
+         * since a query may return millions of chunks.
+         */
+        final Pattern hitPattern = Pattern.compile(keywordString);
+
+        // The result documents are processed as they are parsed from the
+        // response, rather than being collected into a result list first.
+        StreamingResponseCallback resultDocHandler = new StreamingResponseCallback() {
+            @Override
+            public void streamSolrDocument(SolrDocument resultDoc) {
+                try {
+                    List<KeywordHit> keywordHits = createKeywordHits(resultDoc, hitPattern);
+                    for (KeywordHit hit : keywordHits) {
+                        hitsMultiMap.put(new Keyword(hit.getHit(), true, true, originalKeyword.getListName(), originalKeyword.getOriginalTerm()), hit);
+                    }
+                } catch (TskException ex) {
+                    //
+                }
+            }
+
+            @Override
+            public void streamDocListInfo(long numFound, long start, Float maxScore) {
+            }
+        };
+
         while (!allResultsProcessed) {
             try {
                 solrQuery.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
-                QueryResponse response = solrServer.query(solrQuery, SolrRequest.METHOD.POST);
-                resultList = response.getResults();
-
-                for (SolrDocument resultDoc : resultList) {
-                    try {
-                        List<KeywordHit> keywordHits = createKeywordHits(resultDoc);
-                        for (KeywordHit hit : keywordHits) {
-                            hitsMultiMap.put(new Keyword(hit.getHit(), true, true, originalKeyword.getListName(), originalKeyword.getOriginalTerm()), hit);
-                        }
-                    } catch (TskException ex) { 
-                        //
-                    }
-                }
+                QueryResponse response = solrServer.queryAndStreamResponse(solrQuery, SolrRequest.METHOD.POST, resultDocHandler);
 
                 String nextCursorMark = response.getNextCursorMark();
                 if (cursorMark.equals(nextCursorMark)) {
@@ -219,6 +238,7 @@ public QueryResults performQuery() throws NoOpenCoreException {
             } catch (KeywordSearchModuleException ex) {
                 LOGGER.log(Level.SEVERE, "Error executing Regex Solr Query: " + keywordString, ex); //NON-NLS
                 MessageNotifyUtil.Notify.error(NbBundle.getMessage(Server.class, "Server.query.exception.msg", keywordString), ex.getCause().getMessage());
+                break;
             }
         }
         QueryResults results = new QueryResults(this);
@@ -228,7 +248,7 @@ public QueryResults performQuery() throws NoOpenCoreException {
         return results;
     }
 
-    private List<KeywordHit> createKeywordHits(SolrDocument solrDoc) throws TskException {
+    private List<KeywordHit> createKeywordHits(SolrDocument solrDoc, Pattern hitPattern) throws TskException {
 
         List<KeywordHit> hits = new ArrayList<>();
         final String docId = solrDoc.getFieldValue(Server.Schema.ID.toString()).toString();
@@ -236,10 +256,9 @@ private List<KeywordHit> createKeywordHits(SolrDocument solrDoc) throws TskExcep
 
         final Collection<Object> content_str = solrDoc.getFieldValues(Server.Schema.CONTENT_STR.toString());
 
-        final Pattern pattern = Pattern.compile(keywordString);
         for (Object content_obj : content_str) {
             String content = (String) content_obj;
-            Matcher hitMatcher = pattern.matcher(content);
+            Matcher hitMatcher = hitPattern.matcher(content);
             int offset = 0;
 
             while (hitMatcher.find(offset)) {
@@ -267,13 +286,13 @@ private List<KeywordHit> createKeywordHits(SolrDocument solrDoc) throws TskExcep
                         || originalKeyword.getArtifactAttributeType() == BlackboardAttribute.ATTRIBUTE_TYPE.TSK_IP_ADDRESS)) {
                     if (originalKeyword.getArtifactAttributeType() == BlackboardAttribute.ATTRIBUTE_TYPE.TSK_PHONE_NUMBER) {
                         // For phone numbers replace all non numeric characters (except "(") at the start of the hit.
-                        hit = hit.replaceAll("^[^0-9\\(]", "");
+                        hit = PHONE_NUMBER_PREFIX_PATTERN.matcher(hit).replaceAll("");
                     } else {
                         // Replace all non numeric characters at the start of the hit.
-                        hit = hit.replaceAll("^[^0-9]", "");
+                        hit = NON_NUMERIC_PREFIX_PATTERN.matcher(hit).replaceAll("");
                     }
                     // Replace all non numeric at the end of the hit.
-                    hit = hit.replaceAll("[^0-9]$", "");
+                    hit = NON_NUMERIC_SUFFIX_PATTERN.matcher(hit).replaceAll("");
                 }
 
                 if (originalKeyword.getArtifactAttributeType() == BlackboardAttribute.ATTRIBUTE_TYPE.TSK_EMAIL) {
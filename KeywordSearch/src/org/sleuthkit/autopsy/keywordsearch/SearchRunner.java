@@ -18,6 +18,7 @@
  */
 package org.sleuthkit.autopsy.keywordsearch;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -25,12 +26,16 @@
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import javax.swing.SwingUtilities;
@@ -55,7 +60,16 @@
 public final class SearchRunner {
 
     private static final Logger logger = Logger.getLogger(SearchRunner.class.getName());
+    static final int NUM_SEARCH_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    // how far back before the start of the previous periodic search for a
+    // keyword the next one looks, to cover documents that were sent to the
+    // index just before the commit that preceded the previous search but
+    // did not make it into that commit
+    private static final long INDEXED_SINCE_MARGIN_MS = 60 * 1000;
     private static SearchRunner instance = null;
+    // runs the keyword queries of all of the searchers, so the number of 
+    // concurrent queries against the Solr server is bounded
+    private final ExecutorService searchExecutor = Executors.newFixedThreadPool(NUM_SEARCH_THREADS, new ThreadFactoryBuilder().setNameFormat("KWS-search-%d").setDaemon(true).build()); //NON-NLS
     private IngestServices services = IngestServices.getInstance();
     private Ingester ingester = null;
     private volatile boolean updateTimerRunning = false;
@@ -238,18 +252,35 @@ public void run() {
                 return;
             }
 
+            // Find the jobs to search. If no lists or the worker from the
+            // previous tick is still running then skip the job.
+            List<SearchJobInfo> jobsToSearch = new ArrayList<>();
+            synchronized (SearchRunner.this) {
+                for (SearchJobInfo job : jobs.values()) {
+                    if (!job.getKeywordListNames().isEmpty() && !job.isWorkerRunning()) {
+                        jobsToSearch.add(job);
+                    }
+                }
+            }
+            if (jobsToSearch.isEmpty()) {
+                // Skip this tick, including the commit.
+                return;
+            }
+
+            // Everything sent to the index before this time will be found by
+            // the searches started by this tick.
+            final long searchStartTime = System.currentTimeMillis();
             commit();
 
             synchronized (SearchRunner.this) {
-                // Spawn a search thread for each job
-                for (Entry<Long, SearchJobInfo> j : jobs.entrySet()) {
-                    SearchJobInfo job = j.getValue();
-                    // If no lists or the worker is already running then skip it
-                    if (!job.getKeywordListNames().isEmpty() && !job.isWorkerRunning()) {
-                        Searcher searcher = new Searcher(job);
+                // Spawn a search thread for each job that has not been stopped
+                // or ended during the commit
+                for (SearchJobInfo job : jobsToSearch) {
+                    if (jobs.get(job.getJobId()) == job) {
+                        Searcher searcher = new Searcher(job, searchStartTime);
+                        job.setWorkerRunning(true);
                         job.setCurrentSearcher(searcher); //save the ref
                         searcher.execute(); //start thread
-                        job.setWorkerRunning(true);
                     }
                 }
             }
@@ -268,8 +299,16 @@ private class SearchJobInfo {
         private volatile boolean workerRunning;
         private List<String> keywordListNames; //guarded by SearchJobInfo.this
 
-        // Map of keyword to the object ids that contain a hit
-        private Map<Keyword, Set<Long>> currentResults; //guarded by SearchJobInfo.this
+        // Map of keyword to the object ids that contain a hit that has been
+        // written to the blackboard. Only updated by the searcher thread, once
+        // the hit is written, so hits that are found by a query but never
+        // written are not skipped by later searches.
+        private final Map<Keyword, Set<Long>> currentResults;
+        // Map of keyword to the start time of the last periodic search that
+        // completed for the keyword, so the next one only needs to search the
+        // documents indexed since then. Only advanced by the searcher thread,
+        // once the new hits of the search for the keyword are written.
+        private final Map<Keyword, Long> keywordSearchTimes;
         private SearchRunner.Searcher currentSearcher;
         private AtomicLong moduleReferenceCount = new AtomicLong(0);
         private final Object finalSearchLock = new Object(); //used for a condition wait
@@ -278,7 +317,8 @@ private SearchJobInfo(long jobId, long dataSourceId, List<String> keywordListNam
             this.jobId = jobId;
             this.dataSourceId = dataSourceId;
             this.keywordListNames = new ArrayList<>(keywordListNames);
-            currentResults = new HashMap<>();
+            currentResults = new ConcurrentHashMap<>();
+            keywordSearchTimes = new ConcurrentHashMap<>();
             workerRunning = false;
             currentSearcher = null;
         }
@@ -301,12 +341,32 @@ private synchronized void addKeywordListName(String keywordListName) {
             }
         }
 
-        private synchronized Set<Long> currentKeywordResults(Keyword k) {
-            return currentResults.get(k);
+        /**
+         * Gets the set of object ids with hits written so far for a keyword.
+         *
+         * @param k The keyword.
+         *
+         * @return The set of object ids.
+         */
+        private Set<Long> currentKeywordResults(Keyword k) {
+            return currentResults.computeIfAbsent(k, (Keyword keyword) -> ConcurrentHashMap.newKeySet());
+        }
+
+        /**
+         * Gets the start time of the last completed periodic search for a
+         * keyword.
+         *
+         * @param k The keyword.
+         *
+         * @return The time in ms, or null if the keyword has not been
+         *         searched yet.
+         */
+        private Long getLastSearchTime(Keyword k) {
+            return keywordSearchTimes.get(k);
         }
 
-        private synchronized void addKeywordResults(Keyword k, Set<Long> resultsIDs) {
-            currentResults.put(k, resultsIDs);
+        private void setLastSearchTime(Keyword k, long searchStartTime) {
+            keywordSearchTimes.put(k, searchStartTime);
         }
 
         private boolean isWorkerRunning() {
@@ -360,8 +420,10 @@ private void searchNotify() {
     /**
      * Searcher responsible for searching the current index and writing results
      * to blackboard and the inbox. Also, posts results to listeners as Ingest
-     * data events. Searches entire index, and keeps track of only new results
-     * to report and save. Runs as a background thread.
+     * data events. Periodic searches only search the documents indexed since
+     * the previous search for each keyword, the final search searches the
+     * entire index, and both keep track of only new results to report and
+     * save. Runs as a background thread.
      */
     private final class Searcher extends SwingWorker<Object, Void> {
 
@@ -376,9 +438,11 @@ private final class Searcher extends SwingWorker<Object, Void> {
         private AggregateProgressHandle progressGroup;
         private final Logger logger = Logger.getLogger(SearchRunner.Searcher.class.getName());
         private boolean finalRun = false;
+        private final long searchStartTime;
 
-        Searcher(SearchJobInfo job) {
+        Searcher(SearchJobInfo job, long searchStartTime) {
             this.job = job;
+            this.searchStartTime = searchStartTime;
             keywordListNames = job.getKeywordListNames();
             keywords = new ArrayList<>();
             keywordToList = new HashMap<>();
@@ -387,7 +451,7 @@ private final class Searcher extends SwingWorker<Object, Void> {
         }
 
         Searcher(SearchJobInfo job, boolean finalRun) {
-            this(job);
+            this(job, System.currentTimeMillis());
             this.finalRun = finalRun;
         }
 
@@ -422,9 +486,21 @@ public boolean cancel() {
 
             final StopWatch stopWatch = new StopWatch();
             stopWatch.start();
+            List<Future<QueryResults>> queryFutures = new ArrayList<>(keywords.size());
             try {
                 progressGroup.setDisplayName(displayName);
 
+                // Run the queries for all of the keywords on the shared search
+                // executor. The results are reduced to the new hits and written
+                // to the blackboard on this thread, in keyword order, as the
+                // queries complete. Hits are only recorded as seen once they
+                // are written, so the results of queries that are abandoned
+                // are found again by the next search.
+                for (Keyword keyword : keywords) {
+                    final KeywordList keywordList = keywordToList.get(keyword);
+                    queryFutures.add(searchExecutor.submit(() -> performQuery(keyword, keywordList)));
+                }
+
                 int keywordsSearched = 0;
 
                 for (Keyword keyword : keywords) {
@@ -441,34 +517,35 @@ public boolean cancel() {
                         subProgresses[keywordsSearched - 1].finish();
                     }
 
-                    KeywordSearchQuery keywordSearchQuery = KeywordSearchUtil.getQueryForKeyword(keyword, keywordList);
-
-                    // Filtering
-                    //limit search to currently ingested data sources
-                    //set up a filter with 1 or more image ids OR'ed
-                    final KeywordQueryFilter dataSourceFilter = new KeywordQueryFilter(KeywordQueryFilter.FilterType.DATA_SOURCE, job.getDataSourceId());
-                    keywordSearchQuery.addFilter(dataSourceFilter);
-
+                    // Wait for the actual search
                     QueryResults queryResults;
-
-                    // Do the actual search
                     try {
-                        queryResults = keywordSearchQuery.performQuery();
-                    } catch (KeywordSearchModuleException | NoOpenCoreException ex) {
-                        logger.log(Level.SEVERE, "Error performing query: " + keyword.getSearchTerm(), ex); //NON-NLS
-                        MessageNotifyUtil.Notify.error(Bundle.SearchRunner_query_exception_msg() + keyword.getSearchTerm(), ex.getCause().getMessage());
+                        queryResults = queryFutures.get(keywordsSearched).get();
+                    } catch (ExecutionException ex) {
+                        if (ex.getCause() instanceof CancellationException) {
+                            logger.log(Level.INFO, "Cancel detected, bailing during keyword query: {0}", keyword.getSearchTerm()); //NON-NLS
+                            return null;
+                        }
+                        logger.log(Level.SEVERE, "Error performing query: " + keyword.getSearchTerm(), ex.getCause()); //NON-NLS
+                        Throwable cause = (ex.getCause().getCause() != null) ? ex.getCause().getCause() : ex.getCause();
+                        MessageNotifyUtil.Notify.error(Bundle.SearchRunner_query_exception_msg() + keyword.getSearchTerm(), cause.getMessage());
                         //no reason to continue with next query if recovery failed
                         //or wait for recovery to kick in and run again later
                         //likely case has closed and threads are being interrupted
                         return null;
-                    } catch (CancellationException e) {
+                    } catch (CancellationException | InterruptedException e) {
                         logger.log(Level.INFO, "Cancel detected, bailing during keyword query: {0}", keyword.getSearchTerm()); //NON-NLS
                         return null;
                     }
 
                     // Reduce the results of the query to only those hits we
-                    // have not already seen. 
+                    // have not already written.
                     QueryResults newResults = filterResults(queryResults);
+                    int newHitsCount = 0;
+                    for (Keyword resultKeyword : newResults.getKeywords()) {
+                        newHitsCount += newResults.getResults(resultKeyword).size();
+                    }
+                    final AtomicInteger hitsWritten = new AtomicInteger(0);
 
                     if (!newResults.getKeywords().isEmpty()) {
 
@@ -486,11 +563,27 @@ public boolean cancel() {
                         }
                         subProgresses[keywordsSearched].progress(keywordList.getName() + ": " + queryDisplayStr, unitProgress);
 
-                        // Create blackboard artifacts                
-                        newArtifacts = newResults.writeAllHitsToBlackBoard(null, subProgresses[keywordsSearched], this, keywordList.getIngestMessages());
+                        // Create blackboard artifacts, recording each hit as
+                        // seen once it is written
+                        newArtifacts = newResults.writeAllHitsToBlackBoard(null, subProgresses[keywordsSearched], this, keywordList.getIngestMessages(),
+                                (resultKeyword, hit) -> {
+                                    job.currentKeywordResults(resultKeyword).add(hit.getSolrObjectId());
+                                    hitsWritten.incrementAndGet();
+                                });
 
                     } //if has results
 
+                    //the next periodic search for the keyword only needs to
+                    //search the documents indexed since this one started, but
+                    //only if all of this search's new hits have been written
+                    if (this.isCancelled()) {
+                        logger.log(Level.INFO, "Cancel detected, bailing after writing hits for keyword: {0}", keyword.getSearchTerm()); //NON-NLS
+                        return null;
+                    }
+                    if (!finalRun && hitsWritten.get() == newHitsCount) {
+                        job.setLastSearchTime(keyword, searchStartTime);
+                    }
+
                     //reset the status text before it goes away
                     subProgresses[keywordsSearched].progress("");
 
@@ -502,6 +595,10 @@ public boolean cancel() {
             catch (Exception ex) {
                 logger.log(Level.WARNING, "searcher exception occurred", ex); //NON-NLS
             } finally {
+                // Don't leave queries for an abandoned search in the executor.
+                for (Future<QueryResults> queryFuture : queryFutures) {
+                    queryFuture.cancel(true);
+                }
                 try {
                     finalizeSearcher();
                     stopWatch.stop();
@@ -531,6 +628,41 @@ protected void done() {
             }
         }
 
+        /**
+         * Performs the query for a keyword, limited to the data source of the
+         * job and, unless this is the final search, to the documents indexed
+         * since the previous search for the keyword. Runs on the search
+         * executor.
+         *
+         * @param keyword     The keyword.
+         * @param keywordList The list the keyword is from.
+         *
+         * @return The hits.
+         *
+         * @throws KeywordSearchModuleException
+         * @throws NoOpenCoreException
+         */
+        private QueryResults performQuery(Keyword keyword, KeywordList keywordList) throws KeywordSearchModuleException, NoOpenCoreException {
+            if (this.isCancelled()) {
+                throw new CancellationException();
+            }
+            KeywordSearchQuery keywordSearchQuery = KeywordSearchUtil.getQueryForKeyword(keyword, keywordList);
+
+            // Filtering
+            //limit search to currently ingested data sources
+            //set up a filter with 1 or more image ids OR'ed
+            final KeywordQueryFilter dataSourceFilter = new KeywordQueryFilter(KeywordQueryFilter.FilterType.DATA_SOURCE, job.getDataSourceId());
+            keywordSearchQuery.addFilter(dataSourceFilter);
+
+            //limit periodic searches to the documents indexed since the last one
+            Long lastSearchTime = job.getLastSearchTime(keyword);
+            if (!finalRun && lastSearchTime != null) {
+                keywordSearchQuery.addFilter(new KeywordQueryFilter(KeywordQueryFilter.FilterType.INDEXED_SINCE, lastSearchTime - INDEXED_SINCE_MARGIN_MS));
+            }
+
+            return keywordSearchQuery.performQuery();
+        }
+
         /**
          * Sync-up the updated keywords from the currently used lists in the XML
          */
@@ -599,36 +731,23 @@ private QueryResults filterResults(QueryResults queryResult) {
                 // for this keyword.
                 List<KeywordHit> newUniqueHits = new ArrayList<>();
 
-                // Get the set of object ids seen in the past by this searcher
-                // for the given keyword.
+                // Get the set of object ids with hits written in the past by
+                // the searchers for the given keyword. The object ids of the
+                // new hits are added to it as the hits are written.
                 Set<Long> curTermResults = job.currentKeywordResults(keyword);
-                if (curTermResults == null) {
-                    // We create a new empty set if we haven't seen results for
-                    // this keyword before.
-                    curTermResults = new HashSet<>();
-                }
+                Set<Long> newTermResults = new HashSet<>();
 
                 // For each hit for this keyword.
                 for (KeywordHit hit : queryTermResults) {
-                    if (curTermResults.contains(hit.getSolrObjectId())) {
-                        // Skip the hit if we've already seen a hit for
-                        // this keyword in the object.
-                        continue;
+                    // Skip the hit if we've already written a hit for this
+                    // keyword in the object, or already have a new one.
+                    if (!curTermResults.contains(hit.getSolrObjectId()) && newTermResults.add(hit.getSolrObjectId())) {
+                        // We haven't seen the hit before so add it to list of
+                        // new unique hits.
+                        newUniqueHits.add(hit);
                     }
-
-                    // We haven't seen the hit before so add it to list of new
-                    // unique hits.
-                    newUniqueHits.add(hit);
-
-                    // Add the object id to the results we've seen for this
-                    // keyword.
-                    curTermResults.add(hit.getSolrObjectId());
                 }
 
-                // Update the job with the list of objects for which we have
-                // seen hits for the current keyword.
-                job.addKeywordResults(keyword, curTermResults);
-
                 // Add the new hits for the current keyword into the results
                 // to be returned.
                 newResults.addResult(keyword, newUniqueHits);
@@ -46,9 +46,12 @@
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrRequest;
 import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.StreamingResponseCallback;
 import org.apache.solr.client.solrj.impl.HttpSolrServer;
+import org.apache.solr.client.solrj.impl.StreamingBinaryResponseParser;
 import org.apache.solr.client.solrj.impl.XMLResponseParser;
 import org.apache.solr.client.solrj.request.CoreAdminRequest;
+import org.apache.solr.client.solrj.request.QueryRequest;
 import org.apache.solr.client.solrj.response.CoreAdminResponse;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.client.solrj.response.TermsResponse;
@@ -162,6 +165,14 @@ public String toString() {
             public String toString() {
                 return "chunk_size"; //NON-NLS
             }
+        },
+        // the time in ms at which the document was sent to the server, used
+        // to limit periodic searches to recently indexed documents
+        INDEXED_TIME {
+            @Override
+            public String toString() {
+                return "indexed_time"; //NON-NLS
+            }
         }
     };
 
@@ -189,6 +200,10 @@ public String toString() {
     private static final boolean DEBUG = false;//(Version.getBuildType() == Version.Type.DEVELOPMENT);
     private static final String SOLR = "solr";
     private static final String CORE_PROPERTIES = "core.properties";
+    // connections to a core: one for each batch sender and search thread, plus
+    // some for the commits, ingest module and UI requests made directly
+    private static final int MAX_CORE_CONNECTIONS_PER_HOST = Ingester.NUM_BATCH_SENDER_THREADS + SearchRunner.NUM_SEARCH_THREADS + 2;
+    private static final int MAX_CORE_CONNECTIONS = MAX_CORE_CONNECTIONS_PER_HOST + 3;
 
     public enum CORE_EVT_STATES {
 
@@ -704,12 +719,38 @@ void addDocument(SolrInputDocument doc) throws KeywordSearchModuleException, NoO
             if (null == currentCore) {
                 throw new NoOpenCoreException();
             }
+            doc.setField(Schema.INDEXED_TIME.toString(), System.currentTimeMillis());
             currentCore.addDocument(doc);
         } finally {
             currentCoreLock.readLock().unlock();
         }
     }
 
+    /**
+     * Adds a batch of documents to the current core in a single update
+     * request.
+     *
+     * @param docs The documents to add.
+     *
+     * @throws KeywordSearchModuleException
+     * @throws NoOpenCoreException
+     */
+    void addDocuments(Collection<SolrInputDocument> docs) throws KeywordSearchModuleException, NoOpenCoreException {
+        currentCoreLock.readLock().lock();
+        try {
+            if (null == currentCore) {
+                throw new NoOpenCoreException();
+            }
+            final long indexedTime = System.currentTimeMillis();
+            for (SolrInputDocument doc : docs) {
+                doc.setField(Schema.INDEXED_TIME.toString(), indexedTime);
+            }
+            currentCore.addDocuments(docs);
+        } finally {
+            currentCoreLock.readLock().unlock();
+        }
+    }
+
     /**
      * ** end single-case specific methods ***
      */
@@ -1041,6 +1082,35 @@ public QueryResponse query(SolrQuery sq, SolrRequest.METHOD method) throws Keywo
         }
     }
 
+    /**
+     * Execute solr query, streaming the result documents to a callback as they
+     * are parsed instead of collecting them in the response
+     *
+     * @param sq       the query
+     * @param method   http method to use
+     * @param callback the callback that is passed the result documents
+     *
+     * @return query response, without the result documents
+     *
+     * @throws KeywordSearchModuleException
+     * @throws NoOpenCoreException
+     */
+    QueryResponse queryAndStreamResponse(SolrQuery sq, SolrRequest.METHOD method, StreamingResponseCallback callback) throws KeywordSearchModuleException, NoOpenCoreException {
+        currentCoreLock.readLock().lock();
+        try {
+            if (null == currentCore) {
+                throw new NoOpenCoreException();
+            }
+            try {
+                return currentCore.queryAndStreamResponse(sq, method, callback);
+            } catch (SolrServerException | IOException ex) {
+                throw new KeywordSearchModuleException(NbBundle.getMessage(this.getClass(), "Server.query2.exception.msg", sq.getQuery()), ex);
+            }
+        } finally {
+            currentCoreLock.readLock().unlock();
+        }
+    }
+
     /**
      * Execute Solr terms query
      *
@@ -1242,8 +1312,8 @@ private Core(String name, CaseType caseType, Index index) {
             //TODO test these settings
             //solrCore.setSoTimeout(1000 * 60);  // socket read timeout, make large enough so can index larger files
             //solrCore.setConnectionTimeout(1000);
-            solrCore.setDefaultMaxConnectionsPerHost(2);
-            solrCore.setMaxTotalConnections(5);
+            solrCore.setDefaultMaxConnectionsPerHost(MAX_CORE_CONNECTIONS_PER_HOST);
+            solrCore.setMaxTotalConnections(MAX_CORE_CONNECTIONS);
             solrCore.setFollowRedirects(false);  // defaults to false
             // allowCompression defaults to false.
             // Server side must support gzip or deflate for this to have any effect.
@@ -1284,6 +1354,15 @@ private QueryResponse query(SolrQuery sq, SolrRequest.METHOD method) throws Solr
             return solrCore.query(sq, method);
         }
 
+        private QueryResponse queryAndStreamResponse(SolrQuery sq, SolrRequest.METHOD method, StreamingResponseCallback callback) throws SolrServerException, IOException {
+            // the streaming parser needs the binary response format, 
+            // regardless of the parser set for the core
+            QueryRequest request = new QueryRequest(sq, method);
+            request.setStreamingResponseCallback(callback);
+            request.setResponseParser(new StreamingBinaryResponseParser(callback));
+            return request.process(solrCore);
+        }
+
         private TermsResponse queryTerms(SolrQuery sq) throws SolrServerException, IOException {
             QueryResponse qres = solrCore.query(sq);
             return qres.getTermsResponse();
@@ -1313,6 +1392,24 @@ void addDocument(SolrInputDocument doc) throws KeywordSearchModuleException {
             }
         }
 
+        void addDocuments(Collection<SolrInputDocument> docs) throws KeywordSearchModuleException {
+            if (docs.isEmpty()) {
+                return;
+            }
+            Object firstId = docs.iterator().next().getField("id"); //NON-NLS
+            try {
+                solrCore.add(docs);
+            } catch (SolrServerException ex) {
+                logger.log(Level.SEVERE, "Could not add batch of " + docs.size() + " documents starting with " + firstId + " to index via update handler", ex); //NON-NLS
+                throw new KeywordSearchModuleException(
+                        NbBundle.getMessage(this.getClass(), "Server.addDoc.exception.msg", firstId), ex); //NON-NLS
+            } catch (IOException ex) {
+                logger.log(Level.SEVERE, "Could not add batch of " + docs.size() + " documents starting with " + firstId + " to index via update handler", ex); //NON-NLS
+                throw new KeywordSearchModuleException(
+                        NbBundle.getMessage(this.getClass(), "Server.addDoc.exception.msg2", firstId), ex); //NON-NLS
+            }
+        }
+
         /**
          * get the text from the content field for the given file
          *